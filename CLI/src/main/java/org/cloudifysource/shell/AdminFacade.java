@@ -21,6 +21,7 @@ import java.util.concurrent.TimeoutException;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.dsl.rest.response.ApplicationDescription;
 import org.cloudifysource.dsl.rest.response.ControllerDetails;
+import org.cloudifysource.restclient.GSRestClient;
 import org.cloudifysource.restclient.InvocationResult;
 import org.cloudifysource.restclient.exceptions.RestClientException;
 import org.cloudifysource.shell.exceptions.CLIException;
@@ -459,6 +460,28 @@ public interface AdminFacade {
 	String getTailByServiceName(String serviceName, String applicationName,
 			int numLines) throws CLIException;
 
+	/**
+	 * Streams the last n lines of log from all service instances, merged by timestamp, and optionally keeps
+	 * streaming new lines as they are written.
+	 *
+	 * @param serviceName
+	 *            The service name.
+	 * @param applicationName
+	 *            The application name.
+	 * @param numLines
+	 *            The number of lines to tail from each instance.
+	 * @param follow
+	 *            true to keep streaming new lines.
+	 * @param followTimeoutSeconds
+	 *            how long to follow the logs, in seconds.
+	 * @param handler
+	 *            Receives the lines as they arrive, each prefixed by its service instance id.
+	 * @throws CLIException
+	 *             a CLI exception is thrown if an error occurred on the remote server.
+	 */
+	void streamTailByServiceName(String serviceName, String applicationName, int numLines,
+			boolean follow, long followTimeoutSeconds, GSRestClient.LineHandler handler) throws CLIException;
+
 	/**
 	 * Update the attribute store with the correct scope.
 	 *
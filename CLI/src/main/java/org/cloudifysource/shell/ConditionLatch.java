@@ -30,6 +30,11 @@ import org.cloudifysource.shell.exceptions.CLIException;
  *        samples its status according to a specified polling interval and if the process is not completed
  *        before the specified timeout is reached, a {@link TimeoutException} is thrown, with the configured
  *        error message.
+ * 
+ *        Waiting is not tied to the polling interval: {@link #signal()} wakes the latch up to check the
+ *        predicate immediately, e.g. when a push notification or a long poll response arrived. With
+ *        {@link #adaptiveBackoff(long, TimeUnit)} the interval doubles after every check that made no progress,
+ *        up to the given maximum, so a long wait produces less load than a fixed interval.
  */
 public class ConditionLatch {
 
@@ -41,6 +46,11 @@ public class ConditionLatch {
 	private long pollingIntervalMilliseconds = TimeUnit.SECONDS.toMillis(DEFAULT_INTERVAL_SECONDS);
 	private boolean verbose = false;
 	private long timeoutMilliseconds;
+	private long maxPollingIntervalMilliseconds;
+
+	private final Object signalLock = new Object();
+	private boolean signalled = false;
+	private TimingReport timingReport = new TimingReport(0, 0, 0, 0);
 
 	/**
 	 * 
@@ -61,6 +71,68 @@ public class ConditionLatch {
 		boolean isDone() throws CLIException, InterruptedException;
 	}
 
+	/**
+	 * A predicate that reports whether its last check made progress (e.g. new events arrived), which resets the
+	 * adaptive backoff to the initial polling interval.
+	 */
+	public interface ProgressPredicate extends Predicate {
+		/**
+		 * @return true if the last call to {@link #isDone()} observed progress.
+		 */
+		boolean hasProgressed();
+	}
+
+	/**
+	 * Timing of a completed {@link ConditionLatch#waitFor(Predicate)} call.
+	 */
+	public static class TimingReport {
+		private final long totalMillis;
+		private final int checks;
+		private final int signals;
+		private final long lastIntervalMillis;
+
+		TimingReport(final long totalMillis, final int checks, final int signals, final long lastIntervalMillis) {
+			this.totalMillis = totalMillis;
+			this.checks = checks;
+			this.signals = signals;
+			this.lastIntervalMillis = lastIntervalMillis;
+		}
+
+		/**
+		 * @return the time spent waiting, in milliseconds.
+		 */
+		public long getTotalMillis() {
+			return totalMillis;
+		}
+
+		/**
+		 * @return the number of times the predicate was checked.
+		 */
+		public int getChecks() {
+			return checks;
+		}
+
+		/**
+		 * @return the number of checks triggered by {@link ConditionLatch#signal()} rather than the interval.
+		 */
+		public int getSignals() {
+			return signals;
+		}
+
+		/**
+		 * @return the time between the last two checks, an upper bound of how late completion was noticed.
+		 */
+		public long getLastIntervalMillis() {
+			return lastIntervalMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "waited " + totalMillis + " ms, " + checks + " checks (" + signals + " signalled), "
+					+ "completion noticed at most " + lastIntervalMillis + " ms late";
+		}
+	}
+
 	/**
 	 * Sets the error message of the timeout exception, thrown when a predicate is not done before the timeout
 	 * is reached.
@@ -88,6 +160,39 @@ public class ConditionLatch {
 		return this;
 	}
 
+	/**
+	 * Enables adaptive backoff: the polling interval doubles after every check that made no progress, up to the
+	 * given maximum, and returns to the configured polling interval on progress or on {@link #signal()}.
+	 * 
+	 * @param maxInterval
+	 *            The maximal polling interval
+	 * @param timeunit
+	 *            The time unit to use (seconds, minutes etc.)
+	 * @return This instance of {@link ConditionLatch}, configured with adaptive backoff
+	 */
+	public ConditionLatch adaptiveBackoff(final long maxInterval, final TimeUnit timeunit) {
+		this.maxPollingIntervalMilliseconds = timeunit.toMillis(maxInterval);
+		return this;
+	}
+
+	/**
+	 * Wakes up the waiting thread to check the predicate now instead of at the end of the polling interval. A
+	 * signal received while the predicate is being checked applies to the next wait.
+	 */
+	public void signal() {
+		synchronized (signalLock) {
+			signalled = true;
+			signalLock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return the timing of the last {@link #waitFor(Predicate)} call.
+	 */
+	public TimingReport getTimingReport() {
+		return timingReport;
+	}
+
 	/**
 	 * Sets the verbose mode, setting on/off the logging while the predicate is monitored.
 	 * 
@@ -130,16 +235,38 @@ public class ConditionLatch {
 	 */
 	public void waitFor(final Predicate predicate) throws InterruptedException, TimeoutException, CLIException {
 
-		final long end = System.currentTimeMillis() + timeoutMilliseconds;
+		final long start = System.currentTimeMillis();
+		final long end = start + timeoutMilliseconds;
+		long interval = pollingIntervalMilliseconds;
+		long lastCheck = start;
+		long lastIntervalMillis = 0;
+		int checks = 1;
+		int signals = 0;
 
 		boolean isDone = predicate.isDone();
 		while (!isDone && System.currentTimeMillis() < end) {
 			if (verbose) {
 				logger.log(Level.FINE,
-						"next check in " + TimeUnit.MILLISECONDS.toSeconds(pollingIntervalMilliseconds) + " seconds");
+						"next check in " + TimeUnit.MILLISECONDS.toSeconds(interval) + " seconds");
 			}
-			Thread.sleep(pollingIntervalMilliseconds);
+			final long timeLeft = end - System.currentTimeMillis();
+			final boolean signalledCheck = awaitSignal(Math.min(interval, Math.max(timeLeft, 1)));
+			final long now = System.currentTimeMillis();
+			lastIntervalMillis = now - lastCheck;
+			lastCheck = now;
 			isDone = predicate.isDone();
+			checks++;
+			if (signalledCheck) {
+				signals++;
+				interval = pollingIntervalMilliseconds;
+			} else {
+				interval = nextInterval(predicate, interval);
+			}
+		}
+
+		timingReport = new TimingReport(System.currentTimeMillis() - start, checks, signals, lastIntervalMillis);
+		if (verbose) {
+			logger.log(Level.FINE, "Condition latch timing: " + timingReport);
 		}
 
 		if (!isDone && System.currentTimeMillis() >= end) {
@@ -147,4 +274,29 @@ public class ConditionLatch {
 		}
 	}
 
+	private long nextInterval(final Predicate predicate, final long interval) {
+		if (maxPollingIntervalMilliseconds <= pollingIntervalMilliseconds) {
+			return pollingIntervalMilliseconds;
+		}
+		if (predicate instanceof ProgressPredicate && ((ProgressPredicate) predicate).hasProgressed()) {
+			return pollingIntervalMilliseconds;
+		}
+		return Math.min(Math.max(interval * 2, 1), maxPollingIntervalMilliseconds);
+	}
+
+	// returns true if woken up by a signal, false if the interval passed.
+	private boolean awaitSignal(final long millis) throws InterruptedException {
+		final long until = System.currentTimeMillis() + millis;
+		synchronized (signalLock) {
+			long remaining = millis;
+			while (!signalled && remaining > 0) {
+				signalLock.wait(remaining);
+				remaining = until - System.currentTimeMillis();
+			}
+			final boolean wasSignalled = signalled;
+			signalled = false;
+			return wasSignalled;
+		}
+	}
+
 }
@@ -237,6 +237,9 @@ public class InstallApplication extends AdminAwareCommand implements NewRestClie
 				continuous = true;
 			}
 		}
+		if (verbose) {
+			logger.info("Lifecycle events timing: " + lifecycleEventsPollingLatch.getTimingReport());
+		}
 
 		return this.getFormattedMessage("application_installed_successfully", Color.GREEN, applicationName);
 	}
@@ -299,6 +299,9 @@ public class InstallService extends AdminAwareCommand implements NewRestClientCo
 				}
 			}
 		}
+		if (verbose) {
+			logger.info("Lifecycle events timing: " + lifecycleEventsPollingLatch.getTimingReport());
+		}
 	}
 
 	private boolean promptWouldYouLikeToContinueQuestion() throws IOException {
@@ -17,13 +17,17 @@ package org.cloudifysource.shell.commands;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Command;
 import org.apache.felix.gogo.commands.Option;
+import org.cloudifysource.restclient.GSRestClient;
 import org.cloudifysource.shell.ShellUtils;
+import org.cloudifysource.shell.exceptions.CLIException;
 import org.cloudifysource.shell.exceptions.CLIStatusException;
 import org.fusesource.jansi.Ansi.Color;
 
@@ -32,11 +36,15 @@ import org.fusesource.jansi.Ansi.Color;
  * The tail command can either accept the service name and instance number of a certain instance,
  * or it can get the service name and host address of the instance. The log output can also be 
  * directed to a file using the -file option.
+ * When tailing all of the service instances, the -follow option keeps printing new log lines of all instances,
+ * merged by time, until the -followTimeout expires or the command is interrupted.
  * @author adaml
  *
  */
 @Command(scope = "cloudify", name = "tail", description = "retrieve the last N lines of a specific service log")
 public class Tail extends AdminAwareCommand {
+	private static final int DEFAULT_FOLLOW_TIMEOUT_MINUTES = 10;
+	
 	@Argument(index = 0, required = true, description = "The service name who's log to tail")
 	private String serviceName;
 	
@@ -52,6 +60,14 @@ public class Tail extends AdminAwareCommand {
 	@Option(required = false, description = "the service instance number", name = "-instanceId")
 	private Integer instanceId;
 	
+	@Option(required = false, description = "keep printing new log lines of all service instances", 
+			name = "-follow")
+	private boolean follow;
+	
+	@Option(required = false, description = "the number of minutes to follow the log for. Defaults to 10", 
+			name = "-followTimeout")
+	private int followTimeoutInMinutes = DEFAULT_FOLLOW_TIMEOUT_MINUTES;
+	
 	@Override
 	protected Object doExecute() throws Exception {
 		
@@ -62,6 +78,13 @@ public class Tail extends AdminAwareCommand {
 		boolean noTailOptionsEntered = (!StringUtils.isNotBlank(hostAddress)) && (instanceId == null);
 		boolean oneTailOtionEntered = ((!twoTailOptionsEntered) && (!noTailOptionsEntered));
 		
+		if (follow) {
+			if (!noTailOptionsEntered) {
+				throw new CLIStatusException("tail_follow_requires_all_instances");
+			}
+			return followLogTail(applicationName);
+		}
+		
 		if (noTailOptionsEntered) {
 			logTail = adminFacade.getTailByServiceName(serviceName, applicationName, numLines);
 		}
@@ -95,6 +118,44 @@ public class Tail extends AdminAwareCommand {
 		return coloredLogTail;
 	}
 
+	private Object followLogTail(final String applicationName) 
+								throws CLIException {
+		final long followTimeoutSeconds = TimeUnit.MINUTES.toSeconds(followTimeoutInMinutes);
+		if (this.file == null) {
+			adminFacade.streamTailByServiceName(serviceName, applicationName, numLines, true, followTimeoutSeconds,
+					new GSRestClient.LineHandler() {
+						@Override
+						public boolean onLine(final String line) {
+							session.getConsole().println(getColoredLogTail(line));
+							session.getConsole().flush();
+							return !Thread.currentThread().isInterrupted();
+						}
+					});
+			return "";
+		}
+		
+		final PrintWriter writer;
+		try {
+			writer = new PrintWriter(FileUtils.openOutputStream(this.file));
+		} catch (IOException e) {
+			throw new CLIStatusException(e, "the_log_could_not_be_saved_to_file", file.getAbsolutePath());
+		}
+		try {
+			adminFacade.streamTailByServiceName(serviceName, applicationName, numLines, true, followTimeoutSeconds,
+					new GSRestClient.LineHandler() {
+						@Override
+						public boolean onLine(final String line) {
+							writer.println(line);
+							writer.flush();
+							return !Thread.currentThread().isInterrupted();
+						}
+					});
+		} finally {
+			writer.close();
+		}
+		return getFormattedMessage("log_tail_successfully_saved_to_file", file.getAbsolutePath());
+	}
+
 	private void writeLogToFile(final String logTail) 
 								throws CLIStatusException {
 		try {
@@ -39,6 +39,7 @@ import org.cloudifysource.domain.cloud.Cloud;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyErrorMessages;
 import org.cloudifysource.dsl.internal.DSLException;
+import org.cloudifysource.dsl.internal.ParsedCloudCache;
 import org.cloudifysource.dsl.internal.ServiceReader;
 import org.cloudifysource.dsl.utils.IPUtils;
 import org.cloudifysource.dsl.utils.NetworkUtils;
@@ -173,6 +174,8 @@ public class LocalhostGridAgentBootstrapper {
 			new ArrayList<LocalhostBootstrapperListener>();
 	private boolean isLocalCloud;
 	private Cloud cloud;
+	// the cloud as parsed from the cloud file, published to the management space.
+	private ParsedCloudCache.ParsedCloud parsedCloud;
 
 	/**
 	 * Sets verbose mode.
@@ -418,7 +421,8 @@ public class LocalhostGridAgentBootstrapper {
 		final long end = System.currentTimeMillis() + timeunit.toMillis(timeout);
 
 		try {
-			this.cloud = ServiceReader.readCloud(new File(this.cloudFilePath));
+			this.parsedCloud = ServiceReader.readParsedCloud(new File(this.cloudFilePath));
+			this.cloud = this.parsedCloud.getCloud();
 		} catch (final IOException e) {
 			throw new CLIException("Failed to read cloud file: " + e.getMessage(), e);
 		} catch (final DSLException e) {
@@ -1079,6 +1083,10 @@ public class LocalhostGridAgentBootstrapper {
 						final GigaSpace gigaspace = managementSpaceInstaller.getGigaSpace();
 
 						final CloudConfigurationHolder holder = new CloudConfigurationHolder(null, getCloudFilePath());
+						if (this.parsedCloud != null) {
+							holder.setCloudConfigurationDigest(this.parsedCloud.getDigest());
+							holder.setSerializedCloud(this.parsedCloud.getSerializedCloud());
+						}
 						logger.fine("Writing cloud Configuration to space: " + holder);
 						gigaspace.write(holder);
 						// Shut down the space proxy so that if the cloud is
@@ -850,6 +850,22 @@ public class RestAdminFacade extends AbstractAdminFacade {
 		}
 	}
 
+	@Override
+	public void streamTailByServiceName(final String serviceName,
+			final String applicationName, final int numLines, final boolean follow,
+			final long followTimeoutSeconds, final GSRestClient.LineHandler handler)
+			throws CLIException {
+		final String url = SERVICE_CONTROLLER_URL + "applications/"
+				+ applicationName + "/services/" + serviceName + "/tail/stream"
+				+ "?numLines=" + numLines + "&follow=" + follow
+				+ "&followTimeoutSeconds=" + followTimeoutSeconds;
+		try {
+			client.getLines(url, handler);
+		} catch (final ErrorStatusException e) {
+			throw new CLIStatusException(e, e.getReasonCode(), e.getArgs());
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -27,7 +27,6 @@ import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.restclient.ErrorStatusException;
 import org.cloudifysource.restclient.GSRestClient;
 import org.cloudifysource.shell.ConditionLatch;
-import org.cloudifysource.shell.ConditionLatch.Predicate;
 import org.cloudifysource.shell.exceptions.CLIException;
 import org.cloudifysource.shell.installer.CLIEventsDisplayer;
 /**
@@ -38,6 +37,11 @@ import org.cloudifysource.shell.installer.CLIEventsDisplayer;
  * 				* Installation on the remote rest gateway ended.
  * 				* An exception was thrown in the polling thread on remote server
  * 
+ * Requests long poll the rest, which responds as soon as new events arrive or the task ends, and the next 
+ * request is sent right away. If the rest does not support long polling, the latch falls back to polling 
+ * with an interval that backs off while there are no new events. The timing of the last wait is available 
+ * from {@link #getTimingReport()}.
+ * 
  * @author adaml
  *
  */
@@ -45,6 +49,8 @@ public class RestLifecycleEventsLatch {
 
 	private static final Logger logger = Logger.getLogger(RestLifecycleEventsLatch.class.getName());
 	private static final long MIN_POLLING_INTERVAL = 2000;
+	private static final long MAX_POLLING_INTERVAL = 10000;
+	private static final long LONG_POLL_MILLIS = 10000;
 	private static final String DEFAULT_TIMEOUT_MESSAGE = "installation timed out";
 
 	private long pollingInterval = MIN_POLLING_INTERVAL;
@@ -57,6 +63,8 @@ public class RestLifecycleEventsLatch {
 	private String url;
 	private Map<String, Object> lifecycleEventLogs = null;
 	private long remoteTaskLeaseExpiration;
+	private boolean longPollingSupported = true;
+	private ConditionLatch.TimingReport timingReport;
 
 	/**
 	 * Constructor.
@@ -77,46 +85,81 @@ public class RestLifecycleEventsLatch {
 	 */
 	public void waitForLifecycleEvents(final int timeout, final TimeUnit timeUnit) 
 			throws InterruptedException, TimeoutException, CLIException {
-		createConditionLatch(timeout, TimeUnit.MINUTES).waitFor(new Predicate() {
-
-			@SuppressWarnings("unchecked")
-			@Override
-			public boolean isDone() throws CLIException, InterruptedException {
-				url = "/service/lifecycleEventContainerID/" + pollingID
-						+ "/cursor/" + cursor;
-				try {
-					lifecycleEventLogs = (Map<String, Object>) client.get(url);
-				} catch (final ErrorStatusException e) {
-					if (e.getCause() instanceof IOException) {
-						displayer.printEvent("Communication Error accessing " + url); 
-						return false;
-					} 
-					throw new CLIException("Operation failed. Reason: " + e.getMessage(), e);
-				}
+		final ConditionLatch conditionLatch = createConditionLatch(timeout, TimeUnit.MINUTES);
+		try {
+			conditionLatch.waitFor(new ConditionLatch.ProgressPredicate() {
 
-				List<String> events = (List<String>) lifecycleEventLogs.get(CloudifyConstants.LIFECYCLE_LOGS);
-				cursor = (Integer) lifecycleEventLogs.get(CloudifyConstants.CURSOR_POS);
-				isDone = (Boolean) lifecycleEventLogs.get(CloudifyConstants.IS_TASK_DONE);
-				remoteTaskLeaseExpiration = Long.valueOf((String) lifecycleEventLogs.
-						get(CloudifyConstants.SERVER_POLLING_TASK_EXPIRATION_MILLI)) + System.currentTimeMillis();
-				
-				if (System.currentTimeMillis() > remoteTaskLeaseExpiration) {
-					throw new CLIException("Events polling task has expired on remote server side");
-				}
+				private boolean progressed;
 
-				if (events == null) {
-					displayer.printNoChange();
-				} else {
-					displayer.printEvents(events);
+				@Override
+				public boolean hasProgressed() {
+					return progressed;
 				}
 
-				if (isDone) {
-					displayer.eraseCurrentLine();
-					return true;
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean isDone() throws CLIException, InterruptedException {
+					progressed = false;
+					url = "/service/lifecycleEventContainerID/" + pollingID
+							+ "/cursor/" + cursor;
+					if (longPollingSupported) {
+						url += "?waitMillis=" + LONG_POLL_MILLIS;
+					}
+					final long requestStart = System.currentTimeMillis();
+					try {
+						lifecycleEventLogs = (Map<String, Object>) client.get(url);
+					} catch (final ErrorStatusException e) {
+						if (e.getCause() instanceof IOException) {
+							displayer.printEvent("Communication Error accessing " + url); 
+							return false;
+						} 
+						throw new CLIException("Operation failed. Reason: " + e.getMessage(), e);
+					}
+					final long requestMillis = System.currentTimeMillis() - requestStart;
+
+					List<String> events = (List<String>) lifecycleEventLogs.get(CloudifyConstants.LIFECYCLE_LOGS);
+					cursor = (Integer) lifecycleEventLogs.get(CloudifyConstants.CURSOR_POS);
+					isDone = (Boolean) lifecycleEventLogs.get(CloudifyConstants.IS_TASK_DONE);
+					remoteTaskLeaseExpiration = Long.valueOf((String) lifecycleEventLogs.
+							get(CloudifyConstants.SERVER_POLLING_TASK_EXPIRATION_MILLI)) + System.currentTimeMillis();
+					
+					if (System.currentTimeMillis() > remoteTaskLeaseExpiration) {
+						throw new CLIException("Events polling task has expired on remote server side");
+					}
+
+					if (events == null) {
+						displayer.printNoChange();
+					} else {
+						displayer.printEvents(events);
+						progressed = true;
+					}
+
+					if (isDone) {
+						displayer.eraseCurrentLine();
+						return true;
+					}
+
+					if (longPollingSupported) {
+						if (progressed || requestMillis >= LONG_POLL_MILLIS / 2) {
+							// the rest paced this request, send the next one right away.
+							conditionLatch.signal();
+						} else {
+							// an older rest ignores waitMillis and responds immediately.
+							logger.fine("Long polling is not supported by the rest, polling every "
+									+ MIN_POLLING_INTERVAL + "-" + MAX_POLLING_INTERVAL + " milliseconds");
+							longPollingSupported = false;
+						}
+					}
+					return false;
 				}
-				return false;
+			});
+		} finally {
+			timingReport = conditionLatch.getTimingReport();
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Lifecycle events " + (longPollingSupported ? "long polling" : "polling") 
+						+ " timing: " + timingReport);
 			}
-		});
+		}
 	}
 
 	/**
@@ -149,6 +192,7 @@ public class RestLifecycleEventsLatch {
 	private ConditionLatch createConditionLatch(final long timeout, final TimeUnit timeunit) {
 		return new ConditionLatch().timeout(timeout, timeunit)
 				.pollingInterval(this.pollingInterval, TimeUnit.MILLISECONDS)
+				.adaptiveBackoff(Math.max(this.pollingInterval, MAX_POLLING_INTERVAL), TimeUnit.MILLISECONDS)
 				.timeoutErrorMessage(this.timeoutMessage);
 	}
 
@@ -171,6 +215,16 @@ public class RestLifecycleEventsLatch {
 		}
 	}
 
+	/**
+	 * Returns the timing of the last wait for lifecycle events, e.g. how long it took and how late the end of the
+	 * task was noticed.
+	 * 
+	 * @return the timing report, null if the latch did not wait yet.
+	 */
+	public ConditionLatch.TimingReport getTimingReport() {
+		return timingReport;
+	}
+
 	public void setPollingId(final String pollingID) {
 		this.pollingID = pollingID;
 	}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+* Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+******************************************************************************/
+package org.cloudifysource.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.cloudifysource.shell.exceptions.CLIException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConditionLatch}.
+ *
+ * @since 2.7.1
+ */
+public class ConditionLatchTest {
+
+	@Test
+	public void testSignalWakesUpBeforeInterval() throws Exception {
+		final ConditionLatch latch = new ConditionLatch().timeout(30, TimeUnit.SECONDS)
+				.pollingInterval(20, TimeUnit.SECONDS);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final Thread pusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				done.set(true);
+				latch.signal();
+			}
+		});
+		pusher.start();
+
+		final long start = System.currentTimeMillis();
+		latch.waitFor(new ConditionLatch.Predicate() {
+			@Override
+			public boolean isDone() {
+				return done.get();
+			}
+		});
+		Assert.assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(10));
+		Assert.assertEquals(2, latch.getTimingReport().getChecks());
+		Assert.assertEquals(1, latch.getTimingReport().getSignals());
+	}
+
+	@Test
+	public void testAdaptiveBackoffResetsOnProgress() throws Exception {
+		final List<Long> checkTimes = new ArrayList<Long>();
+		final ConditionLatch latch = new ConditionLatch().timeout(30, TimeUnit.SECONDS)
+				.pollingInterval(20, TimeUnit.MILLISECONDS)
+				.adaptiveBackoff(160, TimeUnit.MILLISECONDS);
+		latch.waitFor(new ConditionLatch.ProgressPredicate() {
+			@Override
+			public boolean isDone() {
+				checkTimes.add(System.currentTimeMillis());
+				return checkTimes.size() == 7;
+			}
+
+			@Override
+			public boolean hasProgressed() {
+				// progress on the 5th check, intervals: 20, 40, 80, 160, 20, 40
+				return checkTimes.size() == 5;
+			}
+		});
+		final long[] intervals = new long[checkTimes.size() - 1];
+		for (int i = 0; i < intervals.length; i++) {
+			intervals[i] = checkTimes.get(i + 1) - checkTimes.get(i);
+		}
+		Assert.assertTrue(intervals[3] > intervals[0]);
+		Assert.assertTrue(intervals[3] >= 150);
+		Assert.assertTrue(intervals[4] < intervals[3]);
+		Assert.assertEquals(7, latch.getTimingReport().getChecks());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final ConditionLatch latch = new ConditionLatch().timeout(100, TimeUnit.MILLISECONDS)
+				.pollingInterval(10, TimeUnit.MILLISECONDS)
+				.adaptiveBackoff(1, TimeUnit.SECONDS)
+				.timeoutErrorMessage("timed out");
+		try {
+			latch.waitFor(new ConditionLatch.Predicate() {
+				@Override
+				public boolean isDone() throws CLIException {
+					return false;
+				}
+			});
+			Assert.fail("Expected a timeout");
+		} catch (final TimeoutException e) {
+			Assert.assertEquals("timed out", e.getMessage());
+		}
+		Assert.assertTrue(latch.getTimingReport().getTotalMillis() >= 100);
+	}
+}
@@ -26,6 +26,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 @CloudifyDSLEntity(name = "agent", clazz = AgentComponent.class, allowInternalNode = true,
 allowRootNode = false, parent = "components")
 public class AgentComponent extends GridComponent {
+
+	private static final long serialVersionUID = 1L;
+
 	private Integer port;
 	
 	public AgentComponent() {
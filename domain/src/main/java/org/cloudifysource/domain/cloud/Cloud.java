@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -28,7 +29,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  * 
  */
 @CloudifyDSLEntity(name = "cloud", clazz = Cloud.class, allowInternalNode = false, allowRootNode = true)
-public class Cloud {
+public class Cloud implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private String name;
 	private CloudProvider provider = new CloudProvider();
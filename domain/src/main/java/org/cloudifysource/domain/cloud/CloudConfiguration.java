@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud;
 
+import java.io.Serializable;
+
 import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 /***********
@@ -23,7 +25,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "configuration", clazz = CloudConfiguration.class, allowInternalNode = true,
 		allowRootNode = false, parent = "cloud")
-public class CloudConfiguration {
+public class CloudConfiguration implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
     //admin object loading time (in seconds), defaults to 60 seconds.
 	private short adminLoadingTimeInSeconds = 60;
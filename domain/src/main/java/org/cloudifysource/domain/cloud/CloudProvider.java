@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
@@ -30,7 +31,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "provider", clazz = CloudProvider.class, allowInternalNode = true, allowRootNode = false,
 		parent = "cloud")
-public class CloudProvider {
+public class CloudProvider implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private String provider;
 
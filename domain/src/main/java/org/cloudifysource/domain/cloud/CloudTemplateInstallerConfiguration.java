@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud;
 
+import java.io.Serializable;
+
 import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 /********
@@ -24,7 +26,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "installer", clazz = CloudTemplateInstallerConfiguration.class,
 		allowInternalNode = true, allowRootNode = true, parent = "computeTemplate")
-public class CloudTemplateInstallerConfiguration {
+public class CloudTemplateInstallerConfiguration implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private static final int DEFAULT_ROUTE_RESOLUTION_TIMEOUT = 2 * 60 * 1000; // 2 minutes
 
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud;
 
+import java.io.Serializable;
+
 import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 /********************
@@ -26,7 +28,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "user", clazz = CloudUser.class, allowInternalNode = true, allowRootNode = false,
 		parent = "cloud")
-public class CloudUser {
+public class CloudUser implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private String user;
 	private String apiKey;
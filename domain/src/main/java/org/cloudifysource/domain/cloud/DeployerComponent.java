@@ -26,6 +26,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 @CloudifyDSLEntity(name = "deployer", clazz = DeployerComponent.class, allowInternalNode = true,
 allowRootNode = false, parent = "components")
 public class DeployerComponent extends GridComponent {
+
+	private static final long serialVersionUID = 1L;
+
 	
 	private Integer websterPort;
 	private Integer port;
@@ -26,6 +26,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 @CloudifyDSLEntity(name = "discovery", clazz = DiscoveryComponent.class, allowInternalNode = true,
 allowRootNode = false, parent = "components")
 public class DiscoveryComponent extends GridComponent {
+
+	private static final long serialVersionUID = 1L;
+
 	
 	private Integer discoveryPort;
 	private Integer port;
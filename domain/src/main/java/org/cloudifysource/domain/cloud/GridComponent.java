@@ -1,5 +1,7 @@
 package org.cloudifysource.domain.cloud;
 
+import java.io.Serializable;
+
 
 /******
  * Abstract grid component configuration.
@@ -7,7 +9,10 @@ package org.cloudifysource.domain.cloud;
  * @author adaml
 * @since 2.5.0
  */
-public abstract class GridComponent {
+public abstract class GridComponent implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 	private String minMemory;
 	private String maxMemory;
 	
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud;
 
+import java.io.Serializable;
+
 import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 /******
@@ -25,7 +27,10 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "components", clazz = GridComponents.class, allowInternalNode = true,
 allowRootNode = false, parent = "configuration")
-public class GridComponents {
+public class GridComponents implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 	
 	private OrchestratorComponent orchestrator = new OrchestratorComponent();
 	
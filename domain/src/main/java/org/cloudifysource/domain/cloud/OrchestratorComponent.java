@@ -27,6 +27,8 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 allowRootNode = false, parent = "components")
 public class OrchestratorComponent extends GridComponent {
 
+	private static final long serialVersionUID = 1L;
+
 	private Integer port;
     private Integer startMachineTimeoutInSeconds;
     private Integer stopMachineTimeoutInSeconds;
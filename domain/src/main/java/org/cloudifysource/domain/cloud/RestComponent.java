@@ -26,6 +26,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 @CloudifyDSLEntity(name = "rest", clazz = RestComponent.class, allowInternalNode = true,
 	allowRootNode = false, parent = "components")
 public class RestComponent  extends GridComponent {
+
+	private static final long serialVersionUID = 1L;
+
 	
 	private Integer port;
 	private Integer serviceDiscoveryTimeoutInSeconds;
@@ -27,6 +27,8 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 allowRootNode = false, parent = "components")
 public class UsmComponent extends GridComponent {
 
+	private static final long serialVersionUID = 1L;
+
 	public static final int ATTRIBUTES_STORE_DISCOVERY_TIMEOUT_IN_SECONDS = 10;
 	
 	private String portRange;
@@ -27,6 +27,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 @CloudifyDSLEntity(name = "webui", clazz = WebuiComponent.class, allowInternalNode = true,
 allowRootNode = false, parent = "components")
 public class WebuiComponent extends GridComponent {
+
+	private static final long serialVersionUID = 1L;
+
 	private Integer port;
 
 	public WebuiComponent() {
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud.compute;
 
+import java.io.Serializable;
+
 import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 import java.util.LinkedHashMap;
@@ -29,7 +31,10 @@ import java.util.Map;
  */
 @CloudifyDSLEntity(name = "cloudCompute", clazz = CloudCompute.class, allowInternalNode = true, allowRootNode = true,
 	parent = "cloud")
-public class CloudCompute {
+public class CloudCompute implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 	
 	private Map<String, ComputeTemplate> templates = new LinkedHashMap<String, ComputeTemplate>();
 
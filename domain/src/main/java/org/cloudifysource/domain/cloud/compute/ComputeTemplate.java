@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud.compute;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -33,7 +34,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "computeTemplate", clazz = ComputeTemplate.class,
 		allowInternalNode = true, allowRootNode = true, parent = "cloudCompute")
-public class ComputeTemplate {
+public class ComputeTemplate implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private int numberOfCores = 1;
 	private int machineMemoryMB;
@@ -18,6 +18,7 @@
  */
 package org.cloudifysource.domain.cloud.compute;
 
+import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -33,7 +34,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "computeNetwork", clazz = ComputeTemplateNetwork.class,
 		allowInternalNode = true, allowRootNode = true, parent = "computeTemplate")
-public class ComputeTemplateNetwork {
+public class ComputeTemplateNetwork implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private List<String> networks = new LinkedList<String>();
 	private Map<String, String> custom = new LinkedHashMap<String, String>();
@@ -13,6 +13,7 @@
 
 package org.cloudifysource.domain.cloud.network;
 
+import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -28,7 +29,9 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 @CloudifyDSLEntity(name = "cloudNetwork", clazz = CloudNetwork.class, allowInternalNode = true, allowRootNode = true,
 		parent = "cloud")
-public class CloudNetwork {
+public class CloudNetwork implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private ManagementNetwork management = new ManagementNetwork();
 	private Map<String, NetworkConfiguration> templates = new LinkedHashMap<String, NetworkConfiguration>();
@@ -13,6 +13,8 @@
 
 package org.cloudifysource.domain.cloud.network;
 
+import java.io.Serializable;
+
 import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 /*******
@@ -24,7 +26,10 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
 
 @CloudifyDSLEntity(name = "management", clazz = ManagementNetwork.class, allowInternalNode = true, allowRootNode = true,
 		parent = "Network")
-public class ManagementNetwork {
+public class ManagementNetwork implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 		private NetworkConfiguration networkConfiguration = new NetworkConfiguration();
 
 		public NetworkConfiguration getNetworkConfiguration() {
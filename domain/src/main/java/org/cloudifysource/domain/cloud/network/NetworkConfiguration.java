@@ -13,6 +13,7 @@
 
 package org.cloudifysource.domain.cloud.network;
 
+import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,7 +29,10 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "networkConfiguration", clazz = NetworkConfiguration.class,
 		allowInternalNode = true, allowRootNode = true)
-public class NetworkConfiguration {
+public class NetworkConfiguration implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 	private String name = null;
 
 	private List<Subnet> subnets = new LinkedList<Subnet>();
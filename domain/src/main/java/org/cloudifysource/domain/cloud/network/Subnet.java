@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud.network;
 
+import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -25,7 +26,10 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "subnet", clazz = Subnet.class,
 		allowInternalNode = true, allowRootNode = true, parent = "networkConfiguration")
-public class Subnet {
+public class Subnet implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 	private String range = null;
 	private Map<String, String> options = new LinkedHashMap<String, String>();
 	private String name;
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.cloudifysource.domain.cloud.storage;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,7 +28,10 @@ import org.cloudifysource.domain.internal.CloudifyDSLEntity;
  */
 @CloudifyDSLEntity(name = "cloudStorage", clazz = CloudStorage.class, allowInternalNode = true, allowRootNode = true,
 	parent = "cloud")
-public class CloudStorage {
+public class CloudStorage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 	
 	private String className;
 	
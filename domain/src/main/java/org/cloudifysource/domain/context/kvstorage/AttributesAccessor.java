@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.domain.context.kvstorage;
 
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * 
@@ -82,4 +84,29 @@ public interface AttributesAccessor {
 	 */
 	boolean containsKey(final String key);
 	
+	/**************
+	 * Returns the attributes whose keys start with the specified prefix, ordered by key.
+	 * @param keyPrefix the key prefix, or null for all the attributes.
+	 * @return key to value of the matching attributes.
+	 */
+	Map<String, Object> getByPrefix(final String keyPrefix);
+	
+	/**************
+	 * Returns the attributes whose keys are in the specified range, ordered by key.
+	 * @param fromKey the lowest key, inclusive, or null for no lower bound.
+	 * @param toKey the highest key, exclusive, or null for no upper bound.
+	 * @return key to value of the matching attributes.
+	 */
+	Map<String, Object> getRange(final String fromKey, final String toKey);
+	
+	/**************
+	 * Iterates over the attributes whose keys start with the specified prefix, ordered by key, reading the values
+	 * one page at a time. Each page starts after the last key read, so attributes removed before their page is read
+	 * are skipped and attributes added after the last key read are included.
+	 * @param keyPrefix the key prefix, or null for all the attributes.
+	 * @param pageSize the number of values to read at a time.
+	 * @return an iterator over the matching attributes.
+	 */
+	Iterator<Map.Entry<String, Object>> pagedIterator(final String keyPrefix, final int pageSize);
+	
 }
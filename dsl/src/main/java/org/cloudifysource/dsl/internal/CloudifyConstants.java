@@ -252,6 +252,9 @@ public final class CloudifyConstants {
 	public static final String CUSTOM_PROPERTY_START_MACHINE_THROTTLING_ENABLED = "org.cloudifysource.startMachineThrottlingEnabled";
 	public static final String CUSTOM_PROPERTY_START_MACHINE_THROTTLING_TIME_FRAME_SEC = "org.cloudifysource.startMachineThrottlingTimeFrameSec";
 	public static final String CUSTOM_PROPERTY_START_MACHINE_THROTTLING_NUM_REQUESTS = "org.cloudifysource.startMachineThrottlingNumRequests";
+	public static final String CUSTOM_PROPERTY_WARM_POOL_SIZE = "org.cloudifysource.warmPoolSize";
+	public static final String CUSTOM_PROPERTY_WARM_POOL_MAX_CONCURRENT_STARTS = "org.cloudifysource.warmPoolMaxConcurrentStarts";
+	public static final String CUSTOM_PROPERTY_WARM_POOL_IDLE_TIMEOUT_SEC = "org.cloudifysource.warmPoolIdleTimeoutSec";
 
 
     /*******************
@@ -508,10 +511,20 @@ public final class CloudifyConstants {
 	 */
 	public static final String MIME_TYPE_APPLICATION_JSON = "application/json";
 	
+	/*****
+	 * Useful zip mime type constant.
+	 */
+	public static final String MIME_TYPE_APPLICATION_ZIP = "application/zip";
+	
 	/**
 	 * dump file
 	 */
 	public static final long DEFAULT_DUMP_FILE_SIZE_LIMIT = 10 * 1024 * 1024;
+	
+	/**
+	 * Default maximum number of machine dumps generated at the same time.
+	 */
+	public static final int DEFAULT_DUMP_CONCURRENCY = 10;
 
 	
 	/******
@@ -521,6 +534,40 @@ public final class CloudifyConstants {
             "org.cloudifysource.cli.rest.api-version";
 	public static final String SYSTEM_PROPERTY_CLI_OLD_REST_API_VERSION =
             "org.cloudifysource.cli.rest.old-api-version";
+
+	/******
+	 * USM metrics history kept by the rest gateway.
+	 */
+	public static final String SYSTEM_PROPERTY_REST_METRICS_HISTORY_SAMPLING_INTERVAL_SECONDS =
+			"org.cloudifysource.rest.metrics-history.sampling-interval-seconds";
+	public static final String SYSTEM_PROPERTY_REST_METRICS_HISTORY_FILE =
+			"org.cloudifysource.rest.metrics-history.file";
+	public static final int DEFAULT_METRICS_HISTORY_SAMPLING_INTERVAL_SECONDS = 5;
+	public static final String SYSTEM_PROPERTY_REST_METRICS_HISTORY_PERSIST_INTERVAL_SECONDS =
+			"org.cloudifysource.rest.metrics-history.persist-interval-seconds";
+	public static final int DEFAULT_METRICS_HISTORY_PERSIST_INTERVAL_SECONDS = 300;
+
+	/******
+	 * Time each REST instance is given to apply a templates change propagated by the rest gateway.
+	 */
+	public static final String SYSTEM_PROPERTY_REST_TEMPLATES_PROPAGATION_TIMEOUT_SECONDS =
+			"org.cloudifysource.rest.templates.propagation-timeout-seconds";
+	public static final long DEFAULT_TEMPLATES_PROPAGATION_TIMEOUT_SECONDS = 120;
+
+	/******
+	 * Time a service description is served from the rest gateway's description cache before it is recomputed,
+	 * even if no change to the service was reported. 0 disables the cache.
+	 */
+	public static final String SYSTEM_PROPERTY_REST_DESCRIPTIONS_CACHE_MAX_AGE_MILLIS =
+			"org.cloudifysource.rest.descriptions-cache.max-age-millis";
+	public static final long DEFAULT_DESCRIPTIONS_CACHE_MAX_AGE_MILLIS = 5000;
+
+	/******
+	 * Deadline for custom command invocations through the rest gateway, used when the request does not set one.
+	 */
+	public static final String SYSTEM_PROPERTY_REST_INVOCATION_TIMEOUT_MINUTES =
+			"org.cloudifysource.rest.invocation.timeout-minutes";
+	public static final int DEFAULT_INVOCATION_TIMEOUT_MINUTES = 15;
 	
 	// CHECKSTYLE:ON
 
@@ -68,7 +68,13 @@ public enum CloudifyMessageKeys {
 
     SHUTDOWN_MANAGERS_INITIATED("shutdown_managers_initiated"),
     
-	SHUTDOWN_MANAGERS_SUCCESS("shutdown_managers_completed");
+	SHUTDOWN_MANAGERS_SUCCESS("shutdown_managers_completed"),
+
+	INVALID_METRICS_HISTORY_QUERY("invalid_metrics_history_query"),
+
+	INVALID_DUMP_CONCURRENCY("invalid_dump_concurrency"),
+
+	INVALID_DUMP_FILE_SIZE_LIMIT("invalid_dump_file_size_limit");
 
     private final String name;
 
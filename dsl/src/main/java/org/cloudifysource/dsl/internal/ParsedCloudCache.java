@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudifysource.domain.cloud.Cloud;
+
+/**
+ * Caches parsed cloud configurations, so the cloud DSL is run once per configuration rather than by every component
+ * that reads it.<br />
+ * A configuration is identified by a digest of the files of the cloud configuration folder and the overrides it was
+ * read with, so editing any of them is picked up on the next read. Each entry keeps the parsed cloud in a compressed
+ * serialized form, which is also written to the management space so other processes can load it without running the
+ * DSL. Every read returns a new copy, since callers modify the cloud they get.
+ *
+ * @since 2.7.1
+ */
+public final class ParsedCloudCache {
+
+	private static final Logger logger = Logger.getLogger(ParsedCloudCache.class.getName());
+
+	private static final int MAX_ENTRIES = 16;
+	private static final int BUFFER_SIZE = 8192;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	// digest -> parsed cloud, least recently used first. Guarded by itself.
+	private static final Map<String, ParsedCloud> CACHE = new LinkedHashMap<String, ParsedCloud>(MAX_ENTRIES, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, ParsedCloud> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private ParsedCloudCache() {
+		// private constructor to prevent initialization.
+	}
+
+	/**
+	 * Reads the cloud configuration in the given folder, running the DSL only if this configuration was not read
+	 * before.
+	 *
+	 * @param cloudConfigDirectory
+	 *            The cloud configuration folder.
+	 * @param dslFile
+	 *            The cloud DSL file, or null to use the one found in the folder.
+	 * @param overridesScript
+	 *            The overrides properties (not a file path), may be null.
+	 * @return The parsed cloud.
+	 * @throws DSLException
+	 *             If the cloud DSL could not be read.
+	 */
+	public static ParsedCloud read(final File cloudConfigDirectory, final File dslFile, final String overridesScript)
+			throws DSLException {
+		final String digest = digest(cloudConfigDirectory, dslFile, overridesScript);
+		final ParsedCloud cached = get(digest);
+		if (cached != null) {
+			logger.fine("Using the cached cloud configuration of " + cloudConfigDirectory);
+			return cached;
+		}
+
+		final DSLReader reader = new DSLReader();
+		reader.setCreateServiceContext(false);
+		reader.setWorkDir(cloudConfigDirectory);
+		reader.setOverridesScript(overridesScript);
+		if (dslFile == null) {
+			reader.setDslFileNameSuffix(DSLUtils.CLOUD_DSL_FILE_NAME_SUFFIX);
+		} else {
+			try {
+				reader.setDslContents(FileUtils.readFileToString(dslFile));
+			} catch (final IOException e) {
+				throw new DSLException("Failed to read cloud file " + dslFile.getAbsolutePath() + ": "
+						+ e.getMessage(), e);
+			}
+			reader.setDslFile(dslFile);
+		}
+		final Cloud cloud = reader.readDslEntity(Cloud.class);
+
+		final byte[] serializedCloud;
+		try {
+			serializedCloud = serialize(cloud);
+		} catch (final IOException e) {
+			// e.g. a custom property holding an object that can not be serialized.
+			logger.log(Level.FINE, "Cloud configuration of " + cloudConfigDirectory + " can not be cached: "
+					+ e.getMessage(), e);
+			return new ParsedCloud(digest, reader.getDslFile(), cloud);
+		}
+		final ParsedCloud parsedCloud = new ParsedCloud(digest, reader.getDslFile(), serializedCloud);
+		put(parsedCloud);
+		return parsedCloud;
+	}
+
+	/**
+	 * Adds a cloud configuration parsed by another process, if it matches the configuration found in the given folder.
+	 *
+	 * @param cloudConfigDirectory
+	 *            The cloud configuration folder.
+	 * @param dslFile
+	 *            The cloud DSL file, or null if it was found in the folder.
+	 * @param overridesScript
+	 *            The overrides properties the configuration was read with, may be null.
+	 * @param digest
+	 *            The digest of the parsed configuration, as returned by {@link ParsedCloud#getDigest()}.
+	 * @param serializedCloud
+	 *            The serialized cloud, as returned by {@link ParsedCloud#getSerializedCloud()}.
+	 * @return true if the configuration was added, false if the folder or overrides do not match it.
+	 */
+	public static boolean add(final File cloudConfigDirectory, final File dslFile, final String overridesScript,
+			final String digest, final byte[] serializedCloud) {
+		if (digest == null || serializedCloud == null) {
+			return false;
+		}
+		try {
+			if (!digest.equals(digest(cloudConfigDirectory, dslFile, overridesScript))) {
+				logger.fine("Cloud configuration of " + cloudConfigDirectory + " does not match digest " + digest);
+				return false;
+			}
+			// make sure the serialized form is usable here before relying on it.
+			deserialize(serializedCloud);
+		} catch (final DSLException e) {
+			logger.log(Level.FINE, "Failed to read cloud configuration folder " + cloudConfigDirectory, e);
+			return false;
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "Failed to load the serialized cloud configuration: " + e.getMessage(), e);
+			return false;
+		}
+		put(new ParsedCloud(digest, dslFile, serializedCloud.clone()));
+		return true;
+	}
+
+	/**
+	 * Removes all the cached configurations.
+	 */
+	public static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	private static ParsedCloud get(final String digest) {
+		synchronized (CACHE) {
+			return CACHE.get(digest);
+		}
+	}
+
+	private static void put(final ParsedCloud parsedCloud) {
+		synchronized (CACHE) {
+			CACHE.put(parsedCloud.getDigest(), parsedCloud);
+		}
+	}
+
+	private static String digest(final File cloudConfigDirectory, final File dslFile, final String overridesScript)
+			throws DSLException {
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not supported", e);
+		}
+
+		final File[] files = cloudConfigDirectory.listFiles();
+		if (files == null) {
+			throw new DSLException("Cloud configuration folder " + cloudConfigDirectory.getAbsolutePath()
+					+ " could not be read");
+		}
+		update(messageDigest, cloudConfigDirectory.getAbsolutePath());
+		update(messageDigest, dslFile == null ? "" : dslFile.getAbsolutePath());
+		update(messageDigest, overridesScript == null ? "" : overridesScript);
+
+		// the DSL only reads the files at the top of the folder, such as the properties and overrides files.
+		Arrays.sort(files);
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			for (final File file : files) {
+				if (!file.isFile()) {
+					continue;
+				}
+				update(messageDigest, file.getName());
+				final InputStream in = new FileInputStream(file);
+				try {
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						messageDigest.update(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} catch (final IOException e) {
+			throw new DSLException("Failed to read cloud configuration folder "
+					+ cloudConfigDirectory.getAbsolutePath() + ": " + e.getMessage(), e);
+		}
+
+		final byte[] bytes = messageDigest.digest();
+		final char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	private static void update(final MessageDigest messageDigest, final String value) {
+		try {
+			messageDigest.update(value.getBytes("UTF-8"));
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		// separates the values, so they can not be shifted between fields.
+		messageDigest.update((byte) 0);
+	}
+
+	private static byte[] serialize(final Cloud cloud) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes));
+		try {
+			out.writeObject(cloud);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Cloud deserialize(final byte[] serializedCloud) throws IOException {
+		final ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(
+				serializedCloud))) {
+			@Override
+			protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException,
+					ClassNotFoundException {
+				// the stream is read by framework code, whose class loader may not see the domain classes.
+				try {
+					return Class.forName(desc.getName(), false, Cloud.class.getClassLoader());
+				} catch (final ClassNotFoundException e) {
+					return super.resolveClass(desc);
+				}
+			}
+		};
+		try {
+			return (Cloud) in.readObject();
+		} catch (final ClassNotFoundException e) {
+			throw new IOException("Failed to load serialized cloud configuration: " + e.getMessage(), e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * A parsed cloud configuration.
+	 */
+	public static final class ParsedCloud {
+
+		private final String digest;
+		private final File dslFile;
+		private final byte[] serializedCloud;
+		// set only for configurations that can not be serialized, and so are not cached.
+		private final Cloud cloud;
+
+		private ParsedCloud(final String digest, final File dslFile, final byte[] serializedCloud) {
+			this.digest = digest;
+			this.dslFile = dslFile;
+			this.serializedCloud = serializedCloud;
+			this.cloud = null;
+		}
+
+		private ParsedCloud(final String digest, final File dslFile, final Cloud cloud) {
+			this.digest = digest;
+			this.dslFile = dslFile;
+			this.serializedCloud = null;
+			this.cloud = cloud;
+		}
+
+		/**
+		 * @return The digest of the configuration folder and overrides this cloud was read from.
+		 */
+		public String getDigest() {
+			return digest;
+		}
+
+		/**
+		 * @return The cloud DSL file, may be null for a configuration parsed by another process.
+		 */
+		public File getDslFile() {
+			return dslFile;
+		}
+
+		/**
+		 * @return The compressed serialized cloud, or null if the cloud can not be serialized.
+		 */
+		public byte[] getSerializedCloud() {
+			return serializedCloud == null ? null : serializedCloud.clone();
+		}
+
+		/**
+		 * @return A new copy of the cloud.
+		 * @throws DSLException
+		 *             If the serialized cloud could not be loaded.
+		 */
+		public Cloud getCloud() throws DSLException {
+			if (serializedCloud == null) {
+				return cloud;
+			}
+			try {
+				return deserialize(serializedCloud);
+			} catch (final IOException e) {
+				throw new DSLException("Failed to load cloud configuration: " + e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -434,21 +434,6 @@ public final class ServiceReader {
 		return new File(path);
 	}
 
-	private static Cloud readCloud(final String dslContents, final File dslFile)
-			throws DSLException {
-
-		final DSLReader dslReader = new DSLReader();
-
-		dslReader.setCreateServiceContext(false);
-		dslReader.setDslContents(dslContents);
-		dslReader.setDslFile(dslFile);
-		if (dslFile != null) {
-			dslReader.setWorkDir(dslFile.getParentFile());
-		}
-
-		return dslReader.readDslEntity(Cloud.class);
-	}
-
 	/**
 	 *
 	 * @param dslFile
@@ -460,14 +445,29 @@ public final class ServiceReader {
 	public static Cloud readCloud(final File dslFile)
 			throws IOException,
 			DSLException {
+		return readParsedCloud(dslFile).getCloud();
+	}
+
+	/**
+	 * Reads a cloud file, running the DSL only if the cloud configuration was not read before by this process.
+	 *
+	 * @param dslFile
+	 *            The cloud file.
+	 * @return The parsed cloud, and its serialized form.
+	 * @throws IOException .
+	 * @throws DSLException .
+	 */
+	public static ParsedCloudCache.ParsedCloud readParsedCloud(final File dslFile)
+			throws IOException,
+			DSLException {
 
 		if (!dslFile.exists()) {
 			throw new FileNotFoundException(dslFile.getAbsolutePath());
 		}
 
-		final String dslContents = FileUtils.readFileToString(dslFile);
-		final Cloud cloud = readCloud(dslContents, dslFile);
-		return cloud; 
+		final File cloudConfigDirectory = dslFile.getParentFile() == null ? dslFile.getAbsoluteFile().getParentFile()
+				: dslFile.getParentFile();
+		return ParsedCloudCache.read(cloudConfigDirectory, dslFile, null);
 	}
 
 	/**
@@ -505,12 +505,6 @@ public final class ServiceReader {
 	 */
 	public static Cloud readCloudFromDirectory(final String cloudConfigDirectory, final String overridesScript)
 			throws DSLException {
-		final DSLReader reader = new DSLReader();
-		reader.setDslFileNameSuffix(DSLUtils.CLOUD_DSL_FILE_NAME_SUFFIX);
-		reader.setWorkDir(new File(cloudConfigDirectory));
-		reader.setCreateServiceContext(false);
-		reader.setOverridesScript(overridesScript);
-		final Cloud cloud = reader.readDslEntity(Cloud.class);
-		return cloud;
+		return ParsedCloudCache.read(new File(cloudConfigDirectory), null, overridesScript).getCloud();
 	}
 }
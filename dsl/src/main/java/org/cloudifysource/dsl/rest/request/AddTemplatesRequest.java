@@ -22,6 +22,7 @@ package org.cloudifysource.dsl.rest.request;
  */
 public class AddTemplatesRequest {
 	private String uploadKey;
+	private int quorum;
 
 	public String getUploadKey() {
 		return uploadKey;
@@ -30,5 +31,17 @@ public class AddTemplatesRequest {
 	public void setUploadKey(final String uploadKey) {
 		this.uploadKey = uploadKey;
 	}
+
+	/**
+	 * @return The number of REST instances that must successfully add the templates before the request returns.
+	 *         The remaining instances complete in the background. 0 (the default) waits for all instances.
+	 */
+	public int getQuorum() {
+		return quorum;
+	}
+
+	public void setQuorum(final int quorum) {
+		this.quorum = quorum;
+	}
 	 
 }
@@ -24,6 +24,9 @@ import java.util.Map;
 public class InvokeServiceCommandResponse {
 
 	private Map<String, Map<String, String>> invocationResultPerInstance = new HashMap<String, Map<String, String>>();
+	private int successCount;
+	private int failureCount;
+	private int timeoutCount;
 	
 	/**
 	 * Sets the result of the invoke command action for the specified service instance.
@@ -37,4 +40,37 @@ public class InvokeServiceCommandResponse {
 	public Map<String, Map<String, String>> getInvocationResultPerInstance() {
 		return invocationResultPerInstance;
 	}
+
+	/**
+	 * @return the number of instances that completed the invocation.
+	 */
+	public int getSuccessCount() {
+		return successCount;
+	}
+
+	public void setSuccessCount(final int successCount) {
+		this.successCount = successCount;
+	}
+
+	/**
+	 * @return the number of instances on which the invocation failed.
+	 */
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	public void setFailureCount(final int failureCount) {
+		this.failureCount = failureCount;
+	}
+
+	/**
+	 * @return the number of instances that did not complete the invocation before the deadline.
+	 */
+	public int getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	public void setTimeoutCount(final int timeoutCount) {
+		this.timeoutCount = timeoutCount;
+	}
 }
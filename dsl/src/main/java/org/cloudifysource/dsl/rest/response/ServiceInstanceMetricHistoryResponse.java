@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.dsl.rest.response;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * A POJO represent the history of a single USM metric of a service instance over a time range.
+ * 
+ * @since 2.7.1
+ *
+ */
+public class ServiceInstanceMetricHistoryResponse {
+
+	private String appName;
+	private String serviceName;
+	private int instanceId;
+	private String metricName;
+	private long from;
+	private long to;
+	private long resolutionMillis;
+	private List<Long> timestamps;
+	private List<Double> values;
+	private Double average;
+	private Double ratePerSecond;
+	private Map<String, Double> percentiles;
+
+	public String getAppName() {
+		return appName;
+	}
+
+	public void setAppName(final String appName) {
+		this.appName = appName;
+	}
+
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	public void setServiceName(final String serviceName) {
+		this.serviceName = serviceName;
+	}
+
+	public int getInstanceId() {
+		return instanceId;
+	}
+
+	public void setInstanceId(final int instanceId) {
+		this.instanceId = instanceId;
+	}
+
+	public String getMetricName() {
+		return metricName;
+	}
+
+	public void setMetricName(final String metricName) {
+		this.metricName = metricName;
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	public void setFrom(final long from) {
+		this.from = from;
+	}
+
+	public long getTo() {
+		return to;
+	}
+
+	public void setTo(final long to) {
+		this.to = to;
+	}
+
+	/**
+	 * @return the resolution of the returned samples in milliseconds, 0 for raw samples.
+	 */
+	public long getResolutionMillis() {
+		return resolutionMillis;
+	}
+
+	public void setResolutionMillis(final long resolutionMillis) {
+		this.resolutionMillis = resolutionMillis;
+	}
+
+	public List<Long> getTimestamps() {
+		return timestamps;
+	}
+
+	public void setTimestamps(final List<Long> timestamps) {
+		this.timestamps = timestamps;
+	}
+
+	public List<Double> getValues() {
+		return values;
+	}
+
+	public void setValues(final List<Double> values) {
+		this.values = values;
+	}
+
+	public Double getAverage() {
+		return average;
+	}
+
+	public void setAverage(final Double average) {
+		this.average = average;
+	}
+
+	public Double getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	public void setRatePerSecond(final Double ratePerSecond) {
+		this.ratePerSecond = ratePerSecond;
+	}
+
+	/**
+	 * @return the requested percentiles, keyed by the percentile as it was requested (e.g. "95").
+	 */
+	public Map<String, Double> getPercentiles() {
+		return percentiles;
+	}
+
+	public void setPercentiles(final Map<String, Double> percentiles) {
+		this.percentiles = percentiles;
+	}
+}
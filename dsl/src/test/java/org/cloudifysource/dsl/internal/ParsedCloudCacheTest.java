@@ -0,0 +1,85 @@
+package org.cloudifysource.dsl.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.cloudifysource.domain.cloud.Cloud;
+import org.cloudifysource.dsl.internal.ParsedCloudCache.ParsedCloud;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ParsedCloudCache} runs the cloud DSL once per configuration and hands out independent copies.
+ */
+public class ParsedCloudCacheTest {
+
+	private static final String CLOUD_FOLDER = "src/test/resources/enums";
+	private static final String CLOUD_FILE_NAME = "my-cloud.groovy";
+
+	private File cloudFolder;
+	private File cloudFile;
+
+	@Before
+	public void before() throws IOException {
+		ParsedCloudCache.clear();
+		cloudFolder = File.createTempFile("parsedCloudCache", "");
+		cloudFolder.delete();
+		FileUtils.copyDirectory(new File(CLOUD_FOLDER), cloudFolder);
+		cloudFile = new File(cloudFolder, CLOUD_FILE_NAME);
+	}
+
+	@After
+	public void after() throws IOException {
+		ParsedCloudCache.clear();
+		FileUtils.deleteDirectory(cloudFolder);
+	}
+
+	@Test
+	public void testCopiesOfCachedCloud() throws Exception {
+		final ParsedCloud first = ServiceReader.readParsedCloud(cloudFile);
+		final ParsedCloud second = ServiceReader.readParsedCloud(cloudFile);
+		Assert.assertSame(first, second);
+		Assert.assertNotNull(first.getSerializedCloud());
+
+		final Cloud cloud = ServiceReader.readCloud(cloudFile);
+		Assert.assertEquals("ec2", cloud.getName());
+		Assert.assertEquals("SMALL_LINUX", cloud.getConfiguration().getManagementMachineTemplate());
+		Assert.assertNotNull(cloud.getCloudCompute().getTemplates().get("SMALL_LINUX"));
+
+		// changes made by one reader are not seen by the others.
+		cloud.setName("changed");
+		cloud.getCloudCompute().getTemplates().clear();
+		final Cloud other = ServiceReader.readCloud(cloudFile);
+		Assert.assertEquals("ec2", other.getName());
+		Assert.assertNotNull(other.getCloudCompute().getTemplates().get("SMALL_LINUX"));
+	}
+
+	@Test
+	public void testChangedConfigurationParsedAgain() throws Exception {
+		final ParsedCloud first = ServiceReader.readParsedCloud(cloudFile);
+		FileUtils.writeStringToFile(cloudFile, FileUtils.readFileToString(cloudFile).replace("\"ec2\"", "\"ec3\""));
+		final ParsedCloud second = ServiceReader.readParsedCloud(cloudFile);
+		Assert.assertFalse(first.getDigest().equals(second.getDigest()));
+		Assert.assertEquals("ec3", second.getCloud().getName());
+	}
+
+	@Test
+	public void testAddParsedCloud() throws Exception {
+		final ParsedCloud parsedCloud = ServiceReader.readParsedCloud(cloudFile);
+		ParsedCloudCache.clear();
+
+		Assert.assertFalse(ParsedCloudCache.add(cloudFolder, cloudFile, "name=\"other\"", parsedCloud.getDigest(),
+				parsedCloud.getSerializedCloud()));
+		Assert.assertFalse(ParsedCloudCache.add(cloudFolder, cloudFile, null, null, null));
+		Assert.assertTrue(ParsedCloudCache.add(cloudFolder, cloudFile, null, parsedCloud.getDigest(),
+				parsedCloud.getSerializedCloud()));
+
+		// the added cloud is served for the cloud file.
+		final ParsedCloud added = ServiceReader.readParsedCloud(cloudFile);
+		Assert.assertEquals(parsedCloud.getDigest(), added.getDigest());
+		Assert.assertEquals("ec2", added.getCloud().getName());
+	}
+}
@@ -12,25 +12,29 @@
  ******************************************************************************/
 package org.cloudifysource.esc.byon;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
-import org.apache.commons.lang.StringUtils;
-
 import org.cloudifysource.domain.cloud.RemoteExecutionModes;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
-import org.cloudifysource.dsl.utils.IPUtils;
 import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
+import org.cloudifysource.esc.byon.ByonNodePool.NodeState;
+import org.cloudifysource.esc.byon.ByonNodePool.PooledNode;
 import org.cloudifysource.esc.driver.provisioning.CustomNode;
 import org.cloudifysource.esc.driver.provisioning.byon.CustomNodeImpl;
+import org.cloudifysource.esc.util.ReachabilityProber;
 
 
 /**
@@ -39,20 +43,23 @@ import org.cloudifysource.esc.driver.provisioning.byon.CustomNodeImpl;
  *
  *        Implements a cloud-simulator, using private machines as a pool of nodes on which the application is deployed.
  *        The list of available nodes and matching credentials are configured through the cloud Groovy file.
+ *
+ *        The nodes of each template are held by a {@link ByonNodePool}: allocating, freeing and looking up nodes does
+ *        not lock the deployer, and connections to nodes are validated outside of any lock. Nodes are checked for
+ *        reachability in parallel, and recent check results are reused so nodes known to be unreachable are skipped
+ *        without waiting for a connection.
  */
 public class ByonDeployer {
 
-	private static final String NODES_LIST_FREE = "FREE";
-	private static final String NODES_LIST_ALLOCATED = "ALLOCATED";
-	private static final String NODES_LIST_INVALID = "INVALID";
-	private static final String NODES_LIST_TERMINATED = "TERMINATED";
-	
-
 	protected static final java.util.logging.Logger logger = java.util.logging.Logger
 			.getLogger(ByonDeployer.class.getName());
 
-	private final Map<String, Map<String, List<CustomNode>>> nodesListsByTemplates =
-			new Hashtable<String, Map<String, List<CustomNode>>>();
+	private static final long CONNECTION_TIMEOUT_MILLIS = 10000;
+
+	private final ConcurrentMap<String, ByonNodePool> nodePoolsByTemplates =
+			new ConcurrentHashMap<String, ByonNodePool>();
+
+	private final ReachabilityProber reachabilityProber = new ReachabilityProber();
 
 	/**
 	 * Constructor.
@@ -73,7 +80,7 @@ public class ByonDeployer {
 	 * @throws Exception
 	 *             Indicates the node parsing failed
 	 */
-	public synchronized void addNodesList(final String templateName,
+	public void addNodesList(final String templateName,
 			final ComputeTemplate template,
 			final List<Map<String, String>> nodesList) throws CloudProvisioningException {
 		final List<CustomNode> resolvedNodes = new ArrayList<CustomNode>();
@@ -90,14 +97,14 @@ public class ByonDeployer {
 		// the infrastructure is based on machine IPs, they need to be unique.
 		// we set the resolved IP address on each node for an easy machine
 		// comparison from this point on
+		final List<CustomNode> nodesToCheck = new ArrayList<CustomNode>();
 		for (CustomNode node : parsedNodes) {
 			try {
                 node.resolve();
 				if (template.getRemoteExecution() == RemoteExecutionModes.WINRM) {
 					node.setLoginPort(RemoteExecutionModes.WINRM.getDefaultPort());
 				}
-				IPUtils.validateConnection(node.getPrivateIP(), node.getLoginPort());
-				resolvedNodes.add(node);
+				nodesToCheck.add(node);
 			} catch (final Exception ex) {
 				// this node is not reachable - add it to the invalid nodes pool
 				logger.log(Level.WARNING, "Failed to resolve node: " + node.toShortString() + ", exception: " 
@@ -105,18 +112,33 @@ public class ByonDeployer {
 				unresolvedNodes.add(node);
 			}
 		}
-		
-		final Set<String> duplicateNodes = getDuplicateIPs(getAllNodes(), parsedNodes);
-		if (duplicateNodes.size() > 0) {
-			throw new CloudProvisioningException(
-					"Failed to add nodes for template \""
-							+ templateName
-							+ "\","
-							+ " some IP addresses were already defined by a different template: "
-							+ Arrays.toString(duplicateNodes.toArray()));
+
+		// check all the nodes at once rather than waiting for each unreachable node in turn
+		for (final Map.Entry<CustomNode, Boolean> entry : checkReachability(nodesToCheck).entrySet()) {
+			final CustomNode node = entry.getKey();
+			if (entry.getValue()) {
+				resolvedNodes.add(node);
+			} else {
+				logger.warning("Failed to resolve node: " + node.toShortString() + ", failed to connect to port "
+						+ node.getLoginPort());
+				unresolvedNodes.add(node);
+			}
 		}
+		
+		// the duplicates check and the pool registration must not interleave with another template's.
+		synchronized (nodePoolsByTemplates) {
+			final Set<String> duplicateNodes = getDuplicateIPs(parsedNodes);
+			if (duplicateNodes.size() > 0) {
+				throw new CloudProvisioningException(
+						"Failed to add nodes for template \""
+								+ templateName
+								+ "\","
+								+ " some IP addresses were already defined by a different template: "
+								+ Arrays.toString(duplicateNodes.toArray()));
+			}
 
-		setInitialPoolsForTemplate(templateName, resolvedNodes, unresolvedNodes);
+			setInitialPoolsForTemplate(templateName, resolvedNodes, unresolvedNodes);
+		}
 	}
 
     /**
@@ -133,7 +155,7 @@ public class ByonDeployer {
 	 *             Indicated a new machine could not be allocated, either because the name is empty or because the nodes
 	 *             pool is exhausted
 	 */
-	public synchronized CustomNode createServer(final String templateName,
+	public CustomNode createServer(final String templateName,
 			final String serverName) throws CloudProvisioningException {
 
 		if (org.apache.commons.lang.StringUtils.isBlank(serverName)) {
@@ -141,91 +163,103 @@ public class ByonDeployer {
 					"Failed to create new cloud node, server name is missing");
 		}
 
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to create new cloud node. \"" + templateName
-							+ "\" is not a known template.");
+		final ByonNodePool pool = getNodePool(templateName,
+				"Failed to create new cloud node. \"" + templateName + "\" is not a known template.");
+
+		PooledNode pooledNode = allocateFreeNode(pool);
+		if (pooledNode != null) {
+			// the node is reserved for this call, test the connectivity to it.
+			// if we can't connect to it - move it to the invalid pool.
+			try {
+				validateConnection(pool, pooledNode);
+			} catch (final Exception e) {
+				// catch any exception - to prevent a machine leak. Add the
+				// machine to the invalids pool
+				final CustomNode node = pooledNode.getNode();
+				logger.log(
+						Level.INFO,
+						"Failed to create server on " + node.getPrivateIP()
+								+ ", connection failed on port "
+								+ node.getLoginPort(), e);
+				logger.warning("Invalidaing node: " + node + " from template: " + templateName);
+				pool.invalidate(pooledNode);
+				throw new CloudProvisioningException(e);
+			}
+		} else {
+			pooledNode = allocateInvalidNode(pool);
 		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
-		final List<CustomNode> invalidNodesPool = templateLists
-				.get(NODES_LIST_INVALID);
-
-		if (freeNodesPool.isEmpty() && invalidNodesPool.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to create a new cloud node for template \""
-							+ templateName
-							+ "\", all available nodes are currently used."
-							+ " Free nodes: " + getNodesListForPrint(freeNodesPool)
-							+ ", Invalid nodes: " + getNodesListForPrint(invalidNodesPool)
-							+ ", Allocated nodes: " + getNodesListForPrint(allocatedNodesPool));
+
+		if (pooledNode == null) {
+			throw createPoolExhaustedException(pool);
+		}
+
+		pool.setNodeName(pooledNode, serverName);
+
+		return pooledNode.getNode();
+	}
+
+	/**
+	 * Creates a server for each of the given logical names, as a single operation: either all the servers are created
+	 * or none is. Free nodes that cannot be connected to are marked as invalid and skipped, and once the free nodes are
+	 * exhausted the invalid nodes are checked for SSH connection, like {@link #createServer(String, String)} does.
+	 *
+	 * @param templateName
+	 *            The name of the nodes-list' template the servers belong to
+	 * @param serverNames
+	 *            The logical names of the servers to create, one per server
+	 * @return The nodes allocated, in the order of the given names
+	 * @throws CloudProvisioningException
+	 *             Indicated the machines could not be allocated, either because a name is empty or because the nodes
+	 *             pool does not hold enough available nodes
+	 */
+	public List<CustomNode> createServers(final String templateName,
+			final List<String> serverNames) throws CloudProvisioningException {
+
+		for (final String serverName : serverNames) {
+			if (org.apache.commons.lang.StringUtils.isBlank(serverName)) {
+				throw new CloudProvisioningException(
+						"Failed to create new cloud nodes, a server name is missing");
+			}
 		}
 
-		CustomNode node = null;
-		if (!freeNodesPool.isEmpty()) {
-			node = freeNodesPool.iterator().next();
-			// if this node is indeed not allocated, test the connectivity to it.
-			// if we can't connect to it - move it to the invalid pool,
-			// otherwise - allocate it.
-			if (!allocatedNodesPool.contains(node)) {
-				try {
-                    node.resolve();
-					IPUtils.validateConnection(node.getPrivateIP(),
-							node.getLoginPort());
-					allocatedNodesPool.add(node);
-					freeNodesPool.remove(node);
-				} catch (final Exception e) {
-					// catch any exception - to prevent a machine leak. Add the
-					// machine to the invalids pool
-					logger.log(
-							Level.INFO,
-							"Failed to create server on " + node.getPrivateIP()
-									+ ", connection failed on port "
-									+ node.getLoginPort(), e);
+		final ByonNodePool pool = getNodePool(templateName,
+				"Failed to create new cloud nodes. \"" + templateName + "\" is not a known template.");
+
+		final List<PooledNode> allocatedNodes = new ArrayList<PooledNode>(serverNames.size());
+		try {
+			while (allocatedNodes.size() < serverNames.size()) {
+				PooledNode pooledNode = allocateFreeNode(pool);
+				if (pooledNode != null) {
 					try {
-						invalidateServer(templateName, node);
-					} catch (final CloudProvisioningException ie) {
-						logger.log(Level.INFO,
-								"Failed to mark machine " + node.getPrivateIP()
-										+ " as Invalid.", ie);
+						validateConnection(pool, pooledNode);
+					} catch (final Exception e) {
+						logger.log(Level.INFO, "Failed to create server on " + pooledNode.getNode().getPrivateIP()
+								+ ", connection failed on port " + pooledNode.getNode().getLoginPort(), e);
+						pool.invalidate(pooledNode);
+						continue;
 					}
-					throw new CloudProvisioningException(e);
-				}
-			}
-		} else {
-			for (CustomNode currentNode : invalidNodesPool) {
-				try {
-                    currentNode.resolve();
-					IPUtils.validateConnection(currentNode.getPrivateIP(), currentNode.getLoginPort());
-					if (!allocatedNodesPool.contains(currentNode)) {
-						allocatedNodesPool.add(currentNode);
+				} else {
+					pooledNode = allocateInvalidNode(pool);
+					if (pooledNode == null) {
+						throw createPoolExhaustedException(pool);
 					}
-					invalidNodesPool.remove(currentNode);
-					node = currentNode;
-					break;
-				} catch (final Exception ex) {
-					// ignore and continue
 				}
+				allocatedNodes.add(pooledNode);
 			}
+		} catch (final CloudProvisioningException e) {
+			for (final PooledNode pooledNode : allocatedNodes) {
+				pool.free(pooledNode);
+			}
+			throw e;
 		}
 
-		if (node == null) {
-			throw new CloudProvisioningException(
-					"Failed to create a new cloud node for template \""
-							+ templateName
-							+ "\", all available nodes are currently used."
-							+ " Free nodes: " + getNodesListForPrint(freeNodesPool)
-							+ ", Invalid nodes: " + getNodesListForPrint(invalidNodesPool)
-							+ ", Allocated nodes: " + getNodesListForPrint(allocatedNodesPool));
+		final List<CustomNode> nodes = new ArrayList<CustomNode>(allocatedNodes.size());
+		for (int i = 0; i < allocatedNodes.size(); i++) {
+			final PooledNode pooledNode = allocatedNodes.get(i);
+			pool.setNodeName(pooledNode, serverNames.get(i));
+			nodes.add(pooledNode.getNode());
 		}
-
-		node.setNodeName(serverName);
-
-		return node;
+		return nodes;
 	}
 
 	/**
@@ -239,34 +273,17 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the IPs could not be marked as allocated with the specified template
 	 */
-	public synchronized void setAllocated(final String templateName,
+	public void setAllocated(final String templateName,
 			final Set<String> ipAddresses) throws CloudProvisioningException {
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to set allocated servers. \"" + templateName
-							+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists.get(NODES_LIST_ALLOCATED);
+		final ByonNodePool pool = getNodePool(templateName,
+				"Failed to set allocated servers. \"" + templateName + "\" is not a known template.");
 
 		for (final String ipAddress : ipAddresses) {
 			logger.log(Level.INFO, "Looking for " + ipAddress + " in the pool of \"free\" machines");
-			for (final CustomNode node : freeNodesPool) {
-				if (StringUtils.isNotBlank(node.getPrivateIP())) {
-					if (IPUtils.isSameIpAddress(node.getPrivateIP(), ipAddress)) {
-						freeNodesPool.remove(node);
-						if (!allocatedNodesPool.contains(node)) {
-							allocatedNodesPool.add(node);
-						}
-						logger.log(Level.INFO, "Marking " + node.getPrivateIP() + " (" + ipAddress + ")"
-								+ " as \"allocated\"");
-						break;
-					}
-				} else {
-					logger.log(Level.INFO, "Host " + node.getPrivateIP() + " is not resolved to an IP address");
-				}
+			final PooledNode pooledNode = pool.getByIp(ipAddress);
+			if (pooledNode != null && pool.allocate(pooledNode, NodeState.FREE)) {
+				logger.log(Level.INFO, "Marking " + pooledNode.getNode().getPrivateIP() + " (" + ipAddress + ")"
+						+ " as \"allocated\"");
 			}
 		}
 	}
@@ -281,29 +298,24 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the server could not be shutdown with the specified template
 	 */
-	public synchronized void shutdownServer(final String templateName,
+	public void shutdownServer(final String templateName,
 			final CustomNode serverName) throws CloudProvisioningException {
 		if (serverName == null) {
 			return;
 		}
 
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException("Failed to shutdown server \""
-					+ serverName + "\". \"" + templateName
-					+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
-
-		((CustomNodeImpl) serverName).setGroup(null);
-		allocatedNodesPool.remove(serverName);
-		if (!freeNodesPool.contains(serverName)) {
-			freeNodesPool.add(serverName);
+		final ByonNodePool pool = getNodePool(templateName, "Failed to shutdown server \""
+				+ serverName + "\". \"" + templateName
+				+ "\" is not a known template.");
+
+		final PooledNode pooledNode = pool.find(serverName);
+		if (pooledNode == null) {
+			logger.warning("Failed to shutdown server " + serverName.toShortString()
+					+ ", it is not a node of template: " + templateName);
+			return;
 		}
+		((CustomNodeImpl) pooledNode.getNode()).setGroup(null);
+		pool.free(pooledNode);
 	}
 
 	/**
@@ -349,16 +361,7 @@ public class ByonDeployer {
 	 */
 	public CustomNode getServerByName(final String templateName,
 			final String serverName) throws CloudProvisioningException {
-		CustomNode selectedNode = null;
-
-		for (final CustomNode node : getAllNodesByTemplateName(templateName)) {
-			if (node.getNodeName().equalsIgnoreCase(serverName)) {
-				selectedNode = node;
-				break;
-			}
-		}
-
-		return selectedNode;
+		return getNode(getNodePool(templateName).getByName(serverName));
 	}
 
 	/**
@@ -374,16 +377,7 @@ public class ByonDeployer {
 	 */
 	public CustomNode getServerByID(final String templateName, final String id)
 			throws CloudProvisioningException {
-		CustomNode selectedNode = null;
-
-		for (final CustomNode node : getAllNodesByTemplateName(templateName)) {
-			if (node.getId().equalsIgnoreCase(id)) {
-				selectedNode = node;
-				break;
-			}
-		}
-
-		return selectedNode;
+		return getNode(getNodePool(templateName).getById(id));
 	}
 
 	/**
@@ -399,16 +393,7 @@ public class ByonDeployer {
 	 */
 	public CustomNode getServerByIP(final String templateName,
 			final String ipAddress) throws CloudProvisioningException {
-		CustomNode selectedNode = null;
-
-		for (final CustomNode node : getAllNodesByTemplateName(templateName)) {
-			if (IPUtils.isSameIpAddress(node.getPrivateIP(), ipAddress)) {
-				selectedNode = node;
-				break;
-			}
-		}
-
-		return selectedNode;
+		return getNode(getNodePool(templateName).getByIp(ipAddress));
 	}
 
 	/**
@@ -420,29 +405,9 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the servers list could not be obtained for the given template name
 	 */
-	public synchronized Set<CustomNode> getAllNodesByTemplateName(final String templateName)
+	public Set<CustomNode> getAllNodesByTemplateName(final String templateName)
 			throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
-		final List<CustomNode> invalidNodesPool = templateLists
-				.get(NODES_LIST_INVALID);
-
-		allNodes.addAll(freeNodesPool);
-		allNodes.addAll(allocatedNodesPool);
-		allNodes.addAll(invalidNodesPool);
-
-		return allNodes;
+		return new HashSet<CustomNode>(getNodePool(templateName).getNodes(null));
 	}
 
 	/**
@@ -454,21 +419,9 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the servers list could not be obtained for the given template name
 	 */
-	public synchronized Set<CustomNode> getFreeNodesByTemplateName(final String templateName)
+	public Set<CustomNode> getFreeNodesByTemplateName(final String templateName)
 			throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-
-		allNodes.addAll(templateLists.get(NODES_LIST_FREE));
-
-		return allNodes;
+		return new HashSet<CustomNode>(getNodePool(templateName).getNodes(NodeState.FREE));
 	}
 
 	/**
@@ -480,21 +433,9 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the servers list could not be obtained for the given template name
 	 */
-	public synchronized Set<CustomNode> getAllocatedNodesByTemplateName(
+	public Set<CustomNode> getAllocatedNodesByTemplateName(
 			final String templateName) throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-
-		allNodes.addAll(templateLists.get(NODES_LIST_ALLOCATED));
-
-		return allNodes;
+		return new HashSet<CustomNode>(getNodePool(templateName).getNodes(NodeState.ALLOCATED));
 	}
 
 	/**
@@ -506,21 +447,9 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the servers list could not be obtained for the given template name
 	 */
-	public synchronized Set<CustomNode> getInvalidNodesByTemplateName(
+	public Set<CustomNode> getInvalidNodesByTemplateName(
 			final String templateName) throws CloudProvisioningException {
-		final Set<CustomNode> allNodes = new HashSet<CustomNode>();
-
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			throw new CloudProvisioningException(
-					"Failed to get servers list. \"" + templateName
-							+ "\" is not a known template.");
-		}
-
-		allNodes.addAll(templateLists.get(NODES_LIST_INVALID));
-
-		return allNodes;
+		return new HashSet<CustomNode>(getNodePool(templateName).getNodes(NodeState.INVALID));
 	}
 
 	/**
@@ -534,32 +463,21 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException
 	 *             Indicates the server could not be marked as Invalid for the specified template
 	 */
-	public synchronized void invalidateServer(final String templateName,
+	public void invalidateServer(final String templateName,
 			final CustomNode serverName) throws CloudProvisioningException {
 		logger.warning("Invalidaing node: " + serverName + " from template: " + templateName);
 		// attempting to remove the invalid node from the active lists so it
 		// will not be used anymore, just to
 		// be sure.
-		final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-				.get(templateName);
-		if (templateLists == null || templateLists.isEmpty()) {
-			// todo illegal argument exception
-			throw new CloudProvisioningException(
-					"Failed to invalidate server. \"" + templateName
-							+ "\" is not a known template.");
-		}
-		final List<CustomNode> freeNodesPool = templateLists
-				.get(NODES_LIST_FREE);
-		final List<CustomNode> allocatedNodesPool = templateLists
-				.get(NODES_LIST_ALLOCATED);
-		final List<CustomNode> invalidNodesPool = templateLists
-				.get(NODES_LIST_INVALID);
-
-		freeNodesPool.remove(serverName);
-		allocatedNodesPool.remove(serverName);
-		if (!invalidNodesPool.contains(serverName)) {
-			invalidNodesPool.add(serverName);
+		final ByonNodePool pool = getNodePool(templateName,
+				"Failed to invalidate server. \"" + templateName + "\" is not a known template.");
+		final PooledNode pooledNode = pool.find(serverName);
+		if (pooledNode == null) {
+			logger.warning("Failed to invalidate server " + serverName.toShortString()
+					+ ", it is not a node of template: " + templateName);
+			return;
 		}
+		pool.invalidate(pooledNode);
 	}
 
 	/**
@@ -569,37 +487,129 @@ public class ByonDeployer {
 		// Do nothing
 	}
 
-	private synchronized List<CustomNode> getAllNodes() throws CloudProvisioningException {
-		final List<CustomNode> allNodes = new ArrayList<CustomNode>();
+	private ByonNodePool getNodePool(final String templateName) throws CloudProvisioningException {
+		return getNodePool(templateName,
+				"Failed to get servers list. \"" + templateName + "\" is not a known template.");
+	}
 
-		for (final String templateName : nodesListsByTemplates.keySet()) {
-			final Map<String, List<CustomNode>> templateLists = nodesListsByTemplates
-					.get(templateName);
-			if (templateLists == null || templateLists.isEmpty()) {
-				throw new CloudProvisioningException(
-						"Failed to get servers list. \"" + templateName
-								+ "\" is not a known template.");
+	private ByonNodePool getNodePool(final String templateName, final String errorMessage)
+			throws CloudProvisioningException {
+		final ByonNodePool pool = nodePoolsByTemplates.get(templateName);
+		if (pool == null) {
+			throw new CloudProvisioningException(errorMessage);
+		}
+		return pool;
+	}
+
+	private static CustomNode getNode(final PooledNode pooledNode) {
+		return pooledNode == null ? null : pooledNode.getNode();
+	}
+
+	/**
+	 * Returns the prober used to check the nodes are reachable, and which holds the recent check results.
+	 *
+	 * @return The reachability prober
+	 */
+	public ReachabilityProber getReachabilityProber() {
+		return reachabilityProber;
+	}
+
+	/**
+	 * Checks which of the given nodes can be connected to on their login port, in parallel.
+	 *
+	 * @param nodes
+	 *            The nodes to check, after they were resolved
+	 * @return The result of each node, in the order of the given nodes
+	 */
+	public Map<CustomNode, Boolean> checkReachability(final List<CustomNode> nodes) {
+		final List<InetSocketAddress> targets = new ArrayList<InetSocketAddress>(nodes.size());
+		for (final CustomNode node : nodes) {
+			targets.add(InetSocketAddress.createUnresolved(node.getPrivateIP(), node.getLoginPort()));
+		}
+		final Map<InetSocketAddress, Boolean> targetResults =
+				reachabilityProber.probe(targets, CONNECTION_TIMEOUT_MILLIS);
+
+		final Map<CustomNode, Boolean> nodeResults = new LinkedHashMap<CustomNode, Boolean>();
+		for (int i = 0; i < nodes.size(); i++) {
+			nodeResults.put(nodes.get(i), targetResults.get(targets.get(i)));
+		}
+		return nodeResults;
+	}
+
+	private void validateConnection(final ByonNodePool pool, final PooledNode pooledNode)
+			throws Exception {
+		final CustomNode node = pooledNode.getNode();
+		node.resolve();
+		pool.reindexIp(pooledNode);
+		if (!reachabilityProber.isReachable(node.getPrivateIP(), node.getLoginPort(), CONNECTION_TIMEOUT_MILLIS)) {
+			throw new IOException("Failed to connect to " + node.getPrivateIP() + ":" + node.getLoginPort());
+		}
+	}
+
+	/**
+	 * Takes the next free node, skipping the nodes recently found unreachable without connecting to them again.
+	 */
+	private PooledNode allocateFreeNode(final ByonNodePool pool) {
+		PooledNode pooledNode = pool.allocateFree();
+		while (pooledNode != null) {
+			final CustomNode node = pooledNode.getNode();
+			if (node.getPrivateIP() == null
+					|| !Boolean.FALSE.equals(reachabilityProber.getRecentResult(node.getPrivateIP(),
+							node.getLoginPort()))) {
+				return pooledNode;
+			}
+			logger.info("Skipping node " + node.toShortString() + ", it was recently found unreachable");
+			pool.invalidate(pooledNode);
+			pooledNode = pool.allocateFree();
+		}
+		return null;
+	}
+
+	/**
+	 * Allocates the first invalid node that can be connected to. All the invalid nodes are checked at once, and the
+	 * nodes found reachable are then reserved, skipping the nodes other callers reserved meanwhile.
+	 */
+	private PooledNode allocateInvalidNode(final ByonNodePool pool) {
+		final List<PooledNode> invalidNodes = new ArrayList<PooledNode>();
+		final List<CustomNode> nodesToCheck = new ArrayList<CustomNode>();
+		for (final PooledNode pooledNode : pool.getPooledNodes(NodeState.INVALID)) {
+			try {
+				pooledNode.getNode().resolve();
+			} catch (final Exception ex) {
+				// ignore and continue
+				continue;
 			}
-			final List<CustomNode> freeNodesPool = templateLists
-					.get(NODES_LIST_FREE);
-			final List<CustomNode> allocatedNodesPool = templateLists
-					.get(NODES_LIST_ALLOCATED);
-			final List<CustomNode> invalidNodesPool = templateLists
-					.get(NODES_LIST_INVALID);
-
-			allNodes.addAll(freeNodesPool);
-			allNodes.addAll(allocatedNodesPool);
-			allNodes.addAll(invalidNodesPool);
+			pool.reindexIp(pooledNode);
+			invalidNodes.add(pooledNode);
+			nodesToCheck.add(pooledNode.getNode());
 		}
 
-		return allNodes;
+		final Map<CustomNode, Boolean> reachable = checkReachability(nodesToCheck);
+		for (final PooledNode pooledNode : invalidNodes) {
+			if (reachable.get(pooledNode.getNode()) && pool.allocate(pooledNode, NodeState.INVALID)) {
+				return pooledNode;
+			}
+		}
+		return null;
 	}
 
+	private CloudProvisioningException createPoolExhaustedException(final ByonNodePool pool) {
+		if (pool.isClosed()) {
+			return new CloudProvisioningException("Failed to create a new cloud node, template \""
+					+ pool.getTemplateName() + "\" was removed.");
+		}
+		return new CloudProvisioningException(
+				"Failed to create a new cloud node for template \""
+						+ pool.getTemplateName()
+						+ "\", all available nodes are currently used."
+						+ " Free nodes: " + getNodesListForPrint(pool.getNodes(NodeState.FREE))
+						+ ", Invalid nodes: " + getNodesListForPrint(pool.getNodes(NodeState.INVALID))
+						+ ", Allocated nodes: " + getNodesListForPrint(pool.getNodes(NodeState.ALLOCATED)));
+	}
 
 	/**
-	 * Sets the initial nodes pools (free nodes, allocated, invalid and terminated) for each template. The initial
-	 * allocated-nodes pool is always empty. The terminated nodes pool is currently not supported and remains empty all
-	 * along.
+	 * Sets the initial nodes pools (free nodes, allocated and invalid) for each template. The initial
+	 * allocated-nodes pool is always empty.
 	 *
 	 * @param templateName
 	 *            The name of the template
@@ -611,27 +621,14 @@ public class ByonDeployer {
 	private void setInitialPoolsForTemplate(final String templateName,
 			final List<CustomNode> resolvedNodes,
 			final List<CustomNode> unresolvedNodes) {
-		// todo use hashmap instead
-		// use pojo instead of a complex map
-		final Map<String, List<CustomNode>> templateLists = new Hashtable<String, List<CustomNode>>();
-		final List<CustomNode> freeNodesPool = new ArrayList<CustomNode>();
-		final List<CustomNode> invalidNodesPool = new ArrayList<CustomNode>();
-
-		freeNodesPool.addAll(aggregateWithoutDuplicates(freeNodesPool,
-				resolvedNodes));
-		invalidNodesPool.addAll(aggregateWithoutDuplicates(invalidNodesPool,
-				unresolvedNodes));
+		final List<CustomNode> freeNodesPool = removeDuplicates(resolvedNodes);
+		final List<CustomNode> invalidNodesPool = removeDuplicates(unresolvedNodes);
 		
 		logger.info("Setting initial pools for template: " + templateName + ". "
 				+ CloudifyConstants.NEW_LINE + "Free nodes: " + getNodesListForPrint(freeNodesPool)
 				+ CloudifyConstants.NEW_LINE + "Invalid nodes: " + getNodesListForPrint(invalidNodesPool));
 
-		templateLists.put(NODES_LIST_FREE, freeNodesPool);
-		templateLists.put(NODES_LIST_ALLOCATED, new ArrayList<CustomNode>());
-		templateLists.put(NODES_LIST_INVALID, invalidNodesPool);
-		templateLists.put(NODES_LIST_TERMINATED, new ArrayList<CustomNode>());
-
-		nodesListsByTemplates.put(templateName, templateLists);
+		nodePoolsByTemplates.put(templateName, new ByonNodePool(templateName, freeNodesPool, invalidNodesPool));
 	}
 
 	private static List<CustomNode> removeDuplicates(
@@ -645,14 +642,14 @@ public class ByonDeployer {
 		return totalList;
 	}
 
-	private static Set<String> getDuplicateIPs(final List<CustomNode> oldNodes,
-			final List<CustomNode> newNodes) {
+	private Set<String> getDuplicateIPs(final List<CustomNode> newNodes) {
 		final Set<String> existingIPs = new HashSet<String>();
 
 		for (final CustomNode newNode : newNodes) {
-			for (final CustomNode oldNode : oldNodes) {
-				if (IPUtils.isSameIpAddress(oldNode.getPrivateIP(), newNode.getPrivateIP())) {
-					existingIPs.add(oldNode.getPrivateIP());
+			for (final ByonNodePool pool : nodePoolsByTemplates.values()) {
+				final PooledNode existingNode = pool.getByIp(newNode.getPrivateIP());
+				if (existingNode != null) {
+					existingIPs.add(existingNode.getNode().getPrivateIP());
 					break;
 				}
 			}
@@ -661,24 +658,13 @@ public class ByonDeployer {
 		return existingIPs;
 	}
 
-	private static List<CustomNode> aggregateWithoutDuplicates(
-			final List<CustomNode> basicList, final List<CustomNode> newItems) {
-		final List<CustomNode> totalList = new ArrayList<CustomNode>(basicList);
-		for (final CustomNode node : newItems) {
-			if (!totalList.contains(node)) {
-				totalList.add(node);
-			}
-		}
-		return totalList;
-	}
-
 	/**
 	 * Gets a list of the templates being used.
 	 * @return a list of the templates being used
 	 */
-	public synchronized List<String> getTemplatesList() {
+	public List<String> getTemplatesList() {
 		List<String> templatesList = new LinkedList<String>();
-		templatesList.addAll(nodesListsByTemplates.keySet());
+		templatesList.addAll(nodePoolsByTemplates.keySet());
 		return templatesList;
 	}
 
@@ -690,17 +676,25 @@ public class ByonDeployer {
 	 * @throws CloudProvisioningException Indicates one or more of the template's nodes are allocated, 
 	 * and so the template cannot be removed
 	 */
-	public synchronized void removeTemplates(final List<String> redundantTemplates) throws CloudProvisioningException {
-		for (String templateName : redundantTemplates) {
-			Map<String, List<CustomNode>> nodesMap = nodesListsByTemplates.get(templateName);
-			List<CustomNode> allocatedNodesList = nodesMap.get(NODES_LIST_ALLOCATED);
-			if (allocatedNodesList != null && !allocatedNodesList.isEmpty()) {
-				String errMsg = "Failed to remove template [" + templateName
-						+ "] from deployer, some nodes are still allocated: " + allocatedNodesList;
-				logger.log(Level.WARNING, errMsg);
-				throw new CloudProvisioningException(errMsg);
+	public void removeTemplates(final List<String> redundantTemplates) throws CloudProvisioningException {
+		synchronized (nodePoolsByTemplates) {
+			for (String templateName : redundantTemplates) {
+				final ByonNodePool pool = nodePoolsByTemplates.get(templateName);
+				if (pool == null) {
+					continue;
+				}
+				// closed first, so no node can be allocated between the check and the removal.
+				pool.close();
+				List<CustomNode> allocatedNodesList = pool.getNodes(NodeState.ALLOCATED);
+				if (!allocatedNodesList.isEmpty()) {
+					pool.reopen();
+					String errMsg = "Failed to remove template [" + templateName
+							+ "] from deployer, some nodes are still allocated: " + allocatedNodesList;
+					logger.log(Level.WARNING, errMsg);
+					throw new CloudProvisioningException(errMsg);
+				}
+				nodePoolsByTemplates.remove(templateName);
 			}
-			nodesListsByTemplates.remove(templateName);
 		}
 	}
 	
@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.byon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang.StringUtils;
+import org.cloudifysource.esc.driver.provisioning.CustomNode;
+
+import com.googlecode.ipv6.IPv6Address;
+
+/**
+ * The nodes of a single BYON template, indexed by state, id, IP and name.<br />
+ * Each node carries its own atomic state, and a node changes state only by a successful compare-and-set, so
+ * allocations on the same template do not lock each other and a node is never handed out twice. Free nodes are kept
+ * in a queue in the order they were freed, making allocation O(1). A node that leaves the free state while queued,
+ * e.g. when allocated by id or invalidated, stays queued and is skipped once polled, so no state change scans the
+ * queue. A node is queued at most once at a time. Nodes are looked up by id, IP and name in O(1).
+ * A closed pool hands out no nodes, which lets the pool be removed once it has no allocated nodes.
+ *
+ * @since 2.7.1
+ */
+final class ByonNodePool {
+
+	/**
+	 * The state of a node in the pool.
+	 */
+	enum NodeState {
+		FREE, ALLOCATED, INVALID
+	}
+
+	private final String templateName;
+	// the pool's nodes never change after construction, only their state does.
+	private final List<PooledNode> nodes;
+	private final ConcurrentLinkedQueue<PooledNode> freeNodes = new ConcurrentLinkedQueue<PooledNode>();
+	private final ConcurrentMap<String, PooledNode> nodesById = new ConcurrentHashMap<String, PooledNode>();
+	private final ConcurrentMap<String, PooledNode> nodesByIp = new ConcurrentHashMap<String, PooledNode>();
+	private final ConcurrentMap<String, PooledNode> nodesByName = new ConcurrentHashMap<String, PooledNode>();
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param templateName
+	 *            The name of the template these nodes belong to
+	 * @param freeNodes
+	 *            The nodes available for use
+	 * @param invalidNodes
+	 *            The nodes that are currently unreachable
+	 */
+	ByonNodePool(final String templateName, final List<CustomNode> freeNodes, final List<CustomNode> invalidNodes) {
+		this.templateName = templateName;
+		final List<PooledNode> allNodes = new ArrayList<PooledNode>(freeNodes.size() + invalidNodes.size());
+		for (final CustomNode node : freeNodes) {
+			final PooledNode pooledNode = new PooledNode(node, NodeState.FREE);
+			pooledNode.queued.set(true);
+			allNodes.add(pooledNode);
+			this.freeNodes.add(pooledNode);
+		}
+		for (final CustomNode node : invalidNodes) {
+			allNodes.add(new PooledNode(node, NodeState.INVALID));
+		}
+		this.nodes = Collections.unmodifiableList(allNodes);
+
+		// the first node wins, the same way a linear scan would find it.
+		for (final PooledNode pooledNode : nodes) {
+			final String idKey = toKey(pooledNode.node.getId());
+			if (idKey != null) {
+				nodesById.putIfAbsent(idKey, pooledNode);
+			}
+			final String nameKey = toKey(pooledNode.node.getNodeName());
+			if (nameKey != null) {
+				nodesByName.putIfAbsent(nameKey, pooledNode);
+			}
+			reindexIp(pooledNode);
+		}
+	}
+
+	public String getTemplateName() {
+		return templateName;
+	}
+
+	/**
+	 * Closes the pool, so it no longer hands out nodes. An allocation racing with this call either sees the pool
+	 * closed and backs out, or completes before the caller's next check of the allocated nodes.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Reopens a closed pool, e.g. when it could not be removed since some of its nodes were allocated.
+	 */
+	public void reopen() {
+		closed = false;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Takes the next free node and marks it as allocated.
+	 *
+	 * @return The allocated node, or null if there are no free nodes or the pool is closed.
+	 */
+	public PooledNode allocateFree() {
+		PooledNode pooledNode = freeNodes.poll();
+		while (pooledNode != null) {
+			// cleared before the state is checked, so a node freed from now on is queued again.
+			pooledNode.queued.set(false);
+			if (pooledNode.state.compareAndSet(NodeState.FREE, NodeState.ALLOCATED)) {
+				// checked after the node was taken, see close().
+				if (closed) {
+					free(pooledNode);
+					return null;
+				}
+				return pooledNode;
+			}
+			// a stale entry of a node that left the free state while queued, it is queued again once freed.
+			pooledNode = freeNodes.poll();
+		}
+		return null;
+	}
+
+	/**
+	 * Marks the given node as allocated, if it is currently in the expected state.
+	 *
+	 * @param pooledNode
+	 *            The node to allocate
+	 * @param expectedState
+	 *            The state the node is expected to be in
+	 * @return True if the node was allocated by this call, false if it was not in the expected state or the pool is
+	 *         closed.
+	 */
+	public boolean allocate(final PooledNode pooledNode, final NodeState expectedState) {
+		if (expectedState == NodeState.ALLOCATED) {
+			throw new IllegalArgumentException("A node cannot be allocated from the allocated state");
+		}
+		if (!pooledNode.state.compareAndSet(expectedState, NodeState.ALLOCATED)) {
+			return false;
+		}
+		// checked after the node was taken, see close().
+		if (closed) {
+			pooledNode.state.set(expectedState);
+			return false;
+		}
+		// a free node stays queued, allocateFree() skips it.
+		return true;
+	}
+
+	/**
+	 * Returns the given node to the free nodes, to be used again.
+	 *
+	 * @param pooledNode
+	 *            The node to free
+	 */
+	public void free(final PooledNode pooledNode) {
+		if (pooledNode.state.getAndSet(NodeState.FREE) != NodeState.FREE
+				&& pooledNode.queued.compareAndSet(false, true)) {
+			freeNodes.add(pooledNode);
+		}
+	}
+
+	/**
+	 * Marks the given node as invalid, so it is only used once all the free nodes are in use.
+	 *
+	 * @param pooledNode
+	 *            The node to invalidate
+	 */
+	public void invalidate(final PooledNode pooledNode) {
+		// a free node stays queued, allocateFree() skips it.
+		pooledNode.state.set(NodeState.INVALID);
+	}
+
+	/**
+	 * Sets the name of an allocated node, keeping the name index up to date.
+	 *
+	 * @param pooledNode
+	 *            The node to name
+	 * @param nodeName
+	 *            The new name
+	 */
+	public void setNodeName(final PooledNode pooledNode, final String nodeName) {
+		final String oldKey = toKey(pooledNode.node.getNodeName());
+		if (oldKey != null) {
+			nodesByName.remove(oldKey, pooledNode);
+		}
+		pooledNode.node.setNodeName(nodeName);
+		final String newKey = toKey(nodeName);
+		if (newKey != null) {
+			nodesByName.put(newKey, pooledNode);
+		}
+	}
+
+	/**
+	 * Indexes the node's private IP, which may only be known once the node was resolved.
+	 *
+	 * @param pooledNode
+	 *            The node to index
+	 */
+	public void reindexIp(final PooledNode pooledNode) {
+		final String ipKey = toIpKey(pooledNode.node.getPrivateIP());
+		if (ipKey != null) {
+			nodesByIp.putIfAbsent(ipKey, pooledNode);
+		}
+	}
+
+	public PooledNode getById(final String id) {
+		final String key = toKey(id);
+		return key == null ? null : nodesById.get(key);
+	}
+
+	public PooledNode getByName(final String nodeName) {
+		final String key = toKey(nodeName);
+		return key == null ? null : nodesByName.get(key);
+	}
+
+	public PooledNode getByIp(final String ipAddress) {
+		final String key = toIpKey(ipAddress);
+		return key == null ? null : nodesByIp.get(key);
+	}
+
+	/**
+	 * Finds the pooled node holding the given node.
+	 *
+	 * @param node
+	 *            The node to find
+	 * @return The pooled node, or null if the node is not in this pool.
+	 */
+	public PooledNode find(final CustomNode node) {
+		PooledNode pooledNode = getByIp(node.getPrivateIP());
+		if (pooledNode == null) {
+			pooledNode = getById(node.getId());
+		}
+		if (pooledNode == null || !pooledNode.node.equals(node)) {
+			// fall back to a scan for nodes that are not indexed, e.g. nodes that were never resolved.
+			pooledNode = null;
+			for (final PooledNode candidate : nodes) {
+				if (candidate.node.equals(node)) {
+					pooledNode = candidate;
+					break;
+				}
+			}
+		}
+		return pooledNode;
+	}
+
+	/**
+	 * Returns whether this pool holds a node with the given IP address.
+	 *
+	 * @param ipAddress
+	 *            The IP address
+	 * @return True if a node in this pool has the given IP address.
+	 */
+	public boolean containsIp(final String ipAddress) {
+		return getByIp(ipAddress) != null;
+	}
+
+	/**
+	 * Returns a snapshot of the nodes currently in the given state.
+	 *
+	 * @param state
+	 *            The state of the nodes to return, or null for all the nodes
+	 * @return The nodes in the given state
+	 */
+	public List<CustomNode> getNodes(final NodeState state) {
+		final List<CustomNode> result = new ArrayList<CustomNode>();
+		for (final PooledNode pooledNode : nodes) {
+			if (state == null || pooledNode.state.get() == state) {
+				result.add(pooledNode.node);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the nodes currently in the given state.
+	 *
+	 * @param state
+	 *            The state of the nodes to return
+	 * @return The pooled nodes in the given state
+	 */
+	public List<PooledNode> getPooledNodes(final NodeState state) {
+		final List<PooledNode> result = new ArrayList<PooledNode>();
+		for (final PooledNode pooledNode : nodes) {
+			if (pooledNode.state.get() == state) {
+				result.add(pooledNode);
+			}
+		}
+		return result;
+	}
+
+	private static String toKey(final String value) {
+		return StringUtils.isBlank(value) ? null : value.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Builds the index key of an IP address, IPv6 addresses are compared in their canonical form, like
+	 * {@link org.cloudifysource.dsl.utils.IPUtils#isSameIpAddress(String, String)} does.
+	 */
+	private static String toIpKey(final String ipAddress) {
+		if (StringUtils.isBlank(ipAddress)) {
+			return null;
+		}
+		try {
+			return IPv6Address.fromString(ipAddress).toString();
+		} catch (final IllegalArgumentException e) {
+			return ipAddress.toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	/**
+	 * A node and its current state in the pool.
+	 */
+	static final class PooledNode {
+		private final CustomNode node;
+		private final AtomicReference<NodeState> state;
+		// whether the node is in the free nodes queue, possibly as a stale entry.
+		private final AtomicBoolean queued = new AtomicBoolean(false);
+
+		PooledNode(final CustomNode node, final NodeState state) {
+			this.node = node;
+			this.state = new AtomicReference<NodeState>(state);
+		}
+
+		public CustomNode getNode() {
+			return node;
+		}
+
+		public NodeState getState() {
+			return state.get();
+		}
+	}
+}
@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -39,8 +40,7 @@ import org.cloudifysource.domain.cloud.FileTransferModes;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.DSLException;
-import org.cloudifysource.dsl.internal.DSLReader;
-import org.cloudifysource.dsl.internal.DSLUtils;
+import org.cloudifysource.dsl.internal.ParsedCloudCache;
 import org.cloudifysource.dsl.internal.packaging.ZipUtils;
 import org.cloudifysource.dsl.utils.IPUtils;
 import org.cloudifysource.dsl.utils.ServiceUtils;
@@ -64,6 +64,7 @@ import org.cloudifysource.esc.util.InstallationDetailsBuilder;
 import org.cloudifysource.esc.util.ProvisioningDriverClassBuilder;
 import org.cloudifysource.esc.util.Utils;
 import org.cloudifysource.utilitydomain.context.blockstorage.ServiceVolume;
+import org.cloudifysource.utilitydomain.data.WarmMachineData;
 import org.cloudifysource.utilitydomain.data.reader.ComputeTemplatesReader;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.openspaces.admin.Admin;
@@ -132,6 +133,15 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
     // the default number of consequtive failures that can be occur in the timeframe window.
     private static final int DEFAULT_START_MACHINE_ALLOWED_FAILED_REQUESTS_IN_TIMEFRAME = 2;
 
+    // warm machine pool defaults. the pool size is capped to bound the cost of idle machines.
+    private static final int MAX_WARM_POOL_SIZE = 20;
+    private static final int DEFAULT_WARM_POOL_MAX_CONCURRENT_STARTS = 2;
+    private static final int DEFAULT_WARM_POOL_IDLE_TIMEOUT_SEC = 3600;
+    private static final int WARM_MACHINE_START_TIMEOUT_MIN = 30;
+
+    // the ids of the warm machine pools of this process. machines recorded by other pools were left by a previous ESM.
+    private static final Set<String> RUNNING_WARM_MACHINE_POOL_IDS = new HashSet<String>();
+
     /**********
      * .
      */
@@ -152,6 +162,8 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
 
     private BaseComputeDriver cloudifyProvisioning;
     private BaseNetworkDriver networkProvisioning;
+    // loads the drivers, holding their class loaders until this adapter is destroyed.
+    private final ProvisioningDriverClassBuilder driverClassBuilder = new ProvisioningDriverClassBuilder();
     private Admin originalESMAdmin;
 	private GigaSpace managementSpace;
     private Cloud cloud;
@@ -173,6 +185,11 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
     // this is done to prevent management machine from overloading. CLOUDIFY-2201
     private RequestRateLimiter exceptionThrottler;
 
+    // machines booted ahead of start machine requests, null if not configured for the template.
+    private volatile WarmMachinePool warmMachinePool;
+    // identifies the machines of this adapter's warm machine pool in the management space.
+    private final String warmMachinePoolId = UUID.randomUUID().toString();
+
     private Admin getGlobalAdminInstance(final Admin esmAdminInstance) throws InterruptedException,
             ElasticMachineProvisioningException {
         synchronized (GLOBAL_ADMIN_MUTEX) {
@@ -357,7 +374,8 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
                 + " and reservation id " + reservationId);
 
         // calculate timeout
-        final long end = System.currentTimeMillis() + unit.toMillis(duration);
+        final long start = System.currentTimeMillis();
+        final long end = start + unit.toMillis(duration);
 
         // provision the machine
         logger.info("Calling provisioning implementation for new machine");
@@ -378,10 +396,24 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
 
         fireMachineStartEvent(locationId);
 
+        final WarmMachinePool pool = this.warmMachinePool;
+        boolean claimedWarmMachine = false;
         try {
             final MachineDetails previousMachineDetails = getPreviousMachineDetailsFromFailedGSA(failedAgent);
-            // This is the call to the actual cloud driver implementation!
-            machineDetails = provisionMachine(locationId, reservationId, duration, unit, previousMachineDetails);
+            machineDetails = null;
+            // a replacement for a failed machine is left to the driver, which may reuse the failed machine resources.
+            if (pool != null && previousMachineDetails == null) {
+                machineDetails = pool.claim(locationId);
+                claimedWarmMachine = machineDetails != null;
+                if (claimedWarmMachine) {
+                    // the machine is no longer idle, from now on it is handled like any other started machine.
+                    takeWarmMachineData(machineDetails);
+                }
+            }
+            if (machineDetails == null) {
+                // This is the call to the actual cloud driver implementation!
+                machineDetails = provisionMachine(locationId, reservationId, duration, unit, previousMachineDetails);
+            }
 
             // This is to protect against a bug in the Admin. see CLOUDIFY-1592
             // (https://cloudifysource.atlassian.net/browse/CLOUDIFY-1592)
@@ -455,6 +487,11 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
             // since the request will be blocked only in the event of consequtive failures.
             initExceptionThrottler();
 
+            if (pool != null) {
+                pool.recordTimeToCapacity(claimedWarmMachine, System.currentTimeMillis() - start);
+                logger.info(pool.getStatistics());
+            }
+
             return new StartedGridServiceAgent(gsa, context);
         } catch (final ElasticMachineProvisioningException e) {
             logger.info("ElasticMachineProvisioningException occurred, " + e.getMessage());
@@ -511,6 +548,162 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
         return (Integer) number;
     }
 
+    // return a safe int value from the template custom map, or from the cloud custom map if not set for the template.
+    private int getIntValue(final ComputeTemplate template, final String customProperty) {
+        final Object number = template.getCustom() == null ? null : template.getCustom().get(customProperty);
+        if (number instanceof Integer) {
+            return (Integer) number;
+        }
+        return getIntValue(customProperty);
+    }
+
+    private void initWarmMachinePool() {
+        synchronized (RUNNING_WARM_MACHINE_POOL_IDS) {
+            RUNNING_WARM_MACHINE_POOL_IDS.add(warmMachinePoolId);
+        }
+        // idle machines of the previous ESM have no agent, and nothing else would stop them.
+        stopOrphanedWarmMachines();
+
+        final ComputeTemplate template = cloud.getCloudCompute().getTemplates().get(this.cloudTemplateName);
+        int size = getIntValue(template, CloudifyConstants.CUSTOM_PROPERTY_WARM_POOL_SIZE);
+        if (size <= 0) {
+            logger.fine("Warm machine pool is not configured for template " + cloudTemplateName);
+            return;
+        }
+        if (size > MAX_WARM_POOL_SIZE) {
+            logger.warning("Warm machine pool size " + size + " of template " + cloudTemplateName
+                    + " exceeds the maximum of " + MAX_WARM_POOL_SIZE + ", using the maximum");
+            size = MAX_WARM_POOL_SIZE;
+        }
+        int maxConcurrentStarts = getIntValue(template,
+                CloudifyConstants.CUSTOM_PROPERTY_WARM_POOL_MAX_CONCURRENT_STARTS);
+        if (maxConcurrentStarts <= 0) {
+            maxConcurrentStarts = DEFAULT_WARM_POOL_MAX_CONCURRENT_STARTS;
+        }
+        int idleTimeoutSec = getIntValue(template, CloudifyConstants.CUSTOM_PROPERTY_WARM_POOL_IDLE_TIMEOUT_SEC);
+        if (idleTimeoutSec <= 0) {
+            idleTimeoutSec = DEFAULT_WARM_POOL_IDLE_TIMEOUT_SEC;
+        }
+
+        final WarmMachinePool.MachineStarter starter = new WarmMachinePool.MachineStarter() {
+            @Override
+            public MachineDetails startMachine(final String locationId) throws Exception {
+                // no reservation id, the agent is installed by the request that claims the machine.
+                final MachineDetails machineDetails = provisionMachine(locationId, null /* reservationId */,
+                        WARM_MACHINE_START_TIMEOUT_MIN, TimeUnit.MINUTES, null /* previousMachineDetails */);
+                try {
+                    if (!machineDetails.isAgentRunning()) {
+                        validateMachineIp(machineDetails);
+                    }
+                    writeWarmMachineData(machineDetails);
+                } catch (final Exception e) {
+                    // an untracked machine would be orphaned if the ESM restarts.
+                    try {
+                        stopMachine(machineDetails);
+                    } catch (final Exception stopException) {
+                        logger.log(Level.WARNING, "Failed to stop warm machine " + machineDetails + ": "
+                                + stopException.getMessage(), stopException);
+                    }
+                    throw e;
+                }
+                return machineDetails;
+            }
+
+            @Override
+            public void stopMachine(final MachineDetails machineDetails) throws Exception {
+                cloudifyProvisioning.stopMachine(machineDetails.getPrivateAddress(),
+                        DEFAULT_SHUTDOWN_TIMEOUT_AFTER_PROVISION_FAILURE, TimeUnit.MINUTES);
+                takeWarmMachineData(machineDetails);
+            }
+        };
+        logger.info("Creating warm machine pool of " + size + " machines for service " + serviceName
+                + " with template " + cloudTemplateName + ", idle timeout " + idleTimeoutSec + " seconds");
+        this.warmMachinePool = new WarmMachinePool(serviceName, starter, template.getLocationId(), size,
+                maxConcurrentStarts, TimeUnit.SECONDS.toMillis(idleTimeoutSec));
+        this.warmMachinePool.start();
+    }
+
+    private void closeWarmMachinePool() {
+        final WarmMachinePool pool = this.warmMachinePool;
+        if (pool != null) {
+            this.warmMachinePool = null;
+            pool.close();
+        }
+        synchronized (RUNNING_WARM_MACHINE_POOL_IDS) {
+            RUNNING_WARM_MACHINE_POOL_IDS.remove(warmMachinePoolId);
+        }
+    }
+
+    // records an idle machine of the warm machine pool, so it can be stopped if the ESM restarts.
+    private void writeWarmMachineData(final MachineDetails machineDetails) {
+        if (managementSpace == null) {
+            logger.fine("managementSpace is null, warm machine " + machineDetails + " is not recorded");
+            return;
+        }
+        final WarmMachineData warmMachineData = new WarmMachineData();
+        warmMachineData.setServiceName(serviceName);
+        warmMachineData.setOwnerId(warmMachinePoolId);
+        warmMachineData.setMachineId(machineDetails.getMachineId());
+        warmMachineData.setPrivateAddress(machineDetails.getPrivateAddress());
+        warmMachineData.setPublicAddress(machineDetails.getPublicAddress());
+        logger.fine("Writing warm machine : " + warmMachineData + " to management space");
+        managementSpace.write(warmMachineData);
+    }
+
+    private void takeWarmMachineData(final MachineDetails machineDetails) {
+        if (managementSpace == null) {
+            return;
+        }
+        final WarmMachineData template = new WarmMachineData();
+        template.setServiceName(serviceName);
+        template.setOwnerId(warmMachinePoolId);
+        template.setPrivateAddress(machineDetails.getPrivateAddress());
+        try {
+            managementSpace.take(template);
+        } catch (final Exception e) {
+            // the machine would be stopped by the next ESM, so this is only logged.
+            logger.log(Level.WARNING, "Failed to remove warm machine " + machineDetails
+                    + " from the management space: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops the idle machines recorded by warm machine pools of this service that are no longer running, such as the
+     * pool of an ESM that was restarted. A machine that fails to stop stays recorded and is stopped by a later call.
+     */
+    private void stopOrphanedWarmMachines() {
+        if (managementSpace == null) {
+            logger.fine("managementSpace is null, stopOrphanedWarmMachines is aborted");
+            return;
+        }
+        final WarmMachineData template = new WarmMachineData();
+        template.setServiceName(serviceName);
+        final WarmMachineData[] warmMachines;
+        try {
+            warmMachines = managementSpace.readMultiple(template);
+        } catch (final Exception e) {
+            logger.log(Level.WARNING, "Failed to read the warm machines of service " + serviceName
+                    + " from the management space: " + e.getMessage(), e);
+            return;
+        }
+        for (final WarmMachineData warmMachine : warmMachines) {
+            synchronized (RUNNING_WARM_MACHINE_POOL_IDS) {
+                if (RUNNING_WARM_MACHINE_POOL_IDS.contains(warmMachine.getOwnerId())) {
+                    continue;
+                }
+            }
+            logger.info("Stopping orphaned warm machine " + warmMachine + " of service " + serviceName);
+            try {
+                cloudifyProvisioning.stopMachine(warmMachine.getPrivateAddress(),
+                        DEFAULT_SHUTDOWN_TIMEOUT_AFTER_PROVISION_FAILURE, TimeUnit.MINUTES);
+                managementSpace.takeById(WarmMachineData.class, warmMachine.getUid());
+            } catch (final Exception e) {
+                logger.log(Level.WARNING, "Failed to stop orphaned warm machine " + warmMachine + ": "
+                        + e.getMessage(), e);
+            }
+        }
+    }
+
     // throttling done to prevent esm from overloading
     // management machine with start-machine requests in-case of failure.
     private void blockStartMachineOnException() {
@@ -953,14 +1146,11 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
     }
 
     private void initCloudObject(final String cloudConfigDirectory, final String overridesScript) throws DSLException {
-        final DSLReader reader = new DSLReader();
-        reader.setDslFileNameSuffix(DSLUtils.CLOUD_DSL_FILE_NAME_SUFFIX);
-        reader.setWorkDir(new File(cloudConfigDirectory));
-        reader.setCreateServiceContext(false);
-        reader.setOverridesScript(overridesScript);
-
-        this.cloud = reader.readDslEntity(Cloud.class);
-        this.cloudDslFile = reader.getDslFile();
+        // services deployed with the same overrides share the parsed cloud, each getting its own copy.
+        final ParsedCloudCache.ParsedCloud parsedCloud =
+                ParsedCloudCache.read(new File(cloudConfigDirectory), null, overridesScript);
+        this.cloud = parsedCloud.getCloud();
+        this.cloudDslFile = parsedCloud.getDslFile();
     }
 
     @Override
@@ -1020,7 +1210,7 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
 //                this.cloud = ServiceReader.readCloudFromDirectory(rightCloudConfigPath, cloudOverridesPerService);
 //                cloudConfigDirectoryPath = rightCloudConfigPath;
 //            }
-            final ProvisioningDriverClassBuilder builder = new ProvisioningDriverClassBuilder();
+            final ProvisioningDriverClassBuilder builder = this.driverClassBuilder;
             final Object computeProvisioningInstance = builder.build(cloudConfigDirectoryPath,
                     this.cloud.getConfiguration().getClassName());
             // validate instance for depreciation reasons
@@ -1283,9 +1473,19 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
     @Override
     public void destroy()
             throws Exception {
-        this.cloudifyProvisioning.close();
-        if (isStorageTemplateUsed()) {
-            this.storageProvisioning.close();
+        try {
+            // idle machines have no agent, so nothing else would stop them.
+            closeWarmMachinePool();
+            this.cloudifyProvisioning.close();
+        } finally {
+            try {
+                if (isStorageTemplateUsed()) {
+                    this.storageProvisioning.close();
+                }
+            } finally {
+                // releases this adapter's hold on the shared driver class loaders, even if a driver failed to close.
+                this.driverClassBuilder.destroy();
+            }
         }
         // not closing globalAdminMutex, it's a static object, and this is intentional.
     }
@@ -1344,6 +1544,9 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
     @Override
     public void cleanupMachineResources(final long duration, final TimeUnit timeUnit)
             throws ElasticMachineProvisioningException, InterruptedException, TimeoutException {
+        closeWarmMachinePool();
+        // machines of pools that were never closed, such as the pool of a restarted ESM.
+        stopOrphanedWarmMachines();
         try {
             cloudifyProvisioning.onServiceUninstalled(duration, timeUnit);
         } catch (final Exception e) {
@@ -1388,6 +1591,7 @@ public class ElasticMachineProvisioningCloudifyAdapter implements ElasticMachine
     public void blockingAfterPropertiesSet() throws ElasticMachineProvisioningException, InterruptedException {
         try {
             configureDrivers();
+            initWarmMachinePool();
         } catch (final CloudProvisioningException e) {
         	logger.log(Level.WARNING, e.getMessage(), e);
             throw new ElasticMachineProvisioningException("Failed to configure compute cloud driver for first use: "
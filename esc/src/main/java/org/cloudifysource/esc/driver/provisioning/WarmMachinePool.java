@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A pool of machines of a compute template, booted ahead of time so that starting a machine does not wait for the
+ * cloud to boot one.<br />
+ * The machines are started without an agent, since the agent is installed with the zones and reservation id of the
+ * request that claims the machine. The pool is filled up to its size once it is started and refilled in the
+ * background after every claim. Machines left idle for longer than the idle timeout are stopped and not replaced
+ * until the next claim, so the pool only costs machines while there is demand for them.
+ *
+ * @since 2.7.1
+ */
+class WarmMachinePool {
+
+	private static final Logger logger = Logger.getLogger(WarmMachinePool.class.getName());
+
+	// the time to wait before refilling the pool after a machine failed to start.
+	private static final long START_FAILURE_BACKOFF_MILLIS = 60 * 1000;
+	private static final long MAX_EXPIRY_CHECK_INTERVAL_MILLIS = 60 * 1000;
+
+	/**
+	 * Starts and stops the pooled machines. Since idle machines have no agent, the pool is the only owner of them, so
+	 * implementations should record the started machines outside of this process until they are stopped or claimed,
+	 * for the machines to be stopped if the process dies.
+	 */
+	interface MachineStarter {
+
+		/**
+		 * Starts a machine, without an agent.
+		 *
+		 * @param locationId
+		 *            The location to start the machine in.
+		 * @return The started machine.
+		 * @throws Exception
+		 *             If the machine could not be started.
+		 */
+		MachineDetails startMachine(String locationId) throws Exception;
+
+		/**
+		 * Stops a machine started by {@link #startMachine(String)}.
+		 *
+		 * @param machineDetails
+		 *            The machine.
+		 * @throws Exception
+		 *             If the machine could not be stopped.
+		 */
+		void stopMachine(MachineDetails machineDetails) throws Exception;
+	}
+
+	private final String name;
+	private final MachineStarter starter;
+	private final String locationId;
+	private final int size;
+	private final int maxConcurrentStarts;
+	private final long idleTimeoutMillis;
+	private final ScheduledExecutorService executor;
+
+	// guarded by this.
+	private final LinkedList<WarmMachine> idleMachines = new LinkedList<WarmMachine>();
+	private int startingMachines = 0;
+	private boolean refillScheduled = false;
+	private boolean closed = false;
+
+	// statistics, guarded by this.
+	private long claims = 0;
+	private long hits = 0;
+	private long machinesStarted = 0;
+	private long failedStarts = 0;
+	private long machinesExpired = 0;
+	private long hitCapacityRequests = 0;
+	private long hitCapacityMillis = 0;
+	private long missCapacityRequests = 0;
+	private long missCapacityMillis = 0;
+
+	/**
+	 * Constructor. The pool does not start machines until {@link #start()} is called.
+	 *
+	 * @param name
+	 *            The name of the pool, used in logs.
+	 * @param starter
+	 *            Starts and stops the machines.
+	 * @param locationId
+	 *            The location of the pooled machines.
+	 * @param size
+	 *            The number of idle machines to keep.
+	 * @param maxConcurrentStarts
+	 *            The number of machines started at the same time when filling the pool.
+	 * @param idleTimeoutMillis
+	 *            The time after which an idle machine is stopped, in milliseconds.
+	 */
+	WarmMachinePool(final String name, final MachineStarter starter, final String locationId, final int size,
+			final int maxConcurrentStarts, final long idleTimeoutMillis) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Warm machine pool size must be positive, got " + size);
+		}
+		this.name = name;
+		this.starter = starter;
+		this.locationId = locationId;
+		this.size = size;
+		this.maxConcurrentStarts = Math.max(1, maxConcurrentStarts);
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.executor = new ScheduledThreadPoolExecutor(this.maxConcurrentStarts + 1, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "WarmMachinePool-" + name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Fills the pool and starts stopping idle machines.
+	 */
+	public void start() {
+		final long expiryCheckInterval = Math.max(1, Math.min(idleTimeoutMillis, MAX_EXPIRY_CHECK_INTERVAL_MILLIS));
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				stopExpiredMachines();
+			}
+		}, expiryCheckInterval, expiryCheckInterval, TimeUnit.MILLISECONDS);
+		logger.info("Filling warm machine pool " + name + " with " + size + " machines");
+		refill();
+	}
+
+	/**
+	 * Claims an idle machine and refills the pool in the background.
+	 *
+	 * @param requestedLocationId
+	 *            The location the machine should be in, or null for the location of the pool.
+	 * @return The machine, or null if there is no idle machine in the location.
+	 */
+	public MachineDetails claim(final String requestedLocationId) {
+		WarmMachine claimed = null;
+		synchronized (this) {
+			if (closed) {
+				return null;
+			}
+			claims++;
+			if (isPoolLocation(requestedLocationId) && !idleMachines.isEmpty()) {
+				// the oldest machine, the closest to expiring.
+				claimed = idleMachines.removeFirst();
+				hits++;
+			}
+		}
+		refill();
+
+		if (claimed == null) {
+			logger.info("No warm machine available in pool " + name + " for location " + requestedLocationId);
+			return null;
+		}
+		logger.info("Claimed warm machine " + claimed.getMachineDetails() + " from pool " + name + " after it was idle"
+				+ " for " + (System.currentTimeMillis() - claimed.getIdleSince()) + " ms");
+		return claimed.getMachineDetails();
+	}
+
+	private boolean isPoolLocation(final String requestedLocationId) {
+		return StringUtils.isBlank(requestedLocationId) || requestedLocationId.equals(locationId);
+	}
+
+	/**
+	 * Records the time it took a start machine request to provide an agent.
+	 *
+	 * @param hit
+	 *            true if the request claimed a machine from the pool.
+	 * @param millis
+	 *            The time from the request until the agent was available, in milliseconds.
+	 */
+	public synchronized void recordTimeToCapacity(final boolean hit, final long millis) {
+		if (hit) {
+			hitCapacityRequests++;
+			hitCapacityMillis += millis;
+		} else {
+			missCapacityRequests++;
+			missCapacityMillis += millis;
+		}
+	}
+
+	/**
+	 * Stops the idle machines and stops filling the pool. Machines being started are stopped once they are up.
+	 */
+	public void close() {
+		final List<WarmMachine> machines;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			machines = new ArrayList<WarmMachine>(idleMachines);
+			idleMachines.clear();
+		}
+		logger.info("Closing warm machine pool " + name + ", stopping " + machines.size() + " idle machines. "
+				+ getStatistics());
+		executor.shutdown();
+		for (final WarmMachine machine : machines) {
+			stopMachine(machine.getMachineDetails());
+		}
+	}
+
+	private void refill() {
+		synchronized (this) {
+			while (!closed && !refillScheduled && startingMachines < maxConcurrentStarts
+					&& idleMachines.size() + startingMachines < size) {
+				startingMachines++;
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						startMachine();
+					}
+				});
+			}
+		}
+	}
+
+	private void startMachine() {
+		MachineDetails machineDetails = null;
+		try {
+			logger.fine("Starting a machine for warm machine pool " + name);
+			machineDetails = starter.startMachine(locationId);
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Failed to start a machine for warm machine pool " + name + ", retrying in "
+					+ TimeUnit.MILLISECONDS.toSeconds(START_FAILURE_BACKOFF_MILLIS) + " seconds: " + e.getMessage(), e);
+			synchronized (this) {
+				startingMachines--;
+				failedStarts++;
+				if (closed || refillScheduled) {
+					return;
+				}
+				// do not keep asking a failing cloud for machines.
+				refillScheduled = true;
+			}
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (WarmMachinePool.this) {
+						refillScheduled = false;
+					}
+					refill();
+				}
+			}, START_FAILURE_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+			return;
+		}
+
+		if (machineDetails.isAgentRunning()) {
+			// the agent already has its zones and reservation id, so the machine can not be handed out.
+			logger.warning("Machine " + machineDetails + " was started with an agent running, which can not be claimed"
+					+ " by other requests. Closing warm machine pool " + name);
+			synchronized (this) {
+				startingMachines--;
+			}
+			stopMachine(machineDetails);
+			close();
+			return;
+		}
+
+		boolean pooled = false;
+		synchronized (this) {
+			startingMachines--;
+			if (!closed) {
+				idleMachines.addLast(new WarmMachine(machineDetails, System.currentTimeMillis()));
+				machinesStarted++;
+				pooled = true;
+			}
+		}
+		if (pooled) {
+			logger.info("Added machine " + machineDetails + " to warm machine pool " + name);
+			refill();
+		} else {
+			stopMachine(machineDetails);
+		}
+	}
+
+	private void stopExpiredMachines() {
+		final List<WarmMachine> expired = new ArrayList<WarmMachine>();
+		final long now = System.currentTimeMillis();
+		synchronized (this) {
+			final Iterator<WarmMachine> iterator = idleMachines.iterator();
+			while (iterator.hasNext()) {
+				final WarmMachine machine = iterator.next();
+				if (now - machine.getIdleSince() >= idleTimeoutMillis) {
+					iterator.remove();
+					expired.add(machine);
+					machinesExpired++;
+				}
+			}
+		}
+		for (final WarmMachine machine : expired) {
+			logger.info("Stopping machine " + machine.getMachineDetails() + " of warm machine pool " + name
+					+ " after it was idle for " + (now - machine.getIdleSince()) + " ms");
+			stopMachine(machine.getMachineDetails());
+		}
+	}
+
+	private void stopMachine(final MachineDetails machineDetails) {
+		try {
+			starter.stopMachine(machineDetails);
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Failed to stop machine " + machineDetails + " of warm machine pool " + name
+					+ ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return true if the pool was closed.
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return The number of idle machines.
+	 */
+	public synchronized int getIdleMachines() {
+		return idleMachines.size();
+	}
+
+	/**
+	 * @return The number of machines being started.
+	 */
+	public synchronized int getStartingMachines() {
+		return startingMachines;
+	}
+
+	/**
+	 * @return The number of claims.
+	 */
+	public synchronized long getClaims() {
+		return claims;
+	}
+
+	/**
+	 * @return The number of claims that got a machine.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The share of claims that got a machine, between 0 and 1.
+	 */
+	public synchronized double getHitRate() {
+		return claims == 0 ? 0 : (double) hits / claims;
+	}
+
+	/**
+	 * @return The number of machines stopped after being idle for too long.
+	 */
+	public synchronized long getMachinesExpired() {
+		return machinesExpired;
+	}
+
+	/**
+	 * @return The average time it took requests that claimed a machine to provide an agent, in milliseconds.
+	 */
+	public synchronized long getAverageHitTimeToCapacity() {
+		return hitCapacityRequests == 0 ? 0 : hitCapacityMillis / hitCapacityRequests;
+	}
+
+	/**
+	 * @return The average time it took requests that did not claim a machine to provide an agent, in milliseconds.
+	 */
+	public synchronized long getAverageMissTimeToCapacity() {
+		return missCapacityRequests == 0 ? 0 : missCapacityMillis / missCapacityRequests;
+	}
+
+	/**
+	 * @return A description of the pool statistics, for logs.
+	 */
+	public synchronized String getStatistics() {
+		return "Warm machine pool " + name + " statistics: idle=" + idleMachines.size() + ", starting="
+				+ startingMachines + ", claims=" + claims + ", hits=" + hits + ", hitRate="
+				+ Math.round(getHitRate() * 100) + "%, started=" + machinesStarted + ", failedStarts=" + failedStarts
+				+ ", expired=" + machinesExpired + ", avgTimeToCapacityOnHit=" + getAverageHitTimeToCapacity()
+				+ "ms, avgTimeToCapacityOnMiss=" + getAverageMissTimeToCapacity() + "ms";
+	}
+
+	/**
+	 * An idle machine.
+	 */
+	private static final class WarmMachine {
+
+		private final MachineDetails machineDetails;
+		private final long idleSince;
+
+		private WarmMachine(final MachineDetails machineDetails, final long idleSince) {
+			this.machineDetails = machineDetails;
+			this.idleSince = idleSince;
+		}
+
+		public MachineDetails getMachineDetails() {
+			return machineDetails;
+		}
+
+		public long getIdleSince() {
+			return idleSince;
+		}
+	}
+}
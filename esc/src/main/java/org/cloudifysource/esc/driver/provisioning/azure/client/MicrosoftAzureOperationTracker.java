@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.azure.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.esc.driver.provisioning.azure.model.Operation;
+
+/********************************************************************************
+ * Tracks the asynchronous operations of the Azure management API, and queues the requests made to each hosted
+ * service.<br />
+ * All the outstanding operations of a client are polled by a single thread, which runs only while there are
+ * operations to track, so requests waiting for many operations at the same time do not each poll the API.<br />
+ * Azure rejects a request to a hosted service while another operation is running on it, so requests to the same
+ * hosted service wait in line, while requests to different hosted services run in parallel.
+ *
+ * @since 2.7.1
+ ********************************************************************************/
+final class MicrosoftAzureOperationTracker {
+
+	private static final Logger logger = Logger.getLogger(MicrosoftAzureOperationTracker.class.getName());
+
+	private static final String SUCCEEDED = "Succeeded";
+	private static final String FAILED = "Failed";
+
+	private final MicrosoftAzureRestClient client;
+	private final long pollingInterval;
+
+	// request id -> the operation waiting for it.
+	private final ConcurrentMap<String, PendingOperation> pendingOperations =
+			new ConcurrentHashMap<String, PendingOperation>();
+	private final Object pollerLock = new Object();
+	private boolean polling = false;
+
+	// hosted service name -> the requests waiting for it. Guarded by itself.
+	private final Map<String, HostedServiceQueue> hostedServiceQueues = new HashMap<String, HostedServiceQueue>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param client
+	 *            The client used to query the operations.
+	 * @param pollingInterval
+	 *            The time between queries of the outstanding operations, in milliseconds.
+	 */
+	MicrosoftAzureOperationTracker(final MicrosoftAzureRestClient client, final long pollingInterval) {
+		this.client = client;
+		this.pollingInterval = pollingInterval;
+	}
+
+	/**
+	 * Starts tracking an operation.
+	 *
+	 * @param requestId
+	 *            The request id returned by the request that started the operation.
+	 * @return The operation, completed once it succeeds or fails.
+	 */
+	public PendingOperation track(final String requestId) {
+		final PendingOperation pendingOperation = new PendingOperation(requestId);
+		pendingOperations.put(requestId, pendingOperation);
+		synchronized (pollerLock) {
+			if (!polling) {
+				polling = true;
+				final Thread poller = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						poll();
+					}
+				}, "Azure operations poller");
+				poller.setDaemon(true);
+				poller.start();
+			}
+		}
+		return pendingOperation;
+	}
+
+	/**
+	 * Waits for an operation to finish.
+	 *
+	 * @param requestId
+	 *            The request id returned by the request that started the operation.
+	 * @param endTime
+	 *            The time to stop waiting.
+	 * @throws MicrosoftAzureException
+	 *             If the operation failed.
+	 * @throws TimeoutException
+	 *             If the operation did not finish by the end time.
+	 * @throws InterruptedException .
+	 */
+	public void waitForOperation(final String requestId, final long endTime)
+			throws MicrosoftAzureException, TimeoutException, InterruptedException {
+		final PendingOperation pendingOperation = track(requestId);
+		final Operation operation;
+		try {
+			operation = pendingOperation.await(endTime - System.currentTimeMillis());
+		} finally {
+			pendingOperations.remove(requestId, pendingOperation);
+		}
+		if (operation == null) {
+			throw new TimeoutException("Timed out waiting for operation to finish. last state was : "
+					+ pendingOperation.getLastStatus());
+		}
+		if (operation.getStatus().equals(FAILED)) {
+			throw new MicrosoftAzureException(operation.getError().getCode(), operation.getError().getMessage());
+		}
+	}
+
+	/**
+	 * Waits for the previous requests to the given hosted service to finish. Every successful call must be followed
+	 * by a call to {@link #releaseHostedService(String)}.
+	 *
+	 * @param hostedServiceName
+	 *            The hosted service name.
+	 * @param timeoutMillis
+	 *            The time to wait, in milliseconds.
+	 * @throws TimeoutException
+	 *             If the previous requests did not finish in time.
+	 * @throws InterruptedException .
+	 */
+	public void acquireHostedService(final String hostedServiceName, final long timeoutMillis)
+			throws TimeoutException, InterruptedException {
+		HostedServiceQueue queue;
+		synchronized (hostedServiceQueues) {
+			queue = hostedServiceQueues.get(hostedServiceName);
+			if (queue == null) {
+				queue = new HostedServiceQueue();
+				hostedServiceQueues.put(hostedServiceName, queue);
+			}
+			queue.users++;
+		}
+
+		boolean acquired = false;
+		try {
+			acquired = queue.lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+		} finally {
+			if (!acquired) {
+				leaveQueue(hostedServiceName, queue);
+			}
+		}
+		if (!acquired) {
+			throw new TimeoutException("Timed out waiting for the pending requests to hosted service "
+					+ hostedServiceName + " after " + timeoutMillis + " milliseconds");
+		}
+	}
+
+	/**
+	 * Lets the next request to the given hosted service run.
+	 *
+	 * @param hostedServiceName
+	 *            The hosted service name.
+	 */
+	public void releaseHostedService(final String hostedServiceName) {
+		final HostedServiceQueue queue;
+		synchronized (hostedServiceQueues) {
+			queue = hostedServiceQueues.get(hostedServiceName);
+		}
+		if (queue == null) {
+			throw new IllegalStateException("Hosted service " + hostedServiceName + " was not acquired");
+		}
+		queue.lock.unlock();
+		leaveQueue(hostedServiceName, queue);
+	}
+
+	private void leaveQueue(final String hostedServiceName, final HostedServiceQueue queue) {
+		synchronized (hostedServiceQueues) {
+			queue.users--;
+			if (queue.users == 0) {
+				hostedServiceQueues.remove(hostedServiceName);
+			}
+		}
+	}
+
+	private void poll() {
+		try {
+			while (true) {
+				synchronized (pollerLock) {
+					if (pendingOperations.isEmpty()) {
+						polling = false;
+						return;
+					}
+				}
+				for (final PendingOperation pendingOperation : pendingOperations.values()) {
+					pollOperation(pendingOperation);
+				}
+				Thread.sleep(pollingInterval);
+			}
+		} catch (final InterruptedException e) {
+			logger.fine("Azure operations poller interrupted");
+			synchronized (pollerLock) {
+				polling = false;
+			}
+		}
+	}
+
+	private void pollOperation(final PendingOperation pendingOperation) {
+		try {
+			final Operation operation = client.getOperation(pendingOperation.requestId);
+			final String status = operation.getStatus();
+			pendingOperation.lastStatus = status;
+			if (SUCCEEDED.equals(status) || FAILED.equals(status)) {
+				pendingOperations.remove(pendingOperation.requestId, pendingOperation);
+				pendingOperation.complete(operation);
+			}
+		} catch (final Exception e) {
+			// the operation is queried again on the next round, until its waiter gives up.
+			logger.log(Level.FINE, "Failed to query operation " + pendingOperation.requestId + " : "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/********************************************************************************
+	 * An operation being tracked.
+	 ********************************************************************************/
+	static final class PendingOperation {
+
+		private final String requestId;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Operation operation;
+		private volatile String lastStatus;
+
+		PendingOperation(final String requestId) {
+			this.requestId = requestId;
+		}
+
+		void complete(final Operation finishedOperation) {
+			this.operation = finishedOperation;
+			done.countDown();
+		}
+
+		/**
+		 * Waits for the operation to finish.
+		 *
+		 * @param timeoutMillis
+		 *            The time to wait, in milliseconds.
+		 * @return The finished operation, or null if it did not finish in time.
+		 * @throws InterruptedException .
+		 */
+		public Operation await(final long timeoutMillis) throws InterruptedException {
+			if (done.await(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS)) {
+				return operation;
+			}
+			return null;
+		}
+
+		public String getRequestId() {
+			return requestId;
+		}
+
+		/**
+		 * @return The status the operation was last seen in, or null if it was not queried yet.
+		 */
+		public String getLastStatus() {
+			return lastStatus;
+		}
+	}
+
+	/********************************************************************************
+	 * The requests to a single hosted service.
+	 ********************************************************************************/
+	private static final class HostedServiceQueue {
+		private final ReentrantLock lock = new ReentrantLock(true);
+		// the number of requests holding or waiting for the lock. Guarded by the queues map.
+		private int users = 0;
+	}
+}
@@ -17,10 +17,8 @@
 
 package org.cloudifysource.esc.driver.provisioning.azure.client;
 
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -67,6 +65,10 @@ import com.sun.jersey.client.urlconnection.HTTPSProperties;
  * back end of a front end of you application. authentication is achieved by
  * using self-signed certificates (OpenSSL, makecert)
  * 
+ * Asynchronous operations are tracked by a single poller for all the requests
+ * of the client, and requests to the same cloud service wait for each other,
+ * while requests to different cloud services run in parallel.
+ * 
  * @author elip
  ********************************************************************************/
 
@@ -83,8 +85,6 @@ public class MicrosoftAzureRestClient {
 	private String cloudServicePrefix;
 	private String storagePrefix;
 
-	private Lock pendingRequest = new ReentrantLock(true);
-
 	private MicrosoftAzureRequestBodyBuilder requestBodyBuilder;
 
 	// Azure Management Service API End Point
@@ -96,12 +96,11 @@ public class MicrosoftAzureRestClient {
 	private static final String CONTENT_TYPE_HEADER_NAME = "Content-Type";
 	private static final String CONTENT_TYPE_HEADER_VALUE = "application/xml";
 
-	private static final String FAILED = "Failed";
-	private static final String SUCCEEDED = "Succeeded";
-	private static final String IN_PROGRESS = "InProgress";
-
 	private static final int MAX_RETRIES = 5;
 
+	private static final String CONFLICT_ERROR = "ConflictError";
+	private static final String OPERATION_IN_PROGRESS_MESSAGE = "currently performing an operation";
+
 	private static final long DEFAULT_POLLING_INTERVAL = 5 * 1000; // 5 seconds
 
 	private static final long ESTIMATED_TIME_TO_START_VM = 5 * 60 * 1000; // 5
@@ -110,6 +109,10 @@ public class MicrosoftAzureRestClient {
 	private WebResource resource;
 	private Client client;
 
+	private long pollingInterval = DEFAULT_POLLING_INTERVAL;
+	private MicrosoftAzureOperationTracker operationTracker = new MicrosoftAzureOperationTracker(this,
+			DEFAULT_POLLING_INTERVAL);
+
 	private String subscriptionId;
 
 	private MicrosoftAzureSSLHelper sslHelper;
@@ -132,6 +135,42 @@ public class MicrosoftAzureRestClient {
 
 	}
 
+	/**
+	 * Creates a client for the given management end point, used to test the
+	 * client against a local stub of the management API.
+	 * 
+	 * @param subscriptionId
+	 *            .
+	 * @param managementEndPoint
+	 *            - the management API base URL.
+	 * @param client
+	 *            - the HTTP client.
+	 * @param pollingInterval
+	 *            - the time between queries of asynchronous operations.
+	 * @param affinityPrefix
+	 *            .
+	 * @param cloudServicePrefix
+	 *            .
+	 * @param storagePrefix
+	 *            .
+	 */
+	MicrosoftAzureRestClient(final String subscriptionId,
+			final String managementEndPoint, final Client client,
+			final long pollingInterval, final String affinityPrefix,
+			final String cloudServicePrefix, final String storagePrefix) {
+		this.subscriptionId = subscriptionId;
+		this.affinityPrefix = affinityPrefix;
+		this.cloudServicePrefix = cloudServicePrefix;
+		this.storagePrefix = storagePrefix;
+		this.client = client;
+		this.resource = client.resource(managementEndPoint);
+		this.requestBodyBuilder = new MicrosoftAzureRequestBodyBuilder(
+				affinityPrefix, cloudServicePrefix, storagePrefix);
+		this.pollingInterval = pollingInterval;
+		this.operationTracker = new MicrosoftAzureOperationTracker(this,
+				pollingInterval);
+	}
+
 	public String getSubscriptionId() {
 		return subscriptionId;
 	}
@@ -377,7 +416,7 @@ public class MicrosoftAzureRestClient {
 	/**
 	 * This method creates a virtual machine and a corresponding cloud service.
 	 * the cloud service will use the affinity group specified by deploymentDesc.getAffinityGroup();
-	 * If another request was made this method will wait until the pending request is finished.
+	 * Requests to provision other virtual machines run in parallel, each on its own cloud service.
 	 * 
 	 * If a failure happened after the cloud service was created, this method will delete it and throw.
 	 * 
@@ -406,68 +445,62 @@ public class MicrosoftAzureRestClient {
 							+ "The timeout is less then the estimated time to provision the machine");
 		}
 
-		logger.fine(getThreadIdentity() + "Waiting for pending request lock for lock " + pendingRequest.hashCode());
-		boolean lockAcquired = pendingRequest.tryLock(lockTimeout,
-				TimeUnit.MILLISECONDS);
-
 		String serviceName = null;
 		Deployment deployment;
 
-		if (lockAcquired) {
-
-			logger.fine(getThreadIdentity() + "Lock acquired : " + pendingRequest.hashCode());
-			logger.fine(getThreadIdentity() + "Executing a request to provision a new virtual machine");
+		logger.fine(getThreadIdentity() + "Executing a request to provision a new virtual machine");
 
-			try {
+		try {
 
-				serviceName = createCloudService(
-						deplyomentDesc.getAffinityGroup(), endTime);
+			serviceName = createCloudService(
+					deplyomentDesc.getAffinityGroup(), endTime);
 
-				deplyomentDesc.setHostedServiceName(serviceName);
-				deplyomentDesc.setDeploymentName(serviceName);
+			deplyomentDesc.setHostedServiceName(serviceName);
+			deplyomentDesc.setDeploymentName(serviceName);
 
-				deployment = requestBodyBuilder.buildDeployment(deplyomentDesc,isWindows);
+			deployment = requestBodyBuilder.buildDeployment(deplyomentDesc,isWindows);
 
-				String xmlRequest = MicrosoftAzureModelUtils.marshall(
-						deployment, false);
+			final String xmlRequest = MicrosoftAzureModelUtils.marshall(
+					deployment, false);
 
-				logger.fine(getThreadIdentity() + "Launching virtual machine : "
-						+ deplyomentDesc.getRoleName());
+			logger.fine(getThreadIdentity() + "Launching virtual machine : "
+					+ deplyomentDesc.getRoleName());
 
-				ClientResponse response = doPost("/services/hostedservices/"
-						+ serviceName + "/deployments", xmlRequest);
-				String requestId = extractRequestId(response);
-				waitForRequestToFinish(requestId, endTime);
-                logger.fine(getThreadIdentity() + "About to release lock " + pendingRequest.hashCode());
-				pendingRequest.unlock();
-			} catch (final Exception e) {
-				logger.log(Level.FINE, getThreadIdentity() + "A failure occured : about to release lock "
-                        + pendingRequest.hashCode(), e);
-				if (serviceName != null) {
-					try {
-						// delete the dedicated cloud service that was created for the virtual machine.
-						deleteCloudService(serviceName, endTime);
-					} catch (final Exception e1) {
-						logger.warning("Failed deleting cloud service " + serviceName + " : " + e1.getMessage());
-						logger.finest(ExceptionUtils.getFullStackTrace(e1));
+			final String deploymentsUrl = "/services/hostedservices/"
+					+ serviceName + "/deployments";
+			operationTracker.acquireHostedService(serviceName, lockTimeout);
+			try {
+				String requestId = submitOperation(new Callable<ClientResponse>() {
+					@Override
+					public ClientResponse call() throws MicrosoftAzureException {
+						return doPost(deploymentsUrl, xmlRequest);
 					}
+				}, endTime);
+				waitForRequestToFinish(requestId, endTime);
+			} finally {
+				operationTracker.releaseHostedService(serviceName);
+			}
+		} catch (final Exception e) {
+			logger.log(Level.FINE, getThreadIdentity() + "A failure occured while provisioning a virtual machine", e);
+			if (serviceName != null) {
+				try {
+					// delete the dedicated cloud service that was created for the virtual machine.
+					deleteCloudService(serviceName, endTime);
+				} catch (final Exception e1) {
+					logger.warning("Failed deleting cloud service " + serviceName + " : " + e1.getMessage());
+					logger.finest(ExceptionUtils.getFullStackTrace(e1));
 				}
-				pendingRequest.unlock();
-				if (e instanceof MicrosoftAzureException) {
-					throw (MicrosoftAzureException)e;
-				}
-				if (e instanceof TimeoutException) {
-					throw (TimeoutException)e;
-				}
-				if (e instanceof InterruptedException) {
-					throw (InterruptedException)e;
-				}
-				throw new MicrosoftAzureException(e);
 			}
-		} else {
-			throw new TimeoutException(
-					"Failed to acquire lock for deleteDeployment request after + "
-							+ lockTimeout + " milliseconds");
+			if (e instanceof MicrosoftAzureException) {
+				throw (MicrosoftAzureException)e;
+			}
+			if (e instanceof TimeoutException) {
+				throw (TimeoutException)e;
+			}
+			if (e instanceof InterruptedException) {
+				throw (InterruptedException)e;
+			}
+			throw new MicrosoftAzureException(e);
 		}
 
 		Deployment deploymentResponse = null;
@@ -622,10 +655,19 @@ public class MicrosoftAzureRestClient {
 		}
 		
 		logger.fine("Deleting cloud service : " + cloudServiceName);
-		ClientResponse response = doDelete("/services/hostedservices/"
-				+ cloudServiceName);
-		String requestId = extractRequestId(response);
-		waitForRequestToFinish(requestId, endTime);
+		final String cloudServiceUrl = "/services/hostedservices/" + cloudServiceName;
+		operationTracker.acquireHostedService(cloudServiceName, endTime - System.currentTimeMillis());
+		try {
+			String requestId = submitOperation(new Callable<ClientResponse>() {
+				@Override
+				public ClientResponse call() throws MicrosoftAzureException {
+					return doDelete(cloudServiceUrl);
+				}
+			}, endTime);
+			waitForRequestToFinish(requestId, endTime);
+		} finally {
+			operationTracker.releaseHostedService(cloudServiceName);
+		}
 		return true;
 	}
 
@@ -729,7 +771,7 @@ public class MicrosoftAzureRestClient {
 					return;
 				} else {
 					logger.fine("Disk " + diskName + " is still attached to role " + osDisk.getAttachedTo().getRoleName());
-					Thread.sleep(DEFAULT_POLLING_INTERVAL);
+					Thread.sleep(pollingInterval);
 				}
 			} else {
 				throw new MicrosoftAzureException("Disk " + diskName + " does not exist");
@@ -811,48 +853,24 @@ public class MicrosoftAzureRestClient {
 			return true;
 		}
 		
-		long currentTimeInMillis = System.currentTimeMillis();
-		long lockTimeout = endTime - currentTimeInMillis;
-
-		logger.fine(getThreadIdentity() + "Waiting for pending request lock...");
-		boolean lockAcquired = pendingRequest.tryLock(lockTimeout,
-				TimeUnit.MILLISECONDS);
-
-		if (lockAcquired) {
-
-			logger.fine(getThreadIdentity() + "Lock acquired : " + pendingRequest.hashCode());
-			logger.fine(getThreadIdentity() + "Executing a request to delete virtual machine");
-
-			try {
+		logger.fine(getThreadIdentity() + "Deleting deployment of virtual machine from : "
+				+ deploymentName);
 
-				logger.fine(getThreadIdentity() + "Deleting deployment of virtual machine from : "
-						+ deploymentName);
-
-				ClientResponse response = doDelete("/services/hostedservices/"
-						+ hostedServiceName + "/deployments/" + deploymentName);
-				String requestId = extractRequestId(response);
-				waitForRequestToFinish(requestId, endTime);
-				pendingRequest.unlock();
-				logger.fine(getThreadIdentity() + "Lock unlcoked");
-			} catch (final Exception e) {
-				logger.fine(getThreadIdentity() + "About to release lock " + pendingRequest.hashCode());
-				pendingRequest.unlock();
-				if (e instanceof MicrosoftAzureException) {
-					throw (MicrosoftAzureException)e;
-				}
-				if (e instanceof TimeoutException) {
-					throw (TimeoutException)e;
-				}
-				if (e instanceof InterruptedException) {
-					throw (InterruptedException)e;
+		final String deploymentUrl = "/services/hostedservices/"
+				+ hostedServiceName + "/deployments/" + deploymentName;
+		operationTracker.acquireHostedService(hostedServiceName, endTime - System.currentTimeMillis());
+		try {
+			String requestId = submitOperation(new Callable<ClientResponse>() {
+				@Override
+				public ClientResponse call() throws MicrosoftAzureException {
+					return doDelete(deploymentUrl);
 				}
-			}
-			return true;
-		} else {
-			throw new TimeoutException(
-					"Failed to acquire lock for deleteDeployment request after + "
-							+ lockTimeout + " milliseconds");
+			}, endTime);
+			waitForRequestToFinish(requestId, endTime);
+		} finally {
+			operationTracker.releaseHostedService(hostedServiceName);
 		}
+		return true;
 
 	}
 
@@ -1219,7 +1237,7 @@ public class MicrosoftAzureRestClient {
 			if (status.equals(state)) {
 				return deployment;
 			} else {
-				Thread.sleep(DEFAULT_POLLING_INTERVAL);
+				Thread.sleep(pollingInterval);
 			}
 
 			if (System.currentTimeMillis() > endTime) {
@@ -1252,7 +1270,7 @@ public class MicrosoftAzureRestClient {
 			if (status.equals(state)) {
 				return deployment;
 			} else {
-				Thread.sleep(DEFAULT_POLLING_INTERVAL);
+				Thread.sleep(pollingInterval);
 			}
 			if (System.currentTimeMillis() > endTime) {
 				throw new TimeoutException(
@@ -1284,37 +1302,45 @@ public class MicrosoftAzureRestClient {
 	private void waitForRequestToFinish(final String requestId,
 			final long endTime) throws MicrosoftAzureException,
 			TimeoutException, InterruptedException {
+		operationTracker.waitForOperation(requestId, endTime);
+	}
 
-		while (true) {
-
-			// Query Azure for operation details
-			Operation operation = getOperation(requestId);
-			String status = operation.getStatus();
-			if (!status.equals(IN_PROGRESS)) {
+	/**
+	 * Submits a request that starts an asynchronous operation. if Azure rejects
+	 * the request because another operation is running on the same resource,
+	 * the request is submitted again once the polling interval passed.
+	 * 
+	 * @return the request id of the started operation.
+	 */
+	private String submitOperation(final Callable<ClientResponse> request,
+			final long endTime) throws MicrosoftAzureException,
+			TimeoutException, InterruptedException {
 
-				// if operation succeeded, we are good to go
-				if (status.equals(SUCCEEDED)) {
-					return;
+		while (true) {
+			try {
+				return extractRequestId(request.call());
+			} catch (final MicrosoftAzureException e) {
+				if (!CONFLICT_ERROR.equals(e.getStatus()) || e.getMessage() == null
+						|| !e.getMessage().contains(OPERATION_IN_PROGRESS_MESSAGE)) {
+					throw e;
 				}
-				if (status.equals(FAILED)) {
-					String errorMessage = operation.getError().getMessage();
-					String errorCode = operation.getError().getCode();
-					throw new MicrosoftAzureException(errorCode, errorMessage);
+				if (System.currentTimeMillis() + pollingInterval > endTime) {
+					throw new TimeoutException(
+							"Timed out waiting for a conflicting operation to finish : "
+									+ e.getMessage());
 				}
-			} else {
-				Thread.sleep(DEFAULT_POLLING_INTERVAL);
-			}
-
-			if (System.currentTimeMillis() > endTime) {
-				throw new TimeoutException(
-						"Timed out waiting for operation to finish. last state was : "
-								+ status);
+				logger.fine(getThreadIdentity() + "Request conflicts with a running operation, retrying : "
+						+ e.getMessage());
+				Thread.sleep(pollingInterval);
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Exception e) {
+				throw new MicrosoftAzureException(e);
 			}
 		}
-
 	}
 
-	private Operation getOperation(final String requestId)
+	Operation getOperation(final String requestId)
 			throws MicrosoftAzureException, TimeoutException {
 
 		ClientResponse response = doGet("/operations/" + requestId);
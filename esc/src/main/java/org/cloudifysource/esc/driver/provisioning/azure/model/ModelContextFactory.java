@@ -67,17 +67,21 @@ public final class ModelContextFactory {
 		return result;
 	}
 	
+	// JAXB contexts are thread safe and expensive to create, so a single one is shared.
+	private static JAXBContext context = null;
+
 	/**
 	 * 
 	 * @return - a {@link JAXBContext} to be used for marshaling and unmarshalling objects
 	 */
 	public static synchronized JAXBContext createInstance() {
-		JAXBContext context = null;
-		try {
-			context = JAXBContext.newInstance(getClasses());				
-		} catch (JAXBException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Could not create JAXBContext : " + e.getMessage());
+		if (context == null) {
+			try {
+				context = JAXBContext.newInstance(getClasses());
+			} catch (JAXBException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Could not create JAXBContext : " + e.getMessage());
+			}
 		}
 		return context;
 	}
@@ -44,7 +44,9 @@ import org.openspaces.admin.internal.gsa.InternalGridServiceAgent;
 import org.openspaces.admin.internal.support.NetworkExceptionHelper;
 
 import java.io.File;
+import java.net.InetSocketAddress;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -73,6 +75,7 @@ public class ByonProvisioningDriver extends BaseProvisioningDriver {
 
 	private static final int MANAGEMENT_LOCATION_TIMEOUT = 10;
 	private static final int THREAD_WAITING_IDLE_TIME_IN_SECS = 10;
+	private static final int REST_CONNECTION_TIMEOUT_IN_SECS = 10;
 	private static final String CLEAN_GS_FILES_ON_SHUTDOWN = "cleanGsFilesOnShutdown";
 	private static final String CLOUDIFY_ITEMS_TO_CLEAN = "itemsToClean";
 	private static ResourceBundle byonProvisioningDriverMessageBundle;
@@ -454,14 +457,19 @@ public class ByonProvisioningDriver extends BaseProvisioningDriver {
 		final Set<CustomNode> existingManagementServers = new HashSet<CustomNode>();
 		final Set<CustomNode> allNodes = getDeployer().getAllNodesByTemplateName(cloudTemplateName);
 		String managementIP = null;
+		// check all the nodes at once, a failed connection to the REST means this is not a management server.
+		final List<InetSocketAddress> restAddresses = new ArrayList<InetSocketAddress>();
 		for (final CustomNode server : allNodes) {
-			try {
-				IPUtils.validateConnection(server.getPrivateIP(), this.restPort);
-				managementIP = server.getPrivateIP();
+			if (StringUtils.isNotBlank(server.getPrivateIP())) {
+				restAddresses.add(InetSocketAddress.createUnresolved(server.getPrivateIP(), this.restPort));
+			}
+		}
+		final Map<InetSocketAddress, Boolean> restReachable = getDeployer().getReachabilityProber().probe(
+				restAddresses, TimeUnit.SECONDS.toMillis(REST_CONNECTION_TIMEOUT_IN_SECS));
+		for (final Entry<InetSocketAddress, Boolean> entry : restReachable.entrySet()) {
+			if (entry.getValue()) {
+				managementIP = entry.getKey().getHostName();
 				break;
-			} catch (final Exception ex) {
-				// the connection to the REST failed because this is not a
-				// management server, continue.
 			}
 		}
 
@@ -153,10 +153,32 @@ public final class JsonUtils {
 	 */
 	public static <T> List<T> unwrapRootToList(final Class<T> clazz, final String jsonString)
 			throws OpenstackJsonSerializationException {
+		return unwrapRootToList(clazz, jsonString, true);
+	}
+
+	/**
+	 * Serialize a json string into a list of javabean objects and unwrap root-level JSON value.
+	 * 
+	 * @param clazz
+	 *            The target class.
+	 * @param jsonString
+	 *            The string to parse.
+	 * @param translateCamelCase
+	 *            Translates typical camel case Java property names to lower case JSON element names.
+	 * @param <T>
+	 *            The type of the java bean.
+	 * @return The class filled with the json values. Fields that are not defined in the java bean will be ignore.
+	 * @throws OpenstackJsonSerializationException
+	 *             If the json string could not be serialized into object.
+	 */
+	public static <T> List<T> unwrapRootToList(final Class<T> clazz, final String jsonString,
+			final boolean translateCamelCase) throws OpenstackJsonSerializationException {
 		List<T> list = null;
 		try {
 			final ObjectMapper mapper = createDefaultDeserializationMapper();
-			mapper.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
+			if (translateCamelCase) {
+				mapper.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
+			}
 
 			final JsonNode readTree = mapper.readTree(jsonString);
 			if (readTree != null && readTree.getElements().hasNext()) {
@@ -173,6 +195,35 @@ public final class JsonUtils {
 		return list;
 	}
 
+	/**
+	 * Checks if a paginated list response links to a next page.
+	 * 
+	 * @param jsonString
+	 *            The response to parse.
+	 * @param linksElement
+	 *            The name of the root-level links element, e.g. "servers_links".
+	 * @return true if the links element holds a link whose rel is "next".
+	 * @throws OpenstackJsonSerializationException
+	 *             If the json string could not be parsed.
+	 */
+	public static boolean hasNextLink(final String jsonString, final String linksElement)
+			throws OpenstackJsonSerializationException {
+		try {
+			final JsonNode links = createDefaultDeserializationMapper().readTree(jsonString).get(linksElement);
+			if (links != null) {
+				for (final JsonNode link : links) {
+					final JsonNode rel = link.get("rel");
+					if (rel != null && "next".equals(rel.getTextValue())) {
+						return true;
+					}
+				}
+			}
+			return false;
+		} catch (final Exception e) {
+			throw new OpenstackJsonSerializationException(e);
+		}
+	}
+
 	private static ObjectMapper createDefaultDeserializationMapper() {
 		final ObjectMapper mapper = new ObjectMapper();
 		mapper.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -18,6 +18,7 @@ import java.util.logging.Logger;
 
 import javax.ws.rs.core.MediaType;
 
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.cloudifysource.esc.driver.provisioning.openstack.rest.TokenAccess;
 import org.cloudifysource.esc.driver.provisioning.openstack.rest.TokenServiceCatalog;
 import org.cloudifysource.esc.driver.provisioning.openstack.rest.TokenServiceCatalogEndpoint;
@@ -27,10 +28,13 @@ import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.filter.LoggingFilter;
+import com.sun.jersey.client.apache.ApacheHttpClient;
+import com.sun.jersey.client.apache.config.DefaultApacheHttpClientConfig;
 
 /**
  * A base class for openstack clients.<br />
- * It handle tokens.
+ * It handle tokens, through the {@link OpenStackTokenManager} shared by all clients of the same credentials. All
+ * clients send their requests through a single pooled HTTP client, which keeps connections alive between requests.
  * 
  * @author victor
  * @since 2.7.0
@@ -38,14 +42,18 @@ import com.sun.jersey.api.client.filter.LoggingFilter;
  */
 public abstract class OpenStackBaseClient {
 
-	private static final long TOKEN_TIMEOUT_MARGING = 60000L;
-
 	protected static final int CODE_OK_200 = 200;
 	protected static final int CODE_OK_204 = 204;
 
+	private static final int UNAUTHORIZED_STATUS = 401;
+	private static final int MAX_CONNECTIONS_PER_HOST = 20;
+	private static final int MAX_TOTAL_CONNECTIONS = 100;
+
 	private static final Logger WIRE_LOGGER = Logger.getLogger("openstack.wire");
 	private static final Logger logger = Logger.getLogger(OpenStackBaseClient.class.getName());
 
+	private static Client httpClient;
+
 	private final byte[] webResourceMutex = new byte[0];
 
 	private String endpoint;
@@ -53,10 +61,9 @@ public abstract class OpenStackBaseClient {
 	private String password;
 	private String tenant;
 
-	private TokenAccess token;
+	private OpenStackTokenManager tokenManager;
 	private String region;
 
-	private Client serviceClient;
 	private WebResource serviceWebResource;
 
 	public OpenStackBaseClient() {
@@ -73,62 +80,45 @@ public abstract class OpenStackBaseClient {
 
 	/**
 	 * Destroy the client. <br />
+	 * The pooled HTTP client is shared with other clients, so only this client's resource and its use of the token
+	 * manager are released.
 	 */
 	public void close() {
 		synchronized (this.webResourceMutex) {
-			if (this.serviceClient != null) {
-				this.serviceClient.destroy();
-			}
-		}
-	}
-
-	private synchronized void renewTokenIfNeeded() throws OpenstackJsonSerializationException {
-		if (this.isTokenExpiredSoon()) {
-			if (logger.isLoggable(Level.FINEST)) {
-				logger.finest("Token not found or expired. Request a new token");
+			this.serviceWebResource = null;
+			if (this.tokenManager != null) {
+				this.tokenManager.release();
+				this.tokenManager = null;
 			}
-			this.initToken();
 		}
 	}
 
-	private boolean isTokenExpiredSoon() {
-		if (token == null) {
-			return true;
-		}
-		long current = System.currentTimeMillis() + TOKEN_TIMEOUT_MARGING;
-		long tokenExpires = token.getToken().getExpires().getTime();
-		return current > tokenExpires;
-	}
-
 	/**
-	 * Initialize Openstack token.
+	 * Returns the pooled HTTP client shared by all Openstack clients.
 	 * 
-	 * @throws OpenstackJsonSerializationException
-	 *             A problem occurs when requesting Openstack server.
+	 * @return The shared HTTP client.
 	 */
-	private void initToken() throws OpenstackJsonSerializationException {
-		final Client client = Client.create();
-		if (WIRE_LOGGER.isLoggable(Level.FINE)) {
-			client.addFilter(new LoggingFilter(WIRE_LOGGER));
-		}
-		try {
-			if (logger.isLoggable(Level.FINE)) {
-				logger.fine("Request openstack " + this.getServiceType() + " new token.");
+	static synchronized Client getHttpClient() {
+		if (httpClient == null) {
+			final ApacheHttpClient client = ApacheHttpClient.create(new DefaultApacheHttpClientConfig());
+			final HttpConnectionManagerParams params =
+					client.getClientHandler().getHttpClient().getHttpConnectionManager().getParams();
+			params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+			params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+			if (WIRE_LOGGER.isLoggable(Level.FINE)) {
+				client.addFilter(new LoggingFilter(WIRE_LOGGER));
 			}
-			if (this.endpoint == null) {
-				throw new IllegalStateException("No endpoint defined");
-			}
-			final WebResource webResource = client.resource(this.endpoint);
-			final String tokenJsonRequest = "{\"auth\":{\"passwordCredentials\":"
-					+ "{\"username\": \"%s\", \"password\":\"%s\"}, \"tenantName\":\"%s\"}}";
-			final String input = String.format(tokenJsonRequest, username, password, tenant);
-			final String response = webResource.path("tokens").accept(MediaType.APPLICATION_JSON)
-					.type(MediaType.APPLICATION_JSON_TYPE).post(String.class, input);
-			this.token = JsonUtils.unwrapRootToObject(TokenAccess.class, response, false);
-		} finally {
-			if (client != null) {
-				client.destroy();
+			httpClient = client;
+		}
+		return httpClient;
+	}
+
+	private OpenStackTokenManager getTokenManager() {
+		synchronized (this.webResourceMutex) {
+			if (this.tokenManager == null) {
+				this.tokenManager = OpenStackTokenManager.getInstance(endpoint, username, password, tenant);
 			}
+			return this.tokenManager;
 		}
 	}
 
@@ -136,29 +126,27 @@ public abstract class OpenStackBaseClient {
 	 * Get the token id. It will renew it if needed.
 	 * 
 	 * @return The token id.
-	 * @throws OpenstackJsonSerializationException
-	 *             If a serialization issue occurs with Openstack request/response.
+	 * @throws OpenstackException
+	 *             If a new token was needed and could not be obtained.
 	 */
-	protected String getTokenId() throws OpenstackJsonSerializationException {
-		this.renewTokenIfNeeded();
-		return this.token.getToken().getId();
+	protected String getTokenId() throws OpenstackException {
+		return this.getTokenManager().getToken().getToken().getId();
 	}
 	
 	
 	/**
-	 * Get the tenant id, if token not null.
+	 * Get the tenant id of the token. It will renew the token if needed.
 	 * 
-	 * @return The tenant id, or null if token is null
-	 * @throws OpenstackJsonSerializationException
-	 *             If a serialization issue occurs with Openstack request/response.
+	 * @return The tenant id, or null if the token has no tenant
+	 * @throws OpenstackException
+	 *             If a new token was needed and could not be obtained.
 	 */
-	protected String getTenantId() throws OpenstackJsonSerializationException {
-		String tenantId = null;
-		if (token != null) {
-			tenantId = token.getToken().getTenant().getId();
+	protected String getTenantId() throws OpenstackException {
+		final TokenAccess token = this.getTokenManager().getToken();
+		if (token.getToken().getTenant() == null) {
+			return null;
 		}
-		
-		return tenantId;
+		return token.getToken().getTenant().getId();
 	}
 	
 
@@ -172,28 +160,23 @@ public abstract class OpenStackBaseClient {
 	protected WebResource getWebResource() throws OpenstackException {
 		synchronized (this.webResourceMutex) {
 			if (this.serviceWebResource == null) {
-				this.renewTokenIfNeeded();
-				this.endpoint = this.getEndpoint();
-				this.serviceClient = Client.create();
-				if (WIRE_LOGGER.isLoggable(Level.FINE)) {
-					this.serviceClient.addFilter(new LoggingFilter(WIRE_LOGGER));
-				}
-				this.serviceWebResource = this.serviceClient.resource(endpoint);
+				final String serviceEndpoint = this.getEndpoint(this.getTokenManager().getToken());
+				this.serviceWebResource = getHttpClient().resource(serviceEndpoint);
 				if (logger.isLoggable(Level.FINE)) {
-					logger.fine("Openstack endpoint: " + endpoint);
+					logger.fine("Openstack endpoint: " + serviceEndpoint);
 				}
 			}
 			return serviceWebResource;
 		}
 	}
 
-	private String getEndpoint() throws OpenstackException {
+	private String getEndpoint(final TokenAccess token) throws OpenstackException {
 		String endpoint = null;
 
-		endpoint = this.getEndpointByName();
+		endpoint = this.getEndpointByName(token);
 
 		if (endpoint == null) {
-			endpoint = this.getEndpointByType();
+			endpoint = this.getEndpointByType(token);
 		}
 
 		if (endpoint == null) {
@@ -220,14 +203,16 @@ public abstract class OpenStackBaseClient {
 	/**
 	 * Retrieves the service endpoint by type.
 	 * 
+	 * @param token
+	 *            The token holding the service catalog.
 	 * @return The endpoint
 	 */
-	protected String getEndpointByType() {
+	protected String getEndpointByType(final TokenAccess token) {
 		final String endpointType = this.getServiceType();
 		if (logger.isLoggable(Level.FINEST)) {
 			logger.finest("Trying to get service endpoint by type '" + endpointType + "'");
 		}
-		for (final TokenServiceCatalog tsc : this.token.getServiceCatalog()) {
+		for (final TokenServiceCatalog tsc : token.getServiceCatalog()) {
 			if (endpointType.equals(tsc.getType())) {
 				for (final TokenServiceCatalogEndpoint endpoint : tsc.getEndpoints()) {
 					if (this.region.equals(endpoint.getRegion())) {
@@ -242,15 +227,17 @@ public abstract class OpenStackBaseClient {
 	/**
 	 * Retrieves the service endpoint by name.
 	 * 
+	 * @param token
+	 *            The token holding the service catalog.
 	 * @return The endpoint
 	 */
-	private String getEndpointByName() {
+	private String getEndpointByName(final TokenAccess token) {
 		final String endpointName = this.getServiceName();
 		if (logger.isLoggable(Level.FINEST)) {
 			logger.finest("Trying to get service endpoint by name '" + endpointName + "'");
 		}
 		if (endpointName != null) {
-			for (final TokenServiceCatalog tsc : this.token.getServiceCatalog()) {
+			for (final TokenServiceCatalog tsc : token.getServiceCatalog()) {
 				if (endpointName.equals(tsc.getName())) {
 					for (final TokenServiceCatalogEndpoint endpoint : tsc.getEndpoints()) {
 						if (this.region.equals(endpoint.getRegion())) {
@@ -271,7 +258,27 @@ public abstract class OpenStackBaseClient {
 	 * @return The translated {@link OpenstackServerException}.
 	 */
 	protected OpenstackServerException createOpenstackServerException(final UniformInterfaceException e) {
+		return this.createOpenstackServerException(e, null);
+	}
+
+	/**
+	 * Translate {@link UniformInterfaceException} to {@link OpenstackServerException} to get an accurate error message.
+	 * If the request was rejected as unauthorized, the token it was sent with is dropped.
+	 * 
+	 * @param e
+	 *            The {@link UniformInterfaceException} to translate
+	 * @param tokenId
+	 *            The id of the token the failed request was sent with, or null if unknown.
+	 * @return The translated {@link OpenstackServerException}.
+	 */
+	protected OpenstackServerException createOpenstackServerException(final UniformInterfaceException e,
+			final String tokenId) {
 		final ClientResponse client = e.getResponse();
+		if (client.getStatus() == UNAUTHORIZED_STATUS && tokenId != null) {
+			// the token was revoked or expired early, make the next request use a new one. A token renewed since
+			// the request was sent is kept.
+			this.getTokenManager().invalidate(tokenId);
+		}
 		final String responseMessage = client.getEntity(String.class);
 		return new OpenstackServerException(client.getStatus(), responseMessage, e);
 	}
@@ -288,6 +295,7 @@ public abstract class OpenStackBaseClient {
 	 *             If an error occurs during the request.
 	 */
 	protected String doGet(final String path, final String[] params) throws OpenstackException {
+		String tokenId = null;
 		try {
 			if (params != null && params.length % 2 != 0) {
 				throw new IllegalArgumentException("Paramters array missing an element:" + Arrays.asList(params));
@@ -305,9 +313,10 @@ public abstract class OpenStackBaseClient {
 				logger.finer("GET '" + webResource + "'");
 			}
 
+			tokenId = this.getTokenId();
 			final String response = webResource.type(MediaType.APPLICATION_JSON_TYPE)
 					.accept(MediaType.APPLICATION_JSON)
-					.header("X-Auth-Token", this.getTokenId())
+					.header("X-Auth-Token", tokenId)
 					.get(String.class);
 
 			if (logger.isLoggable(Level.FINEST)) {
@@ -315,7 +324,7 @@ public abstract class OpenStackBaseClient {
 			}
 			return response;
 		} catch (final UniformInterfaceException e) {
-			throw this.createOpenstackServerException(e);
+			throw this.createOpenstackServerException(e, tokenId);
 		}
 	}
 
@@ -343,6 +352,7 @@ public abstract class OpenStackBaseClient {
 	 *             If an error occurs during the request.
 	 */
 	protected void doDelete(final String path, final int expectedStatus) throws OpenstackException {
+		String tokenId = null;
 		try {
 			final WebResource webResource = this.getWebResource();
 
@@ -350,10 +360,11 @@ public abstract class OpenStackBaseClient {
 				logger.finer("DELETE request: '" + webResource + "'");
 			}
 
+			tokenId = this.getTokenId();
 			final ClientResponse response = webResource.path(path)
 					.type(MediaType.APPLICATION_JSON_TYPE)
 					.accept(MediaType.APPLICATION_JSON)
-					.header("X-Auth-Token", this.getTokenId())
+					.header("X-Auth-Token", tokenId)
 					.delete(ClientResponse.class);
 
 			if (logger.isLoggable(Level.FINEST)) {
@@ -365,7 +376,7 @@ public abstract class OpenStackBaseClient {
 				throw new OpenstackServerException(expectedStatus, response.getStatus(), entity);
 			}
 		} catch (final UniformInterfaceException e) {
-			throw this.createOpenstackServerException(e);
+			throw this.createOpenstackServerException(e, tokenId);
 		}
 	}
 
@@ -381,6 +392,7 @@ public abstract class OpenStackBaseClient {
 	 *             If an error occurs during the request.
 	 */
 	protected String doPost(final String path, final String input) throws OpenstackException {
+		String tokenId = null;
 		try {
 			final WebResource webResource = this.getWebResource().path(path);
 
@@ -388,9 +400,10 @@ public abstract class OpenStackBaseClient {
 				logger.finer("POST '" + webResource + "' with body: '" + input + "'");
 			}
 
+			tokenId = this.getTokenId();
 			final String response = webResource.type(MediaType.APPLICATION_JSON_TYPE)
 					.accept(MediaType.APPLICATION_JSON)
-					.header("X-Auth-Token", this.getTokenId())
+					.header("X-Auth-Token", tokenId)
 					.post(String.class, input);
 
 			if (logger.isLoggable(Level.FINEST)) {
@@ -400,7 +413,7 @@ public abstract class OpenStackBaseClient {
 
 			return response;
 		} catch (final UniformInterfaceException e) {
-			throw this.createOpenstackServerException(e);
+			throw this.createOpenstackServerException(e, tokenId);
 		}
 	}
 
@@ -416,6 +429,7 @@ public abstract class OpenStackBaseClient {
 	 *             If an error occurs during the request.
 	 */
 	protected String doPut(final String path, final String input) throws OpenstackException {
+		String tokenId = null;
 		try {
 			final WebResource webResource = this.getWebResource().path(path);
 
@@ -423,10 +437,11 @@ public abstract class OpenStackBaseClient {
 				logger.finer("PUT '" + webResource + "' with body: '" + input + "'");
 			}
 
+			tokenId = this.getTokenId();
 			final String response = webResource
 					.type(MediaType.APPLICATION_JSON_TYPE)
 					.accept(MediaType.APPLICATION_JSON)
-					.header("X-Auth-Token", this.getTokenId())
+					.header("X-Auth-Token", tokenId)
 					.put(String.class, input);
 
 			if (logger.isLoggable(Level.FINEST)) {
@@ -436,7 +451,7 @@ public abstract class OpenStackBaseClient {
 
 			return response;
 		} catch (final UniformInterfaceException e) {
-			throw this.createOpenstackServerException(e);
+			throw this.createOpenstackServerException(e, tokenId);
 		}
 
 	}
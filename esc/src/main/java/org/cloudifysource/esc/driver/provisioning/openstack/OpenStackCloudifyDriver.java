@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -113,7 +114,6 @@ public class OpenStackCloudifyDriver extends BaseProvisioningDriver {
 	private static final int DEFAULT_MGMT_NETWORKS_COUNT = 1;
 
 	private static final int MANAGEMENT_SHUTDOWN_TIMEOUT = 60; // 60 seconds
-	private static final int CLOUD_NODE_STATE_POLLING_INTERVAL = 2000;
 
 	/**
 	 * Key to set keyPairName. <br />
@@ -162,6 +162,7 @@ public class OpenStackCloudifyDriver extends BaseProvisioningDriver {
 	private OpenStackComputeClient computeApi;
 	private OpenStackNetworkClient networkApi;
 	private OpenStackNetworkConfigurationHelper networkHelper;
+	private OpenStackServerStateWatcher serverStateWatcher;
 
 	private OpenStackResourcePrefixes openstackPrefixes;
 
@@ -175,8 +176,9 @@ public class OpenStackCloudifyDriver extends BaseProvisioningDriver {
 	private static ResourceBundle defaultProvisioningDriverMessageBundle = ResourceBundle.getBundle(
 			"DefaultProvisioningDriverMessages", Locale.getDefault());
 
-	void setComputeApi(final OpenStackComputeClient computeApi) {
+	synchronized void setComputeApi(final OpenStackComputeClient computeApi) {
 		this.computeApi = computeApi;
+		this.serverStateWatcher = null;
 	}
 
 	void setNetworkApi(final OpenStackNetworkClient networkApi) {
@@ -1170,38 +1172,14 @@ public class OpenStackCloudifyDriver extends BaseProvisioningDriver {
 
 	private NovaServer waitForServerToBecomeReady(final String serverId, final long endTime)
 			throws CloudProvisioningException, InterruptedException, TimeoutException {
+		return getServerStateWatcher().waitForServerToBecomeReady(serverId, endTime);
+	}
 
-		while (System.currentTimeMillis() < endTime) {
-			final NovaServer server;
-			try {
-				server = computeApi.getServerDetails(serverId);
-			} catch (final OpenstackException e) {
-				throw new CloudProvisioningException(e);
-			}
-
-			if (server == null) {
-				logger.fine("Server Status (" + serverId + ") Not Found, please wait...");
-				Thread.sleep(CLOUD_NODE_STATE_POLLING_INTERVAL);
-				break;
-			} else {
-				switch (server.getStatus()) {
-				case ACTIVE:
-					return server;
-				case BUILD:
-					logger.fine("Server Status (" + serverId + ") still PENDING, please wait...");
-					Thread.sleep(CLOUD_NODE_STATE_POLLING_INTERVAL);
-					break;
-				default:
-					throw new CloudProvisioningException(
-							"Failed to allocate server - Cloud reported node in "
-									+ server.getStatus().toString()
-									+ " state. Node details: " + server);
-				}
-			}
-
+	private synchronized OpenStackServerStateWatcher getServerStateWatcher() {
+		if (this.serverStateWatcher == null) {
+			this.serverStateWatcher = new OpenStackServerStateWatcher(this.computeApi);
 		}
-
-		throw new TimeoutException("Node failed to reach RUNNING mode in time");
+		return this.serverStateWatcher;
 	}
 
 	@Override
@@ -1258,9 +1236,16 @@ public class OpenStackCloudifyDriver extends BaseProvisioningDriver {
 					throw new CloudProvisioningException(e);
 				}
 			}
+			final long endTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(MANAGEMENT_SHUTDOWN_TIMEOUT);
+			final List<OpenStackServerStateWatcher.PendingServer> pendingServers =
+					new ArrayList<OpenStackServerStateWatcher.PendingServer>(managementServers.length);
 			for (final MachineDetails md : managementServers) {
+				pendingServers.add(getServerStateWatcher().watch(md.getMachineId(),
+						OpenStackServerStateWatcher.TargetState.SHUTDOWN));
+			}
+			for (final OpenStackServerStateWatcher.PendingServer pendingServer : pendingServers) {
 				try {
-					this.waitForServerToBeShutdown(md.getMachineId(), MANAGEMENT_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+					pendingServer.await(endTime);
 				} catch (final InterruptedException e) {
 					Thread.currentThread().interrupt();
 				}
@@ -1383,28 +1368,40 @@ public class OpenStackCloudifyDriver extends BaseProvisioningDriver {
 		
 		try {
 			List<String> serverIds = getServerIdsByPrefix(prefix);
-		for (String serverId : serverIds) {
-			try {
-				this.releaseFloatingIpsForServerId(serverId);
-				this.computeApi.deleteServer(serverId);
-				this.waitForServerToBeShutdown(serverId, endTime);
-			} catch (final InterruptedException e) {
+			// delete all servers first, so their shutdown is watched with shared server list requests.
+			final Map<String, OpenStackServerStateWatcher.PendingServer> pendingServers =
+					new LinkedHashMap<String, OpenStackServerStateWatcher.PendingServer>();
+			for (String serverId : serverIds) {
+				try {
+					this.releaseFloatingIpsForServerId(serverId);
+					this.computeApi.deleteServer(serverId);
+					pendingServers.put(serverId, getServerStateWatcher().watch(serverId,
+							OpenStackServerStateWatcher.TargetState.SHUTDOWN));
+				} catch (final Exception e) {
+					logger.warning("Couldn't terminate machine " + serverId + ". Continuing to terminate resourcse."
+							+ " reported error: " + e.getMessage()
+							+ ", stack trace: " + e.getStackTrace());
+				}
+			}
+			for (Map.Entry<String, OpenStackServerStateWatcher.PendingServer> entry : pendingServers.entrySet()) {
+				final String serverId = entry.getKey();
+				try {
+					entry.getValue().await(endTime);
+				} catch (final InterruptedException e) {
 					// TODO: wait was interrupted, log and continue
-				logger.warning("thread was interrupted while waiting for machine (" + serverId + ") to shutdown."
-						+ " continuing...");
-			} catch (final Exception e) {
+					logger.warning("thread was interrupted while waiting for machine (" + serverId + ") to shutdown."
+							+ " continuing...");
+				} catch (final Exception e) {
 					logger.warning("Couldn't terminate machine " + serverId + ". Continuing to terminate resourcse."
 							+ " reported error: " + e.getMessage()
-						+ ", stack trace: " + e.getStackTrace());
+							+ ", stack trace: " + e.getStackTrace());
+				}
 			}
-		}
 		} catch (CloudProvisioningException e) {
 			logger.warning("Failed to terminate servers with prefix: " + prefix + ", error while searching servers: " 
 					+ e.getMessage() + ", stack trace: " + e.getStackTrace());
 		}
 		
-		
-		
 	}
 	
 
@@ -1441,43 +1438,8 @@ public class OpenStackCloudifyDriver extends BaseProvisioningDriver {
 	
 	private void waitForServerToBeShutdown(final String serverId, final long endTime)
 			throws CloudProvisioningException, InterruptedException, TimeoutException {
-		
 		logger.finest("Waiting for server '" + serverId + "' to shutdown");
-		while (System.currentTimeMillis() < endTime) {
-			final NovaServer server;
-			try {
-				server = computeApi.getServerDetails(serverId);
-			} catch (final OpenstackException e) {
-				throw new CloudProvisioningException(e);
-			}
-
-			if (server == null) {
-				logger.fine("Server Status (" + serverId + ") Not Found. Considered deleted.");
-				return;
-			} else {
-				switch (server.getStatus()) {
-				case STOPPED:
-				case DELETED:
-					return;
-				case ERROR:
-				case UNKNOWN:
-				case UNRECOGNIZED:
-					throw new CloudProvisioningException(
-							"Failed to allocate server - Cloud reported node in "
-									+ server.getStatus().toString()
-									+ " state. Node details: " + server);
-				default:
-					logger.fine("Server Status (" + serverId + ") is " + server.getStatus()
-							+ ", please wait until shutdown...");
-					Thread.sleep(CLOUD_NODE_STATE_POLLING_INTERVAL);
-					break;
-				}
-			}
-
-		}
-
-		throw new TimeoutException("Node failed to reach SHUTDOWN mode in time");
-		
+		getServerStateWatcher().waitForServerToBeShutdown(serverId, endTime);
 	}
 
 	@Override
@@ -168,6 +168,42 @@ public class OpenStackComputeClient extends OpenStackBaseClient {
 		return detailServers;
 	}
 
+	/**
+	 * List existing servers with their details, using a single request per page. Nova caps the number of servers
+	 * returned by a request, so the pages are followed until no next link is returned.
+	 * 
+	 * @param prefix
+	 *            The server name prefix to match, or null to list all servers.
+	 * @return A list of existing servers with their details.
+	 * @throws OpenstackException
+	 *             Thrown when a problem occurs with the request.
+	 */
+	public List<NovaServer> getServersDetail(final String prefix) throws OpenstackException {
+		final List<NovaServer> servers = new ArrayList<NovaServer>();
+		String marker = null;
+		while (true) {
+			final List<String> params = new ArrayList<String>();
+			if (prefix != null) {
+				params.add("name");
+				params.add(prefix);
+			}
+			if (marker != null) {
+				params.add("marker");
+				params.add(marker);
+			}
+			final String response = this.doGet("servers/detail", params.toArray(new String[params.size()]));
+			final List<NovaServer> page = JsonUtils.unwrapRootToList(NovaServer.class, response, false);
+			if (page == null || page.isEmpty()) {
+				return servers;
+			}
+			servers.addAll(page);
+			if (!JsonUtils.hasNextLink(response, "servers_links")) {
+				return servers;
+			}
+			marker = page.get(page.size() - 1).getId();
+		}
+	}
+
 	/**
 	 * Get a list of instances that match the prefix name.
 	 * 
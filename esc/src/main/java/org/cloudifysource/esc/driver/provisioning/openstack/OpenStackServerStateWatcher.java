@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.openstack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
+import org.cloudifysource.esc.driver.provisioning.openstack.rest.NovaServer;
+import org.cloudifysource.esc.driver.provisioning.openstack.rest.Status;
+
+/**
+ * Watches the state of the servers a driver is waiting for, using a single server list request per polling interval
+ * no matter how many servers are pending.<br />
+ * The polling thread only runs while servers are pending. The interval grows while no pending server changes state
+ * and is reset when one does, or when a new server is watched. When Nova reports the request rate limit was exceeded
+ * the interval is backed off further. A failed list request is retried with the same back off, and the pending servers
+ * only fail after several consecutive failures.
+ *
+ * @since 2.7.1
+ */
+public class OpenStackServerStateWatcher {
+
+	private static final Logger logger = Logger.getLogger(OpenStackServerStateWatcher.class.getName());
+
+	private static final long DEFAULT_MIN_INTERVAL_MILLIS = 2000;
+	private static final long DEFAULT_MAX_INTERVAL_MILLIS = 10000;
+	private static final long DEFAULT_MAX_RATE_LIMITED_INTERVAL_MILLIS = 60000;
+	private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+	private static final int OVER_LIMIT_STATUS = 413;
+	private static final int TOO_MANY_REQUESTS_STATUS = 429;
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(1);
+
+	/**
+	 * The state a watched server is expected to reach.
+	 */
+	enum TargetState {
+		/** The server is ACTIVE. */
+		READY,
+		/** The server is STOPPED, DELETED or gone. */
+		SHUTDOWN
+	}
+
+	private final OpenStackComputeClient computeApi;
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private final long maxRateLimitedIntervalMillis;
+
+	private final Object lock = new Object();
+	private final Map<String, List<PendingServer>> pendingServers = new HashMap<String, List<PendingServer>>();
+	private final Map<String, Status> lastKnownStatus = new HashMap<String, Status>();
+	private long intervalMillis;
+	private int consecutiveFailures = 0;
+	private boolean polling = false;
+
+	public OpenStackServerStateWatcher(final OpenStackComputeClient computeApi) {
+		this(computeApi, DEFAULT_MIN_INTERVAL_MILLIS, DEFAULT_MAX_INTERVAL_MILLIS,
+				DEFAULT_MAX_RATE_LIMITED_INTERVAL_MILLIS);
+	}
+
+	OpenStackServerStateWatcher(final OpenStackComputeClient computeApi, final long minIntervalMillis,
+			final long maxIntervalMillis, final long maxRateLimitedIntervalMillis) {
+		this.computeApi = computeApi;
+		this.minIntervalMillis = minIntervalMillis;
+		this.maxIntervalMillis = maxIntervalMillis;
+		this.maxRateLimitedIntervalMillis = maxRateLimitedIntervalMillis;
+		this.intervalMillis = minIntervalMillis;
+	}
+
+	/**
+	 * Waits for a server to become ACTIVE.
+	 *
+	 * @param serverId
+	 *            The server id.
+	 * @param endTime
+	 *            The time to give up at, in milliseconds.
+	 * @return The server details, as listed once it became ACTIVE.
+	 * @throws CloudProvisioningException
+	 *             If the server reached another final state, or listing the servers failed.
+	 * @throws InterruptedException
+	 *             If the waiting thread was interrupted.
+	 * @throws TimeoutException
+	 *             If the server did not become ACTIVE in time.
+	 */
+	public NovaServer waitForServerToBecomeReady(final String serverId, final long endTime)
+			throws CloudProvisioningException, InterruptedException, TimeoutException {
+		return watch(serverId, TargetState.READY).await(endTime);
+	}
+
+	/**
+	 * Waits for a server to be shut down.
+	 *
+	 * @param serverId
+	 *            The server id.
+	 * @param endTime
+	 *            The time to give up at, in milliseconds.
+	 * @throws CloudProvisioningException
+	 *             If the server reached an error state, or listing the servers failed.
+	 * @throws InterruptedException
+	 *             If the waiting thread was interrupted.
+	 * @throws TimeoutException
+	 *             If the server was not shut down in time.
+	 */
+	public void waitForServerToBeShutdown(final String serverId, final long endTime)
+			throws CloudProvisioningException, InterruptedException, TimeoutException {
+		watch(serverId, TargetState.SHUTDOWN).await(endTime);
+	}
+
+	/**
+	 * Starts watching a server. Watch all the servers of a batch before awaiting any of them, so they are all
+	 * covered by the same list requests.
+	 *
+	 * @param serverId
+	 *            The server id.
+	 * @param targetState
+	 *            The state the server is expected to reach.
+	 * @return The pending server, to await.
+	 */
+	PendingServer watch(final String serverId, final TargetState targetState) {
+		final PendingServer pendingServer = new PendingServer(serverId, targetState);
+		synchronized (lock) {
+			List<PendingServer> serverWaiters = pendingServers.get(serverId);
+			if (serverWaiters == null) {
+				serverWaiters = new ArrayList<PendingServer>();
+				pendingServers.put(serverId, serverWaiters);
+			}
+			serverWaiters.add(pendingServer);
+			intervalMillis = minIntervalMillis;
+			if (!polling) {
+				polling = true;
+				final Thread poller = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						poll();
+					}
+				}, "OpenStackServerStateWatcher-" + THREAD_COUNTER.getAndIncrement());
+				poller.setDaemon(true);
+				poller.start();
+			}
+			lock.notifyAll();
+		}
+		return pendingServer;
+	}
+
+	private void unwatch(final PendingServer pendingServer) {
+		synchronized (lock) {
+			final List<PendingServer> serverWaiters = pendingServers.get(pendingServer.serverId);
+			if (serverWaiters != null) {
+				serverWaiters.remove(pendingServer);
+				if (serverWaiters.isEmpty()) {
+					pendingServers.remove(pendingServer.serverId);
+					lastKnownStatus.remove(pendingServer.serverId);
+				}
+			}
+		}
+	}
+
+	private void poll() {
+		try {
+			long lastPollTime = System.currentTimeMillis();
+			while (true) {
+				synchronized (lock) {
+					while (true) {
+						if (pendingServers.isEmpty()) {
+							polling = false;
+							return;
+						}
+						// re-evaluated on every wake up, as a newly watched server resets the interval.
+						final long remaining = lastPollTime + intervalMillis - System.currentTimeMillis();
+						if (remaining <= 0) {
+							break;
+						}
+						lock.wait(remaining);
+					}
+				}
+				lastPollTime = System.currentTimeMillis();
+				pollOnce();
+			}
+		} catch (final InterruptedException e) {
+			synchronized (lock) {
+				polling = false;
+				failAll(new CloudProvisioningException("Server state polling was interrupted", e));
+			}
+		} catch (final RuntimeException e) {
+			synchronized (lock) {
+				polling = false;
+				failAll(new CloudProvisioningException("Server state polling failed: " + e.getMessage(), e));
+			}
+		}
+	}
+
+	private void pollOnce() {
+		final List<NovaServer> servers;
+		try {
+			servers = computeApi.getServersDetail(null);
+		} catch (final OpenstackServerException e) {
+			if (e.getStatusCode() == OVER_LIMIT_STATUS || e.getStatusCode() == TOO_MANY_REQUESTS_STATUS) {
+				synchronized (lock) {
+					backOff();
+					logger.warning("Openstack request rate limit exceeded while polling server states, next poll in "
+							+ intervalMillis + " ms");
+				}
+				return;
+			}
+			handleListFailure(e);
+			return;
+		} catch (final OpenstackException e) {
+			handleListFailure(e);
+			return;
+		}
+
+		final Map<String, NovaServer> serversById = new HashMap<String, NovaServer>(servers.size());
+		for (final NovaServer server : servers) {
+			serversById.put(server.getId(), server);
+		}
+
+		synchronized (lock) {
+			consecutiveFailures = 0;
+			boolean progressed = false;
+			for (final String serverId : new ArrayList<String>(pendingServers.keySet())) {
+				final NovaServer server = serversById.get(serverId);
+				final Status status = server == null ? null : server.getStatus();
+				if (lastKnownStatus.containsKey(serverId) && lastKnownStatus.get(serverId) != status) {
+					progressed = true;
+				}
+				lastKnownStatus.put(serverId, status);
+
+				for (final PendingServer pendingServer : new ArrayList<PendingServer>(pendingServers.get(serverId))) {
+					if (pendingServer.evaluate(server)) {
+						progressed = true;
+						unwatch(pendingServer);
+					}
+				}
+			}
+			intervalMillis = progressed ? minIntervalMillis : Math.min(intervalMillis * 2, maxIntervalMillis);
+		}
+	}
+
+	private void handleListFailure(final OpenstackException e) {
+		synchronized (lock) {
+			consecutiveFailures++;
+			if (consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+				consecutiveFailures = 0;
+				failAll(new CloudProvisioningException(e));
+				return;
+			}
+			backOff();
+			logger.log(Level.WARNING, "Failed to list servers while polling server states (attempt "
+					+ consecutiveFailures + " of " + MAX_CONSECUTIVE_FAILURES + "), next poll in " + intervalMillis
+					+ " ms", e);
+		}
+	}
+
+	private void backOff() {
+		intervalMillis = Math.min(Math.max(intervalMillis, minIntervalMillis) * 2, maxRateLimitedIntervalMillis);
+	}
+
+	private void failAll(final CloudProvisioningException e) {
+		for (final List<PendingServer> serverWaiters : pendingServers.values()) {
+			for (final PendingServer pendingServer : serverWaiters) {
+				pendingServer.fail(e);
+			}
+		}
+		pendingServers.clear();
+		lastKnownStatus.clear();
+	}
+
+	/**
+	 * A server some thread waits for to reach a target state.
+	 */
+	final class PendingServer {
+
+		private final String serverId;
+		private final TargetState targetState;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile NovaServer server;
+		private volatile CloudProvisioningException failure;
+
+		private PendingServer(final String serverId, final TargetState targetState) {
+			this.serverId = serverId;
+			this.targetState = targetState;
+		}
+
+		/**
+		 * Checks the listed server against the target state.
+		 *
+		 * @return true if the server reached a final state.
+		 */
+		private boolean evaluate(final NovaServer listedServer) {
+			if (targetState == TargetState.READY) {
+				if (listedServer == null) {
+					logger.fine("Server Status (" + serverId + ") Not Found, please wait...");
+					return false;
+				}
+				switch (listedServer.getStatus()) {
+				case ACTIVE:
+					complete(listedServer);
+					return true;
+				case BUILD:
+					logger.fine("Server Status (" + serverId + ") still PENDING, please wait...");
+					return false;
+				default:
+					fail(new CloudProvisioningException("Failed to allocate server - Cloud reported node in "
+							+ listedServer.getStatus().toString() + " state. Node details: " + listedServer));
+					return true;
+				}
+			}
+
+			if (listedServer == null) {
+				logger.fine("Server Status (" + serverId + ") Not Found. Considered deleted.");
+				complete(null);
+				return true;
+			}
+			switch (listedServer.getStatus()) {
+			case STOPPED:
+			case DELETED:
+				complete(listedServer);
+				return true;
+			case ERROR:
+			case UNKNOWN:
+			case UNRECOGNIZED:
+				fail(new CloudProvisioningException("Failed to allocate server - Cloud reported node in "
+						+ listedServer.getStatus().toString() + " state. Node details: " + listedServer));
+				return true;
+			default:
+				logger.fine("Server Status (" + serverId + ") is " + listedServer.getStatus()
+						+ ", please wait until shutdown...");
+				return false;
+			}
+		}
+
+		private void complete(final NovaServer listedServer) {
+			this.server = listedServer;
+			done.countDown();
+		}
+
+		private void fail(final CloudProvisioningException e) {
+			this.failure = e;
+			done.countDown();
+		}
+
+		/**
+		 * Waits for the server to reach its target state.
+		 *
+		 * @param endTime
+		 *            The time to give up at, in milliseconds.
+		 * @return The server as last listed, or null if it was gone.
+		 * @throws CloudProvisioningException
+		 *             If the server reached another final state, or listing the servers failed.
+		 * @throws InterruptedException
+		 *             If the waiting thread was interrupted.
+		 * @throws TimeoutException
+		 *             If the server did not reach its target state in time.
+		 */
+		NovaServer await(final long endTime)
+				throws CloudProvisioningException, InterruptedException, TimeoutException {
+			try {
+				final long remaining = endTime - System.currentTimeMillis();
+				if (!done.await(Math.max(remaining, 0), TimeUnit.MILLISECONDS)) {
+					if (logger.isLoggable(Level.FINE)) {
+						logger.fine("Timed out waiting for server " + serverId + " to reach " + targetState);
+					}
+					throw new TimeoutException(targetState == TargetState.READY
+							? "Node failed to reach RUNNING mode in time"
+							: "Node failed to reach SHUTDOWN mode in time");
+				}
+			} finally {
+				unwatch(this);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return server;
+		}
+	}
+}
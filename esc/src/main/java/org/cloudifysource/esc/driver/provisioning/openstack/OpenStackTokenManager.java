@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.openstack;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.codec.binary.Hex;
+import org.cloudifysource.esc.driver.provisioning.openstack.rest.TokenAccess;
+
+import com.sun.jersey.api.client.UniformInterfaceException;
+
+/**
+ * Holds the Openstack token of a set of credentials, shared by all the clients using these credentials.<br />
+ * Reading a valid token takes no lock. The token is renewed in the background some time before it expires, so
+ * requests do not have to wait for a renewal; only once a token expired do callers wait for the renewal. A single
+ * renewal is in flight at any time.<br />
+ * A manager is kept for as long as a client uses it, see {@link #getInstance(String, String, String, String)} and
+ * {@link #release()}.
+ *
+ * @since 2.7.1
+ */
+public final class OpenStackTokenManager {
+
+	private static final Logger logger = Logger.getLogger(OpenStackTokenManager.class.getName());
+
+	/** Tokens are considered expired this long before their actual expiry. */
+	private static final long DEFAULT_EXPIRY_MARGIN_MILLIS = 60000L;
+	/** Tokens are renewed in the background this long before their actual expiry. */
+	private static final long DEFAULT_REFRESH_AHEAD_MILLIS = 300000L;
+
+	private static final String TOKEN_REQUEST_FORMAT = "{\"auth\":{\"passwordCredentials\":"
+			+ "{\"username\": \"%s\", \"password\":\"%s\"}, \"tenantName\":\"%s\"}}";
+
+	// keyed by the credentials, with a digest of the password in place of the password.
+	private static final Map<String, OpenStackTokenManager> MANAGERS = new HashMap<String, OpenStackTokenManager>();
+
+	private static final ExecutorService REFRESH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "OpenStackTokenRefresh");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final String endpoint;
+	private final String username;
+	private final String password;
+	private final String tenant;
+	private final long expiryMarginMillis;
+	private final long refreshAheadMillis;
+
+	private final AtomicReference<TokenHolder> holder = new AtomicReference<TokenHolder>();
+	private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+	private final Object renewalLock = new Object();
+
+	// guarded by MANAGERS.
+	private String key;
+	private int users;
+
+	OpenStackTokenManager(final String endpoint, final String username, final String password, final String tenant,
+			final long expiryMarginMillis, final long refreshAheadMillis) {
+		this.endpoint = endpoint;
+		this.username = username;
+		this.password = password;
+		this.tenant = tenant;
+		this.expiryMarginMillis = expiryMarginMillis;
+		this.refreshAheadMillis = refreshAheadMillis;
+	}
+
+	/**
+	 * Returns the token manager of the given credentials, creating it on first use. Every call must be followed by a
+	 * call to {@link #release()} once the caller no longer uses the manager.
+	 *
+	 * @param endpoint
+	 *            The identity service endpoint.
+	 * @param username
+	 *            The user name.
+	 * @param password
+	 *            The password.
+	 * @param tenant
+	 *            The tenant name.
+	 * @return The token manager shared by all the clients using these credentials.
+	 */
+	public static OpenStackTokenManager getInstance(final String endpoint, final String username,
+			final String password, final String tenant) {
+		final String key = endpoint + '\n' + username + '\n' + digest(password) + '\n' + tenant;
+		synchronized (MANAGERS) {
+			OpenStackTokenManager manager = MANAGERS.get(key);
+			if (manager == null) {
+				manager = new OpenStackTokenManager(endpoint, username, password, tenant,
+						DEFAULT_EXPIRY_MARGIN_MILLIS, DEFAULT_REFRESH_AHEAD_MILLIS);
+				manager.key = key;
+				MANAGERS.put(key, manager);
+			}
+			manager.users++;
+			return manager;
+		}
+	}
+
+	/**
+	 * Releases a manager returned by {@link #getInstance(String, String, String, String)}. The manager, with its
+	 * token, is discarded once no client uses it.
+	 */
+	public void release() {
+		synchronized (MANAGERS) {
+			if (users > 0) {
+				users--;
+				if (users == 0 && MANAGERS.get(key) == this) {
+					MANAGERS.remove(key);
+				}
+			}
+		}
+	}
+
+	static boolean isShared(final String endpoint, final String username, final String password,
+			final String tenant) {
+		synchronized (MANAGERS) {
+			return MANAGERS.containsKey(endpoint + '\n' + username + '\n' + digest(password) + '\n' + tenant);
+		}
+	}
+
+	private static String digest(final String password) {
+		if (password == null) {
+			return null;
+		}
+		try {
+			return new String(Hex.encodeHex(MessageDigest.getInstance("SHA-256").digest(password.getBytes("UTF-8"))));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+	}
+
+	/**
+	 * Returns a valid token, requesting a new one only if there is no valid token.
+	 *
+	 * @return The token.
+	 * @throws OpenstackException
+	 *             If a new token was needed and could not be obtained.
+	 */
+	public TokenAccess getToken() throws OpenstackException {
+		final TokenHolder current = holder.get();
+		final long now = System.currentTimeMillis();
+		if (current != null && now < current.expiresAt) {
+			if (now >= current.refreshAt) {
+				scheduleRefresh();
+			}
+			return current.token;
+		}
+		return renew(current);
+	}
+
+	/**
+	 * Drops the given token, typically after the service rejected it, so the next request obtains a new one.
+	 *
+	 * @param tokenId
+	 *            The rejected token id.
+	 */
+	public void invalidate(final String tokenId) {
+		final TokenHolder current = holder.get();
+		if (current != null && current.token.getToken().getId().equals(tokenId)) {
+			holder.compareAndSet(current, null);
+		}
+	}
+
+	private void scheduleRefresh() {
+		if (!refreshScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		REFRESH_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					synchronized (renewalLock) {
+						final TokenHolder current = holder.get();
+						if (current == null || System.currentTimeMillis() >= current.refreshAt) {
+							holder.set(requestToken());
+						}
+					}
+				} catch (final Exception e) {
+					// the current token is still valid, callers renew it themselves once it expires.
+					logger.log(Level.WARNING, "Failed to renew the Openstack token ahead of its expiry", e);
+				} finally {
+					refreshScheduled.set(false);
+				}
+			}
+		});
+	}
+
+	private TokenAccess renew(final TokenHolder expired) throws OpenstackException {
+		synchronized (renewalLock) {
+			final TokenHolder current = holder.get();
+			if (current != null && current != expired && System.currentTimeMillis() < current.expiresAt) {
+				// renewed by another thread while we waited.
+				return current.token;
+			}
+			if (logger.isLoggable(Level.FINEST)) {
+				logger.finest("Token not found or expired. Request a new token");
+			}
+			final TokenHolder renewed = requestToken();
+			holder.set(renewed);
+			return renewed.token;
+		}
+	}
+
+	private TokenHolder requestToken() throws OpenstackException {
+		if (this.endpoint == null) {
+			throw new IllegalStateException("No endpoint defined");
+		}
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Request openstack new token.");
+		}
+		final String input = String.format(TOKEN_REQUEST_FORMAT, username, password, tenant);
+		final String response;
+		try {
+			response = OpenStackBaseClient.getHttpClient().resource(this.endpoint).path("tokens")
+					.accept(MediaType.APPLICATION_JSON)
+					.type(MediaType.APPLICATION_JSON_TYPE)
+					.post(String.class, input);
+		} catch (final UniformInterfaceException e) {
+			throw new OpenstackServerException(e.getResponse().getStatus(),
+					e.getResponse().getEntity(String.class), e);
+		}
+		final TokenAccess token = JsonUtils.unwrapRootToObject(TokenAccess.class, response, false);
+		return new TokenHolder(token, expiryMarginMillis, refreshAheadMillis);
+	}
+
+	/**
+	 * An immutable token with its precomputed expiry and refresh times.
+	 */
+	private static final class TokenHolder {
+		private final TokenAccess token;
+		private final long expiresAt;
+		private final long refreshAt;
+
+		TokenHolder(final TokenAccess token, final long expiryMarginMillis, final long refreshAheadMillis) {
+			this.token = token;
+			final long tokenExpires = token.getToken().getExpires().getTime();
+			final long issuedAt = System.currentTimeMillis();
+			this.expiresAt = tokenExpires - expiryMarginMillis;
+			// refresh ahead of expiry, but not before half of the token's lifetime for short lived tokens.
+			this.refreshAt = Math.min(this.expiresAt,
+					Math.max(tokenExpires - refreshAheadMillis, issuedAt + (tokenExpires - issuedAt) / 2));
+		}
+	}
+}
@@ -13,20 +13,30 @@
 package org.cloudifysource.esc.driver.provisioning.privateEc2;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang.StringUtils;
 import org.cloudifysource.domain.cloud.Cloud;
 import org.cloudifysource.domain.cloud.CloudUser;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.esc.util.TarGzUtils;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.HttpMethod;
 import com.amazonaws.Protocol;
@@ -51,13 +61,46 @@ import com.amazonaws.services.s3.model.S3Object;
 public class AmazonS3Uploader {
 
 	private static final String ZIP_PREFIX = "cloudFolder";
+	private static final String TAR_GZ_SUFFIX = ".tar.gz";
+	// covered by the archives' lifecycle rule, but not taken for an archive.
+	private static final String TEMPORARY_FILE_PREFIX = ZIP_PREFIX + "-";
 	private static final long ONE_DAY_IN_MILLIS = 1000L * 60L * 60L * 24L;
+	private static final int HTTP_NOT_FOUND = 404;
+	// returned instead of 404 to clients that may not list the bucket.
+	private static final int HTTP_FORBIDDEN = 403;
+	// older archives are uploaded again rather than reused, so the one day lifecycle rule does not expire an archive
+	// that was just handed out.
+	private static final long ARCHIVE_REUSE_MAX_AGE_MILLIS = ONE_DAY_IN_MILLIS / 2;
+	private static final int DIGEST_BUFFER_SIZE = 8192;
+
+	// S3 requires every part but the last to be at least 5MB.
+	private static final int UPLOAD_PART_SIZE = 5 * 1024 * 1024;
+	private static final int PARALLEL_PART_UPLOADS = 4;
+	private static final int PART_UPLOAD_ATTEMPTS = 3;
+	private static final long PART_RETRY_INTERVAL_MILLIS = 1000;
 
 	private final Logger logger = Logger.getLogger(AmazonS3Uploader.class.getName());
 
 	private AmazonS3 s3client;
 	private String accessKey;
 
+	// bucket/key -> the archives this uploader handed out. Guarded by itself.
+	private final Map<String, UploadedArchive> uploadedArchives = new HashMap<String, UploadedArchive>();
+
+	/**
+	 * Constructor for an existing client.
+	 * 
+	 * @param s3client
+	 *            The S3 client.
+	 * @param accessKey
+	 *            The access key of the client.
+	 * @since 2.7.1
+	 */
+	AmazonS3Uploader(final AmazonS3 s3client, final String accessKey) {
+		this.s3client = s3client;
+		this.accessKey = accessKey;
+	}
+
 	public AmazonS3Uploader(final Cloud cloud, final ComputeTemplate managementTemplate) {
 		
 		final CloudUser user = cloud.getUser();
@@ -107,12 +150,155 @@ public class AmazonS3Uploader {
 	 */
 	public String compressAndUploadToS3(final String existingBucketName, final String pathFolderToArchive)
 			throws IOException {
-		final File compressedFile = TarGzUtils.createTarGz(pathFolderToArchive, false);
-		final S3Object s3Object = this.uploadFile(existingBucketName, compressedFile);
+		final S3Object s3Object = this.compressAndUpload(existingBucketName, new String[] { pathFolderToArchive });
 		final String s3Url = this.generatePresignedURL(s3Object);
 		return s3Url;
 	}
 
+	/**
+	 * Compress folders and files into a tar.gz archive and upload it, unless an archive of the same content was
+	 * recently uploaded, by this or any other uploader.<br />
+	 * The archive is uploaded in parts while it is compressed, without writing it to the disk. Since archives are
+	 * shared, they are not deleted by {@link #deleteS3Object(String, String)} but expired by the bucket's lifecycle
+	 * rule, and an archive older than half its lifetime is uploaded again rather than reused. Archives must therefore
+	 * not hold credentials, upload those with {@link #uploadTemporaryFile(String, File)}.
+	 * 
+	 * @param bucketFullPath
+	 *            The path of the bucket where to upload the archive.
+	 * @param sourcePaths
+	 *            The folders or files to archive.
+	 * @return The uploaded archive.
+	 * @exception IOException
+	 *                When the compression or the upload fails.
+	 * @since 2.7.1
+	 */
+	public S3Object compressAndUpload(final String bucketFullPath, final String[] sourcePaths) throws IOException {
+		// the archive is named after its content, so archives of the same content are uploaded once.
+		final String key = ZIP_PREFIX + digest(sourcePaths) + TAR_GZ_SUFFIX;
+		final UploadedArchive archive = getArchive(bucketFullPath, key);
+		synchronized (archive) {
+			final long now = System.currentTimeMillis();
+			if (now - archive.uploadedAt >= ARCHIVE_REUSE_MAX_AGE_MILLIS) {
+				final Date lastModified = getLastModified(bucketFullPath, key);
+				if (lastModified != null && now - lastModified.getTime() < ARCHIVE_REUSE_MAX_AGE_MILLIS) {
+					logger.fine("Archive " + key + " already exists in " + bucketFullPath + ", skipping upload");
+					archive.uploadedAt = lastModified.getTime();
+				} else {
+					upload(bucketFullPath, key, sourcePaths);
+					archive.uploadedAt = now;
+				}
+			}
+		}
+
+		final S3Object object = new S3Object();
+		object.setBucketName(bucketFullPath);
+		object.setKey(key);
+		return object;
+	}
+
+	private void upload(final String bucketFullPath, final String key, final String[] sourcePaths)
+			throws IOException {
+		this.setLifecycleConfiguration(bucketFullPath);
+		logger.fine("Compressing and uploading " + Arrays.toString(sourcePaths) + " to " + bucketFullPath + "/" + key);
+		final S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(this.s3client, bucketFullPath,
+				key, UPLOAD_PART_SIZE, PARALLEL_PART_UPLOADS, PART_UPLOAD_ATTEMPTS, PART_RETRY_INTERVAL_MILLIS);
+		boolean written = false;
+		try {
+			// completes the upload once the archive is written.
+			TarGzUtils.writeTarGz(sourcePaths, "", false, out);
+			written = true;
+		} finally {
+			if (!written) {
+				out.abort();
+			}
+		}
+	}
+
+	/**
+	 * @return The time the object was last modified, or null if it does not exist or may not be read.
+	 */
+	private Date getLastModified(final String bucketName, final String key) {
+		try {
+			return this.s3client.getObjectMetadata(bucketName, key).getLastModified();
+		} catch (final AmazonServiceException e) {
+			if (e.getStatusCode() == HTTP_NOT_FOUND || e.getStatusCode() == HTTP_FORBIDDEN) {
+				return null;
+			}
+			throw e;
+		}
+	}
+
+	private UploadedArchive getArchive(final String bucketName, final String key) {
+		synchronized (uploadedArchives) {
+			final String path = bucketName + "/" + key;
+			UploadedArchive archive = uploadedArchives.get(path);
+			if (archive == null) {
+				archive = new UploadedArchive();
+				uploadedArchives.put(path, archive);
+			}
+			return archive;
+		}
+	}
+
+	private static boolean isArchiveKey(final String key) {
+		return key.startsWith(ZIP_PREFIX) && key.endsWith(TAR_GZ_SUFFIX) && !key.startsWith(TEMPORARY_FILE_PREFIX);
+	}
+
+	/**
+	 * Digest of the names and content of the files to archive, in the same layout as the archive.
+	 */
+	private static String digest(final String[] sourcePaths) throws IOException {
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not supported", e);
+		}
+		final byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+		for (final String path : sourcePaths) {
+			final File file = new File(path);
+			if (file.isFile()) {
+				digest(messageDigest, file, file.getName(), buffer);
+			} else {
+				for (final File child : listSorted(file)) {
+					digest(messageDigest, child, child.getName(), buffer);
+				}
+			}
+		}
+		return new String(Hex.encodeHex(messageDigest.digest()));
+	}
+
+	private static void digest(final MessageDigest messageDigest, final File file, final String entryName,
+			final byte[] buffer) throws IOException {
+		messageDigest.update(entryName.getBytes("UTF-8"));
+		messageDigest.update((byte) 0);
+		if (file.isFile()) {
+			final InputStream in = new FileInputStream(file);
+			try {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					messageDigest.update(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+		} else {
+			for (final File child : listSorted(file)) {
+				digest(messageDigest, child, entryName + "/" + child.getName(), buffer);
+			}
+		}
+		messageDigest.update((byte) 0);
+	}
+
+	private static File[] listSorted(final File folder) {
+		final File[] children = folder.listFiles();
+		if (children == null) {
+			return new File[0];
+		}
+		Arrays.sort(children);
+		return children;
+	}
+
 	/**
 	 * Upload file.
 	 * 
@@ -123,15 +309,7 @@ public class AmazonS3Uploader {
 	 * @return The URL to access the file in s3
 	 */
 	public S3Object uploadFile(final String bucketFullPath, final File file) {
-		final BucketLifecycleConfiguration.Rule ruleArchiveAndExpire = new BucketLifecycleConfiguration.Rule()
-				.withId("Delete cloudFolder archives")
-				.withPrefix(this.extractPrefix(bucketFullPath) + ZIP_PREFIX)
-				.withExpirationInDays(1)
-				.withStatus(BucketLifecycleConfiguration.ENABLED.toString());
-		final List<BucketLifecycleConfiguration.Rule> rules = new ArrayList<BucketLifecycleConfiguration.Rule>();
-		rules.add(ruleArchiveAndExpire);
-		final BucketLifecycleConfiguration configuration = new BucketLifecycleConfiguration().withRules(rules);
-		this.s3client.setBucketLifecycleConfiguration(bucketFullPath, configuration);
+		this.setLifecycleConfiguration(bucketFullPath);
 
 		final PutObjectRequest putObjectRequest = new PutObjectRequest(bucketFullPath, this.accessKey, file);
 		putObjectRequest.setKey(file.getName());
@@ -143,6 +321,43 @@ public class AmazonS3Uploader {
 		return object;
 	}
 
+	/**
+	 * Upload a file under a key of its own, e.g. a file holding credentials that must not be shared through an
+	 * archive. The caller deletes it with {@link #deleteS3Object(String, String)} once it is no longer needed; the
+	 * bucket's lifecycle rule only removes it if the caller never does.
+	 * 
+	 * @param bucketFullPath
+	 *            The path of the bucket where to upload the file.
+	 * @param file
+	 *            The file to upload.
+	 * @return The uploaded file.
+	 * @since 2.7.1
+	 */
+	public S3Object uploadTemporaryFile(final String bucketFullPath, final File file) {
+		this.setLifecycleConfiguration(bucketFullPath);
+
+		final String key = TEMPORARY_FILE_PREFIX + UUID.randomUUID() + "-" + file.getName();
+		logger.fine("Uploading " + file.getAbsolutePath() + " to " + bucketFullPath + "/" + key);
+		this.s3client.putObject(new PutObjectRequest(bucketFullPath, key, file));
+
+		final S3Object object = new S3Object();
+		object.setBucketName(bucketFullPath);
+		object.setKey(key);
+		return object;
+	}
+
+	private void setLifecycleConfiguration(final String bucketFullPath) {
+		final BucketLifecycleConfiguration.Rule ruleArchiveAndExpire = new BucketLifecycleConfiguration.Rule()
+				.withId("Delete cloudFolder archives")
+				.withPrefix(this.extractPrefix(bucketFullPath) + ZIP_PREFIX)
+				.withExpirationInDays(1)
+				.withStatus(BucketLifecycleConfiguration.ENABLED.toString());
+		final List<BucketLifecycleConfiguration.Rule> rules = new ArrayList<BucketLifecycleConfiguration.Rule>();
+		rules.add(ruleArchiveAndExpire);
+		final BucketLifecycleConfiguration configuration = new BucketLifecycleConfiguration().withRules(rules);
+		this.s3client.setBucketLifecycleConfiguration(bucketFullPath, configuration);
+	}
+
 	private String extractPrefix(final String bucketFullPath) {
 		String prefix = null;
 		if (bucketFullPath.contains("/")) {
@@ -192,7 +407,9 @@ public class AmazonS3Uploader {
 	}
 
 	/**
-	 * Delete uploaded files from S3.
+	 * Delete uploaded files from S3. Archives uploaded by {@link #compressAndUpload(String, String[])} may be in use
+	 * by other uploaders, which cannot be told about, so they are left to the bucket's lifecycle rule. Files uploaded
+	 * by {@link #uploadTemporaryFile(String, File)} are deleted.
 	 * 
 	 * @param bucketName
 	 *            The name of the bucket.
@@ -200,12 +417,24 @@ public class AmazonS3Uploader {
 	 *            The resource's key.
 	 * */
 	public void deleteS3Object(final String bucketName, final String key) {
+		if (isArchiveKey(key)) {
+			logger.fine("S3 archive left to the bucket lifecycle rule: bucketName=" + bucketName + ", key=" + key);
+			return;
+		}
 		try {
 			logger.fine("Delete S3 resource: bucketName=" + bucketName + ", key=" + key);
 			s3client.deleteObject(bucketName, key);
 		} catch (final Exception e) {
-			logger.log(Level.WARNING, "Couldn't delete files from S3 : bucketName=" + bucketName + ", keys=" + key);
+			logger.log(Level.WARNING, "Couldn't delete files from S3 : bucketName=" + bucketName + ", keys="
+					+ key);
 		}
 	}
 
+	/**
+	 * An archive handed out by this uploader.
+	 */
+	private static final class UploadedArchive {
+		// the time the archive was uploaded, by this uploader or another one. Guarded by the archive.
+		private long uploadedAt = 0;
+	}
 }
@@ -62,7 +62,6 @@ import org.cloudifysource.esc.driver.provisioning.privateEc2.parser.beans.Instan
 import org.cloudifysource.esc.driver.provisioning.privateEc2.parser.beans.PrivateEc2Template;
 import org.cloudifysource.esc.driver.provisioning.privateEc2.parser.beans.VolumeMapping;
 import org.cloudifysource.esc.driver.provisioning.privateEc2.parser.beans.VolumeProperties;
-import org.cloudifysource.esc.util.TarGzUtils;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
@@ -950,6 +949,7 @@ public class PrivateEC2CloudifyDriver extends CloudDriverSupport implements
 		final List<String> securityGroups = properties.getSecurityGroupsAsString();
 
 		S3Object s3Object = null;
+		S3Object envS3Object = null;
 		try {
 
 			String userData = null;
@@ -959,8 +959,11 @@ public class PrivateEC2CloudifyDriver extends CloudDriverSupport implements
 				final String script =
 						management ? this.generateManagementCloudifyEnv(ctx) : this.generateCloudifyEnv(ctx);
 
-				s3Object = this.uploadCloudDir(ctx, script, management);
+				s3Object = this.uploadCloudDir(management);
 				final String cloudFileS3 = this.amazonS3Uploader.generatePresignedURL(s3Object);
+				// the env script holds credentials, so it is not part of the shared archive.
+				envS3Object = this.uploadEnvScript(script, management);
+				final String envFileS3 = this.amazonS3Uploader.generatePresignedURL(envS3Object);
 
 				String cloudFileDir = (String) template.getRemoteDirectory();
 				// Remove '/' from the path if it's the last char.
@@ -975,6 +978,9 @@ public class PrivateEC2CloudifyDriver extends CloudDriverSupport implements
 				sb.append("mkdir -p " + cloudFileDir).append(endOfLine);
 				sb.append("tar zxvf $TMP_DIRECTORY/cloudArchive.tar.gz -C " + cloudFileDir).append(endOfLine);
 				sb.append("rm -f $TMP_DIRECTORY/cloudArchive.tar.gz").append(endOfLine);
+				sb.append("export S3_ENV_FILE='" + envFileS3 + "'").append(endOfLine);
+				sb.append("wget -q -O ").append(cloudFileDir).append("/").append(CLOUDIFY_ENV_SCRIPT)
+						.append(" $S3_ENV_FILE").append(endOfLine);
 				sb.append("echo ").append(cloudFileDir).append("/").append(CLOUDIFY_ENV_SCRIPT).append(endOfLine);
 				sb.append("chmod 755 ").append(cloudFileDir).append("/").append(CLOUDIFY_ENV_SCRIPT).append(endOfLine);
 				sb.append("source ").append(cloudFileDir).append("/").append(CLOUDIFY_ENV_SCRIPT).append(endOfLine);
@@ -1037,6 +1043,9 @@ public class PrivateEC2CloudifyDriver extends CloudDriverSupport implements
 			if (s3Object != null) {
 				this.amazonS3Uploader.deleteS3Object(s3Object.getBucketName(), s3Object.getKey());
 			}
+			if (envS3Object != null) {
+				this.amazonS3Uploader.deleteS3Object(envS3Object.getBucketName(), envS3Object.getKey());
+			}
 		}
 	}
 
@@ -1072,8 +1081,7 @@ public class PrivateEC2CloudifyDriver extends CloudDriverSupport implements
 		}
 	}
 
-	private S3Object uploadCloudDir(final ProvisioningContextImpl ctx, final String script, final boolean isManagement)
-			throws CloudProvisioningException {
+	private S3Object uploadCloudDir(final boolean isManagement) throws CloudProvisioningException {
 		try {
 			final ComputeTemplate template = this.getManagerComputeTemplate();
 			final String cloudDirectory =
@@ -1081,6 +1089,22 @@ public class PrivateEC2CloudifyDriver extends CloudDriverSupport implements
 							: template.getAbsoluteUploadDir();
 			final String s3BucketName = (String) template.getCustom().get("s3BucketName");
 
+			// Compress and upload to S3
+			logger.fine("Archive folder to upload: " + cloudDirectory);
+			final S3Object s3Object = amazonS3Uploader.compressAndUpload(s3BucketName, new String[] { cloudDirectory });
+			return s3Object;
+		} catch (IOException e) {
+			throw new CloudProvisioningException(e);
+		}
+	}
+
+	private S3Object uploadEnvScript(final String script, final boolean isManagement)
+			throws CloudProvisioningException {
+		File tmpEnvFile = null;
+		try {
+			final ComputeTemplate template = this.getManagerComputeTemplate();
+			final String s3BucketName = (String) template.getCustom().get("s3BucketName");
+
 			// Generate env script
 			final StringBuilder sb = new StringBuilder();
 			sb.append("#!/bin/bash\n");
@@ -1090,25 +1114,18 @@ public class PrivateEC2CloudifyDriver extends CloudDriverSupport implements
 				sb.append("export LUS_IP_ADDRESS=`curl http://instance-data/latest/meta-data/local-ipv4`:4174");
 			}
 
-			// Create tmp dir
-			final File createTempFile = File.createTempFile("cloudify_env", "");
-			createTempFile.delete();
-			// Create tmp file
-			final File tmpEnvFile = new File(createTempFile, CLOUDIFY_ENV_SCRIPT);
-			tmpEnvFile.deleteOnExit();
-			// Write the script into the temp filedir
+			// Write the script into a tmp file
+			tmpEnvFile = File.createTempFile("cloudify_env", ".sh");
 			FileUtils.writeStringToFile(tmpEnvFile, sb.toString(), CharEncoding.UTF_8);
 
-			// Compress file
-			logger.fine("Archive folders to upload: " + cloudDirectory + " and " + tmpEnvFile.getAbsolutePath());
-			String[] sourcePaths = new String[] { cloudDirectory, tmpEnvFile.getAbsolutePath() };
-			final File tarGzFile = TarGzUtils.createTarGz(sourcePaths, false);
-
 			// Upload to S3
-			final S3Object s3Object = amazonS3Uploader.uploadFile(s3BucketName, tarGzFile);
-			return s3Object;
+			return amazonS3Uploader.uploadTemporaryFile(s3BucketName, tmpEnvFile);
 		} catch (IOException e) {
 			throw new CloudProvisioningException(e);
+		} finally {
+			if (tmpEnvFile != null) {
+				FileUtils.deleteQuietly(tmpEnvFile);
+			}
 		}
 	}
 
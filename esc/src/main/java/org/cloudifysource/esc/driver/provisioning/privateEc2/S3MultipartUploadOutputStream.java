@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.privateEc2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * Stream that uploads what is written to it as an S3 multipart upload.<br />
+ * Every full part is uploaded in the background while the next one is written, with a bounded number of parts in
+ * flight, and each part is retried on its own. Closing the stream completes the upload; {@link #abort()} discards it.
+ *
+ * @since 2.7.1
+ */
+class S3MultipartUploadOutputStream extends OutputStream {
+
+	private static final Logger logger = Logger.getLogger(S3MultipartUploadOutputStream.class.getName());
+
+	private final AmazonS3 s3client;
+	private final String bucketName;
+	private final String key;
+	private final int partSize;
+	private final int maxAttempts;
+	private final long retryIntervalMillis;
+	private final String uploadId;
+
+	private final ExecutorService executor;
+	// limits the parts held in memory, being written or waiting to be uploaded.
+	private final Semaphore partsInFlight;
+	private final List<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+
+	private byte[] buffer;
+	private int count = 0;
+	private boolean closed = false;
+	private boolean aborted = false;
+
+	/**
+	 * Starts a multipart upload.
+	 *
+	 * @param s3client
+	 *            The S3 client.
+	 * @param bucketName
+	 *            The bucket to upload to.
+	 * @param key
+	 *            The key of the uploaded object.
+	 * @param partSize
+	 *            The size of every part but the last, in bytes. S3 requires at least 5MB.
+	 * @param parallelUploads
+	 *            The number of parts uploaded at the same time.
+	 * @param maxAttempts
+	 *            The number of times to try uploading each part.
+	 * @param retryIntervalMillis
+	 *            The time to wait before trying a failed part again, in milliseconds.
+	 */
+	S3MultipartUploadOutputStream(final AmazonS3 s3client, final String bucketName, final String key,
+			final int partSize, final int parallelUploads, final int maxAttempts, final long retryIntervalMillis) {
+		this.s3client = s3client;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.partSize = partSize;
+		this.maxAttempts = maxAttempts;
+		this.retryIntervalMillis = retryIntervalMillis;
+		this.buffer = new byte[partSize];
+		this.partsInFlight = new Semaphore(parallelUploads + 1);
+		this.executor = Executors.newFixedThreadPool(parallelUploads);
+		try {
+			this.uploadId = s3client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key))
+					.getUploadId();
+		} catch (final RuntimeException e) {
+			executor.shutdownNow();
+			throw e;
+		}
+		logger.fine("Started multipart upload " + uploadId + " of " + bucketName + "/" + key);
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		ensureOpen();
+		buffer[count++] = (byte) b;
+		if (count == partSize) {
+			submitPart();
+		}
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		ensureOpen();
+		int offset = off;
+		int remaining = len;
+		while (remaining > 0) {
+			final int length = Math.min(remaining, partSize - count);
+			System.arraycopy(b, offset, buffer, count, length);
+			count += length;
+			offset += length;
+			remaining -= length;
+			if (count == partSize) {
+				submitPart();
+			}
+		}
+	}
+
+	/**
+	 * Uploads the last part and completes the upload. The upload is aborted if any of its parts failed.
+	 *
+	 * @throws IOException
+	 *             If the upload failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (count > 0 || parts.isEmpty()) {
+			try {
+				submitPart();
+			} catch (final IOException e) {
+				abort();
+				throw e;
+			}
+		}
+		closed = true;
+		try {
+			final List<PartETag> partETags = new ArrayList<PartETag>(parts.size());
+			for (final Future<PartETag> part : parts) {
+				partETags.add(part.get());
+			}
+			s3client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId,
+					partETags));
+			logger.fine("Completed multipart upload " + uploadId + " of " + bucketName + "/" + key + " in "
+					+ partETags.size() + " parts");
+		} catch (final ExecutionException e) {
+			abort();
+			throw new IOException("Failed uploading " + bucketName + "/" + key + ": " + e.getCause().getMessage(),
+					e.getCause());
+		} catch (final InterruptedException e) {
+			abort();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while uploading " + bucketName + "/" + key, e);
+		} catch (final AmazonClientException e) {
+			abort();
+			throw new IOException("Failed completing upload of " + bucketName + "/" + key + ": " + e.getMessage(), e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Discards the upload and the parts uploaded so far.
+	 */
+	public void abort() {
+		if (aborted) {
+			return;
+		}
+		aborted = true;
+		closed = true;
+		executor.shutdownNow();
+		try {
+			s3client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+		} catch (final Exception e) {
+			logger.log(Level.WARNING, "Failed aborting multipart upload " + uploadId + " of " + bucketName + "/"
+					+ key + ": " + e.getMessage(), e);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Upload of " + bucketName + "/" + key + " is closed");
+		}
+	}
+
+	private void submitPart() throws IOException {
+		// fail fast rather than compressing the rest of the content.
+		for (final Future<PartETag> part : parts) {
+			if (part.isDone()) {
+				try {
+					part.get();
+				} catch (final ExecutionException e) {
+					throw new IOException("Failed uploading " + bucketName + "/" + key + ": "
+							+ e.getCause().getMessage(), e.getCause());
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while uploading " + bucketName + "/" + key, e);
+				}
+			}
+		}
+
+		final byte[] part = buffer;
+		final int length = count;
+		final int partNumber = parts.size() + 1;
+		try {
+			partsInFlight.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while uploading " + bucketName + "/" + key, e);
+		}
+		parts.add(executor.submit(new Callable<PartETag>() {
+			@Override
+			public PartETag call() throws InterruptedException {
+				try {
+					return uploadPart(part, length, partNumber);
+				} finally {
+					partsInFlight.release();
+				}
+			}
+		}));
+		buffer = new byte[partSize];
+		count = 0;
+	}
+
+	private PartETag uploadPart(final byte[] part, final int length, final int partNumber)
+			throws InterruptedException {
+		int attempt = 1;
+		while (true) {
+			try {
+				final UploadPartRequest request = new UploadPartRequest()
+						.withBucketName(bucketName)
+						.withKey(key)
+						.withUploadId(uploadId)
+						.withPartNumber(partNumber)
+						.withPartSize(length)
+						.withInputStream(new ByteArrayInputStream(part, 0, length));
+				return s3client.uploadPart(request).getPartETag();
+			} catch (final AmazonClientException e) {
+				if (attempt >= maxAttempts) {
+					throw e;
+				}
+				logger.log(Level.FINE, "Failed uploading part " + partNumber + " of " + bucketName + "/" + key
+						+ " (attempt " + attempt + " of " + maxAttempts + "), retrying: " + e.getMessage(), e);
+				attempt++;
+				Thread.sleep(retryIntervalMillis);
+			}
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package org.cloudifysource.esc.driver.provisioning.storage.aws;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -24,6 +25,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -82,11 +88,13 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 	private static final int MIN_VOLUME_SIZE = 1;
 	private static final String NAME_TAG_KEY = "Name";
 	private static final int WAIT_FOR_STATUS_RETRY_INTERVAL_MILLIS = 3 * 1000; // Three seconds
+	private static final int MAX_PARALLEL_VOLUME_OPERATIONS = 10;
 	
 	private Cloud cloud;
 	private String region;
 	private ComputeServiceContext context;
 	private ElasticBlockStoreClient ebsClient;
+	private EbsVolumeStatusTracker statusTracker;
 	private TagApi tagApi;
 	private ComputeTemplate computeTemplate;
     private JCloudsDeployer deployer;
@@ -188,6 +196,10 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 
 		final long end = System.currentTimeMillis() + timeUnit.toMillis(duration);
 		NodeMetadata nodeMetadata = deployer.getServerWithIP(ip);
+		if (nodeMetadata == null) {
+			throw new StorageProvisioningException("Failed to attach volume " + volumeId + " to server. Server "
+					+ "with ip: " + ip + " not found");
+		}
 		try {
 			String instanceId = nodeMetadata.getProviderId();
 			logger.log(Level.FINE, "Attaching volume with id " + volumeId 
@@ -206,6 +218,10 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 		
 		final long end = System.currentTimeMillis() + timeUnit.toMillis(duration);
 		NodeMetadata nodeMetadata = deployer.getServerWithIP(ip);
+		if (nodeMetadata == null) {
+			throw new StorageProvisioningException("Failed to detach volume " + volumeId + " from server " + ip
+					+ ". Server not found.");
+		}
 
         try {
             logger.fine("Detaching volume with id " + volumeId + " from machine with id "
@@ -283,22 +299,55 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 		}
 		
 		// call to terminate all Cloudify volumes
-		for (String volumeId: cloudifyVolumes) {
-			deleteVolume(volumeId);
-		}
+		deleteVolumes(cloudifyVolumes);
 		
 		// verify volumes reach a "DELETING" status or not found (meaning they were probably deleted already)
 		final long endTime = System.currentTimeMillis() + timeUnit.toMillis(duration);
-		for (String volumeId: cloudifyVolumes) {
-			try {
-				// according to the documentation, the volume should stay in 'deleting' status for a few minutes. 
-				waitForVolumeToReachStatus(Status.DELETING, endTime, volumeId);
-			} catch (final StorageProvisioningException e) {
-				// Volume was not found. Do nothing.
+		// according to the documentation, the volume should stay in 'deleting' status for a few minutes.
+		// Volumes that are not found are ignored.
+		this.statusTracker.waitForStatus(cloudifyVolumes, Status.DELETING, endTime);
+		logger.fine("Volumes with ids " + cloudifyVolumes + " deleted successfully");
+	}
+
+	private void deleteVolumes(final Set<String> volumeIds) throws StorageProvisioningException {
+		if (volumeIds.isEmpty()) {
+			return;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(MAX_PARALLEL_VOLUME_OPERATIONS, volumeIds.size()));
+		try {
+			final List<Future<Void>> deletions = new ArrayList<Future<Void>>(volumeIds.size());
+			for (final String volumeId : volumeIds) {
+				deletions.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws StorageProvisioningException {
+						deleteVolume(volumeId);
+						return null;
+					}
+				}));
 			}
-			logger.fine("Volume with id " + volumeId + " deleted successfully");
+			StorageProvisioningException failure = null;
+			for (final Future<Void> deletion : deletions) {
+				try {
+					deletion.get();
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (failure == null) {
+						failure = cause instanceof StorageProvisioningException ? (StorageProvisioningException) cause
+								: new StorageProvisioningException("Failed deleting volumes. Reason: "
+										+ cause.getMessage(), e);
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageProvisioningException("Interrupted while deleting volumes " + volumeIds, e);
+		} finally {
+			executor.shutdownNow();
 		}
-		
 	}
 	
 	
@@ -326,8 +375,14 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 		Set<VolumeDetails> volumeDetails = new HashSet<VolumeDetails>();
 		try {
 			Set<Volume> allVolumes = this.ebsClient.describeVolumesInRegion(this.region, (String[]) null);
+			Map<String, String> volumeNames = getVolumeNames();
 			for (Volume volume : allVolumes) {
-				volumeDetails.add(createVolumeDetails(volume));
+				if (volumeNames == null) {
+					volumeDetails.add(createVolumeDetails(volume));
+				} else {
+					String volumeName = volumeNames.get(volume.getId());
+					volumeDetails.add(createVolumeDetails(volume, volumeName == null ? "" : volumeName));
+				}
 			}
 
 		} catch (Exception e) {
@@ -356,6 +411,28 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 		}
 	}
 	
+	/**
+	 * Gets the names of all the volumes in the region with a single request, rather than a request per volume.
+	 * 
+	 * @return volume id -> volume name, or null if the names could not be listed.
+	 */
+	private Map<String, String> getVolumeNames() {
+		try {
+			logger.fine("Filtering tags to find the 'Name' tags of all volumes");
+			FluentIterable<Tag> filter = getTagsApi().filter(
+					new TagFilterBuilder().volume().key(NAME_TAG_KEY).build());
+			Map<String, String> volumeNames = new HashMap<String, String>();
+			for (Tag tag : filter.toImmutableList()) {
+				volumeNames.put(tag.getResourceId(), tag.getValue().or(""));
+			}
+			return volumeNames;
+		} catch (Exception e) {
+			logger.log(Level.FINE, "Failed listing volume names, getting them one by one. Reason: "
+					+ e.getMessage(), e);
+			return null;
+		}
+	}
+
 	@Override
 	public void setComputeContext(final Object computeContext)
 			throws StorageProvisioningException {
@@ -383,9 +460,7 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 	}
 	
 	private VolumeDetails createVolumeDetails(final Volume volume) {
-		String availabilityZone = volume.getAvailabilityZone();
 		String id = volume.getId();
-		int size = volume.getSize();
 		String volumeName = ""; 
 		try {
 			volumeName = getVolumeName(id);
@@ -393,11 +468,14 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 			// Native volumes do not have a name only id.
 			logger.info("Could not obtain volume name for node with id: " + id + ". Reason: " + e.getMessage());
 		}
-		
+		return createVolumeDetails(volume, volumeName);
+	}
+
+	private VolumeDetails createVolumeDetails(final Volume volume, final String volumeName) {
 		VolumeDetails volumeDetails = new VolumeDetails();
-		volumeDetails.setLocation(availabilityZone);
-		volumeDetails.setId(id);
-		volumeDetails.setSize(size);
+		volumeDetails.setLocation(volume.getAvailabilityZone());
+		volumeDetails.setId(volume.getId());
+		volumeDetails.setSize(volume.getSize());
 		volumeDetails.setName(volumeName); 
 		return volumeDetails;
 	}
@@ -407,6 +485,8 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 			ElasticBlockStoreClient ebsClient = EC2Client.class.cast(getContext().unwrap(EC2ApiMetadata.CONTEXT_TOKEN)
 					.getApi()).getElasticBlockStoreServices();
 			this.ebsClient = ebsClient;
+			this.statusTracker = new EbsVolumeStatusTracker(ebsClient, this.region,
+					WAIT_FOR_STATUS_RETRY_INTERVAL_MILLIS);
 		} catch (Exception e) {
 			throw new IllegalStateException("Failed creating ebs client. Reason: " + e.getMessage(), e);
 		}
@@ -443,6 +523,10 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 					throws StorageProvisioningException {
 		
 		NodeMetadata nodeMetadata = deployer.getServerWithIP(ip);
+		if (nodeMetadata == null) {
+			throw new StorageProvisioningException("Failed to list volumes attached to " + ip
+					+ ". Server not found");
+		}
 		Hardware nodeHardware = nodeMetadata.getHardware();
 		List<? extends org.jclouds.compute.domain.Volume> machineVolumes = nodeHardware.getVolumes();
 		Set<String> machineVolumeIds = new HashSet<String>();
@@ -461,25 +545,8 @@ public class EbsStorageDriver extends BaseStorageDriver implements StorageProvis
 			throws TimeoutException, StorageProvisioningException {
 
         logger.fine("Waiting for volume '" + volumeId + "' to reach status " + status);
-
-		Set<Volume> volumes;
-		while (System.currentTimeMillis() < end) {
-			try {
-				volumes = this.ebsClient.describeVolumesInRegion(this.region, volumeId);
-				Thread.sleep(WAIT_FOR_STATUS_RETRY_INTERVAL_MILLIS);
-			} catch (Exception e) {
-				throw new StorageProvisioningException("Failed getting volume description."
-						+ " Reason: " + e.getMessage(), e);
-			}
-			Volume volume = volumes.iterator().next();
-			Status volumeStatus = volume.getStatus();
-			if (volumeStatus.equals(status)) {
-				return;
-			} else {
-                logger.fine("Volume[" + volumeId + "] is in status " + volume.getStatus());
-            }
-		}
-		throw new TimeoutException("Timed out waiting for storage status to become " + status.toString());
+        // volumes waited for at the same time are described together.
+        this.statusTracker.waitForStatus(volumeId, status, end);
 	}
 	
 	private ComputeServiceContext getContext() {
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.driver.provisioning.storage.aws;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.esc.driver.provisioning.storage.StorageProvisioningException;
+import org.jclouds.ec2.domain.Volume;
+import org.jclouds.ec2.domain.Volume.Status;
+import org.jclouds.ec2.services.ElasticBlockStoreClient;
+
+/********************************************************************************
+ * Waits for EBS volumes to reach a status.<br />
+ * All the volumes waited for are described together, in a single request per round, by a single thread which runs
+ * only while there are volumes to wait for. So waiting for the volumes of many service instances at the same time
+ * does not multiply the requests made to EC2.
+ *
+ * @since 2.7.1
+ ********************************************************************************/
+final class EbsVolumeStatusTracker {
+
+	private static final Logger logger = Logger.getLogger(EbsVolumeStatusTracker.class.getName());
+
+	private final ElasticBlockStoreClient ebsClient;
+	private final String region;
+	private final long pollingInterval;
+
+	private final Set<PendingVolume> pendingVolumes = Collections.newSetFromMap(
+			new ConcurrentHashMap<PendingVolume, Boolean>());
+	private final Object pollerLock = new Object();
+	private boolean polling = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ebsClient
+	 *            The client used to describe the volumes.
+	 * @param region
+	 *            The region of the volumes.
+	 * @param pollingInterval
+	 *            The time between descriptions of the volumes, in milliseconds.
+	 */
+	EbsVolumeStatusTracker(final ElasticBlockStoreClient ebsClient, final String region, final long pollingInterval) {
+		this.ebsClient = ebsClient;
+		this.region = region;
+		this.pollingInterval = pollingInterval;
+	}
+
+	/**
+	 * Starts waiting for a volume to reach a status.
+	 *
+	 * @param volumeId
+	 *            The volume id.
+	 * @param status
+	 *            The status to wait for.
+	 * @return The pending volume, completed once the volume reaches the status or can not be described.
+	 */
+	public PendingVolume track(final String volumeId, final Status status) {
+		final PendingVolume pendingVolume = new PendingVolume(volumeId, status);
+		pendingVolumes.add(pendingVolume);
+		synchronized (pollerLock) {
+			if (!polling) {
+				polling = true;
+				final Thread poller = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						poll();
+					}
+				}, "EBS volumes poller");
+				poller.setDaemon(true);
+				poller.start();
+			}
+		}
+		return pendingVolume;
+	}
+
+	/**
+	 * Waits for a volume to reach a status.
+	 *
+	 * @param volumeId
+	 *            The volume id.
+	 * @param status
+	 *            The status to wait for.
+	 * @param end
+	 *            The time to stop waiting.
+	 * @throws TimeoutException
+	 *             If the volume did not reach the status by the end time.
+	 * @throws StorageProvisioningException
+	 *             If the volume could not be described, e.g. because it does not exist.
+	 */
+	public void waitForStatus(final String volumeId, final Status status, final long end)
+			throws TimeoutException, StorageProvisioningException {
+		track(volumeId, status).await(end);
+	}
+
+	/**
+	 * Waits for volumes to reach a status.
+	 *
+	 * @param volumeIds
+	 *            The volume ids.
+	 * @param status
+	 *            The status to wait for.
+	 * @param end
+	 *            The time to stop waiting.
+	 * @return The volumes that could not be described, mapped to the reason.
+	 * @throws TimeoutException
+	 *             If any of the volumes did not reach the status by the end time.
+	 */
+	public Map<String, StorageProvisioningException> waitForStatus(final Collection<String> volumeIds,
+			final Status status, final long end) throws TimeoutException {
+		final List<PendingVolume> volumes = new ArrayList<PendingVolume>(volumeIds.size());
+		for (final String volumeId : volumeIds) {
+			volumes.add(track(volumeId, status));
+		}
+		final Map<String, StorageProvisioningException> failures =
+				new HashMap<String, StorageProvisioningException>();
+		TimeoutException timeout = null;
+		for (final PendingVolume volume : volumes) {
+			try {
+				volume.await(end);
+			} catch (final StorageProvisioningException e) {
+				failures.put(volume.getVolumeId(), e);
+			} catch (final TimeoutException e) {
+				timeout = e;
+			}
+		}
+		if (timeout != null) {
+			throw timeout;
+		}
+		return failures;
+	}
+
+	private void poll() {
+		try {
+			while (true) {
+				synchronized (pollerLock) {
+					if (pendingVolumes.isEmpty()) {
+						polling = false;
+						return;
+					}
+				}
+				pollVolumes();
+				Thread.sleep(pollingInterval);
+			}
+		} catch (final InterruptedException e) {
+			logger.fine("EBS volumes poller interrupted");
+			synchronized (pollerLock) {
+				polling = false;
+			}
+		}
+	}
+
+	private void pollVolumes() {
+		final Set<String> volumeIds = new LinkedHashSet<String>();
+		for (final PendingVolume pendingVolume : pendingVolumes) {
+			volumeIds.add(pendingVolume.getVolumeId());
+		}
+		if (volumeIds.isEmpty()) {
+			return;
+		}
+
+		final Map<String, Volume> volumes = new HashMap<String, Volume>();
+		final Map<String, Exception> failures = new HashMap<String, Exception>();
+		try {
+			for (final Volume volume : ebsClient.describeVolumesInRegion(region,
+					volumeIds.toArray(new String[volumeIds.size()]))) {
+				volumes.put(volume.getId(), volume);
+			}
+		} catch (final Exception e) {
+			// EC2 fails the whole request if one of the volumes is missing, so find out which one.
+			logger.log(Level.FINE, "Failed describing volumes " + volumeIds + ", describing them one by one: "
+					+ e.getMessage(), e);
+			for (final String volumeId : volumeIds) {
+				try {
+					for (final Volume volume : ebsClient.describeVolumesInRegion(region, volumeId)) {
+						volumes.put(volume.getId(), volume);
+					}
+				} catch (final Exception ex) {
+					failures.put(volumeId, ex);
+				}
+			}
+		}
+
+		for (final PendingVolume pendingVolume : pendingVolumes) {
+			final String volumeId = pendingVolume.getVolumeId();
+			final Volume volume = volumes.get(volumeId);
+			if (volume != null) {
+				if (volume.getStatus().equals(pendingVolume.getStatus())) {
+					complete(pendingVolume, null);
+				} else {
+					logger.fine("Volume[" + volumeId + "] is in status " + volume.getStatus());
+					pendingVolume.lastStatus = volume.getStatus();
+				}
+			} else if (failures.containsKey(volumeId)) {
+				final Exception e = failures.get(volumeId);
+				complete(pendingVolume, new StorageProvisioningException("Failed getting volume description."
+						+ " Reason: " + e.getMessage(), e));
+			} else if (volumeIds.contains(volumeId)) {
+				complete(pendingVolume, new StorageProvisioningException("Failed getting volume description."
+						+ " Reason: volume " + volumeId + " was not found"));
+			}
+		}
+	}
+
+	private void complete(final PendingVolume pendingVolume, final StorageProvisioningException failure) {
+		pendingVolumes.remove(pendingVolume);
+		pendingVolume.complete(failure);
+	}
+
+	/********************************************************************************
+	 * A volume waiting to reach a status.
+	 ********************************************************************************/
+	final class PendingVolume {
+
+		private final String volumeId;
+		private final Status status;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile StorageProvisioningException failure;
+		private volatile Status lastStatus;
+
+		private PendingVolume(final String volumeId, final Status status) {
+			this.volumeId = volumeId;
+			this.status = status;
+		}
+
+		private void complete(final StorageProvisioningException reason) {
+			this.failure = reason;
+			done.countDown();
+		}
+
+		/**
+		 * Waits for the volume to reach its status. Stops tracking the volume if it did not.
+		 *
+		 * @param end
+		 *            The time to stop waiting.
+		 * @throws TimeoutException
+		 *             If the volume did not reach the status by the end time.
+		 * @throws StorageProvisioningException
+		 *             If the volume could not be described.
+		 */
+		public void await(final long end) throws TimeoutException, StorageProvisioningException {
+			boolean finished;
+			try {
+				finished = done.await(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				pendingVolumes.remove(this);
+				Thread.currentThread().interrupt();
+				throw new StorageProvisioningException("Interrupted while waiting for volume " + volumeId
+						+ " to reach status " + status, e);
+			}
+			if (!finished) {
+				pendingVolumes.remove(this);
+				throw new TimeoutException("Timed out waiting for storage status to become " + status.toString()
+						+ (lastStatus == null ? "" : ". Last status was " + lastStatus));
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+
+		public String getVolumeId() {
+			return volumeId;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+	}
+}
@@ -21,14 +21,15 @@ import org.cloudifysource.esc.installer.filetransfer.FileTransferFactory;
 import org.cloudifysource.esc.installer.remoteExec.RemoteExecutor;
 import org.cloudifysource.esc.installer.remoteExec.RemoteExecutorFactory;
 import org.cloudifysource.esc.util.CalcUtils;
+import org.cloudifysource.esc.util.ReachabilityProber;
 import org.cloudifysource.esc.util.Utils;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -61,6 +62,9 @@ public class AgentlessInstaller {
 	private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(AgentlessInstaller.class
 			.getName());
 
+	// every attempt connects again, as the machine may be starting.
+	private static final ReachabilityProber CONNECTION_PROBER = new ReachabilityProber(0, 1);
+
 	private final List<AgentlessInstallerListener> eventsListenersList = new LinkedList<AgentlessInstallerListener>();
 
 	// Set this field to override the default environment file builder with a custom one.
@@ -132,27 +136,21 @@ public class AgentlessInstaller {
 		final InetSocketAddress socketAddress = new InetSocketAddress(inetAddress, port);
 
 		logger.fine("Checking connection to: " + socketAddress);
-		while (System.currentTimeMillis() + installerConfiguration.getConnectionTestIntervalMillis() < end) {
+		final List<InetSocketAddress> targets = Collections.singletonList(socketAddress);
+		while (true) {
+			// a machine that is already up is used right away, the interval only separates failed attempts.
+			final long connectTimeout = Math.min(installerConfiguration.getConnectionTestConnectTimeoutMillis(),
+					Math.max(1, end - System.currentTimeMillis()));
+			if (CONNECTION_PROBER.probe(targets, connectTimeout).get(socketAddress)) {
+				return;
+			}
 
-			// need to sleep since sock.connect may return immediately, and
+			// need to sleep since a failed connection may return immediately, and
 			// server may take time to start
-			Thread.sleep(installerConfiguration.getConnectionTestIntervalMillis());
-
-			final Socket sock = new Socket();
-			try {
-				sock.connect(socketAddress, installerConfiguration.getConnectionTestConnectTimeoutMillis());
-				return;
-			} catch (final IOException e) {
-				// retry
-			} finally {
-				if (sock != null) {
-					try {
-						sock.close();
-					} catch (final IOException e) {
-						logger.fine("Failed to close socket");
-					}
-				}
+			if (System.currentTimeMillis() + installerConfiguration.getConnectionTestIntervalMillis() >= end) {
+				break;
 			}
+			Thread.sleep(installerConfiguration.getConnectionTestIntervalMillis());
 		}
 		
 		//timeout was reached
@@ -29,7 +29,6 @@ import org.jclouds.compute.domain.ComputeMetadata;
 import org.jclouds.compute.domain.Image;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.domain.Template;
-import org.jclouds.compute.domain.TemplateBuilder;
 import org.jclouds.compute.options.TemplateOptions;
 import org.jclouds.domain.Location;
 import org.jclouds.logging.jdk.config.JDKLoggingModule;
@@ -41,6 +40,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -48,6 +49,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -56,6 +59,10 @@ import java.util.logging.Level;
  * A JClouds based deployer that creates and queries JClouds complaint servers. All of the JClouds features used in the
  * cloud ESM Machine Provisioning are called from this class.
  *
+ * Lookups by name, IP, group and filter are served from an inventory of the cloud's nodes, which is listed again once
+ * it is older than a few seconds, rather than listing all the nodes in the account for each lookup. Templates are
+ * resolved once per image, hardware and location and reused for a few minutes.
+ *
  *
  *
  * @author barakme
@@ -71,6 +78,12 @@ public class JCloudsDeployer {
     private static final String DEFAULT_IMAGE_ID_RACKSPACE = "51";
     private static final long RETRY_SLEEP_TIMEOUT_IN_MILLIS = 5000;
     private static final int NUMBER_OF_RETRY_ATTEMPTS = 2;
+    private static final long INVENTORY_MAX_STALENESS_MILLIS = 30000;
+    private static final long INVENTORY_MIN_REFRESH_INTERVAL_MILLIS = 5000;
+    private static final long TEMPLATE_RESOLUTION_TTL_MILLIS = 10 * 60 * 1000;
+    // template options class -> its public methods by name.
+    private static final ConcurrentMap<Class<?>, Map<String, List<Method>>> TEMPLATE_OPTIONS_METHODS =
+            new ConcurrentHashMap<Class<?>, Map<String, List<Method>>>();
     private int minRamMegabytes = DEFAULT_MIN_RAM_MB;
     private String imageId = DEFAULT_IMAGE_ID_RACKSPACE;
     private ComputeServiceContext context;
@@ -80,6 +93,9 @@ public class JCloudsDeployer {
     private final String account;
     private final String key;
     private final Properties overrides;
+    private final JCloudsInventory inventory = new JCloudsInventory(this, INVENTORY_MAX_STALENESS_MILLIS,
+            INVENTORY_MIN_REFRESH_INTERVAL_MILLIS);
+    private final JCloudsTemplateCache templateCache = new JCloudsTemplateCache(this, TEMPLATE_RESOLUTION_TTL_MILLIS);
 
     public void close() {
         this.context.close();
@@ -268,7 +284,9 @@ public class JCloudsDeployer {
      * @throws RunNodesException .
      */
     public Set<? extends NodeMetadata> createDefaultServer(final String name) throws RunNodesException {
-        return this.context.getComputeService().createNodesInGroup(name, 1);
+        final Set<? extends NodeMetadata> nodes = this.context.getComputeService().createNodesInGroup(name, 1);
+        inventory.putAll(nodes);
+        return nodes;
     }
 
     public Set<? extends Image> getAllImages() {
@@ -292,7 +310,10 @@ public class JCloudsDeployer {
      * @return the node meta data, or null if no match is found.
      */
     public NodeMetadata getServer(final Predicate<ComputeMetadata> filter) {
-        final Set<? extends NodeMetadata> nodes = getServers(filter);
+        return getSingleRunningServer(getServers(filter));
+    }
+
+    private NodeMetadata getSingleRunningServer(final Set<? extends NodeMetadata> nodes) {
         final Set<NodeMetadata> runningNodes = new HashSet<NodeMetadata>();
         final Iterator<? extends NodeMetadata> nodesIterator = nodes.iterator();
         while (nodesIterator.hasNext()) {
@@ -317,7 +338,17 @@ public class JCloudsDeployer {
      * @return the node meta data, or null.
      */
     public NodeMetadata getServerByID(final String serverID) {
-        return this.context.getComputeService().getNodeMetadata(serverID);
+        // always queried, as callers poll the node's status.
+        return updateInventory(serverID, this.context.getComputeService().getNodeMetadata(serverID));
+    }
+
+    private NodeMetadata updateInventory(final String serverID, final NodeMetadata node) {
+        if (node == null) {
+            inventory.remove(serverID);
+        } else {
+            inventory.put(node);
+        }
+        return node;
     }
 
     /*********
@@ -329,30 +360,17 @@ public class JCloudsDeployer {
      */
     public NodeMetadata getServerByName(final String serverName) {
         final String adaptedServerName = serverName.replace("_", "") + "-";
-
-        final Predicate<ComputeMetadata> filter = new Predicate<ComputeMetadata>() {
-
-            @Override
-            public boolean apply(final ComputeMetadata compute) {
-                if (compute.getName() == null) {
-                    return false;
-                }
-                return compute.getName().startsWith(adaptedServerName);
-            }
-
-        };
-
-        return getServer(filter);
+        return getSingleRunningServer(inventory.getNodesWithNamePrefix(adaptedServerName));
     }
 
     /*******************
-     * Returns all nodes that match the given criteria.
+     * Returns all nodes that match the given criteria, from the inventory of the cloud's nodes.
      *
      * @param filter the filter criteria.
      * @return the nodes.
      */
     public Set<? extends NodeMetadata> getServers(final Predicate<ComputeMetadata> filter) {
-        return this.context.getComputeService().listNodesDetailsMatching(filter);
+        return inventory.getNodes(filter);
     }
 
     /*******************
@@ -362,67 +380,36 @@ public class JCloudsDeployer {
      * @return the nodes.
      */
     public Set<? extends NodeMetadata> getServers(final String group) {
-        return getServers(new Predicate<ComputeMetadata>() {
-
-            @Override
-            public boolean apply(final ComputeMetadata input) {
-                final NodeMetadata node = (NodeMetadata) input;
-                return node.getGroup() != null && node.getGroup().equals(group);
-            }
-        });
-
+        return inventory.getNodesInGroup(group);
     }
 
     /***********
-     * Returns a server whose private or public IPs contain the given IP.
+     * Returns a server whose private or public IPs contain the given IP. If the inventory holds no such server, the
+     * cloud's nodes are listed again before giving up, as the inventory may predate a machine that just started or
+     * was just assigned its addresses.
      *
      * @param ip the IP to look for.
      * @return the node meta data, or null.
      */
     public NodeMetadata getServerWithIP(final String ip) {
-        final Predicate<ComputeMetadata> filter = new Predicate<ComputeMetadata>() {
-
-            @Override
-            public boolean apply(final ComputeMetadata compute) {
-                final NodeMetadata node = (NodeMetadata) compute;
-                return node.getPrivateAddresses().contains(ip) || node.getPublicAddresses().contains(ip);
-            }
-
-        };
-
-        return getServer(filter);
-
+        final NodeMetadata node = getSingleRunningServer(inventory.getNodesWithIp(ip));
+        if (node != null) {
+            return node;
+        }
+        inventory.refresh();
+        return getSingleRunningServer(inventory.getNodesWithIp(ip));
     }
 
     /************
-     * Returns the default template used to create new servers. Note that if the template has not been instantiated yet,
-     * it will be done in this call.
+     * Returns the default template used to create new servers. The image, hardware and location matching the
+     * deployer's settings are resolved once and reused for a few minutes; each call returns a new template with its
+     * own options.
      *
      * @return the template.
      */
     public Template getTemplate(String locationId) {
 
-        logger.fine("Creating Cloud Template with locationId = " + locationId + ". This may take a few seconds");
-
-        final TemplateBuilder builder = this.context.getComputeService().templateBuilder();
-        if (imageId != null && !imageId.isEmpty()) {
-            builder.imageId(imageId);
-        }
-
-        if (minRamMegabytes > 0) {
-            builder.minRam(minRamMegabytes);
-        }
-
-        if (hardwareId != null && !hardwareId.isEmpty()) {
-            builder.hardwareId(hardwareId);
-        }
-
-        if (locationId != null && !locationId.isEmpty()) {
-            builder.locationId(locationId);
-        }
-
-        // this is usually a remote call, and may take a while to return.
-        Template template = builder.build();
+        final Template template = templateCache.getTemplate(imageId, hardwareId, minRamMegabytes, locationId);
 
         handleExtraOptions(template);
         logger.fine("Cloud Template is ready for use. " + template);
@@ -435,22 +422,27 @@ public class JCloudsDeployer {
             // use reflection to set extra options
             final Set<Entry<String, Object>> optionEntries = this.extraOptions.entrySet();
             final TemplateOptions templateOptions = template.getOptions();
-            final Method[] templateOptionsMethods = templateOptions.getClass().getMethods();
+            final Map<String, List<Method>> templateOptionsMethods = getTemplateOptionsMethods(
+                    templateOptions.getClass());
 
             for (final Entry<String, Object> entry : optionEntries) {
                 final String entryKey = entry.getKey();
                 final Object entryValue = entry.getValue();
+                List<Method> methods = templateOptionsMethods.get(entryKey);
+                if (methods == null) {
+                    methods = Collections.emptyList();
+                }
                 if (entryValue == null) {
                     handleNullValueTemplateOption(
-                            optionEntries, templateOptions, entry, entryKey);
+                            templateOptions, entry, entryKey, methods);
                 } else {
                     final boolean found = handleSingleParameterOption(
-                            templateOptions, entryKey, entryValue, templateOptionsMethods);
+                            templateOptions, entryKey, entryValue, methods);
 
                     if (!found) {
                         if (entryValue instanceof List<?>) {
                             handleListParameterOption(
-                                    templateOptions, entryKey, entryValue, templateOptionsMethods);
+                                    templateOptions, entryKey, entryValue, methods);
                         } else {
                             throw new IllegalArgumentException(
                                     "Could not find a template option method matching name: " + entryKey
@@ -463,8 +455,29 @@ public class JCloudsDeployer {
         }
     }
 
+    /**
+     * Returns the public methods of the given template options class, by name. The methods of each class are looked up
+     * once.
+     */
+    private static Map<String, List<Method>> getTemplateOptionsMethods(final Class<?> templateOptionsClass) {
+        Map<String, List<Method>> methodsByName = TEMPLATE_OPTIONS_METHODS.get(templateOptionsClass);
+        if (methodsByName == null) {
+            methodsByName = new HashMap<String, List<Method>>();
+            for (final Method method : templateOptionsClass.getMethods()) {
+                List<Method> methods = methodsByName.get(method.getName());
+                if (methods == null) {
+                    methods = new ArrayList<Method>();
+                    methodsByName.put(method.getName(), methods);
+                }
+                methods.add(method);
+            }
+            TEMPLATE_OPTIONS_METHODS.putIfAbsent(templateOptionsClass, methodsByName);
+        }
+        return methodsByName;
+    }
+
     private void handleListParameterOption(final TemplateOptions templateOptions, final String entryKey,
-                                           final Object entryValue, final Method[] templateOptionMethods) {
+                                           final Object entryValue, final List<Method> templateOptionMethods) {
         // no method accepts a list - try for a method that
         // takes a parameter for each list entry
         @SuppressWarnings("unchecked")
@@ -472,24 +485,22 @@ public class JCloudsDeployer {
         final Object[] paramArray = paramList.toArray();
 
         for (Method m : templateOptionMethods) {
-            if (m.getName().equals(entryKey)) {
-                if (m.getParameterTypes().length == paramList.size()) {
-                    try {
-                        m.invoke(templateOptions, paramArray);
-                        return;
-                    } catch (IllegalArgumentException e) {
-                        throw new IllegalArgumentException("Failed to set option: " + entryKey
-                                + " by invoking method: "
-                                + m + " with value: " + Arrays.toString(paramArray) + ". Error was: " + e.getMessage(), e);
-                    } catch (IllegalAccessException e) {
-                        throw new IllegalArgumentException("Failed to set option: " + entryKey
-                                + " by invoking method: "
-                                + m + " with value: " + Arrays.toString(paramArray) + ". Error was: " + e.getMessage(), e);
-                    } catch (InvocationTargetException e) {
-                        throw new IllegalArgumentException("Failed to set option: " + entryKey
-                                + " by invoking method: "
-                                + m + " with value: " + Arrays.toString(paramArray) + ". Error was: " + e.getMessage(), e);
-                    }
+            if (m.getParameterTypes().length == paramList.size()) {
+                try {
+                    m.invoke(templateOptions, paramArray);
+                    return;
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Failed to set option: " + entryKey
+                            + " by invoking method: "
+                            + m + " with value: " + Arrays.toString(paramArray) + ". Error was: " + e.getMessage(), e);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException("Failed to set option: " + entryKey
+                            + " by invoking method: "
+                            + m + " with value: " + Arrays.toString(paramArray) + ". Error was: " + e.getMessage(), e);
+                } catch (InvocationTargetException e) {
+                    throw new IllegalArgumentException("Failed to set option: " + entryKey
+                            + " by invoking method: "
+                            + m + " with value: " + Arrays.toString(paramArray) + ". Error was: " + e.getMessage(), e);
                 }
             }
         }
@@ -497,28 +508,25 @@ public class JCloudsDeployer {
     }
 
     private boolean handleSingleParameterOption(final TemplateOptions templateOptions, final String entryKey,
-                                                final Object entryValue, final Method[] templateOptionsMethods) {
+                                                final Object entryValue, final List<Method> templateOptionsMethods) {
 
         int numOfMethodsFound = 0;
         Exception invocationException = null;
         for (final Method method : templateOptionsMethods) {
-            if (method.getName().equals(
-                    entryKey)) {
-                if (method.getParameterTypes().length == 1) {
-                    try {
-                        ++numOfMethodsFound;
-                        logger.fine("Invoking " + entryKey + ". Number of methods found so far: " + numOfMethodsFound);
-                        method.invoke(
-                                templateOptions, entryValue);
-                        // invoked successfully
-                        return true;
-                    } catch (final IllegalArgumentException e) {
-                        invocationException = e;
-                    } catch (final IllegalAccessException e) {
-                        invocationException = e;
-                    } catch (final InvocationTargetException e) {
-                        invocationException = e;
-                    }
+            if (method.getParameterTypes().length == 1) {
+                try {
+                    ++numOfMethodsFound;
+                    logger.fine("Invoking " + entryKey + ". Number of methods found so far: " + numOfMethodsFound);
+                    method.invoke(
+                            templateOptions, entryValue);
+                    // invoked successfully
+                    return true;
+                } catch (final IllegalArgumentException e) {
+                    invocationException = e;
+                } catch (final IllegalAccessException e) {
+                    invocationException = e;
+                } catch (final InvocationTargetException e) {
+                    invocationException = e;
                 }
             }
         }
@@ -538,57 +546,42 @@ public class JCloudsDeployer {
 
     }
 
-    private void handleNullValueTemplateOption(final Set<Entry<String, Object>> optionEntries,
-                                               final TemplateOptions templateOptions, final Entry<String, Object> entry, final String entryKey) {
-        // first look for no arg method
-        Method m = null;
-        try {
-            m = optionEntries.getClass().getMethod(
-                    entryKey);
-            // got the method
-        } catch (final SecurityException e) {
-            throw new IllegalArgumentException("Error while looking for method to match template option: " + entryKey,
-                    e);
-        } catch (final NoSuchMethodException e) {
-            // ignore - method was not found
+    private void handleNullValueTemplateOption(final TemplateOptions templateOptions,
+                                               final Entry<String, Object> entry, final String entryKey,
+                                               final List<Method> templateOptionsMethods) {
+        // first look for no arg method, then for a method with a single Object argument
+        Method noArgMethod = null;
+        Method objectArgMethod = null;
+        for (final Method method : templateOptionsMethods) {
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length == 0) {
+                noArgMethod = method;
+            } else if (parameterTypes.length == 1 && parameterTypes[0] == Object.class) {
+                objectArgMethod = method;
+            }
         }
 
-        if (m != null) {
+        if (noArgMethod != null) {
             // Found a no-arg method for this option
             try {
                 // invoke with no args
-                m.invoke(templateOptions);
+                noArgMethod.invoke(templateOptions);
             } catch (final Exception e) {
                 throw new IllegalArgumentException("Failed to set template option with name: " + entryKey, e);
 
             }
-        } else {
-            // look for a matching method with a single argument
-            try {
-                m = optionEntries.getClass().getMethod(
-                        entryKey, Object.class);
-                // got the method
-            } catch (final SecurityException e) {
-                throw new IllegalArgumentException("Error while looking for method to match template option: "
-                        + entryKey, e);
-            } catch (final NoSuchMethodException e) {
-                // ignore - method was not found
-            }
-
+        } else if (objectArgMethod != null) {
             // invoke with a null parameter
-            if (m != null) {
-                try {
-                    m.invoke(
-                            templateOptions, (Object) null);
-                } catch (final Exception e) {
-                    throw new IllegalArgumentException("Failed to set template option with name: " + entryKey
-                            + " to value: null", e);
-                }
-            } else {
-                throw new IllegalArgumentException("Could not find a method matching template option: "
-                        + entry.getKey());
+            try {
+                objectArgMethod.invoke(
+                        templateOptions, (Object) null);
+            } catch (final Exception e) {
+                throw new IllegalArgumentException("Failed to set template option with name: " + entryKey
+                        + " to value: null", e);
             }
-
+        } else {
+            throw new IllegalArgumentException("Could not find a method matching template option: "
+                    + entry.getKey());
         }
     }
 
@@ -616,6 +609,7 @@ public class JCloudsDeployer {
      */
     public void shutdownMachine(final String serverId) {
         this.context.getComputeService().destroyNode(serverId);
+        inventory.remove(serverId);
     }
 
     /*********
@@ -635,6 +629,7 @@ public class JCloudsDeployer {
         NodeMetadata nodeMetadata = this.context.getComputeService().getNodeMetadata(serverId);
         logger.fine("Invoking destroy node on " + serverId);
         this.context.getComputeService().destroyNode(serverId);
+        inventory.remove(serverId);
 
         logger.info("Machine: " + nodeMetadata.getPrivateAddresses() + "-" + serverId + " shutdown has started. "
                 + "Waiting for process to complete");
@@ -683,14 +678,20 @@ public class JCloudsDeployer {
      * @param group group name.
      */
     public void shutdownMachineGroup(final String group) {
-        this.context.getComputeService().destroyNodesMatching(
+        removeFromInventory(this.context.getComputeService().destroyNodesMatching(
                 new Predicate<NodeMetadata>() {
 
                     @Override
                     public boolean apply(final NodeMetadata input) {
                         return input.getGroup() != null && input.getGroup().equals(group);
                     }
-                });
+                }));
+    }
+
+    private void removeFromInventory(final Set<? extends NodeMetadata> destroyedNodes) {
+        for (final NodeMetadata node : destroyedNodes) {
+            inventory.remove(node.getId());
+        }
     }
 
     /********
@@ -699,7 +700,7 @@ public class JCloudsDeployer {
      * @param ips list of IPs. Any node which has one of these IPs will be shut down.
      */
     public void shutdownMachinesWithIPs(final Set<String> ips) {
-        this.context.getComputeService().destroyNodesMatching(
+        removeFromInventory(this.context.getComputeService().destroyNodesMatching(
                 new Predicate<NodeMetadata>() {
 
                     @Override
@@ -710,7 +711,7 @@ public class JCloudsDeployer {
                         }
                         return false;
                     }
-                });
+                }));
     }
 
     /********
@@ -759,10 +760,11 @@ public class JCloudsDeployer {
     public void shutdownNodeAsync(final String id) {
         logger.fine("Destroying node " + id);
         this.context.getComputeService().destroyNode(id);
+        inventory.remove(id);
     }
 
     public NodeMetadata.Status getNodeStatus(final String id) {
-        NodeMetadata nodeMetadata = this.context.getComputeService().getNodeMetadata(id);
+        NodeMetadata nodeMetadata = getServerByID(id);
         if (nodeMetadata != null) {
             return nodeMetadata.getStatus();
         }
@@ -785,26 +787,9 @@ public class JCloudsDeployer {
      * @return the node meta data, or null.
      */
     public NodeMetadata getServerByTag(final String tag) {
-        final Predicate<ComputeMetadata> filter = new Predicate<ComputeMetadata>() {
-
-            @Override
-            public boolean apply(final ComputeMetadata compute) {
-                final NodeMetadata node = (NodeMetadata) compute;
-                if (node.getGroup() == null) {
-                    return false;
-                }
-                if (node.getGroup().equals(tag)) {
-                    return true;
-                }
-                if (node.getGroup().equals(tag.replace("_", ""))) {
-                    return true;
-                }
-                return false;
-            }
-
-        };
-
-        return getServer(filter);
+        final Set<NodeMetadata> nodes = new HashSet<NodeMetadata>(inventory.getNodesInGroup(tag));
+        nodes.addAll(inventory.getNodesInGroup(tag.replace("_", "")));
+        return getSingleRunningServer(nodes);
     }
 
     private Set<? extends NodeMetadata> createServersWithRetry(final String group, final int count,
@@ -823,6 +808,7 @@ public class JCloudsDeployer {
                 }
                 nodes = this.context.getComputeService().createNodesInGroup(
                         group, count, template);
+                inventory.putAll(nodes);
             } catch (final ResourceNotFoundException e) {
                 if (retryAttempts < NUMBER_OF_RETRY_ATTEMPTS && e.getMessage() != null
                         && e.getMessage().contains("The security group")
@@ -855,6 +841,8 @@ public class JCloudsDeployer {
             return;
         }
         logger.warning("Resetting JClouds Deployer");
+        inventory.clear();
+        templateCache.clear();
         this.context.close();
         this.context = ContextBuilder.newBuilder(provider)
                 .credentials(account, key)
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.jclouds;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jclouds.compute.domain.ComputeMetadata;
+import org.jclouds.compute.domain.NodeMetadata;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/************
+ * A cache of the cloud's nodes, indexed by id, name, IP address and group, so looking up nodes does not list all the
+ * nodes in the account.<br />
+ * The inventory is listed again once it is older than its maximum staleness, and lookups that find nothing list it
+ * again sooner, so nodes created by other processes are found. Nodes created, destroyed or queried by the deployer
+ * are updated one by one in between.
+ *
+ * @since 2.7.1
+ */
+final class JCloudsInventory {
+
+	private static final Logger logger = Logger.getLogger(JCloudsInventory.class.getName());
+
+	private final JCloudsDeployer deployer;
+	private final long maxStalenessMillis;
+	private final long minRefreshIntervalMillis;
+
+	// guards the index updates, so single node updates are not lost to a full refresh running at the same time.
+	private final Object updateLock = new Object();
+	// a single full refresh runs at a time.
+	private final Object refreshLock = new Object();
+
+	private volatile Index index = new Index();
+	private volatile long refreshedAt = 0;
+	// node id -> node, or null for a removed node, for the updates made while a full refresh was running.
+	private Map<String, NodeMetadata> updatesDuringRefresh = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param deployer
+	 *            The deployer whose compute service lists the nodes.
+	 * @param maxStalenessMillis
+	 *            The time after which all the nodes are listed again.
+	 * @param minRefreshIntervalMillis
+	 *            The minimal time between listings triggered by lookups that found nothing.
+	 */
+	JCloudsInventory(final JCloudsDeployer deployer, final long maxStalenessMillis,
+			final long minRefreshIntervalMillis) {
+		this.deployer = deployer;
+		this.maxStalenessMillis = maxStalenessMillis;
+		this.minRefreshIntervalMillis = minRefreshIntervalMillis;
+	}
+
+	/**
+	 * Returns the nodes that have the given IP as a private or public address.
+	 *
+	 * @param ip
+	 *            The IP address.
+	 * @return The matching nodes.
+	 */
+	public Set<NodeMetadata> getNodesWithIp(final String ip) {
+		Set<NodeMetadata> nodes = getFreshIndex().getNodesWithIp(ip);
+		if (nodes.isEmpty() && refreshIfOlderThan(minRefreshIntervalMillis)) {
+			nodes = index.getNodesWithIp(ip);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the nodes of the given group.
+	 *
+	 * @param group
+	 *            The group name.
+	 * @return The matching nodes.
+	 */
+	public Set<NodeMetadata> getNodesInGroup(final String group) {
+		Set<NodeMetadata> nodes = getFreshIndex().getNodesInGroup(group);
+		if (nodes.isEmpty() && refreshIfOlderThan(minRefreshIntervalMillis)) {
+			nodes = index.getNodesInGroup(group);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the nodes whose name starts with the given prefix.
+	 *
+	 * @param prefix
+	 *            The name prefix.
+	 * @return The matching nodes.
+	 */
+	public Set<NodeMetadata> getNodesWithNamePrefix(final String prefix) {
+		Set<NodeMetadata> nodes = getFreshIndex().getNodesWithNamePrefix(prefix);
+		if (nodes.isEmpty() && refreshIfOlderThan(minRefreshIntervalMillis)) {
+			nodes = index.getNodesWithNamePrefix(prefix);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the nodes that match the given filter.
+	 *
+	 * @param filter
+	 *            The filter.
+	 * @return The matching nodes.
+	 */
+	public Set<NodeMetadata> getNodes(final Predicate<ComputeMetadata> filter) {
+		Set<NodeMetadata> nodes = getFreshIndex().getNodes(filter);
+		if (nodes.isEmpty() && refreshIfOlderThan(minRefreshIntervalMillis)) {
+			nodes = index.getNodes(filter);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Adds or updates a node, typically one just created or queried.
+	 *
+	 * @param node
+	 *            The node.
+	 */
+	public void put(final NodeMetadata node) {
+		synchronized (updateLock) {
+			index.put(node);
+			if (updatesDuringRefresh != null) {
+				updatesDuringRefresh.put(node.getId(), node);
+			}
+		}
+	}
+
+	/**
+	 * Adds or updates nodes, typically ones just created.
+	 *
+	 * @param nodes
+	 *            The nodes.
+	 */
+	public void putAll(final Collection<? extends NodeMetadata> nodes) {
+		for (final NodeMetadata node : nodes) {
+			put(node);
+		}
+	}
+
+	/**
+	 * Removes a node, typically one being destroyed or not found anymore.
+	 *
+	 * @param id
+	 *            The node id.
+	 */
+	public void remove(final String id) {
+		synchronized (updateLock) {
+			index.remove(id);
+			if (updatesDuringRefresh != null) {
+				updatesDuringRefresh.put(id, null);
+			}
+		}
+	}
+
+	/**
+	 * Drops all the nodes, so the next lookup lists them again.
+	 */
+	public void clear() {
+		synchronized (updateLock) {
+			index = new Index();
+			refreshedAt = 0;
+		}
+	}
+
+	private Index getFreshIndex() {
+		refreshIfOlderThan(maxStalenessMillis);
+		return index;
+	}
+
+	/**
+	 * Lists all the nodes again, however recently they were listed.
+	 */
+	public void refresh() {
+		refreshIfOlderThan(0);
+	}
+
+	/**
+	 * Lists all the nodes again, unless they were listed in the last given milliseconds.
+	 *
+	 * @return True if the nodes were listed by this call or by a call running at the same time.
+	 */
+	private boolean refreshIfOlderThan(final long ageMillis) {
+		if (System.currentTimeMillis() - refreshedAt < ageMillis) {
+			return false;
+		}
+		synchronized (refreshLock) {
+			final long startTime = System.currentTimeMillis();
+			if (startTime - refreshedAt < ageMillis) {
+				// listed by another thread while we waited.
+				return true;
+			}
+			synchronized (updateLock) {
+				updatesDuringRefresh = new HashMap<String, NodeMetadata>();
+			}
+			Set<? extends NodeMetadata> nodes = null;
+			try {
+				logger.fine("Listing all cloud nodes");
+				nodes = deployer.getContext().getComputeService()
+						.listNodesDetailsMatching(Predicates.<ComputeMetadata>alwaysTrue());
+			} finally {
+				if (nodes == null) {
+					synchronized (updateLock) {
+						updatesDuringRefresh = null;
+					}
+				}
+			}
+
+			final Index newIndex = new Index();
+			for (final NodeMetadata node : nodes) {
+				newIndex.put(node);
+			}
+			synchronized (updateLock) {
+				for (final Map.Entry<String, NodeMetadata> update : updatesDuringRefresh.entrySet()) {
+					if (update.getValue() == null) {
+						newIndex.remove(update.getKey());
+					} else {
+						newIndex.put(update.getValue());
+					}
+				}
+				updatesDuringRefresh = null;
+				index = newIndex;
+				refreshedAt = startTime;
+			}
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Listed " + nodes.size() + " cloud nodes");
+			}
+			return true;
+		}
+	}
+
+	/************
+	 * The nodes and their indexes. Reads take no lock, updates are made under the inventory's update lock.
+	 */
+	private static final class Index {
+		private final ConcurrentMap<String, NodeMetadata> nodesById = new ConcurrentHashMap<String, NodeMetadata>();
+		private final ConcurrentMap<String, Set<String>> idsByIp = new ConcurrentHashMap<String, Set<String>>();
+		private final ConcurrentMap<String, Set<String>> idsByGroup = new ConcurrentHashMap<String, Set<String>>();
+		private final ConcurrentSkipListMap<String, Set<String>> idsByName =
+				new ConcurrentSkipListMap<String, Set<String>>();
+
+		void put(final NodeMetadata node) {
+			remove(node.getId());
+			nodesById.put(node.getId(), node);
+			for (final String ip : node.getPrivateAddresses()) {
+				addToIndex(idsByIp, ip, node.getId());
+			}
+			for (final String ip : node.getPublicAddresses()) {
+				addToIndex(idsByIp, ip, node.getId());
+			}
+			addToIndex(idsByGroup, node.getGroup(), node.getId());
+			addToIndex(idsByName, node.getName(), node.getId());
+		}
+
+		void remove(final String id) {
+			final NodeMetadata node = nodesById.remove(id);
+			if (node == null) {
+				return;
+			}
+			for (final String ip : node.getPrivateAddresses()) {
+				removeFromIndex(idsByIp, ip, id);
+			}
+			for (final String ip : node.getPublicAddresses()) {
+				removeFromIndex(idsByIp, ip, id);
+			}
+			removeFromIndex(idsByGroup, node.getGroup(), id);
+			removeFromIndex(idsByName, node.getName(), id);
+		}
+
+		Set<NodeMetadata> getNodesWithIp(final String ip) {
+			return getNodes(idsByIp.get(ip));
+		}
+
+		Set<NodeMetadata> getNodesInGroup(final String group) {
+			return group == null ? Collections.<NodeMetadata>emptySet() : getNodes(idsByGroup.get(group));
+		}
+
+		Set<NodeMetadata> getNodesWithNamePrefix(final String prefix) {
+			final Set<NodeMetadata> nodes = new HashSet<NodeMetadata>();
+			for (final Map.Entry<String, Set<String>> entry : idsByName.tailMap(prefix).entrySet()) {
+				if (!entry.getKey().startsWith(prefix)) {
+					break;
+				}
+				nodes.addAll(getNodes(entry.getValue()));
+			}
+			return nodes;
+		}
+
+		Set<NodeMetadata> getNodes(final Predicate<ComputeMetadata> filter) {
+			final Set<NodeMetadata> nodes = new HashSet<NodeMetadata>();
+			for (final NodeMetadata node : nodesById.values()) {
+				if (filter.apply(node)) {
+					nodes.add(node);
+				}
+			}
+			return nodes;
+		}
+
+		private Set<NodeMetadata> getNodes(final Set<String> ids) {
+			final Set<NodeMetadata> nodes = new HashSet<NodeMetadata>();
+			if (ids != null) {
+				for (final String id : ids) {
+					final NodeMetadata node = nodesById.get(id);
+					if (node != null) {
+						nodes.add(node);
+					}
+				}
+			}
+			return nodes;
+		}
+
+		private static void addToIndex(final ConcurrentMap<String, Set<String>> index, final String key,
+				final String id) {
+			if (key == null) {
+				return;
+			}
+			Set<String> ids = index.get(key);
+			if (ids == null) {
+				ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+				index.put(key, ids);
+			}
+			ids.add(id);
+		}
+
+		private static void removeFromIndex(final ConcurrentMap<String, Set<String>> index, final String key,
+				final String id) {
+			if (key == null) {
+				return;
+			}
+			final Set<String> ids = index.get(key);
+			if (ids != null) {
+				ids.remove(id);
+				if (ids.isEmpty()) {
+					index.remove(key, ids);
+				}
+			}
+		}
+	}
+}
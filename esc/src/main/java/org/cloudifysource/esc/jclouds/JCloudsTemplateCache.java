@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.esc.jclouds;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.jclouds.compute.domain.Template;
+import org.jclouds.compute.domain.TemplateBuilder;
+import org.jclouds.compute.domain.internal.TemplateImpl;
+
+/************
+ * A cache of resolved jclouds templates, per image, hardware, minimal RAM and location.<br />
+ * Resolving a template matches the requirements against the provider's images, hardware profiles and locations,
+ * which usually takes remote calls. The resolved image, hardware and location are kept for a while, and each caller
+ * gets its own template with its own copy of the options, so starting a burst of machines resolves the template once.
+ * Callers asking for a template that is being resolved wait for that resolution instead of starting another.
+ *
+ * @since 2.7.1
+ */
+final class JCloudsTemplateCache {
+
+	private static final Logger logger = Logger.getLogger(JCloudsTemplateCache.class.getName());
+
+	private final JCloudsDeployer deployer;
+	private final long ttlMillis;
+	private final ConcurrentMap<String, ResolvedTemplate> templates = new ConcurrentHashMap<String, ResolvedTemplate>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param deployer
+	 *            The deployer whose compute service resolves the templates.
+	 * @param ttlMillis
+	 *            The time after which a template is resolved again.
+	 */
+	JCloudsTemplateCache(final JCloudsDeployer deployer, final long ttlMillis) {
+		this.deployer = deployer;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * Returns a template matching the given requirements, resolving it if it was not resolved recently.
+	 *
+	 * @param imageId
+	 *            The image id, or null or empty for any image.
+	 * @param hardwareId
+	 *            The hardware id, or null or empty for any hardware.
+	 * @param minRamMegabytes
+	 *            The minimal RAM, or 0 or less for any RAM.
+	 * @param locationId
+	 *            The location id, or null or empty for any location.
+	 * @return A new template, with default options that the caller may change.
+	 */
+	public Template getTemplate(final String imageId, final String hardwareId, final int minRamMegabytes,
+			final String locationId) {
+		final String key = imageId + '|' + hardwareId + '|' + minRamMegabytes + '|' + locationId;
+		ResolvedTemplate resolvedTemplate = templates.get(key);
+		if (resolvedTemplate == null) {
+			final ResolvedTemplate newResolvedTemplate =
+					new ResolvedTemplate(imageId, hardwareId, minRamMegabytes, locationId);
+			resolvedTemplate = templates.putIfAbsent(key, newResolvedTemplate);
+			if (resolvedTemplate == null) {
+				resolvedTemplate = newResolvedTemplate;
+			}
+		}
+		final Template template = resolvedTemplate.get();
+		return new TemplateImpl(template.getImage(), template.getHardware(), template.getLocation(),
+				template.getOptions().clone());
+	}
+
+	/**
+	 * Drops all the resolved templates, so the next calls resolve them again.
+	 */
+	public void clear() {
+		templates.clear();
+	}
+
+	/************
+	 * The requirements of a template and its last resolution.
+	 */
+	private final class ResolvedTemplate {
+		private final String imageId;
+		private final String hardwareId;
+		private final int minRamMegabytes;
+		private final String locationId;
+
+		private Template template;
+		private long resolvedAt;
+
+		ResolvedTemplate(final String imageId, final String hardwareId, final int minRamMegabytes,
+				final String locationId) {
+			this.imageId = imageId;
+			this.hardwareId = hardwareId;
+			this.minRamMegabytes = minRamMegabytes;
+			this.locationId = locationId;
+		}
+
+		synchronized Template get() {
+			final long now = System.currentTimeMillis();
+			if (template != null && now - resolvedAt < ttlMillis) {
+				return template;
+			}
+
+			logger.fine("Creating Cloud Template with locationId = " + locationId + ". This may take a few seconds");
+			final TemplateBuilder builder = deployer.getContext().getComputeService().templateBuilder();
+			if (imageId != null && !imageId.isEmpty()) {
+				builder.imageId(imageId);
+			}
+			if (minRamMegabytes > 0) {
+				builder.minRam(minRamMegabytes);
+			}
+			if (hardwareId != null && !hardwareId.isEmpty()) {
+				builder.hardwareId(hardwareId);
+			}
+			if (locationId != null && !locationId.isEmpty()) {
+				builder.locationId(locationId);
+			}
+
+			// this is usually a remote call, and may take a while to return.
+			template = builder.build();
+			resolvedAt = now;
+			return template;
+		}
+	}
+}
@@ -15,37 +15,76 @@ package org.cloudifysource.esc.util;
 import groovy.lang.GroovyClassLoader;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.codehaus.groovy.control.CompilerConfiguration;
 
 /**
- * 
+ * Instantiates provisioning drivers, loading them from the cloud's lib folder if it exists.<br />
+ * Class loaders of cloud lib folders are shared: drivers loaded from lib folders with the same content get the same
+ * class loader, so the driver's classes and their dependencies are loaded once per ESM rather than once per service.
+ * Shared class loaders are reference counted, and dropped when the last builder using them is destroyed.
+ *
  * @author adaml
  * @since 2.7.0
  *
  */
 public class ProvisioningDriverClassBuilder {
 
+	private static final Logger logger = Logger.getLogger(ProvisioningDriverClassBuilder.class.getName());
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// lib folder content digest and parent class loader -> class loader. Guarded by itself.
+	private static final Map<ClassLoaderKey, SharedClassLoader> SHARED_CLASS_LOADERS =
+			new HashMap<ClassLoaderKey, SharedClassLoader>();
+	// file path, length and modification time -> content digest, so unchanged files are not read again.
+	private static final ConcurrentMap<String, String> FILE_DIGESTS = new ConcurrentHashMap<String, String>();
+
+	private static final AtomicLong SAVED_CLASSES = new AtomicLong();
+	private static final AtomicLong SAVED_CLASS_BYTES = new AtomicLong();
+
+	// the shared class loaders acquired by this builder. Guarded by itself.
+	private final List<SharedClassLoader> acquiredClassLoaders = new ArrayList<SharedClassLoader>();
+
 	/**
-	 * Load ProvisioningClass class from classpath and instantiate it. 
-	 * 
-	 * @param className 
+	 * Load ProvisioningClass class from classpath and instantiate it.
+	 *
+	 * @param className
 	 * 			the class name to instantiate.
-	 * @return 
+	 * @return
 	 * 			a new ProvisioningDriver instance
 	 * @throws ClassNotFoundException .
-	 * @throws InstantiationException . 
+	 * @throws InstantiationException .
 	 * @throws IllegalAccessException .
 	 */
-	public Object build(final String className) 
+	public Object build(final String className)
 			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
 		return Class.forName(className).newInstance();
 	}
 
 	/**
 	 * loads external packages from <cloudFolder/lib>  into classpath and returns a cloud driver instance.
-	 * 
+	 * The class loader of the lib folder is shared with other builders that loaded a lib folder with the same content,
+	 * until {@link #destroy()} is called.
+	 *
 	 * @param cloudFolder
 	 * 		The cloud folder.
 	 * @param className
@@ -56,29 +95,188 @@ public class ProvisioningDriverClassBuilder {
 	 * @throws InstantiationException .
 	 * @throws IllegalAccessException .
 	 */
-	public Object build(final String cloudFolder, final String className) 
+	public Object build(final String cloudFolder, final String className)
 			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
 
 		final File cloudLibFolder = new File(cloudFolder, "lib");
 		if (cloudLibFolder.exists()) {
-			String libFolderPath = cloudLibFolder.getAbsolutePath();
-			final CompilerConfiguration gcc = new CompilerConfiguration();
-			//add lib folder to the groovy classpath.
-			gcc.getClasspath().add(libFolderPath);
-			final File[] jarFiles = listJarFiles(cloudLibFolder);
-			for (File file : jarFiles) {
-				// add all jars in folder to the classpath.
-				gcc.getClasspath().add(file.getAbsolutePath());
-			}
-			//create new groovy classloader having current class loader as parent.
-			final ClassLoader ccl = Thread.currentThread().getContextClassLoader();
-			final GroovyClassLoader gcl = new GroovyClassLoader(ccl, gcc);
-			return gcl.loadClass(className).newInstance();
+			final ClassLoader classLoader = acquireClassLoader(cloudLibFolder);
+			return classLoader.loadClass(className).newInstance();
 		}
 		return build(className);
 
 	}
 
+	/**
+	 * Releases the class loaders used by the drivers this builder created. A class loader that is not used by any
+	 * other builder is dropped, so its classes can be unloaded once the drivers are gone.
+	 */
+	public void destroy() {
+		final List<SharedClassLoader> toRelease;
+		synchronized (acquiredClassLoaders) {
+			toRelease = new ArrayList<SharedClassLoader>(acquiredClassLoaders);
+			acquiredClassLoaders.clear();
+		}
+		for (final SharedClassLoader sharedClassLoader : toRelease) {
+			release(sharedClassLoader);
+		}
+	}
+
+	/**
+	 * @return The number of classes that were not loaded again because a class loader was shared.
+	 */
+	public static long getSavedClassCount() {
+		return SAVED_CLASSES.get();
+	}
+
+	/**
+	 * @return The size of the class files that were not loaded again because a class loader was shared. The memory
+	 *         taken by loaded classes is roughly proportional to it.
+	 */
+	public static long getSavedClassBytes() {
+		return SAVED_CLASS_BYTES.get();
+	}
+
+	/**
+	 * @return The number of class loaders shared at the moment.
+	 */
+	public static int getSharedClassLoaderCount() {
+		synchronized (SHARED_CLASS_LOADERS) {
+			return SHARED_CLASS_LOADERS.size();
+		}
+	}
+
+	private ClassLoader acquireClassLoader(final File cloudLibFolder) {
+		//class loaders are created having current class loader as parent.
+		final ClassLoader ccl = Thread.currentThread().getContextClassLoader();
+		final String digest = digestFolder(cloudLibFolder);
+		if (digest == null) {
+			// could not tell the content of the folder, so the class loader cannot be shared.
+			return createClassLoader(ccl, cloudLibFolder);
+		}
+
+		final ClassLoaderKey key = new ClassLoaderKey(digest, ccl);
+		SharedClassLoader sharedClassLoader;
+		int users;
+		synchronized (SHARED_CLASS_LOADERS) {
+			sharedClassLoader = SHARED_CLASS_LOADERS.get(key);
+			if (sharedClassLoader == null) {
+				sharedClassLoader = new SharedClassLoader(key, createClassLoader(ccl, cloudLibFolder));
+				SHARED_CLASS_LOADERS.put(key, sharedClassLoader);
+			}
+			users = ++sharedClassLoader.users;
+		}
+		synchronized (acquiredClassLoaders) {
+			acquiredClassLoaders.add(sharedClassLoader);
+		}
+
+		if (users > 1) {
+			final CountingGroovyClassLoader classLoader = sharedClassLoader.classLoader;
+			final long savedClasses = SAVED_CLASSES.addAndGet(classLoader.definedClasses.get());
+			final long savedBytes = SAVED_CLASS_BYTES.addAndGet(classLoader.definedClassBytes.get());
+			if (logger.isLoggable(Level.INFO)) {
+				logger.info("Reusing the class loader of " + cloudLibFolder.getAbsolutePath() + " (" + users
+						+ " users, " + classLoader.definedClasses.get() + " classes, "
+						+ classLoader.definedClassBytes.get() / 1024 + " KB of class files). So far "
+						+ savedClasses + " classes and " + savedBytes / 1024 + " KB of class files were not loaded"
+						+ " again.");
+			}
+		}
+		return sharedClassLoader.classLoader;
+	}
+
+	private static void release(final SharedClassLoader sharedClassLoader) {
+		synchronized (SHARED_CLASS_LOADERS) {
+			sharedClassLoader.users--;
+			if (sharedClassLoader.users > 0) {
+				return;
+			}
+			SHARED_CLASS_LOADERS.remove(sharedClassLoader.key);
+		}
+		logger.fine("Dropping an unused provisioning driver class loader");
+		sharedClassLoader.classLoader.clearCache();
+	}
+
+	private CountingGroovyClassLoader createClassLoader(final ClassLoader parent, final File cloudLibFolder) {
+		String libFolderPath = cloudLibFolder.getAbsolutePath();
+		final CompilerConfiguration gcc = new CompilerConfiguration();
+		//add lib folder to the groovy classpath.
+		gcc.getClasspath().add(libFolderPath);
+		final File[] jarFiles = listJarFiles(cloudLibFolder);
+		for (File file : jarFiles) {
+			// add all jars in folder to the classpath.
+			gcc.getClasspath().add(file.getAbsolutePath());
+		}
+		return new CountingGroovyClassLoader(parent, gcc);
+	}
+
+	/**
+	 * Returns a digest of the names and content of all the files in the folder and its sub folders, or null if a file
+	 * could not be read.
+	 */
+	private static String digestFolder(final File folder) {
+		try {
+			final MessageDigest folderDigest = MessageDigest.getInstance("SHA-1");
+			digestFolder(folder, "", folderDigest);
+			return toHex(folderDigest.digest());
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "Failed to read the content of " + folder.getAbsolutePath()
+					+ ", its class loader will not be shared: " + e.getMessage(), e);
+			return null;
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not supported", e);
+		}
+	}
+
+	private static void digestFolder(final File folder, final String relativePath, final MessageDigest folderDigest)
+			throws IOException, NoSuchAlgorithmException {
+		final File[] files = folder.listFiles();
+		if (files == null) {
+			throw new IOException("Failed to list " + folder.getAbsolutePath());
+		}
+		Arrays.sort(files);
+		for (final File file : files) {
+			final String filePath = relativePath + "/" + file.getName();
+			folderDigest.update(filePath.getBytes("UTF-8"));
+			if (file.isDirectory()) {
+				digestFolder(file, filePath, folderDigest);
+			} else {
+				folderDigest.update(digestFile(file).getBytes("UTF-8"));
+			}
+		}
+	}
+
+	private static String digestFile(final File file) throws IOException, NoSuchAlgorithmException {
+		final String fileKey = file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified();
+		String digest = FILE_DIGESTS.get(fileKey);
+		if (digest != null) {
+			return digest;
+		}
+
+		final MessageDigest fileDigest = MessageDigest.getInstance("SHA-1");
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				fileDigest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		digest = toHex(fileDigest.digest());
+		FILE_DIGESTS.put(fileKey, digest);
+		return digest;
+	}
+
+	private static String toHex(final byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
 	private File[] listJarFiles(final File libFolder) {
 		return libFolder.listFiles(new FilenameFilter() {
 			@Override
@@ -87,4 +285,77 @@ public class ProvisioningDriverClassBuilder {
 			}
 		});
 	}
+
+	/**
+	 * A groovy class loader that counts the classes it defines from its class path.
+	 */
+	private static final class CountingGroovyClassLoader extends GroovyClassLoader {
+
+		private final AtomicInteger definedClasses = new AtomicInteger();
+		private final AtomicLong definedClassBytes = new AtomicLong();
+
+		CountingGroovyClassLoader(final ClassLoader parent, final CompilerConfiguration config) {
+			super(parent, config);
+		}
+
+		@Override
+		protected Class<?> findClass(final String name) throws ClassNotFoundException {
+			final Class<?> definedClass = super.findClass(name);
+			definedClasses.incrementAndGet();
+			final URL classFile = findResource(name.replace('.', '/') + ".class");
+			if (classFile != null) {
+				try {
+					final int length = classFile.openConnection().getContentLength();
+					if (length > 0) {
+						definedClassBytes.addAndGet(length);
+					}
+				} catch (final IOException e) {
+					logger.finest("Failed to read the size of " + classFile);
+				}
+			}
+			return definedClass;
+		}
+	}
+
+	/**
+	 * A class loader and the number of builders using it.
+	 */
+	private static final class SharedClassLoader {
+		private final ClassLoaderKey key;
+		private final CountingGroovyClassLoader classLoader;
+		// guarded by the shared class loaders map.
+		private int users = 0;
+
+		SharedClassLoader(final ClassLoaderKey key, final CountingGroovyClassLoader classLoader) {
+			this.key = key;
+			this.classLoader = classLoader;
+		}
+	}
+
+	/**
+	 * Identifies a shared class loader by the content of its lib folder and its parent class loader.
+	 */
+	private static final class ClassLoaderKey {
+		private final String digest;
+		private final ClassLoader parent;
+
+		ClassLoaderKey(final String digest, final ClassLoader parent) {
+			this.digest = digest;
+			this.parent = parent;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof ClassLoaderKey)) {
+				return false;
+			}
+			final ClassLoaderKey other = (ClassLoaderKey) obj;
+			return digest.equals(other.digest) && parent == other.parent;
+		}
+
+		@Override
+		public int hashCode() {
+			return digest.hashCode() * 31 + System.identityHashCode(parent);
+		}
+	}
 }
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.esc.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks whether TCP connections can be made to remote hosts and ports.<br />
+ * Many targets are checked in parallel using non-blocking connects, each with its own deadline, so checking a list
+ * of hosts takes about as long as checking the slowest one. Results are cached per host and port for a short time,
+ * so repeated checks of the same target do not open new connections.
+ *
+ * @since 2.7.1
+ */
+public class ReachabilityProber {
+
+	private static final Logger logger = Logger.getLogger(ReachabilityProber.class.getName());
+
+	/**
+	 * The default time a check result is reused, in milliseconds.
+	 */
+	public static final long DEFAULT_RESULT_TTL_MILLIS = 10000;
+
+	/**
+	 * The default maximum number of connections attempted at the same time.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_CONNECTIONS = 256;
+
+	private final long resultTtlMillis;
+	private final int maxConcurrentConnections;
+	private final ConcurrentMap<String, CachedResult> results = new ConcurrentHashMap<String, CachedResult>();
+
+	/**
+	 * Creates a prober with the default result TTL and concurrency.
+	 */
+	public ReachabilityProber() {
+		this(DEFAULT_RESULT_TTL_MILLIS, DEFAULT_MAX_CONCURRENT_CONNECTIONS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param resultTtlMillis
+	 *            The time a check result is reused, in milliseconds. 0 disables the results cache.
+	 * @param maxConcurrentConnections
+	 *            The maximum number of connections attempted at the same time.
+	 */
+	public ReachabilityProber(final long resultTtlMillis, final int maxConcurrentConnections) {
+		if (maxConcurrentConnections < 1) {
+			throw new IllegalArgumentException("maxConcurrentConnections must be positive");
+		}
+		this.resultTtlMillis = resultTtlMillis;
+		this.maxConcurrentConnections = maxConcurrentConnections;
+	}
+
+	/**
+	 * Checks whether a TCP connection can be made to the given host and port.
+	 *
+	 * @param host
+	 *            The host name or IP address
+	 * @param port
+	 *            The port number
+	 * @param timeoutMillis
+	 *            The time to wait for the connection, in milliseconds
+	 * @return True if a connection was made, false otherwise.
+	 */
+	public boolean isReachable(final String host, final int port, final long timeoutMillis) {
+		final InetSocketAddress target = InetSocketAddress.createUnresolved(host, port);
+		return probe(Collections.singletonList(target), timeoutMillis).get(target);
+	}
+
+	/**
+	 * Returns the cached result of a recent check of the given host and port.
+	 *
+	 * @param host
+	 *            The host name or IP address
+	 * @param port
+	 *            The port number
+	 * @return True or false if the target was recently checked, null if there is no recent result.
+	 */
+	public Boolean getRecentResult(final String host, final int port) {
+		final CachedResult result = results.get(toKey(host, port));
+		if (result == null || result.expiresAt <= System.currentTimeMillis()) {
+			return null;
+		}
+		return result.reachable;
+	}
+
+	/**
+	 * Drops the cached result of the given host and port, so the next check makes a new connection.
+	 *
+	 * @param host
+	 *            The host name or IP address
+	 * @param port
+	 *            The port number
+	 */
+	public void invalidate(final String host, final int port) {
+		results.remove(toKey(host, port));
+	}
+
+	/**
+	 * Checks whether TCP connections can be made to the given targets, in parallel. Targets with a recent result are
+	 * not checked again.
+	 *
+	 * @param targets
+	 *            The hosts and ports to check. Unresolved addresses are resolved before connecting.
+	 * @param timeoutMillis
+	 *            The time to wait for each connection, in milliseconds
+	 * @return The result of each target, in the order of the given targets.
+	 */
+	public Map<InetSocketAddress, Boolean> probe(final Collection<InetSocketAddress> targets,
+			final long timeoutMillis) {
+		final Map<InetSocketAddress, Boolean> probeResults = new LinkedHashMap<InetSocketAddress, Boolean>();
+		final List<InetSocketAddress> toConnect = new ArrayList<InetSocketAddress>();
+		for (final InetSocketAddress target : targets) {
+			final Boolean recentResult = getRecentResult(getHost(target), target.getPort());
+			probeResults.put(target, recentResult);
+			if (recentResult == null) {
+				toConnect.add(target);
+			}
+		}
+
+		if (!toConnect.isEmpty()) {
+			final Map<InetSocketAddress, Boolean> connectResults = connect(toConnect, timeoutMillis);
+			final long expiresAt = System.currentTimeMillis() + resultTtlMillis;
+			for (final Map.Entry<InetSocketAddress, Boolean> entry : connectResults.entrySet()) {
+				probeResults.put(entry.getKey(), entry.getValue());
+				if (resultTtlMillis > 0) {
+					results.put(toKey(getHost(entry.getKey()), entry.getKey().getPort()),
+							new CachedResult(entry.getValue(), expiresAt));
+				}
+			}
+		}
+		return probeResults;
+	}
+
+	private Map<InetSocketAddress, Boolean> connect(final List<InetSocketAddress> targets, final long timeoutMillis) {
+		final Map<InetSocketAddress, Boolean> connectResults = new LinkedHashMap<InetSocketAddress, Boolean>();
+		for (final InetSocketAddress target : targets) {
+			connectResults.put(target, Boolean.FALSE);
+		}
+
+		Selector selector = null;
+		try {
+			selector = Selector.open();
+			final Iterator<InetSocketAddress> pending = targets.iterator();
+			while (pending.hasNext() || !selector.keys().isEmpty()) {
+				while (pending.hasNext() && selector.keys().size() < maxConcurrentConnections) {
+					final InetSocketAddress target = pending.next();
+					if (startConnect(selector, target, System.currentTimeMillis() + timeoutMillis)) {
+						connectResults.put(target, Boolean.TRUE);
+					}
+				}
+				if (selector.keys().isEmpty()) {
+					continue;
+				}
+
+				selector.select(Math.max(1, nextDeadline(selector) - System.currentTimeMillis()));
+				for (final SelectionKey key : selector.selectedKeys()) {
+					final PendingConnection connection = (PendingConnection) key.attachment();
+					try {
+						if (((SocketChannel) key.channel()).finishConnect()) {
+							connectResults.put(connection.target, Boolean.TRUE);
+							close(key);
+						}
+					} catch (final IOException e) {
+						close(key);
+					}
+				}
+				selector.selectedKeys().clear();
+
+				// connections past their deadline are unreachable.
+				final long now = System.currentTimeMillis();
+				for (final SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+					if (((PendingConnection) key.attachment()).deadline <= now) {
+						close(key);
+					}
+				}
+				// cancelled keys leave the key set on the next selection.
+				selector.selectNow();
+			}
+		} catch (final IOException e) {
+			// the remaining targets are reported as unreachable.
+			logger.log(Level.WARNING, "Failed to check connections: " + e.getMessage(), e);
+		} finally {
+			if (selector != null) {
+				for (final SelectionKey key : selector.keys()) {
+					close(key);
+				}
+				try {
+					selector.close();
+				} catch (final IOException e) {
+					logger.fine("Failed to close selector");
+				}
+			}
+		}
+		return connectResults;
+	}
+
+	/**
+	 * Starts a non-blocking connection to the target.
+	 *
+	 * @return True if the connection was made immediately.
+	 */
+	private boolean startConnect(final Selector selector, final InetSocketAddress target, final long deadline) {
+		final InetSocketAddress address = target.isUnresolved()
+				? new InetSocketAddress(target.getHostName(), target.getPort()) : target;
+		if (address.isUnresolved()) {
+			logger.fine("Failed to resolve " + target.getHostName());
+			return false;
+		}
+
+		SocketChannel channel = null;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			if (channel.connect(address)) {
+				channel.close();
+				return true;
+			}
+			channel.register(selector, SelectionKey.OP_CONNECT, new PendingConnection(target, deadline));
+			return false;
+		} catch (final IOException e) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (final IOException ce) {
+					logger.fine("Failed to close channel");
+				}
+			}
+			return false;
+		}
+	}
+
+	private static long nextDeadline(final Selector selector) {
+		long deadline = Long.MAX_VALUE;
+		for (final SelectionKey key : selector.keys()) {
+			if (key.isValid()) {
+				deadline = Math.min(deadline, ((PendingConnection) key.attachment()).deadline);
+			}
+		}
+		return deadline;
+	}
+
+	private static void close(final SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (final IOException e) {
+			logger.fine("Failed to close channel");
+		}
+	}
+
+	/**
+	 * Returns the host of the target without a reverse lookup of resolved addresses.
+	 */
+	private static String getHost(final InetSocketAddress target) {
+		return target.isUnresolved() ? target.getHostName() : target.getAddress().getHostAddress();
+	}
+
+	private static String toKey(final String host, final int port) {
+		return host.toLowerCase(Locale.ENGLISH) + ':' + port;
+	}
+
+	/**
+	 * A connection in progress.
+	 */
+	private static final class PendingConnection {
+		private final InetSocketAddress target;
+		private final long deadline;
+
+		PendingConnection(final InetSocketAddress target, final long deadline) {
+			this.target = target;
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * The result of a recent check.
+	 */
+	private static final class CachedResult {
+		private final boolean reachable;
+		private final long expiresAt;
+
+		CachedResult(final boolean reachable, final long expiresAt) {
+			this.reachable = reachable;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -18,6 +18,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -120,36 +121,43 @@ public final class TarGzUtils {
 			throw new IllegalArgumentException("Expecting tar.gz file: " + tarGzFile.getAbsolutePath());
 		}
 
-		FileOutputStream fOut = null;
-		BufferedOutputStream bOut = null;
-		GzipCompressorOutputStream gzOut = null;
-		TarArchiveOutputStream tOut = null;
+		final OutputStream out = new FileOutputStream(tarGzFile);
 		try {
-			fOut = new FileOutputStream(tarGzFile);
-			bOut = new BufferedOutputStream(fOut);
-			gzOut = new GzipCompressorOutputStream(bOut);
-			tOut = new TarArchiveOutputStream(gzOut);
-			for (String path : sourcePaths) {
-				addFileToTarGz(tOut, path, base, addRoot);
-			}
+			writeTarGz(sourcePaths, base, addRoot, new BufferedOutputStream(out));
 		} finally {
-			if (tOut != null) {
-				tOut.close();
-			}
-			if (gzOut != null) {
-				gzOut.close();
-			}
-			if (bOut != null) {
-				bOut.close();
-			}
-			if (fOut != null) {
-				fOut.close();
-			}
+			out.close();
 		}
 
 		return tarGzFile;
 	}
 
+	/**
+	 * Write a tar.gz archive to a stream. The stream is closed once the archive is written, and left open if writing
+	 * it fails.
+	 * 
+	 * @param sourcePaths
+	 *            Folders or files to add in the archive.
+	 * @param base
+	 *            The name to be use in the archive.
+	 * @param addRoot
+	 *            When <code>sourcePath</code> is a folder. if true, it will add the folder in the archive.
+	 * @param out
+	 *            The stream to write the archive to.
+	 * @throws IOException
+	 *             If the archive cannot be written.
+	 * @since 2.7.1
+	 */
+	public static void writeTarGz(final String[] sourcePaths, final String base, final boolean addRoot,
+			final OutputStream out) throws IOException {
+		final TarArchiveOutputStream tOut = new TarArchiveOutputStream(new GzipCompressorOutputStream(out));
+		for (String path : sourcePaths) {
+			addFileToTarGz(tOut, path, base, addRoot);
+		}
+		// closes the gzip and the underlying streams as well. Not done on failure, so a partial archive is never
+		// completed.
+		tOut.close();
+	}
+
 	private static void addFileToTarGz(final TarArchiveOutputStream tOut, final String path, final String base,
 			final boolean addRoot)
 			throws IOException {
@@ -159,7 +167,12 @@ public final class TarGzUtils {
 		if (f.isFile()) {
 			TarArchiveEntry tarEntry = new TarArchiveEntry(f, entryName);
 			tOut.putArchiveEntry(tarEntry);
-			IOUtils.copy(new FileInputStream(f), tOut);
+			final FileInputStream in = new FileInputStream(f);
+			try {
+				IOUtils.copy(in, tOut);
+			} finally {
+				in.close();
+			}
 			tOut.closeArchiveEntry();
 		} else {
 			if (addRoot) {
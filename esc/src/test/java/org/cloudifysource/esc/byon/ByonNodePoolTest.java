@@ -0,0 +1,198 @@
+package org.cloudifysource.esc.byon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.cloudifysource.esc.byon.ByonNodePool.NodeState;
+import org.cloudifysource.esc.byon.ByonNodePool.PooledNode;
+import org.cloudifysource.esc.driver.provisioning.CustomNode;
+import org.cloudifysource.esc.driver.provisioning.byon.CustomNodeImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ByonNodePool} state transitions, lookups and concurrent allocation.
+ */
+public class ByonNodePoolTest {
+
+	private static final Logger logger = Logger.getLogger(ByonNodePoolTest.class.getName());
+
+	private static final String PROVIDER = "BYON";
+
+	private static List<CustomNode> createNodes(final String prefix, final int firstHost, final int count) {
+		final List<CustomNode> nodes = new ArrayList<CustomNode>();
+		for (int i = 0; i < count; i++) {
+			final int host = firstHost + i;
+			nodes.add(new CustomNodeImpl(PROVIDER, prefix + host, "10.0." + host / 256 + "." + host % 256,
+					"host" + host, "user", "password", null, prefix + host));
+		}
+		return nodes;
+	}
+
+	@Test
+	public void testStateTransitions() {
+		final ByonNodePool pool = new ByonNodePool("SMALL_LINUX", createNodes("node", 1, 2),
+				createNodes("node", 3, 1));
+		Assert.assertEquals(2, pool.getNodes(NodeState.FREE).size());
+		Assert.assertEquals(1, pool.getNodes(NodeState.INVALID).size());
+
+		final PooledNode first = pool.allocateFree();
+		Assert.assertEquals("node1", first.getNode().getId());
+		Assert.assertEquals(NodeState.ALLOCATED, first.getState());
+
+		// an invalidated free node is not handed out anymore.
+		final PooledNode second = pool.getById("node2");
+		pool.invalidate(second);
+		Assert.assertNull(pool.allocateFree());
+		Assert.assertEquals(2, pool.getNodes(NodeState.INVALID).size());
+
+		// an invalid node can be allocated only once.
+		Assert.assertTrue(pool.allocate(second, NodeState.INVALID));
+		Assert.assertFalse(pool.allocate(second, NodeState.INVALID));
+
+		// a freed node is handed out again.
+		pool.free(first);
+		pool.free(first);
+		Assert.assertSame(first, pool.allocateFree());
+		Assert.assertNull(pool.allocateFree());
+	}
+
+	@Test
+	public void testNodesLeavingFreeStateWhileQueued() {
+		final ByonNodePool pool = new ByonNodePool("SMALL_LINUX", createNodes("node", 1, 2),
+				new ArrayList<CustomNode>());
+		final PooledNode first = pool.getById("node1");
+		// allocated by id and freed again while still queued, the node is queued only once.
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(pool.allocate(first, NodeState.FREE));
+			pool.free(first);
+		}
+		pool.invalidate(pool.getById("node2"));
+
+		Assert.assertSame(first, pool.allocateFree());
+		Assert.assertNull(pool.allocateFree());
+		pool.free(first);
+		Assert.assertSame(first, pool.allocateFree());
+		Assert.assertNull(pool.allocateFree());
+	}
+
+	@Test
+	public void testClosedPool() {
+		final ByonNodePool pool = new ByonNodePool("SMALL_LINUX", createNodes("node", 1, 2),
+				createNodes("node", 3, 1));
+		pool.close();
+		Assert.assertNull(pool.allocateFree());
+		Assert.assertFalse(pool.allocate(pool.getById("node2"), NodeState.FREE));
+		Assert.assertFalse(pool.allocate(pool.getById("node3"), NodeState.INVALID));
+		// the nodes kept their state.
+		Assert.assertEquals(2, pool.getNodes(NodeState.FREE).size());
+		Assert.assertEquals(1, pool.getNodes(NodeState.INVALID).size());
+		Assert.assertEquals(0, pool.getNodes(NodeState.ALLOCATED).size());
+
+		pool.reopen();
+		Assert.assertNotNull(pool.allocateFree());
+		Assert.assertNotNull(pool.allocateFree());
+		Assert.assertNull(pool.allocateFree());
+	}
+
+	@Test
+	public void testLookups() {
+		final List<CustomNode> nodes = createNodes("node", 1, 3);
+		nodes.add(new CustomNodeImpl(PROVIDER, "ipv6", "fe80:0:0:0:0:0:0:1", "ipv6host", "user", "password", null,
+				"ipv6"));
+		final ByonNodePool pool = new ByonNodePool("SMALL_LINUX", nodes, new ArrayList<CustomNode>());
+
+		Assert.assertEquals("node2", pool.getById("NODE2").getNode().getId());
+		Assert.assertEquals("node3", pool.getByIp("10.0.0.3").getNode().getId());
+		Assert.assertEquals("ipv6", pool.getByIp("fe80::1").getNode().getId());
+		Assert.assertNull(pool.getByIp("10.0.0.9"));
+		Assert.assertNull(pool.getById(null));
+
+		final PooledNode pooledNode = pool.getByName("node1");
+		pool.setNodeName(pooledNode, "server-1");
+		Assert.assertNull(pool.getByName("node1"));
+		Assert.assertSame(pooledNode, pool.getByName("SERVER-1"));
+
+		Assert.assertSame(pooledNode, pool.find(new CustomNodeImpl(PROVIDER, "other", "10.0.0.1", null, null, null,
+				null, null)));
+		Assert.assertTrue(pool.containsIp("10.0.0.2"));
+	}
+
+	@Test
+	public void testConcurrentAllocation() throws Exception {
+		final int numberOfNodes = 2000;
+		final int numberOfThreads = 16;
+		final int allocationsPerThread = 20000;
+		final ByonNodePool pool = new ByonNodePool("SMALL_LINUX", createNodes("node", 1, numberOfNodes),
+				new ArrayList<CustomNode>());
+
+		// each node is held by at most one thread at a time.
+		final Set<PooledNode> heldNodes = Collections.newSetFromMap(new ConcurrentHashMap<PooledNode, Boolean>());
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < numberOfThreads; i++) {
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						start.await();
+						int allocations = 0;
+						final List<PooledNode> held = new ArrayList<PooledNode>();
+						for (int j = 0; j < allocationsPerThread; j++) {
+							final PooledNode pooledNode = pool.allocateFree();
+							if (pooledNode != null) {
+								Assert.assertTrue("Node allocated twice", heldNodes.add(pooledNode));
+								held.add(pooledNode);
+								allocations++;
+							}
+							// hold a few nodes at a time, like a batch of machines being started.
+							if (held.size() == 10 || pooledNode == null) {
+								for (final PooledNode heldNode : held) {
+									heldNodes.remove(heldNode);
+									pool.free(heldNode);
+								}
+								held.clear();
+							}
+						}
+						for (final PooledNode heldNode : held) {
+							heldNodes.remove(heldNode);
+							pool.free(heldNode);
+						}
+						return allocations;
+					}
+				}));
+			}
+			final long startTime = System.nanoTime();
+			start.countDown();
+			long allocations = 0;
+			for (final Future<Integer> result : results) {
+				allocations += result.get();
+			}
+			final long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+			logger.info("Allocated and freed " + allocations + " nodes in " + elapsedMillis + " ms ("
+					+ allocations * 1000 / elapsedMillis + " allocations per second) with " + numberOfThreads
+					+ " threads");
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(numberOfNodes, pool.getNodes(NodeState.FREE).size());
+		Assert.assertEquals(0, pool.getNodes(NodeState.ALLOCATED).size());
+		int queued = 0;
+		while (pool.allocateFree() != null) {
+			queued++;
+		}
+		Assert.assertEquals(numberOfNodes, queued);
+	}
+}
@@ -0,0 +1,132 @@
+package org.cloudifysource.esc.driver.provisioning;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link WarmMachinePool} keeps idle machines ready for start machine requests, against a stub of the cloud.
+ */
+public class WarmMachinePoolTest {
+
+	private static final String LOCATION = "us-east-1";
+	private static final long TIMEOUT_MILLIS = 10000;
+	private static final long LONG_IDLE_TIMEOUT_MILLIS = 60 * 60 * 1000;
+
+	// private address -> the machines running in the stub cloud.
+	private final Set<String> runningMachines = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final AtomicInteger startedMachines = new AtomicInteger();
+	private final AtomicBoolean agentRunning = new AtomicBoolean();
+	private WarmMachinePool pool;
+
+	private final WarmMachinePool.MachineStarter starter = new WarmMachinePool.MachineStarter() {
+		@Override
+		public MachineDetails startMachine(final String locationId) throws Exception {
+			final MachineDetails machineDetails = new MachineDetails();
+			machineDetails.setPrivateAddress("10.0.0." + startedMachines.incrementAndGet());
+			machineDetails.setLocationId(locationId);
+			machineDetails.setAgentRunning(agentRunning.get());
+			runningMachines.add(machineDetails.getPrivateAddress());
+			return machineDetails;
+		}
+
+		@Override
+		public void stopMachine(final MachineDetails machineDetails) throws Exception {
+			runningMachines.remove(machineDetails.getPrivateAddress());
+		}
+	};
+
+	@After
+	public void after() {
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	private void waitForIdleMachines(final int expected) throws InterruptedException {
+		final long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (pool.getIdleMachines() != expected || pool.getStartingMachines() > 0) {
+			if (System.currentTimeMillis() > end) {
+				Assert.fail("Expected " + expected + " idle machines, found " + pool.getIdleMachines());
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testClaimAndRefill() throws Exception {
+		pool = new WarmMachinePool("app.service", starter, LOCATION, 2, 2, LONG_IDLE_TIMEOUT_MILLIS);
+		pool.start();
+		waitForIdleMachines(2);
+
+		final MachineDetails claimed = pool.claim(null);
+		Assert.assertNotNull(claimed);
+		Assert.assertEquals(LOCATION, claimed.getLocationId());
+		Assert.assertNotNull(pool.claim(LOCATION));
+
+		// the pool is refilled in the background.
+		waitForIdleMachines(2);
+		Assert.assertEquals(4, startedMachines.get());
+		Assert.assertEquals(4, runningMachines.size());
+
+		// other locations are started by the driver.
+		Assert.assertNull(pool.claim("eu-west-1"));
+		Assert.assertEquals(3, pool.getClaims());
+		Assert.assertEquals(2, pool.getHits());
+
+		pool.recordTimeToCapacity(true, 1000);
+		pool.recordTimeToCapacity(true, 3000);
+		pool.recordTimeToCapacity(false, 60000);
+		Assert.assertEquals(2000, pool.getAverageHitTimeToCapacity());
+		Assert.assertEquals(60000, pool.getAverageMissTimeToCapacity());
+	}
+
+	@Test
+	public void testCloseStopsIdleMachines() throws Exception {
+		pool = new WarmMachinePool("app.service", starter, LOCATION, 3, 1, LONG_IDLE_TIMEOUT_MILLIS);
+		pool.start();
+		waitForIdleMachines(3);
+		final MachineDetails claimed = pool.claim(null);
+
+		pool.close();
+		// the claimed machine is no longer the pool's to stop.
+		Assert.assertEquals(Collections.singleton(claimed.getPrivateAddress()), runningMachines);
+		Assert.assertNull(pool.claim(null));
+	}
+
+	@Test
+	public void testIdleMachinesExpire() throws Exception {
+		pool = new WarmMachinePool("app.service", starter, LOCATION, 2, 2, 100);
+		pool.start();
+
+		final long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (pool.getMachinesExpired() < 2 || !runningMachines.isEmpty()) {
+			Assert.assertTrue("Idle machines did not expire", System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+		// expired machines are replaced on the next claim only.
+		Assert.assertEquals(0, pool.getIdleMachines());
+		Assert.assertEquals(2, startedMachines.get());
+	}
+
+	@Test
+	public void testMachinesWithAgentNotPooled() throws Exception {
+		agentRunning.set(true);
+		pool = new WarmMachinePool("app.service", starter, LOCATION, 2, 1, LONG_IDLE_TIMEOUT_MILLIS);
+		pool.start();
+
+		final long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!pool.isClosed() || !runningMachines.isEmpty()) {
+			Assert.assertTrue("Machine with agent was not stopped", System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+		Assert.assertNull(pool.claim(null));
+		Assert.assertEquals(1, startedMachines.get());
+	}
+}
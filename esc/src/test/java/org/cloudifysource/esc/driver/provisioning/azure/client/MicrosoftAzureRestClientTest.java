@@ -0,0 +1,192 @@
+package org.cloudifysource.esc.driver.provisioning.azure.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link MicrosoftAzureRestClient} tracks operations and queues requests against a local stub of the Azure
+ * management API.
+ */
+public class MicrosoftAzureRestClientTest {
+
+	private static final String SUBSCRIPTION_ID = "subscription";
+	private static final long POLLING_INTERVAL_MILLIS = 50;
+	private static final long TIMEOUT_MILLIS = 10000;
+	// the number of queries of an operation that find it in progress.
+	private static final int POLLS_IN_PROGRESS = 2;
+
+	private HttpServer server;
+	private MicrosoftAzureRestClient client;
+
+	private final AtomicInteger requestIds = new AtomicInteger();
+	// request id -> the number of times it was queried.
+	private final ConcurrentMap<String, AtomicInteger> operationQueries = new ConcurrentHashMap<String, AtomicInteger>();
+	private final AtomicInteger conflictsToReturn = new AtomicInteger();
+	private final AtomicInteger deleteRequests = new AtomicInteger();
+	private volatile boolean failOperations = false;
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final String method = exchange.getRequestMethod();
+				final String path = exchange.getRequestURI().getPath();
+				if (path.contains("/operations/")) {
+					final String requestId = path.substring(path.lastIndexOf('/') + 1);
+					operationQueries.putIfAbsent(requestId, new AtomicInteger());
+					final int queries = operationQueries.get(requestId).incrementAndGet();
+					final String status;
+					if (queries <= POLLS_IN_PROGRESS) {
+						status = "<Status>InProgress</Status>";
+					} else if (failOperations) {
+						status = "<Status>Failed</Status><Error><Code>InternalError</Code><Message>failed</Message>"
+								+ "</Error>";
+					} else {
+						status = "<Status>Succeeded</Status>";
+					}
+					respond(exchange, 200, "<Operation><ID>" + requestId + "</ID>" + status + "</Operation>");
+				} else if ("GET".equals(method) && path.endsWith("/services/hostedservices")) {
+					respond(exchange, 200, "<HostedServices><HostedService><ServiceName>service</ServiceName>"
+							+ "</HostedService></HostedServices>");
+				} else if ("DELETE".equals(method)) {
+					deleteRequests.incrementAndGet();
+					if (conflictsToReturn.getAndDecrement() > 0) {
+						respond(exchange, 409, "<Error><Code>ConflictError</Code><Message>Windows Azure is currently "
+								+ "performing an operation on this hosted service that requires exclusive access."
+								+ "</Message></Error>");
+					} else {
+						accept(exchange);
+					}
+				} else {
+					accept(exchange);
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		client = new MicrosoftAzureRestClient(SUBSCRIPTION_ID, "http://127.0.0.1:" + server.getAddress().getPort()
+				+ "/", Client.create(), POLLING_INTERVAL_MILLIS, "affinity", "service", "storage");
+	}
+
+	@After
+	public void after() {
+		server.stop(0);
+	}
+
+	private void accept(final HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().add("x-ms-request-id", "request-" + requestIds.incrementAndGet());
+		respond(exchange, 202, "");
+	}
+
+	private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+		final byte[] bytes = body.getBytes("UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	@Test
+	public void testConcurrentOperationsTrackedTogether() throws Exception {
+		final int numberOfRequests = 20;
+		final ExecutorService executor = Executors.newFixedThreadPool(numberOfRequests);
+		final long startTime = System.currentTimeMillis();
+		try {
+			final List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < numberOfRequests; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return client.createCloudService("affinity", System.currentTimeMillis() + TIMEOUT_MILLIS);
+					}
+				}));
+			}
+			final Set<String> serviceNames = new HashSet<String>();
+			for (final Future<String> result : results) {
+				serviceNames.add(result.get());
+			}
+			Assert.assertEquals(numberOfRequests, serviceNames.size());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// the requests are not serialized, so they take about as long as a single one.
+		final long elapsedMillis = System.currentTimeMillis() - startTime;
+		Assert.assertTrue("Took " + elapsedMillis + " ms",
+				elapsedMillis < numberOfRequests * POLLS_IN_PROGRESS * POLLING_INTERVAL_MILLIS);
+		Assert.assertEquals(numberOfRequests, operationQueries.size());
+		for (final AtomicInteger queries : operationQueries.values()) {
+			Assert.assertEquals(POLLS_IN_PROGRESS + 1, queries.get());
+		}
+	}
+
+	@Test
+	public void testFailedOperation() throws Exception {
+		failOperations = true;
+		try {
+			client.createCloudService("affinity", System.currentTimeMillis() + TIMEOUT_MILLIS);
+			Assert.fail("Expected the operation to fail");
+		} catch (final MicrosoftAzureException e) {
+			Assert.assertEquals("InternalError", e.getStatus());
+		}
+	}
+
+	@Test
+	public void testConflictingRequestRetried() throws Exception {
+		conflictsToReturn.set(2);
+		Assert.assertTrue(client.deleteCloudService("service", System.currentTimeMillis() + TIMEOUT_MILLIS));
+		Assert.assertEquals(3, deleteRequests.get());
+	}
+
+	@Test
+	public void testRequestsToHostedServiceQueued() throws Exception {
+		final MicrosoftAzureOperationTracker tracker = new MicrosoftAzureOperationTracker(client,
+				POLLING_INTERVAL_MILLIS);
+		tracker.acquireHostedService("service", TIMEOUT_MILLIS);
+		// another hosted service is not blocked.
+		tracker.acquireHostedService("other", 0);
+		tracker.releaseHostedService("other");
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<?> queued = executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					tracker.acquireHostedService("service", TIMEOUT_MILLIS);
+					tracker.releaseHostedService("service");
+					return null;
+				}
+			});
+			Thread.sleep(POLLING_INTERVAL_MILLIS);
+			Assert.assertFalse(queued.isDone());
+			tracker.releaseHostedService("service");
+			queued.get();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
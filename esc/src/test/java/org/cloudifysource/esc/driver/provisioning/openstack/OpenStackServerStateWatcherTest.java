@@ -0,0 +1,248 @@
+package org.cloudifysource.esc.driver.provisioning.openstack;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudifysource.esc.driver.provisioning.CloudProvisioningException;
+import org.cloudifysource.esc.driver.provisioning.openstack.rest.NovaServer;
+import org.cloudifysource.esc.driver.provisioning.openstack.rest.Status;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link OpenStackServerStateWatcher} against a local stub of the Keystone and Nova endpoints.
+ */
+public class OpenStackServerStateWatcherTest {
+
+	private static final long MIN_INTERVAL_MILLIS = 20;
+	private static final long MAX_INTERVAL_MILLIS = 100;
+	private static final long MAX_RATE_LIMITED_INTERVAL_MILLIS = 200;
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private HttpServer server;
+	private OpenStackComputeClient computeApi;
+	private OpenStackServerStateWatcher watcher;
+
+	// server id -> status, servers missing from the map are not listed. Listed by id, like Nova pages by marker.
+	private final Map<String, String> serverStatus = new ConcurrentSkipListMap<String, String>();
+	private final AtomicInteger listRequests = new AtomicInteger();
+	private final AtomicInteger otherRequests = new AtomicInteger();
+	private final AtomicInteger rateLimitedResponses = new AtomicInteger();
+	private final AtomicInteger failedResponses = new AtomicInteger();
+	private volatile int pageSize = Integer.MAX_VALUE;
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		final String novaUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/nova/";
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final String path = exchange.getRequestURI().getPath();
+				if (path.endsWith("/tokens")) {
+					respond(exchange, 200, "{\"access\":{\"token\":{\"id\":\"token\",\"expires\":"
+							+ "\"2100-01-01T00:00:00Z\",\"tenant\":{\"id\":\"tenant\"}},\"serviceCatalog\":["
+							+ "{\"name\":\"nova\",\"type\":\"compute\",\"endpoints\":[{\"region\":\"region\","
+							+ "\"publicURL\":\"" + novaUrl + "\"}]}]}}");
+				} else if (path.endsWith("/servers/detail")) {
+					listRequests.incrementAndGet();
+					if (rateLimitedResponses.get() > 0) {
+						rateLimitedResponses.decrementAndGet();
+						respond(exchange, 413, "{\"overLimit\":{\"code\":413}}");
+						return;
+					}
+					if (failedResponses.get() > 0) {
+						failedResponses.decrementAndGet();
+						respond(exchange, 500, "{\"computeFault\":{\"code\":500}}");
+						return;
+					}
+					final String query = exchange.getRequestURI().getQuery();
+					final String marker = query != null && query.startsWith("marker=")
+							? query.substring("marker=".length()) : null;
+					final StringBuilder body = new StringBuilder("{\"servers\":[");
+					int listed = 0;
+					boolean hasNext = false;
+					for (final Map.Entry<String, String> entry : serverStatus.entrySet()) {
+						if (marker != null && entry.getKey().compareTo(marker) <= 0) {
+							continue;
+						}
+						if (listed == pageSize) {
+							hasNext = true;
+							break;
+						}
+						if (listed > 0) {
+							body.append(',');
+						}
+						listed++;
+						body.append("{\"id\":\"").append(entry.getKey()).append("\",\"name\":\"")
+								.append(entry.getKey()).append("\",\"status\":\"").append(entry.getValue())
+								.append("\"}");
+					}
+					body.append(']');
+					if (hasNext) {
+						body.append(",\"servers_links\":[{\"rel\":\"next\",\"href\":\"").append(novaUrl)
+								.append("servers/detail?marker=next\"}]");
+					}
+					respond(exchange, 200, body.append('}').toString());
+				} else {
+					otherRequests.incrementAndGet();
+					respond(exchange, 404, "{}");
+				}
+			}
+		});
+		server.start();
+		computeApi = new OpenStackComputeClient(
+				"http://127.0.0.1:" + server.getAddress().getPort() + "/keystone/", "user", "password", "tenant",
+				"region", "nova");
+		watcher = new OpenStackServerStateWatcher(computeApi, MIN_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS,
+				MAX_RATE_LIMITED_INTERVAL_MILLIS);
+	}
+
+	@After
+	public void after() {
+		computeApi.close();
+		server.stop(0);
+	}
+
+	private static void respond(final HttpExchange exchange, final int status, final String body)
+			throws IOException {
+		final byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	@Test
+	public void testManyServersShareListRequests() throws Exception {
+		final int numberOfServers = 10;
+		for (int i = 0; i < numberOfServers; i++) {
+			serverStatus.put("server-" + i, "BUILD");
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(numberOfServers);
+		try {
+			final long endTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+			final List<Future<NovaServer>> results = new ArrayList<Future<NovaServer>>();
+			for (int i = 0; i < numberOfServers; i++) {
+				final String serverId = "server-" + i;
+				results.add(executor.submit(new Callable<NovaServer>() {
+					@Override
+					public NovaServer call() throws Exception {
+						return watcher.waitForServerToBecomeReady(serverId, endTime);
+					}
+				}));
+			}
+
+			Thread.sleep(MAX_INTERVAL_MILLIS * 3);
+			for (int i = 0; i < numberOfServers; i++) {
+				serverStatus.put("server-" + i, "ACTIVE");
+			}
+
+			for (int i = 0; i < numberOfServers; i++) {
+				final NovaServer readyServer = results.get(i).get();
+				Assert.assertEquals("server-" + i, readyServer.getId());
+				Assert.assertEquals(Status.ACTIVE, readyServer.getStatus());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// with a request per server per interval this would be well above the number of servers.
+		Assert.assertTrue("Too many list requests: " + listRequests.get(), listRequests.get() < numberOfServers);
+		Assert.assertEquals(0, otherRequests.get());
+	}
+
+	@Test
+	public void testShutdownOfUnlistedServer() throws Exception {
+		serverStatus.put("server-1", "ACTIVE");
+		final OpenStackServerStateWatcher.PendingServer pendingServer =
+				watcher.watch("server-1", OpenStackServerStateWatcher.TargetState.SHUTDOWN);
+		serverStatus.remove("server-1");
+		Assert.assertNull(pendingServer.await(System.currentTimeMillis() + TIMEOUT_MILLIS));
+	}
+
+	@Test
+	public void testErrorStateFailsServer() throws Exception {
+		serverStatus.put("server-1", "ERROR");
+		try {
+			watcher.waitForServerToBecomeReady("server-1", System.currentTimeMillis() + TIMEOUT_MILLIS);
+			Assert.fail("Expected the server to fail");
+		} catch (final CloudProvisioningException e) {
+			Assert.assertTrue(e.getMessage().contains("ERROR"));
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		serverStatus.put("server-1", "BUILD");
+		try {
+			watcher.waitForServerToBecomeReady("server-1", System.currentTimeMillis() + MAX_INTERVAL_MILLIS * 3);
+			Assert.fail("Expected a timeout");
+		} catch (final TimeoutException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRateLimitedPollingRecovers() throws Exception {
+		rateLimitedResponses.set(2);
+		serverStatus.put("server-1", "ACTIVE");
+		final NovaServer readyServer =
+				watcher.waitForServerToBecomeReady("server-1", System.currentTimeMillis() + TIMEOUT_MILLIS);
+		Assert.assertEquals("server-1", readyServer.getId());
+		Assert.assertEquals(0, rateLimitedResponses.get());
+	}
+
+	@Test
+	public void testServersBeyondFirstPage() throws Exception {
+		pageSize = 2;
+		for (int i = 0; i < 5; i++) {
+			serverStatus.put("server-" + i, "ACTIVE");
+		}
+		final NovaServer readyServer =
+				watcher.waitForServerToBecomeReady("server-4", System.currentTimeMillis() + TIMEOUT_MILLIS);
+		Assert.assertEquals("server-4", readyServer.getId());
+		Assert.assertEquals(5, computeApi.getServersDetail(null).size());
+	}
+
+	@Test
+	public void testTransientListFailureIsRetried() throws Exception {
+		failedResponses.set(2);
+		serverStatus.put("server-1", "ACTIVE");
+		final NovaServer readyServer =
+				watcher.waitForServerToBecomeReady("server-1", System.currentTimeMillis() + TIMEOUT_MILLIS);
+		Assert.assertEquals("server-1", readyServer.getId());
+		Assert.assertEquals(0, failedResponses.get());
+	}
+
+	@Test
+	public void testPersistentListFailureFailsServers() throws Exception {
+		failedResponses.set(Integer.MAX_VALUE);
+		serverStatus.put("server-1", "ACTIVE");
+		try {
+			watcher.waitForServerToBecomeReady("server-1", System.currentTimeMillis() + TIMEOUT_MILLIS);
+			Assert.fail("Expected the server to fail");
+		} catch (final CloudProvisioningException e) {
+			// expected
+		}
+	}
+}
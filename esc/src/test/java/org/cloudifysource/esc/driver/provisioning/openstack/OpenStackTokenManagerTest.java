@@ -0,0 +1,161 @@
+package org.cloudifysource.esc.driver.provisioning.openstack;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link OpenStackTokenManager} against a local stub of the Keystone endpoint.
+ */
+public class OpenStackTokenManagerTest {
+
+	private static final long TOKEN_REQUEST_DELAY_MILLIS = 200;
+
+	private HttpServer server;
+	private String endpoint;
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+	private volatile long tokenLifetimeMillis = 3600 * 1000;
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/keystone/";
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final int tokenNumber = tokenRequests.incrementAndGet();
+				try {
+					Thread.sleep(TOKEN_REQUEST_DELAY_MILLIS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+				format.setTimeZone(TimeZone.getTimeZone("UTC"));
+				final String expires = format.format(new Date(System.currentTimeMillis() + tokenLifetimeMillis));
+				final byte[] bytes = ("{\"access\":{\"token\":{\"id\":\"token-" + tokenNumber + "\",\"expires\":\""
+						+ expires + "\",\"tenant\":{\"id\":\"tenant\"}},\"serviceCatalog\":[]}}").getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, bytes.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void after() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testSingleRenewalInFlight() throws Exception {
+		final OpenStackTokenManager manager =
+				new OpenStackTokenManager(endpoint, "user", "password", "tenant", 0, 0);
+		final int numberOfThreads = 20;
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			final List<Future<String>> tokenIds = new ArrayList<Future<String>>();
+			for (int i = 0; i < numberOfThreads; i++) {
+				tokenIds.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						start.await();
+						return manager.getToken().getToken().getId();
+					}
+				}));
+			}
+			start.countDown();
+			final Set<String> distinctTokenIds = new HashSet<String>();
+			for (final Future<String> tokenId : tokenIds) {
+				distinctTokenIds.add(tokenId.get());
+			}
+			Assert.assertEquals(1, distinctTokenIds.size());
+			Assert.assertEquals(1, tokenRequests.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRefreshAheadOfExpiry() throws Exception {
+		tokenLifetimeMillis = 2000;
+		final OpenStackTokenManager manager =
+				new OpenStackTokenManager(endpoint, "user", "password", "tenant", 0, 1500);
+		Assert.assertEquals("token-1", manager.getToken().getToken().getId());
+
+		// past the refresh time, the current token is still served while a new one is requested in the background.
+		Thread.sleep(1200);
+		final long before = System.currentTimeMillis();
+		Assert.assertEquals("token-1", manager.getToken().getToken().getId());
+		Assert.assertTrue(System.currentTimeMillis() - before < TOKEN_REQUEST_DELAY_MILLIS);
+
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (tokenRequests.get() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Thread.sleep(TOKEN_REQUEST_DELAY_MILLIS * 2);
+		Assert.assertEquals(2, tokenRequests.get());
+		Assert.assertEquals("token-2", manager.getToken().getToken().getId());
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		final OpenStackTokenManager manager =
+				new OpenStackTokenManager(endpoint, "user", "password", "tenant", 0, 0);
+		Assert.assertEquals("token-1", manager.getToken().getToken().getId());
+		manager.invalidate("other-token");
+		Assert.assertEquals("token-1", manager.getToken().getToken().getId());
+		manager.invalidate("token-1");
+		Assert.assertEquals("token-2", manager.getToken().getToken().getId());
+		Assert.assertEquals(2, tokenRequests.get());
+	}
+
+	@Test
+	public void testSharedByCredentials() {
+		final OpenStackTokenManager manager = OpenStackTokenManager.getInstance(endpoint, "user", "password", "tenant");
+		final OpenStackTokenManager same = OpenStackTokenManager.getInstance(endpoint, "user", "password", "tenant");
+		final OpenStackTokenManager otherTenant =
+				OpenStackTokenManager.getInstance(endpoint, "user", "password", "other-tenant");
+		final OpenStackTokenManager otherPassword =
+				OpenStackTokenManager.getInstance(endpoint, "user", "other-password", "tenant");
+		Assert.assertSame(manager, same);
+		Assert.assertNotSame(manager, otherTenant);
+		Assert.assertNotSame(manager, otherPassword);
+
+		// a manager is discarded once its last user releases it.
+		manager.release();
+		Assert.assertTrue(OpenStackTokenManager.isShared(endpoint, "user", "password", "tenant"));
+		same.release();
+		Assert.assertFalse(OpenStackTokenManager.isShared(endpoint, "user", "password", "tenant"));
+		otherTenant.release();
+		otherPassword.release();
+		Assert.assertFalse(OpenStackTokenManager.isShared(endpoint, "user", "password", "other-tenant"));
+		Assert.assertNotSame(manager, OpenStackTokenManager.getInstance(endpoint, "user", "password", "tenant"));
+	}
+}
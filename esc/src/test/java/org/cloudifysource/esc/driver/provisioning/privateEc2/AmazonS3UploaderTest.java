@@ -0,0 +1,287 @@
+package org.cloudifysource.esc.driver.provisioning.privateEc2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.cloudifysource.esc.util.TarGzUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * Tests {@link AmazonS3Uploader} compresses folders straight into multipart uploads, against an in-memory stub of
+ * S3.
+ */
+public class AmazonS3UploaderTest {
+
+	private static final String BUCKET = "bucket";
+	private static final int LARGE_FILE_SIZE = 12 * 1024 * 1024;
+
+	private File tempFolder;
+	private File cloudFolder;
+	private AmazonS3 s3client;
+	private AmazonS3Uploader uploader;
+
+	// bucket/key -> content, for the uploaded objects.
+	private final ConcurrentMap<String, byte[]> objects = new ConcurrentHashMap<String, byte[]>();
+	// bucket/key -> last modification time, for the uploaded objects.
+	private final ConcurrentMap<String, Long> modificationTimes = new ConcurrentHashMap<String, Long>();
+	// upload id -> part number -> content, for the uploads in progress.
+	private final ConcurrentMap<String, SortedMap<Integer, byte[]>> uploads =
+			new ConcurrentHashMap<String, SortedMap<Integer, byte[]>>();
+	private final AtomicInteger uploadIds = new AtomicInteger();
+	private final AtomicInteger partFailuresToReturn = new AtomicInteger();
+	private final AtomicInteger partRequests = new AtomicInteger();
+	private volatile int metadataErrorStatus = 404;
+
+	@Before
+	public void before() throws IOException {
+		tempFolder = File.createTempFile("s3Uploader", "");
+		tempFolder.delete();
+		cloudFolder = new File(tempFolder, "cloud");
+		FileUtils.writeStringToFile(new File(cloudFolder, "cloud.groovy"), "cloud { }");
+		final byte[] large = new byte[LARGE_FILE_SIZE];
+		new Random(0).nextBytes(large);
+		FileUtils.writeByteArrayToFile(new File(cloudFolder, "upload/large.bin"), large);
+
+		s3client = Mockito.mock(AmazonS3.class);
+		Mockito.when(s3client.initiateMultipartUpload(Matchers.any(InitiateMultipartUploadRequest.class)))
+				.thenAnswer(new Answer<InitiateMultipartUploadResult>() {
+					@Override
+					public InitiateMultipartUploadResult answer(final InvocationOnMock invocation) {
+						final String uploadId = "upload-" + uploadIds.incrementAndGet();
+						uploads.put(uploadId, new ConcurrentSkipListMap<Integer, byte[]>());
+						final InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+						result.setUploadId(uploadId);
+						return result;
+					}
+				});
+		Mockito.when(s3client.uploadPart(Matchers.any(UploadPartRequest.class))).thenAnswer(
+				new Answer<UploadPartResult>() {
+					@Override
+					public UploadPartResult answer(final InvocationOnMock invocation) throws IOException {
+						partRequests.incrementAndGet();
+						if (partFailuresToReturn.getAndDecrement() > 0) {
+							throw new AmazonClientException("Connection reset");
+						}
+						final UploadPartRequest request = (UploadPartRequest) invocation.getArguments()[0];
+						final byte[] content = IOUtils.toByteArray(request.getInputStream());
+						Assert.assertEquals(request.getPartSize(), content.length);
+						uploads.get(request.getUploadId()).put(request.getPartNumber(), content);
+						final UploadPartResult result = new UploadPartResult();
+						result.setPartNumber(request.getPartNumber());
+						result.setETag("etag-" + request.getPartNumber());
+						return result;
+					}
+				});
+		Mockito.when(s3client.completeMultipartUpload(Matchers.any(CompleteMultipartUploadRequest.class)))
+				.thenAnswer(new Answer<Object>() {
+					@Override
+					public Object answer(final InvocationOnMock invocation) throws IOException {
+						final CompleteMultipartUploadRequest request =
+								(CompleteMultipartUploadRequest) invocation.getArguments()[0];
+						final SortedMap<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+						Assert.assertEquals(parts.size(), request.getPartETags().size());
+						final ByteArrayOutputStream content = new ByteArrayOutputStream();
+						int partNumber = 1;
+						for (final PartETag partETag : request.getPartETags()) {
+							Assert.assertEquals(partNumber++, partETag.getPartNumber());
+							content.write(parts.get(partETag.getPartNumber()));
+						}
+						final String path = request.getBucketName() + "/" + request.getKey();
+						objects.put(path, content.toByteArray());
+						modificationTimes.put(path, System.currentTimeMillis());
+						return null;
+					}
+				});
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(final InvocationOnMock invocation) {
+				uploads.remove(((AbortMultipartUploadRequest) invocation.getArguments()[0]).getUploadId());
+				return null;
+			}
+		}).when(s3client).abortMultipartUpload(Matchers.any(AbortMultipartUploadRequest.class));
+		Mockito.when(s3client.getObjectMetadata(Matchers.anyString(), Matchers.anyString())).thenAnswer(
+				new Answer<ObjectMetadata>() {
+					@Override
+					public ObjectMetadata answer(final InvocationOnMock invocation) {
+						final String path = invocation.getArguments()[0] + "/" + invocation.getArguments()[1];
+						if (!objects.containsKey(path)) {
+							final AmazonServiceException e = new AmazonServiceException("Not Found");
+							e.setStatusCode(metadataErrorStatus);
+							throw e;
+						}
+						final ObjectMetadata metadata = new ObjectMetadata();
+						metadata.setLastModified(new Date(modificationTimes.get(path)));
+						return metadata;
+					}
+				});
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(final InvocationOnMock invocation) {
+				objects.remove(invocation.getArguments()[0] + "/" + invocation.getArguments()[1]);
+				return null;
+			}
+		}).when(s3client).deleteObject(Matchers.anyString(), Matchers.anyString());
+		Mockito.when(s3client.putObject(Matchers.any(PutObjectRequest.class))).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(final InvocationOnMock invocation) throws IOException {
+				final PutObjectRequest request = (PutObjectRequest) invocation.getArguments()[0];
+				objects.put(request.getBucketName() + "/" + request.getKey(),
+						FileUtils.readFileToByteArray(request.getFile()));
+				return null;
+			}
+		});
+
+		uploader = new AmazonS3Uploader(s3client, "accessKey");
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(tempFolder);
+	}
+
+	private void assertUploadedArchive(final S3Object s3Object) throws IOException {
+		final byte[] content = objects.get(s3Object.getBucketName() + "/" + s3Object.getKey());
+		Assert.assertNotNull(content);
+		final File archive = new File(tempFolder, "archive.tar.gz");
+		FileUtils.writeByteArrayToFile(archive, content);
+		final File extracted = new File(tempFolder, "extracted");
+		extracted.mkdirs();
+		TarGzUtils.extract(archive, extracted.getAbsolutePath());
+		Assert.assertEquals("cloud { }", FileUtils.readFileToString(new File(extracted, "cloud.groovy")));
+		Assert.assertTrue(FileUtils.contentEquals(new File(cloudFolder, "upload/large.bin"),
+				new File(extracted, "upload/large.bin")));
+	}
+
+	@Test
+	public void testUploadedInParts() throws Exception {
+		final S3Object s3Object = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		Assert.assertEquals(BUCKET, s3Object.getBucketName());
+		assertUploadedArchive(s3Object);
+		// the random content does not compress, so it takes three 5MB parts.
+		Assert.assertEquals(3, partRequests.get());
+		Assert.assertTrue(uploads.isEmpty());
+	}
+
+	@Test
+	public void testSameContentUploadedOnce() throws Exception {
+		final S3Object first = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		final S3Object second = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		Assert.assertEquals(first.getKey(), second.getKey());
+		Mockito.verify(s3client, Mockito.times(1)).initiateMultipartUpload(
+				Matchers.any(InitiateMultipartUploadRequest.class));
+
+		// the archive may be shared with other uploaders, so it is left to the lifecycle rule.
+		uploader.deleteS3Object(first.getBucketName(), first.getKey());
+		uploader.deleteS3Object(second.getBucketName(), second.getKey());
+		Assert.assertTrue(objects.containsKey(BUCKET + "/" + first.getKey()));
+		Mockito.verify(s3client, Mockito.never()).deleteObject(Matchers.anyString(), Matchers.anyString());
+
+		// other content gets another archive.
+		FileUtils.writeStringToFile(new File(cloudFolder, "cloud.groovy"), "cloud { name = \"other\" }");
+		final S3Object other = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		Assert.assertFalse(first.getKey().equals(other.getKey()));
+	}
+
+	@Test
+	public void testTemporaryFileDeleted() throws Exception {
+		final File envFile = new File(tempFolder, "cloudify_env.sh");
+		FileUtils.writeStringToFile(envFile, "export CLOUD_SECRET=secret");
+		final S3Object first = uploader.uploadTemporaryFile(BUCKET, envFile);
+		final S3Object second = uploader.uploadTemporaryFile(BUCKET, envFile);
+		// every machine gets a file of its own.
+		Assert.assertFalse(first.getKey().equals(second.getKey()));
+		Assert.assertEquals("export CLOUD_SECRET=secret",
+				new String(objects.get(BUCKET + "/" + first.getKey()), "UTF-8"));
+
+		uploader.deleteS3Object(first.getBucketName(), first.getKey());
+		Assert.assertFalse(objects.containsKey(BUCKET + "/" + first.getKey()));
+		Assert.assertTrue(objects.containsKey(BUCKET + "/" + second.getKey()));
+	}
+
+	@Test
+	public void testExistingArchiveNotUploaded() throws Exception {
+		final S3Object first = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		final AmazonS3Uploader otherUploader = new AmazonS3Uploader(s3client, "accessKey");
+		final S3Object second = otherUploader.compressAndUpload(BUCKET,
+				new String[] { cloudFolder.getAbsolutePath() });
+		Assert.assertEquals(first.getKey(), second.getKey());
+		Mockito.verify(s3client, Mockito.times(1)).initiateMultipartUpload(
+				Matchers.any(InitiateMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testOldArchiveUploadedAgain() throws Exception {
+		final S3Object first = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		// uploaded by another uploader, close to being expired by the lifecycle rule.
+		modificationTimes.put(BUCKET + "/" + first.getKey(),
+				System.currentTimeMillis() - TimeUnit.HOURS.toMillis(20));
+		final AmazonS3Uploader otherUploader = new AmazonS3Uploader(s3client, "accessKey");
+		otherUploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		Mockito.verify(s3client, Mockito.times(2)).initiateMultipartUpload(
+				Matchers.any(InitiateMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testForbiddenMetadataUploads() throws Exception {
+		// S3 answers 403 rather than 404 for a missing object when the bucket may not be listed.
+		metadataErrorStatus = 403;
+		final S3Object s3Object = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		assertUploadedArchive(s3Object);
+	}
+
+	@Test
+	public void testFailedPartRetried() throws Exception {
+		partFailuresToReturn.set(1);
+		final S3Object s3Object = uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+		assertUploadedArchive(s3Object);
+		Assert.assertEquals(4, partRequests.get());
+	}
+
+	@Test
+	public void testFailedUploadAborted() throws Exception {
+		partFailuresToReturn.set(Integer.MAX_VALUE);
+		try {
+			uploader.compressAndUpload(BUCKET, new String[] { cloudFolder.getAbsolutePath() });
+			Assert.fail("Expected the upload to fail");
+		} catch (final IOException e) {
+			// expected.
+		}
+		Mockito.verify(s3client).abortMultipartUpload(Matchers.any(AbortMultipartUploadRequest.class));
+		Mockito.verify(s3client, Mockito.never()).completeMultipartUpload(
+				Matchers.any(CompleteMultipartUploadRequest.class));
+		Assert.assertTrue(uploads.isEmpty());
+		Assert.assertTrue(objects.isEmpty());
+	}
+}
@@ -0,0 +1,142 @@
+package org.cloudifysource.esc.driver.provisioning.storage.aws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudifysource.esc.driver.provisioning.storage.StorageProvisioningException;
+import org.jclouds.ec2.domain.Volume;
+import org.jclouds.ec2.domain.Volume.Status;
+import org.jclouds.ec2.services.ElasticBlockStoreClient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests {@link EbsVolumeStatusTracker} describes the volumes waited for together, against an in-process stub of the
+ * EBS API.
+ */
+public class EbsVolumeStatusTrackerTest {
+
+	private static final String REGION = "us-east-1";
+	private static final long POLLING_INTERVAL_MILLIS = 50;
+	private static final long TIMEOUT_MILLIS = 10000;
+	// the number of descriptions of a volume before it reaches its next status.
+	private static final int DESCRIPTIONS_IN_PROGRESS = 2;
+
+	// volume id -> the volume, for the volumes that exist.
+	private final ConcurrentMap<String, Volume> volumes = new ConcurrentHashMap<String, Volume>();
+	// volume id -> the number of times it was described.
+	private final ConcurrentMap<String, AtomicInteger> descriptions = new ConcurrentHashMap<String, AtomicInteger>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private EbsVolumeStatusTracker tracker;
+
+	@Before
+	public void before() {
+		final ElasticBlockStoreClient ebsClient = Mockito.mock(ElasticBlockStoreClient.class);
+		Mockito.when(ebsClient.describeVolumesInRegion(Mockito.eq(REGION), Mockito.<String>anyVararg())).thenAnswer(
+				new Answer<Set<Volume>>() {
+					@Override
+					public Set<Volume> answer(final InvocationOnMock invocation) {
+						requests.incrementAndGet();
+						final Object[] arguments = invocation.getArguments();
+						final Set<Volume> result = new HashSet<Volume>();
+						for (int i = 1; i < arguments.length; i++) {
+							final Volume volume = volumes.get(arguments[i]);
+							if (volume == null) {
+								// like EC2, fail the whole request.
+								throw new IllegalStateException("InvalidVolume.NotFound: " + arguments[i]);
+							}
+							descriptions.get(arguments[i]).incrementAndGet();
+							result.add(volume);
+						}
+						return result;
+					}
+				});
+		tracker = new EbsVolumeStatusTracker(ebsClient, REGION, POLLING_INTERVAL_MILLIS);
+	}
+
+	private void createVolume(final String volumeId, final Status status) {
+		final AtomicInteger volumeDescriptions = new AtomicInteger();
+		descriptions.put(volumeId, volumeDescriptions);
+		final Volume volume = Mockito.mock(Volume.class);
+		Mockito.when(volume.getId()).thenReturn(volumeId);
+		Mockito.when(volume.getStatus()).thenAnswer(new Answer<Status>() {
+			@Override
+			public Status answer(final InvocationOnMock invocation) {
+				return volumeDescriptions.get() <= DESCRIPTIONS_IN_PROGRESS ? Status.CREATING : status;
+			}
+		});
+		volumes.put(volumeId, volume);
+	}
+
+	@Test
+	public void testVolumesDescribedTogether() throws Exception {
+		final int numberOfVolumes = 20;
+		final ExecutorService executor = Executors.newFixedThreadPool(numberOfVolumes);
+		try {
+			final List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i = 0; i < numberOfVolumes; i++) {
+				final String volumeId = "vol-" + i;
+				createVolume(volumeId, Status.AVAILABLE);
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						tracker.waitForStatus(volumeId, Status.AVAILABLE, System.currentTimeMillis()
+								+ TIMEOUT_MILLIS);
+						return null;
+					}
+				}));
+			}
+			for (final Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// each round describes all the pending volumes in one request.
+		Assert.assertTrue("Made " + requests.get() + " requests",
+				requests.get() < numberOfVolumes * (DESCRIPTIONS_IN_PROGRESS + 1));
+		for (final AtomicInteger volumeDescriptions : descriptions.values()) {
+			Assert.assertEquals(DESCRIPTIONS_IN_PROGRESS + 1, volumeDescriptions.get());
+		}
+	}
+
+	@Test
+	public void testMissingVolume() throws Exception {
+		createVolume("vol-1", Status.DELETING);
+		createVolume("vol-2", Status.DELETING);
+		final Map<String, StorageProvisioningException> failures = tracker.waitForStatus(
+				Arrays.asList("vol-1", "vol-2", "vol-missing"), Status.DELETING,
+				System.currentTimeMillis() + TIMEOUT_MILLIS);
+		Assert.assertEquals(failures.keySet(), new HashSet<String>(Arrays.asList("vol-missing")));
+
+		try {
+			tracker.waitForStatus("vol-missing", Status.DELETING, System.currentTimeMillis() + TIMEOUT_MILLIS);
+			Assert.fail("Expected the missing volume to fail");
+		} catch (final StorageProvisioningException e) {
+			// expected.
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testTimeout() throws Exception {
+		createVolume("vol-1", Status.AVAILABLE);
+		tracker.waitForStatus("vol-1", Status.IN_USE, System.currentTimeMillis() + POLLING_INTERVAL_MILLIS * 5);
+	}
+}
@@ -0,0 +1,161 @@
+package org.cloudifysource.esc.jclouds;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.ComputeServiceContext;
+import org.jclouds.compute.domain.ComputeMetadata;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Tests {@link JCloudsInventory} serves lookups from its indexes and lists the cloud's nodes only when needed.
+ */
+public class JCloudsInventoryTest {
+
+	private static final long ONE_HOUR_MILLIS = 3600 * 1000;
+
+	private final Set<NodeMetadata> cloudNodes = new HashSet<NodeMetadata>();
+	private final AtomicInteger listings = new AtomicInteger();
+	private JCloudsDeployer deployer;
+	private Runnable duringListing;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void before() {
+		final ComputeService computeService = Mockito.mock(ComputeService.class);
+		Mockito.doAnswer(new Answer<Set<NodeMetadata>>() {
+			@Override
+			public Set<NodeMetadata> answer(final InvocationOnMock invocation) {
+				listings.incrementAndGet();
+				final Set<NodeMetadata> listed = new HashSet<NodeMetadata>(cloudNodes);
+				if (duringListing != null) {
+					duringListing.run();
+				}
+				return listed;
+			}
+		}).when(computeService).listNodesDetailsMatching(Mockito.any(Predicate.class));
+		final ComputeServiceContext context = Mockito.mock(ComputeServiceContext.class);
+		Mockito.when(context.getComputeService()).thenReturn(computeService);
+		deployer = Mockito.mock(JCloudsDeployer.class);
+		Mockito.when(deployer.getContext()).thenReturn(context);
+	}
+
+	private static NodeMetadata createNode(final String id, final String name, final String group,
+			final String privateIp, final String publicIp) {
+		final NodeMetadata node = Mockito.mock(NodeMetadata.class);
+		Mockito.when(node.getId()).thenReturn(id);
+		Mockito.when(node.getName()).thenReturn(name);
+		Mockito.when(node.getGroup()).thenReturn(group);
+		Mockito.when(node.getPrivateAddresses()).thenReturn(Collections.singleton(privateIp));
+		Mockito.when(node.getPublicAddresses()).thenReturn(Collections.singleton(publicIp));
+		return node;
+	}
+
+	@Test
+	public void testIndexedLookupsShareListing() {
+		final NodeMetadata manager = createNode("1", "cloudify-manager-1", "cloudify-manager", "10.0.0.1", "1.1.1.1");
+		final NodeMetadata agent = createNode("2", "cloudify-agent-2", "cloudify-agent", "10.0.0.2", "1.1.1.2");
+		cloudNodes.add(manager);
+		cloudNodes.add(agent);
+		final JCloudsInventory inventory = new JCloudsInventory(deployer, ONE_HOUR_MILLIS, ONE_HOUR_MILLIS);
+
+		Assert.assertEquals(Collections.singleton(manager), inventory.getNodesWithIp("1.1.1.1"));
+		Assert.assertEquals(Collections.singleton(agent), inventory.getNodesWithIp("10.0.0.2"));
+		Assert.assertEquals(Collections.singleton(manager), inventory.getNodesInGroup("cloudify-manager"));
+		Assert.assertEquals(Collections.singleton(agent), inventory.getNodesWithNamePrefix("cloudify-agent-"));
+		Assert.assertEquals(2, inventory.getNodesWithNamePrefix("cloudify-").size());
+		Assert.assertEquals(Collections.singleton(agent), inventory.getNodes(new Predicate<ComputeMetadata>() {
+			@Override
+			public boolean apply(final ComputeMetadata input) {
+				return "2".equals(input.getId());
+			}
+		}));
+		Assert.assertTrue(inventory.getNodesWithIp("10.0.0.3").isEmpty());
+		Assert.assertEquals(1, listings.get());
+	}
+
+	@Test
+	public void testSingleNodeUpdates() {
+		final JCloudsInventory inventory = new JCloudsInventory(deployer, ONE_HOUR_MILLIS, ONE_HOUR_MILLIS);
+		Assert.assertTrue(inventory.getNodesInGroup("cloudify-agent").isEmpty());
+
+		final NodeMetadata created = createNode("3", "cloudify-agent-3", "cloudify-agent", "10.0.0.3", "1.1.1.3");
+		inventory.put(created);
+		Assert.assertEquals(Collections.singleton(created), inventory.getNodesInGroup("cloudify-agent"));
+
+		// an updated node is indexed by its new addresses only.
+		final NodeMetadata updated = createNode("3", "cloudify-agent-3", "cloudify-agent", "10.0.0.4", "1.1.1.4");
+		inventory.put(updated);
+		Assert.assertTrue(inventory.getNodesWithIp("10.0.0.3").isEmpty());
+		Assert.assertEquals(Collections.singleton(updated), inventory.getNodesWithIp("10.0.0.4"));
+
+		inventory.remove("3");
+		Assert.assertTrue(inventory.getNodesInGroup("cloudify-agent").isEmpty());
+		Assert.assertEquals(1, listings.get());
+	}
+
+	@Test
+	public void testMissListsAgainAfterMinInterval() throws InterruptedException {
+		final JCloudsInventory inventory = new JCloudsInventory(deployer, ONE_HOUR_MILLIS, 100);
+		Assert.assertTrue(inventory.getNodesWithIp("10.0.0.5").isEmpty());
+		Assert.assertEquals(1, listings.get());
+
+		// a node created by another process is found once the minimal interval passed.
+		final NodeMetadata node = createNode("5", "cloudify-agent-5", "cloudify-agent", "10.0.0.5", "1.1.1.5");
+		cloudNodes.add(node);
+		Assert.assertTrue(inventory.getNodesWithIp("10.0.0.5").isEmpty());
+		Thread.sleep(150);
+		Assert.assertEquals(Collections.singleton(node), inventory.getNodesWithIp("10.0.0.5"));
+		Assert.assertEquals(2, listings.get());
+	}
+
+	@Test
+	public void testRefreshListsAgainImmediately() {
+		final JCloudsInventory inventory = new JCloudsInventory(deployer, ONE_HOUR_MILLIS, ONE_HOUR_MILLIS);
+		Assert.assertTrue(inventory.getNodesWithIp("10.0.0.8").isEmpty());
+
+		// a machine that just started is only found by listing the nodes again.
+		final NodeMetadata node = createNode("8", "cloudify-agent-8", "cloudify-agent", "10.0.0.8", "1.1.1.8");
+		cloudNodes.add(node);
+		Assert.assertTrue(inventory.getNodesWithIp("10.0.0.8").isEmpty());
+		inventory.refresh();
+		Assert.assertEquals(Collections.singleton(node), inventory.getNodesWithIp("10.0.0.8"));
+		Assert.assertEquals(2, listings.get());
+	}
+
+	@Test
+	public void testUpdatesDuringListingKept() {
+		final NodeMetadata destroyed = createNode("6", "cloudify-agent-6", "cloudify-agent", "10.0.0.6", "1.1.1.6");
+		final NodeMetadata created = createNode("7", "cloudify-agent-7", "cloudify-agent", "10.0.0.7", "1.1.1.7");
+		cloudNodes.add(destroyed);
+		final JCloudsInventory inventory = new JCloudsInventory(deployer, ONE_HOUR_MILLIS, ONE_HOUR_MILLIS);
+		duringListing = new Runnable() {
+			@Override
+			public void run() {
+				inventory.put(created);
+				inventory.remove("6");
+			}
+		};
+		Assert.assertEquals(Collections.singleton(created), inventory.getNodesInGroup("cloudify-agent"));
+	}
+
+	@Test
+	public void testClear() {
+		final JCloudsInventory inventory = new JCloudsInventory(deployer, ONE_HOUR_MILLIS, ONE_HOUR_MILLIS);
+		inventory.getNodesInGroup("cloudify-agent");
+		inventory.clear();
+		inventory.getNodesInGroup("cloudify-agent");
+		Assert.assertEquals(2, listings.get());
+	}
+}
@@ -0,0 +1,91 @@
+package org.cloudifysource.esc.jclouds;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.ComputeServiceContext;
+import org.jclouds.compute.domain.Hardware;
+import org.jclouds.compute.domain.Image;
+import org.jclouds.compute.domain.Template;
+import org.jclouds.compute.domain.TemplateBuilder;
+import org.jclouds.compute.options.TemplateOptions;
+import org.jclouds.domain.Location;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests {@link JCloudsTemplateCache} resolves each template once and hands out templates with their own options.
+ */
+public class JCloudsTemplateCacheTest {
+
+	private static final long ONE_HOUR_MILLIS = 3600 * 1000;
+
+	private JCloudsDeployer deployer;
+	private ComputeService computeService;
+	private TemplateBuilder builder;
+	private Template resolved;
+
+	@Before
+	public void before() {
+		resolved = Mockito.mock(Template.class);
+		Mockito.when(resolved.getImage()).thenReturn(Mockito.mock(Image.class));
+		Mockito.when(resolved.getHardware()).thenReturn(Mockito.mock(Hardware.class));
+		Mockito.when(resolved.getLocation()).thenReturn(Mockito.mock(Location.class));
+		Mockito.when(resolved.getOptions()).thenReturn(new TemplateOptions());
+		builder = Mockito.mock(TemplateBuilder.class);
+		Mockito.when(builder.build()).thenReturn(resolved);
+		computeService = Mockito.mock(ComputeService.class);
+		Mockito.when(computeService.templateBuilder()).thenReturn(builder);
+		final ComputeServiceContext context = Mockito.mock(ComputeServiceContext.class);
+		Mockito.when(context.getComputeService()).thenReturn(computeService);
+		deployer = Mockito.mock(JCloudsDeployer.class);
+		Mockito.when(deployer.getContext()).thenReturn(context);
+	}
+
+	@Test
+	public void testResolvedOnce() {
+		final JCloudsTemplateCache cache = new JCloudsTemplateCache(deployer, ONE_HOUR_MILLIS);
+		final Template first = cache.getTemplate("image", "hardware", 0, "location");
+		final Template second = cache.getTemplate("image", "hardware", 0, "location");
+		Mockito.verify(builder, Mockito.times(1)).build();
+		Mockito.verify(builder).imageId("image");
+		Mockito.verify(builder).hardwareId("hardware");
+		Mockito.verify(builder).locationId("location");
+		Mockito.verify(builder, Mockito.never()).minRam(Mockito.anyInt());
+
+		Assert.assertSame(resolved.getImage(), second.getImage());
+		Assert.assertSame(resolved.getHardware(), second.getHardware());
+		Assert.assertSame(resolved.getLocation(), second.getLocation());
+		// options are set per template, so they are never shared.
+		Assert.assertNotSame(first.getOptions(), second.getOptions());
+		Assert.assertNotSame(resolved.getOptions(), first.getOptions());
+	}
+
+	@Test
+	public void testResolvedPerLocation() {
+		final JCloudsTemplateCache cache = new JCloudsTemplateCache(deployer, ONE_HOUR_MILLIS);
+		cache.getTemplate("image", null, 0, "location1");
+		cache.getTemplate("image", null, 0, "location2");
+		cache.getTemplate("image", null, 0, "location1");
+		Mockito.verify(builder, Mockito.times(2)).build();
+	}
+
+	@Test
+	public void testResolvedAgainAfterTtl() throws InterruptedException {
+		final JCloudsTemplateCache cache = new JCloudsTemplateCache(deployer, 100);
+		cache.getTemplate("image", null, 1024, null);
+		Thread.sleep(150);
+		cache.getTemplate("image", null, 1024, null);
+		Mockito.verify(builder, Mockito.times(2)).build();
+		Mockito.verify(builder, Mockito.times(2)).minRam(1024);
+	}
+
+	@Test
+	public void testClear() {
+		final JCloudsTemplateCache cache = new JCloudsTemplateCache(deployer, ONE_HOUR_MILLIS);
+		cache.getTemplate("image", null, 0, null);
+		cache.clear();
+		cache.getTemplate("image", null, 0, null);
+		Mockito.verify(builder, Mockito.times(2)).build();
+	}
+}
@@ -0,0 +1,86 @@
+package org.cloudifysource.esc.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ProvisioningDriverClassBuilder} shares the class loaders of cloud lib folders with the same content.
+ */
+public class ProvisioningDriverClassBuilderTest {
+
+	private static final String DRIVER_CLASS_NAME = "TestProvisioningDriver";
+
+	private File tempFolder;
+
+	@Before
+	public void before() throws IOException {
+		tempFolder = File.createTempFile("driverClassBuilder", "");
+		tempFolder.delete();
+		tempFolder.mkdirs();
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(tempFolder);
+	}
+
+	private String createCloudFolder(final String name, final String driverSource) throws IOException {
+		final File cloudFolder = new File(tempFolder, name);
+		final File libFolder = new File(cloudFolder, "lib");
+		libFolder.mkdirs();
+		FileUtils.writeStringToFile(new File(libFolder, DRIVER_CLASS_NAME + ".groovy"), driverSource);
+		return cloudFolder.getAbsolutePath();
+	}
+
+	@Test
+	public void testClassLoaderShared() throws Exception {
+		final String source = "class " + DRIVER_CLASS_NAME + " { }";
+		final String firstCloudFolder = createCloudFolder("first", source);
+		final String secondCloudFolder = createCloudFolder("second", source);
+		final String otherCloudFolder = createCloudFolder("other", "class " + DRIVER_CLASS_NAME + " { int x }");
+		final int sharedClassLoaders = ProvisioningDriverClassBuilder.getSharedClassLoaderCount();
+
+		final ProvisioningDriverClassBuilder firstBuilder = new ProvisioningDriverClassBuilder();
+		final ProvisioningDriverClassBuilder secondBuilder = new ProvisioningDriverClassBuilder();
+		final ProvisioningDriverClassBuilder otherBuilder = new ProvisioningDriverClassBuilder();
+		final Object firstDriver = firstBuilder.build(firstCloudFolder, DRIVER_CLASS_NAME);
+		final Object secondDriver = secondBuilder.build(secondCloudFolder, DRIVER_CLASS_NAME);
+		final Object otherDriver = otherBuilder.build(otherCloudFolder, DRIVER_CLASS_NAME);
+
+		// lib folders with the same content share the class loader.
+		Assert.assertNotSame(firstDriver, secondDriver);
+		Assert.assertSame(firstDriver.getClass(), secondDriver.getClass());
+		Assert.assertNotSame(firstDriver.getClass(), otherDriver.getClass());
+		Assert.assertEquals(sharedClassLoaders + 2, ProvisioningDriverClassBuilder.getSharedClassLoaderCount());
+
+		// the class loader is dropped once its last user is destroyed.
+		firstBuilder.destroy();
+		otherBuilder.destroy();
+		Assert.assertEquals(sharedClassLoaders + 1, ProvisioningDriverClassBuilder.getSharedClassLoaderCount());
+		secondBuilder.destroy();
+		secondBuilder.destroy();
+		Assert.assertEquals(sharedClassLoaders, ProvisioningDriverClassBuilder.getSharedClassLoaderCount());
+
+		final ProvisioningDriverClassBuilder newBuilder = new ProvisioningDriverClassBuilder();
+		try {
+			Assert.assertNotSame(firstDriver.getClass(), newBuilder.build(firstCloudFolder, DRIVER_CLASS_NAME)
+					.getClass());
+		} finally {
+			newBuilder.destroy();
+		}
+	}
+
+	@Test
+	public void testWithoutLibFolder() throws Exception {
+		final ProvisioningDriverClassBuilder builder = new ProvisioningDriverClassBuilder();
+		final Object instance = builder.build(tempFolder.getAbsolutePath(), "java.util.ArrayList");
+		Assert.assertEquals(java.util.ArrayList.class, instance.getClass());
+		builder.destroy();
+	}
+}
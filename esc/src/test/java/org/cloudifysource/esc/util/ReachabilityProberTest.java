@@ -0,0 +1,93 @@
+package org.cloudifysource.esc.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ReachabilityProber} against local server sockets.
+ */
+public class ReachabilityProberTest {
+
+	private static final String LOCALHOST = "127.0.0.1";
+	private static final long TIMEOUT_MILLIS = 2000;
+
+	private final List<ServerSocket> serverSockets = new ArrayList<ServerSocket>();
+
+	@Before
+	public void before() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			serverSockets.add(new ServerSocket(0, 50, java.net.InetAddress.getByName(LOCALHOST)));
+		}
+	}
+
+	@After
+	public void after() throws IOException {
+		for (final ServerSocket serverSocket : serverSockets) {
+			serverSocket.close();
+		}
+	}
+
+	private static int getClosedPort() throws IOException {
+		final ServerSocket serverSocket = new ServerSocket(0);
+		final int port = serverSocket.getLocalPort();
+		serverSocket.close();
+		return port;
+	}
+
+	@Test
+	public void testProbeInParallel() throws IOException {
+		final ReachabilityProber prober = new ReachabilityProber(0, 2);
+		final List<InetSocketAddress> targets = new ArrayList<InetSocketAddress>();
+		for (final ServerSocket serverSocket : serverSockets) {
+			targets.add(InetSocketAddress.createUnresolved(LOCALHOST, serverSocket.getLocalPort()));
+		}
+		final InetSocketAddress closedTarget = InetSocketAddress.createUnresolved(LOCALHOST, getClosedPort());
+		targets.add(1, closedTarget);
+		final InetSocketAddress unknownHost = InetSocketAddress.createUnresolved("no-such-host.invalid", 22);
+		targets.add(unknownHost);
+
+		final Map<InetSocketAddress, Boolean> results = prober.probe(targets, TIMEOUT_MILLIS);
+		Assert.assertEquals(targets, new ArrayList<InetSocketAddress>(results.keySet()));
+		for (final InetSocketAddress target : targets) {
+			final boolean expected = target != closedTarget && target != unknownHost;
+			Assert.assertEquals(target.toString(), expected, results.get(target).booleanValue());
+		}
+	}
+
+	@Test
+	public void testRecentResultsReused() throws IOException {
+		final ReachabilityProber prober = new ReachabilityProber(60000, 10);
+		final ServerSocket serverSocket = serverSockets.get(0);
+		final int port = serverSocket.getLocalPort();
+		Assert.assertNull(prober.getRecentResult(LOCALHOST, port));
+		Assert.assertTrue(prober.isReachable(LOCALHOST, port, TIMEOUT_MILLIS));
+
+		// the recent result is used until it is invalidated.
+		serverSocket.close();
+		Assert.assertEquals(Boolean.TRUE, prober.getRecentResult(LOCALHOST, port));
+		Assert.assertTrue(prober.isReachable(LOCALHOST, port, TIMEOUT_MILLIS));
+		prober.invalidate(LOCALHOST, port);
+		Assert.assertFalse(prober.isReachable(LOCALHOST, port, TIMEOUT_MILLIS));
+		Assert.assertEquals(Boolean.FALSE, prober.getRecentResult(LOCALHOST, port));
+	}
+
+	@Test
+	public void testNoCache() throws IOException {
+		final ReachabilityProber prober = new ReachabilityProber(0, 1);
+		final ServerSocket serverSocket = serverSockets.get(0);
+		final int port = serverSocket.getLocalPort();
+		Assert.assertTrue(prober.isReachable(LOCALHOST, port, TIMEOUT_MILLIS));
+		Assert.assertNull(prober.getRecentResult(LOCALHOST, port));
+		serverSocket.close();
+		Assert.assertFalse(prober.isReachable(LOCALHOST, port, TIMEOUT_MILLIS));
+	}
+}
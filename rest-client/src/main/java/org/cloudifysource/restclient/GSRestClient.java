@@ -12,10 +12,12 @@
  ******************************************************************************/
 package org.cloudifysource.restclient;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URL;
@@ -366,45 +368,7 @@ public class GSRestClient {
 		String responseBody;
 		try {
 			final HttpResponse response = httpClient.execute(httpMethod);
-			
-			final int statusCode = response.getStatusLine().getStatusCode();
-			if (statusCode != CloudifyConstants.HTTP_STATUS_CODE_OK) {
-				final String reasonPhrase = response.getStatusLine().getReasonPhrase();
-				if (logger.isLoggable(Level.FINE)) {
-					logger.log(Level.FINE, httpMethod.getURI() + MSG_RESPONSE_CODE + statusCode 
-							+ ", " + MSG_RESPONSE_REASON_PHRASE + ": " + reasonPhrase);
-				}
-				responseBody = getResponseBody(response, httpMethod);
-				if (logger.isLoggable(Level.FINE)) {
-					logger.log(Level.FINE, httpMethod.getURI() + " response body " + responseBody);
-				}
-
-				if (statusCode == CloudifyConstants.HTTP_STATUS_NOT_FOUND) {
-					throw new ErrorStatusException("URL_not_found", httpMethod.getURI());
-				} else if (statusCode == CloudifyConstants.HTTP_STATUS_ACCESS_DENIED) {
-					throw new ErrorStatusException(CloudifyErrorMessages.NO_PERMISSION_ACCESS_DENIED.getName(),
-							httpMethod.getURI());
-				} else if (statusCode == CloudifyConstants.HTTP_STATUS_UNAUTHORIZED) {
-					throw new ErrorStatusException(CloudifyErrorMessages.UNAUTHORIZED.getName(), reasonPhrase,
-							httpMethod.getURI());
-				}
-
-				final Map<String, Object> errorMap = GSRestClient.jsonToMap(responseBody);
-				final String status = (String) errorMap.get(STATUS_KEY);
-				if (ERROR.equals(status)) {
-					final String reason = (String) errorMap.get(ERROR);
-					@SuppressWarnings("unchecked")
-					final List<Object> reasonsArgs = (List<Object>) errorMap.get(ERROR_ARGS);
-					final ErrorStatusException e = new ErrorStatusException(reason,
-							reasonsArgs != null ? reasonsArgs.toArray() : null);
-					if (errorMap.containsKey(VERBOSE)) {
-						e.setVerboseData((String) errorMap.get(VERBOSE));
-					}
-					logger.log(Level.FINE, reason, e);
-					throw e;
-				}
-
-			}
+			checkResponseStatus(response, httpMethod);
 
 			responseBody = getResponseBody(response, httpMethod);
 			final Map<String, Object> responseMap = GSRestClient.jsonToMap(responseBody);
@@ -417,6 +381,95 @@ public class GSRestClient {
 		}
 	}
 
+	/**
+	 * Receives the lines of a plain text response as the server writes them.
+	 */
+	public interface LineHandler {
+		/**
+		 * @param line
+		 *            A line of the response, without the line terminator.
+		 * @return true to keep reading, false to stop and close the connection.
+		 */
+		boolean onLine(String line);
+	}
+
+	/**
+	 * Calls HttpGet on the given relative url and passes each line of the (plain text) response to the handler as
+	 * soon as it arrives, without buffering the whole response. Used for long lived, streamed responses.
+	 *
+	 * @param relativeUrl
+	 *            The relative url.
+	 * @param handler
+	 *            Receives the response lines.
+	 * @throws ErrorStatusException
+	 *             Reporting errors of all types (IO, HTTP, rest etc.)
+	 */
+	public final void getLines(final String relativeUrl, final LineHandler handler) throws ErrorStatusException {
+		final HttpGet httpMethod = new HttpGet(getFullUrl(relativeUrl));
+		try {
+			final HttpResponse response = httpClient.execute(httpMethod);
+			checkResponseStatus(response, httpMethod);
+			final HttpEntity entity = response.getEntity();
+			if (entity == null) {
+				throw new ErrorStatusException(REASON_CODE_COMM_ERR, httpMethod.getURI(), MSG_RESPONSE_ENTITY_NULL);
+			}
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(entity.getContent(), Charset.forName("UTF-8")));
+			String line = reader.readLine();
+			while (line != null && handler.onLine(line)) {
+				line = reader.readLine();
+			}
+		} catch (final IOException e) {
+			logger.log(Level.INFO, httpMethod.getURI() + MSG_REST_API_ERR, e);
+			throw new ErrorStatusException(e, REASON_CODE_COMM_ERR, httpMethod.getURI(), e.getMessage());
+		} finally {
+			// abort rather than drain, the server may still be writing.
+			httpMethod.abort();
+		}
+	}
+
+	private void checkResponseStatus(final HttpResponse response, final HttpRequestBase httpMethod)
+			throws ErrorStatusException, IOException {
+		final int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode == CloudifyConstants.HTTP_STATUS_CODE_OK) {
+			return;
+		}
+		final String reasonPhrase = response.getStatusLine().getReasonPhrase();
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, httpMethod.getURI() + MSG_RESPONSE_CODE + statusCode 
+					+ ", " + MSG_RESPONSE_REASON_PHRASE + ": " + reasonPhrase);
+		}
+		final String responseBody = getResponseBody(response, httpMethod);
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, httpMethod.getURI() + " response body " + responseBody);
+		}
+
+		if (statusCode == CloudifyConstants.HTTP_STATUS_NOT_FOUND) {
+			throw new ErrorStatusException("URL_not_found", httpMethod.getURI());
+		} else if (statusCode == CloudifyConstants.HTTP_STATUS_ACCESS_DENIED) {
+			throw new ErrorStatusException(CloudifyErrorMessages.NO_PERMISSION_ACCESS_DENIED.getName(),
+					httpMethod.getURI());
+		} else if (statusCode == CloudifyConstants.HTTP_STATUS_UNAUTHORIZED) {
+			throw new ErrorStatusException(CloudifyErrorMessages.UNAUTHORIZED.getName(), reasonPhrase,
+					httpMethod.getURI());
+		}
+
+		final Map<String, Object> errorMap = GSRestClient.jsonToMap(responseBody);
+		final String status = (String) errorMap.get(STATUS_KEY);
+		if (ERROR.equals(status)) {
+			final String reason = (String) errorMap.get(ERROR);
+			@SuppressWarnings("unchecked")
+			final List<Object> reasonsArgs = (List<Object>) errorMap.get(ERROR_ARGS);
+			final ErrorStatusException e = new ErrorStatusException(reason,
+					reasonsArgs != null ? reasonsArgs.toArray() : null);
+			if (errorMap.containsKey(VERBOSE)) {
+				e.setVerboseData((String) errorMap.get(VERBOSE));
+			}
+			logger.log(Level.FINE, reason, e);
+			throw e;
+		}
+	}
+
 	/**
 	 * Gets the HTTP response's body as a String.
 	 *
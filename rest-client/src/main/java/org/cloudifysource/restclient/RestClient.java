@@ -115,6 +115,8 @@ public class RestClient {
 	private static final String GET_PU_DUMP_FILE_URL_FORMAT = "dump/processing-units/?fileSizeLimit=%s";
 	private static final String GET_MACHINE_DUMP_FILE_URL_FORMAT = "dump/machine/%s/?processors=%s&fileSizeLimit=%s";
 	private static final String GET_MACHINES_DUMP_FILE_URL_FORMAT = "dump/machines/?processors=%s&fileSizeLimit=%s";
+	private static final String GET_MACHINES_DUMP_ZIP_URL_FORMAT = 
+			"dump/machines/zip?processors=%s&fileSizeLimit=%s&concurrency=%s";
 
 	protected final RestClientExecutor executor;
 	private final String versionedDeploymentControllerUrl;
@@ -921,6 +923,53 @@ public class RestClient {
 				});
 	}
 	
+	/**
+	 * Downloads the dumps of all machines as a single zip file (one entry per machine) straight into the target file.
+	 * Unlike {@link #getMachinesDumpFile(String, long)}, the dumps are generated concurrently on the server and are
+	 * never held in memory on either side.
+	 * 
+	 * @param processors
+	 *            The list of processors to be used.
+	 * @param fileSizeLimit
+	 *            The limit on the total size of all dumps.
+	 * @param concurrency
+	 *            The maximum number of dumps generated at the same time, 0 for the server default.
+	 * @param target
+	 *            The file to write the zip into.
+	 * @return The target file.
+	 * @throws RestClientException 
+	 */
+	public File downloadMachinesDumpFile(final String processors, final long fileSizeLimit, final int concurrency,
+			final File target) throws RestClientException {
+		
+		long actualSizeLimit = fileSizeLimit;
+		if (fileSizeLimit == 0) {
+			actualSizeLimit = CloudifyConstants.DEFAULT_DUMP_FILE_SIZE_LIMIT;
+		}
+		
+		String actualProcessors = processors;
+		if (StringUtils.isBlank(processors)) {
+			actualProcessors = ProcessorTypes.DEFAULT_PROCESSORS;
+		}
+		
+		int actualConcurrency = concurrency;
+		if (concurrency <= 0) {
+			actualConcurrency = CloudifyConstants.DEFAULT_DUMP_CONCURRENCY;
+		}
+		
+		final String getMachinesDumpZipURL = getFormattedUrl(
+				shutdownManagersControllerUrl,
+				GET_MACHINES_DUMP_ZIP_URL_FORMAT,
+				actualProcessors,
+				Long.toString(actualSizeLimit),
+				Integer.toString(actualConcurrency));
+		
+		log(Level.FINE, "[downloadMachinesDumpFile] - sending GET request to REST ["
+				+ getMachinesDumpZipURL + "]");
+		
+		return executor.download(getMachinesDumpZipURL, target);
+	}
+	
 	private void log(final Level level, final String msg) {
 		if (logger.isLoggable(level)) {
 			logger.log(level, msg);
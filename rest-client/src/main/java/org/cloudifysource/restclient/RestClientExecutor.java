@@ -16,9 +16,12 @@
 package org.cloudifysource.restclient;
 
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Map;
@@ -173,6 +176,70 @@ public class RestClientExecutor {
 		return executeRequest(getRequest, responseTypeReference);
     }
 
+    /**
+     * Executes HTTP get over REST on the given (relative) URL and streams the response body into the target file,
+     * without holding it in memory.
+     *
+     * @param relativeUrl
+     *            The URL to send the get request to.
+     * @param target
+     *            The file to write the response body into.
+     * @return The target file.
+     * @throws RestClientException .
+     */
+    public File download(final String relativeUrl, final File target) throws RestClientException {
+    	final String fullUrl = getFullUrl(relativeUrl);
+    	final HttpGet getRequest = new HttpGet(fullUrl);
+    	if (logger.isLoggable(Level.FINE)) {
+    		logger.log(Level.FINE, "execute download request to " + relativeUrl);
+    	}
+    	try {
+    		final HttpResponse httpResponse;
+    		try {
+    			httpResponse = httpClient.execute(getRequest);
+    		} catch (final IOException e) {
+    			throw MessagesUtils.createRestClientIOException(
+    					RestClientMessageKeys.EXECUTION_FAILURE.getName(), e, fullUrl);
+    		}
+    		checkForError(httpResponse, fullUrl);
+    		final HttpEntity entity = httpResponse.getEntity();
+    		if (entity == null) {
+    			throw MessagesUtils.createRestClientIOException(
+    					RestClientMessageKeys.READ_RESPONSE_BODY_FAILURE.getName(), 
+    					new IOException("Empty response body"));
+    		}
+    		OutputStream out = null;
+    		boolean downloaded = false;
+    		try {
+    			out = new BufferedOutputStream(new FileOutputStream(target));
+    			entity.writeTo(out);
+    			downloaded = true;
+    		} catch (final IOException e) {
+    			throw MessagesUtils.createRestClientIOException(
+    					RestClientMessageKeys.DOWNLOAD_FAILURE.getName(), e, fullUrl, target.getAbsolutePath());
+    		} finally {
+    			if (out != null) {
+    				try {
+    					out.close();
+    				} catch (final IOException e) {
+    					if (logger.isLoggable(Level.WARNING)) {
+    						logger.warning("Failed to close " + target + ": " + e.getMessage());
+    					}
+    				}
+    			}
+    			// do not leave a partial download behind.
+    			if (!downloaded && target.exists() && !target.delete()) {
+    				if (logger.isLoggable(Level.WARNING)) {
+    					logger.warning("Failed to delete the partial download " + target);
+    				}
+    			}
+    		}
+    		return target;
+    	} finally {
+    		getRequest.abort();
+    	}
+    }
+
     /**
      *
      * @param relativeUrl
@@ -50,6 +50,10 @@ public enum RestClientMessageKeys {
 	 * read response body failure message.
 	 */
 	READ_RESPONSE_BODY_FAILURE("read_response_body_failed"),
+	/**
+	 * Writing a downloaded response body to a file failed.
+	 */
+	DOWNLOAD_FAILURE("download_failed"),
 	/**
 	 * HTTP failure message.
 	 */
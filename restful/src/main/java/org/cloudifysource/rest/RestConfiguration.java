@@ -25,6 +25,9 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.cloudifysource.domain.cloud.Cloud;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.rest.monitoring.MetricsHistoryStore;
+import org.cloudifysource.rest.util.ApplicationDescriptionCache;
 import org.cloudifysource.rest.util.RestPollingRunnable;
 import org.cloudifysource.security.CustomPermissionEvaluator;
 import org.cloudifysource.utilitydomain.data.CloudConfigurationHolder;
@@ -51,6 +54,8 @@ public class RestConfiguration {
     private File restTempFolder;
 	private CustomPermissionEvaluator permissionEvaluator;
 	private File additionalTemplatesFolder;
+	private final MetricsHistoryStore metricsHistoryStore = new MetricsHistoryStore();
+	private ApplicationDescriptionCache applicationDescriptionCache;
 
 	/**
      * A set containing all of the executed lifecycle events. used to avoid duplicate prints.
@@ -187,6 +192,36 @@ public class RestConfiguration {
 		this.permissionEvaluator = permissionEvaluator;
 	}
 
+	public MetricsHistoryStore getMetricsHistoryStore() {
+		return metricsHistoryStore;
+	}
+
+	/**
+	 * Returns the application descriptions cache shared by the controllers, creating and starting it on first use.
+	 *
+	 * @return the application descriptions cache.
+	 */
+	public synchronized ApplicationDescriptionCache getApplicationDescriptionCache() {
+		if (applicationDescriptionCache == null) {
+			final long maxAgeMillis = Long.getLong(
+					CloudifyConstants.SYSTEM_PROPERTY_REST_DESCRIPTIONS_CACHE_MAX_AGE_MILLIS,
+					CloudifyConstants.DEFAULT_DESCRIPTIONS_CACHE_MAX_AGE_MILLIS);
+			applicationDescriptionCache = new ApplicationDescriptionCache(admin, maxAgeMillis);
+			applicationDescriptionCache.start();
+		}
+		return applicationDescriptionCache;
+	}
+
+	/**
+	 * Stops the application descriptions cache, if it was started.
+	 */
+	public synchronized void stopApplicationDescriptionCache() {
+		if (applicationDescriptionCache != null) {
+			applicationDescriptionCache.stop();
+			applicationDescriptionCache = null;
+		}
+	}
+
 	public File getAdditionalTempaltesFolder() {
 		return additionalTemplatesFolder;
 	}
@@ -26,6 +26,7 @@ import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyMessageKeys;
 import org.cloudifysource.dsl.internal.DSLException;
+import org.cloudifysource.dsl.internal.ParsedCloudCache;
 import org.cloudifysource.dsl.internal.ServiceReader;
 import org.cloudifysource.rest.controllers.RestErrorException;
 import org.cloudifysource.rest.util.RestUtils;
@@ -191,6 +192,10 @@ public class RestConfigurationFactoryBean implements FactoryBean<RestConfigurati
         try {
             final File cloudConfigurationFile = new File(cloudConfigurationFilePath);
             File cloudConfigurationDir = cloudConfigurationFile.getParentFile();
+            // use the cloud parsed by the bootstrapping process, if the configuration did not change since.
+            ParsedCloudCache.add(cloudConfigurationDir, cloudConfigurationFile, null,
+                    cloudConfigurationHolder.getCloudConfigurationDigest(),
+                    cloudConfigurationHolder.getSerializedCloud());
             cloud = ServiceReader.readCloud(cloudConfigurationFile);
             config.setCloudConfigurationDir(cloudConfigurationDir);
             config.setCloudConfigurationHolder(cloudConfigurationHolder);
@@ -15,19 +15,18 @@
  *******************************************************************************/
 package org.cloudifysource.rest.command;
 
-import java.lang.reflect.Method;
+import java.lang.reflect.Array;
 import java.util.List;
 import java.util.Map;
 
-import org.cloudifysource.rest.out.OutputUtils;
+import org.cloudifysource.rest.out.GetterMetadata;
 import org.cloudifysource.rest.util.NotFoundHttpException;
 
 
 public class CommandUtils {
     
 	public static Object getObjectByCommand(String command, Object someObject){
-		Method commandMethod = getGetterMethodFromObject(command, someObject.getClass());
-		return OutputUtils.safeInvoke(commandMethod, someObject);
+		return GetterMetadata.forClass(someObject.getClass()).getCommandGetter(command).invoke(someObject);
 	}
 
     public static Object getMapObject(String key, Object mapObject) {
@@ -77,37 +76,12 @@ public class CommandUtils {
 			throw new NotFoundHttpException("Error while accessing array of type " + arrayObject.getClass().getSimpleName()
                     + ". Unable to parse index: " + index);
 		}
-		Object[] objectArray = OutputUtils.getArray(arrayObject);
-		if (arrayIndex >= objectArray.length){
+		int arrayLength = Array.getLength(arrayObject);
+		if (arrayIndex >= arrayLength){
             throw new NotFoundHttpException("Error while accessing array of type " + arrayObject.getClass().getSimpleName()
-                    + ". Array size: " + objectArray.length + ", requested index: " + arrayIndex);
+                    + ". Array size: " + arrayLength + ", requested index: " + arrayIndex);
 		}
-		return objectArray[arrayIndex];
-	}
-	
-	private static Method getGetterMethodFromObject(String rawCommand, Class<?> aClass){
-		  Method[] methods = aClass.getMethods();
-		  String getterCommand = initCommandGetterName(rawCommand, methods);
-		  for(Method method : methods){
-			  if (getterCommand.equals(method.getName()) && OutputUtils.isValidObjectGetter(method)){
-				  return method;
-			  }
-		  }
-		  throw new NotFoundHttpException("No method signature found for method: " + getterCommand);
-	}
-	
-	private static String initCommandGetterName(String rawCommand, Method[] methods) {
-		String getterMethodSignature = "get" + Character.toUpperCase(rawCommand.charAt(0)) + rawCommand.substring(1);
-		String isMethodSignature = "is" + Character.toUpperCase(rawCommand.charAt(0)) + rawCommand.substring(1);
-		for (Method method : methods){
-			if (method.getName().equals(getterMethodSignature)){
-				return getterMethodSignature;
-			}
-			if (method.getName().equals(isMethodSignature)){
-				return isMethodSignature;
-			}
-		}
-		throw new NotFoundHttpException("No method signature found for command: " + rawCommand);
+		return Array.get(arrayObject, arrayIndex);
 	}
 
 }
@@ -17,16 +17,19 @@ package org.cloudifysource.rest.controllers;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.cloudifysource.dsl.utils.IPUtils;
 import org.cloudifysource.rest.command.CommandManager;
-import org.cloudifysource.rest.out.OutputDispatcher;
+import org.cloudifysource.rest.out.AdminJsonWriter;
 import org.cloudifysource.rest.util.NotFoundHttpException;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.openspaces.admin.Admin;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -35,7 +38,6 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -48,7 +50,7 @@ import org.springframework.web.servlet.ModelAndView;
  * - Parses and walks through the uri by activating getter methods to "dig into"
  * the admin object hierarchy
  * 
- * - Results marshaled as a generic document serialized to a JSON object
+ * - Results are serialized as a generic document to a JSON object
  * 
  * 
  * Usage examples: http://localhost:8099/admin/ElasticServiceManagers/Managers
@@ -82,6 +84,9 @@ public class AdminAPIController {
 	private static final Logger logger = Logger
 			.getLogger(AdminAPIController.class.getName());
 
+	private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
 	/**
 	 * redirects to index view.
 	 * 
@@ -93,26 +98,8 @@ public class AdminAPIController {
 	}
 
 	/**
-	 * REST GET requests handler wrapper.
-	 * 
-	 * @param httpServletRequest
-	 *            The request
-	 * @return The response as a map
-	 * @throws Exception
-	 *             Indicates the request failed
-	 */
-	@PreAuthorize("isFullyAuthenticated() and hasAnyRole('ROLE_CLOUDADMINS')")
-	@RequestMapping(value = "/**", method = RequestMethod.GET)
-	public @ResponseBody
-	Map<String, Object> get(final HttpServletRequest httpServletRequest)
-			throws Exception {
-		return getImplementation(httpServletRequest);
-	}
-
-	/**
-	 * REST GET requests handler implementation Parses uri path activates
-	 * appropriate getters serialize results into a document object and pass for
-	 * JSON marshaling
+	 * REST GET requests handler. Parses the uri path, activates the appropriate getters and writes the result to
+	 * the response as a JSON object.
 	 * 
 	 * uri type processing ============ ============== http:/../getArr/ind/...
 	 * => (intermed.) resolve to arr[ind] and continue processing
@@ -123,18 +110,43 @@ public class AdminAPIController {
 	 * http:/../getList => (final) return list.size() http:/../getMap => (final)
 	 * return comma-separated list of map keys
 	 * 
-	 * 
+	 * @param httpServletRequest
+	 *            The request
+	 * @param response
+	 *            The response to write the JSON object to
+	 * @throws Exception
+	 *             Indicates the request failed
 	 */
-	private Map<String, Object> getImplementation(
-			final HttpServletRequest httpServletRequest) throws Exception {
+	@PreAuthorize("isFullyAuthenticated() and hasAnyRole('ROLE_CLOUDADMINS')")
+	@RequestMapping(value = "/**", method = RequestMethod.GET)
+	public void get(final HttpServletRequest httpServletRequest, final HttpServletResponse response)
+			throws Exception {
 		// admin acts as root
 		final CommandManager manager = new CommandManager(httpServletRequest,
 				getAdmin());
 		manager.runCommands();
 		final String hostAddress = getRemoteHostAddress(httpServletRequest);
 		final String hostContext = httpServletRequest.getContextPath();
-		return OutputDispatcher.outputResultObjectToMap(manager, hostAddress,
-				hostContext);
+
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(JSON_CONTENT_TYPE);
+		// the document is written to the response as it is serialized.
+		final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(response.getOutputStream(),
+				JsonEncoding.UTF8);
+		try {
+			new AdminJsonWriter(hostAddress, hostContext).write(manager, generator);
+		} catch (final Exception e) {
+			if (response.isCommitted()) {
+				// the status was already sent, the client gets a truncated document.
+				logger.log(Level.WARNING, "Failed writing the admin document of "
+						+ httpServletRequest.getRequestURI() + " after part of it was sent", e);
+			} else {
+				// nothing was sent yet, the unflushed part is dropped and the exception handlers write the error.
+				response.reset();
+			}
+			throw e;
+		}
+		generator.close();
 	}
 
 	private String getRemoteHostAddress(
@@ -20,6 +20,7 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -31,12 +32,16 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import net.jini.core.discovery.LookupLocator;
 
@@ -79,6 +84,7 @@ import org.cloudifysource.dsl.rest.response.InvokeServiceCommandResponse;
 import org.cloudifysource.dsl.rest.response.ServiceDescription;
 import org.cloudifysource.dsl.rest.response.ServiceDetails;
 import org.cloudifysource.dsl.rest.response.ServiceInstanceDetails;
+import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricHistoryResponse;
 import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsData;
 import org.cloudifysource.dsl.rest.response.ServiceInstanceMetricsResponse;
 import org.cloudifysource.dsl.rest.response.ServiceMetricsResponse;
@@ -102,7 +108,12 @@ import org.cloudifysource.rest.events.cache.EventsCache;
 import org.cloudifysource.rest.events.cache.EventsCacheKey;
 import org.cloudifysource.rest.events.cache.EventsCacheValue;
 import org.cloudifysource.rest.exceptions.ResourceNotFoundException;
+import org.cloudifysource.rest.monitoring.MetricSamples;
+import org.cloudifysource.rest.monitoring.MetricsHistoryKey;
+import org.cloudifysource.rest.monitoring.MetricsHistorySampler;
+import org.cloudifysource.rest.monitoring.MetricsHistoryStore;
 import org.cloudifysource.rest.repo.UploadRepo;
+import org.cloudifysource.rest.util.ApplicationDescriptionCache;
 import org.cloudifysource.rest.util.ApplicationDescriptionFactory;
 import org.cloudifysource.rest.util.IsolationUtils;
 import org.cloudifysource.rest.validators.InstallApplicationValidationContext;
@@ -118,6 +129,10 @@ import org.cloudifysource.rest.validators.UninstallServiceValidator;
 import org.cloudifysource.security.CloudifyAuthorizationDetails;
 import org.cloudifysource.security.CustomPermissionEvaluator;
 import org.cloudifysource.utilitydomain.data.ServiceInstanceAttemptData;
+import org.cloudifysource.utilitydomain.invocation.FanOutInvoker;
+import org.cloudifysource.utilitydomain.invocation.FanOutResult;
+import org.cloudifysource.utilitydomain.invocation.FanOutTask;
+import org.cloudifysource.utilitydomain.invocation.FanOutTaskResult;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ApplicationCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ServiceCloudifyAttribute;
@@ -192,6 +207,7 @@ public class DeploymentsController extends BaseRestController {
 	private static final int WAIT_FOR_MANAGED_TIMEOUT_SECONDS = 10;
 	private static final int PU_DISCOVERY_TIMEOUT_SEC = 8;
 	private static final int LOCAL_CLOUD_INSTANCE_MEMORY_MB = 512;
+	private static final long DEFAULT_METRICS_HISTORY_RANGE_MILLIS = TimeUnit.MINUTES.toMillis(30);
 
 	@Autowired
 	private RestConfiguration restConfig;
@@ -212,9 +228,12 @@ public class DeploymentsController extends BaseRestController {
 	private Admin admin;
 	private CustomPermissionEvaluator permissionEvaluator;
 	private final ExecutorService serviceUndeployExecutor = Executors.newFixedThreadPool(10);
+	private final FanOutInvoker invoker = new FanOutInvoker();
 	private EventsCache eventsCache;
 	private ControllerHelper controllerHelper;
 	private File extractedFodler;
+	private MetricsHistoryStore metricsHistoryStore;
+	private ScheduledFuture<?> metricsHistorySamplingTask;
 
 	/**
 	 * Initialization.
@@ -234,6 +253,59 @@ public class DeploymentsController extends BaseRestController {
 		this.extractedFodler = new File(restTempFolder, CloudifyConstants.EXTRACTED_FILES_FOLDER_NAME);
 		extractedFodler.mkdirs();
 		extractedFodler.deleteOnExit();
+		startMetricsHistorySampling();
+	}
+
+	/**
+	 * Stops the application descriptions cache and sampling USM monitors, and persists the metrics history if a
+	 * history file was configured.
+	 */
+	@PreDestroy
+	public void destroy() {
+		restConfig.stopApplicationDescriptionCache();
+		if (metricsHistorySamplingTask != null) {
+			metricsHistorySamplingTask.cancel(false);
+		}
+		final File historyFile = getMetricsHistoryFile();
+		if (historyFile != null && metricsHistoryStore != null) {
+			try {
+				metricsHistoryStore.persist(historyFile);
+			} catch (final IOException e) {
+				logger.log(Level.WARNING, "Failed to persist metrics history to " + historyFile, e);
+			}
+		}
+	}
+
+	private void startMetricsHistorySampling() {
+		this.metricsHistoryStore = restConfig.getMetricsHistoryStore();
+		final File historyFile = getMetricsHistoryFile();
+		if (historyFile != null && historyFile.exists()) {
+			try {
+				metricsHistoryStore.restore(historyFile);
+			} catch (final IOException e) {
+				logger.log(Level.WARNING, "Failed to restore metrics history from " + historyFile, e);
+			}
+		}
+		final int samplingIntervalSeconds = Integer.getInteger(
+				CloudifyConstants.SYSTEM_PROPERTY_REST_METRICS_HISTORY_SAMPLING_INTERVAL_SECONDS,
+				CloudifyConstants.DEFAULT_METRICS_HISTORY_SAMPLING_INTERVAL_SECONDS);
+		final int persistIntervalSeconds = Integer.getInteger(
+				CloudifyConstants.SYSTEM_PROPERTY_REST_METRICS_HISTORY_PERSIST_INTERVAL_SECONDS,
+				CloudifyConstants.DEFAULT_METRICS_HISTORY_PERSIST_INTERVAL_SECONDS);
+		if (samplingIntervalSeconds > 0) {
+			this.metricsHistorySamplingTask = restConfig.getScheduledExecutor().scheduleWithFixedDelay(
+					new MetricsHistorySampler(admin, metricsHistoryStore, historyFile,
+							TimeUnit.SECONDS.toMillis(persistIntervalSeconds)),
+					samplingIntervalSeconds, samplingIntervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	private File getMetricsHistoryFile() {
+		final String fileName = System.getProperty(CloudifyConstants.SYSTEM_PROPERTY_REST_METRICS_HISTORY_FILE);
+		if (StringUtils.isBlank(fileName)) {
+			return null;
+		}
+		return new File(fileName);
 	}
 
 	/**
@@ -905,15 +977,34 @@ public class DeploymentsController extends BaseRestController {
 	}
 
 	/**
-	 * @return List of {@link org.cloudifysource.dsl.rest.response.ApplicationDescription} objects.
+	 * Returns the descriptions of all deployed applications, assembled from the application descriptions cache.
+	 * The response carries an ETag; a request whose If-None-Match header holds the current ETag is answered with
+	 * 304 (Not Modified) and no body.
+	 * 
+	 * @param request
+	 *            The request, checked for an If-None-Match header.
+	 * @param response
+	 *            The response, set with the ETag header.
+	 * @return List of {@link org.cloudifysource.dsl.rest.response.ApplicationDescription} objects, or null if the
+	 *         client's copy is up to date.
 	 */
 	@RequestMapping(value = "/applications/description", method = RequestMethod.GET)
 	@PostFilter("hasPermission(filterObject, 'view')")
-	public List<ApplicationDescription> getApplicationDescriptions() {
-		final ApplicationDescriptionFactory appDescriptionFactory =
-				new ApplicationDescriptionFactory(restConfig.getAdmin());
-
-		return appDescriptionFactory.getApplicationDescriptions();
+	public List<ApplicationDescription> getApplicationDescriptions(
+			final HttpServletRequest request, final HttpServletResponse response) {
+		final ApplicationDescriptionCache descriptionCache = restConfig.getApplicationDescriptionCache();
+		final long version = descriptionCache.getVersion();
+		// the listing is filtered per user, so is its ETag.
+		final String viewer = ApplicationDescriptionCache.getViewer(
+				SecurityContextHolder.getContext().getAuthentication());
+		final List<ApplicationDescription> descriptions = descriptionCache.getApplicationDescriptions();
+		if (descriptionCache.getVersion() == version
+				&& ApplicationDescriptionCache.isNotModified(request.getHeader("If-None-Match"), version, viewer)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
+		}
+		response.setHeader("ETag", ApplicationDescriptionCache.toETag(version, viewer));
+		return descriptions;
 	}
 
 	private List<ProcessingUnit> createUninstallOrder(
@@ -2320,6 +2411,107 @@ public class DeploymentsController extends BaseRestController {
 		return simr;
 	}
 
+	/**
+	 * Retrieves the history of a single USM metric of a service instance, as sampled by the rest gateway.
+	 * Recent history is returned at full resolution, older history as downsampled averages.
+	 * 
+	 * @param appName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param instanceId
+	 *            The instance id.
+	 * @param metricName
+	 *            The USM metric name.
+	 * @param from
+	 *            Range start in milliseconds since epoch. Defaults to 30 minutes before the range end.
+	 * @param to
+	 *            Range end in milliseconds since epoch. Defaults to now.
+	 * @param percentiles
+	 *            Comma separated list of percentiles to calculate over the range.
+	 * @param includeSamples
+	 *            Whether to return the samples themselves, or only the calculated aggregates.
+	 * @return The metric samples in the range, with their average, rate per second and requested percentiles.
+	 * @throws ResourceNotFoundException
+	 *             Thrown in case the service instance does not exist, or no history was recorded for the metric.
+	 * @throws RestErrorException
+	 *             Thrown in case the range or percentiles are invalid.
+	 */
+	@RequestMapping(value = "{appName}/service/{serviceName}/instances/{instanceId}/metrics/{metricName:.+}/history",
+			method = RequestMethod.GET)
+	public ServiceInstanceMetricHistoryResponse getServiceInstanceMetricHistory(
+			@PathVariable final String appName,
+			@PathVariable final String serviceName,
+			@PathVariable final Integer instanceId,
+			@PathVariable final String metricName,
+			@RequestParam(required = false, defaultValue = "-1") final long from,
+			@RequestParam(required = false, defaultValue = "-1") final long to,
+			@RequestParam(required = false, defaultValue = "50,90,99") final String percentiles,
+			@RequestParam(required = false, defaultValue = "true") final boolean includeSamples)
+			throws ResourceNotFoundException, RestErrorException {
+
+		// make sure the instance exists.
+		controllerHelper.getServiceInstance(appName, serviceName, instanceId);
+
+		final long actualTo = to < 0 ? System.currentTimeMillis() : to;
+		final long actualFrom = from < 0 ? actualTo - DEFAULT_METRICS_HISTORY_RANGE_MILLIS : from;
+		if (actualFrom > actualTo) {
+			throw new RestErrorException(CloudifyMessageKeys.INVALID_METRICS_HISTORY_QUERY.getName(),
+					"range start " + actualFrom + " is after range end " + actualTo);
+		}
+
+		final String absolutePuName = ServiceUtils.getAbsolutePUName(appName, serviceName);
+		final MetricSamples samples = metricsHistoryStore.range(
+				new MetricsHistoryKey(absolutePuName, instanceId, metricName), actualFrom, actualTo);
+		if (samples == null) {
+			throw new ResourceNotFoundException("metrics history of " + metricName + " for instance " + instanceId
+					+ " of service " + absolutePuName);
+		}
+
+		final ServiceInstanceMetricHistoryResponse response = new ServiceInstanceMetricHistoryResponse();
+		response.setAppName(appName);
+		response.setServiceName(serviceName);
+		response.setInstanceId(instanceId);
+		response.setMetricName(metricName);
+		response.setFrom(actualFrom);
+		response.setTo(actualTo);
+		response.setResolutionMillis(samples.getResolutionMillis());
+		response.setAverage(toNullable(samples.average()));
+		response.setRatePerSecond(toNullable(samples.ratePerSecond()));
+
+		final Map<String, Double> percentileValues = new LinkedHashMap<String, Double>();
+		for (final String token : StringUtils.split(percentiles, ',')) {
+			final String percentile = token.trim();
+			if (percentile.isEmpty()) {
+				continue;
+			}
+			try {
+				percentileValues.put(percentile, toNullable(samples.percentile(Double.parseDouble(percentile))));
+			} catch (final IllegalArgumentException e) {
+				// NumberFormatException is an IllegalArgumentException as well.
+				throw new RestErrorException(CloudifyMessageKeys.INVALID_METRICS_HISTORY_QUERY.getName(),
+						"percentile " + percentile + " is not a number in the range [0, 100]");
+			}
+		}
+		response.setPercentiles(percentileValues);
+
+		if (includeSamples) {
+			final List<Long> timestamps = new ArrayList<Long>(samples.size());
+			final List<Double> values = new ArrayList<Double>(samples.size());
+			for (int i = 0; i < samples.size(); i++) {
+				timestamps.add(samples.getTimestamps()[i]);
+				values.add(samples.getValues()[i]);
+			}
+			response.setTimestamps(timestamps);
+			response.setValues(values);
+		}
+		return response;
+	}
+
+	private static Double toNullable(final double value) {
+		return Double.isNaN(value) ? null : value;
+	}
+
 	/**
 	 * 
 	 * @param appName
@@ -2451,6 +2643,9 @@ public class DeploymentsController extends BaseRestController {
 	 *            The service name.
 	 * @param request
 	 *            InvokeCustomCommandRequest the request containing the relevant parameters.
+	 * @param timeoutInMinutes
+	 *            The deadline for all instances to complete the invocation. Instances that did not complete in time
+	 *            are reported as timed out, without delaying the results of the others.
 	 * @return a Map containing the result of each invocation on a service instance.
 	 * @throws RestErrorException
 	 *             When the invocation failed.
@@ -2462,7 +2657,8 @@ public class DeploymentsController extends BaseRestController {
 	@PreAuthorize("isFullyAuthenticated()")
 	public InvokeServiceCommandResponse invoke(@PathVariable final String applicationName,
 			@PathVariable final String serviceName,
-			@RequestBody final InvokeCustomCommandRequest request)
+			@RequestBody final InvokeCustomCommandRequest request,
+			@RequestParam(required = false, defaultValue = "15") final Integer timeoutInMinutes)
 			throws RestErrorException, ResourceNotFoundException {
 		
 		InvokeServiceCommandResponse response = new InvokeServiceCommandResponse();
@@ -2501,41 +2697,42 @@ public class DeploymentsController extends BaseRestController {
 					serviceName);
 		}
 
-		// Why a map? TODO: Use an array here instead.
-		// map between service name and its future
-		final Map<String, Future<Object>> futures = new HashMap<String, Future<Object>>(
-				instances.length);
+		final Map<String, Object> invocationArgs = preProcessInvocationRequest(request.getCommandName(),
+				request.getParameters());
+		final List<FanOutTask<Object>> tasks = new ArrayList<FanOutTask<Object>>(instances.length);
 		for (final ProcessingUnitInstance instance : instances) {
 			// key includes instance ID and host name
 			final String serviceInstanceName = buildServiceInstanceName(instance);
-			try {
-				Map<String, Object> invocationArgs = preProcessInvocationRequest(request.getCommandName(), 
-						request.getParameters());
-				final Future<Object> future = ((DefaultProcessingUnitInstance) instance)
-						.invoke(CloudifyConstants.INVOCATION_PARAMETER_BEAN_NAME_USM, invocationArgs);
-				futures.put(serviceInstanceName, future);
-			} catch (final Exception e) {
-				// we log the error message and add it to the response but carry on to the following instances
-				String errorMessage = "Error occurred while invoking custom command '" + request.getCommandName() 
-						+ "' on service " + serviceName + ":" + instance.getInstanceId() + " on host " 
-						+ instance.getVirtualMachine().getMachine().getHostName() + ". Reported error: " 
-						+ e.getMessage();
-				logger.severe(errorMessage);
-				Map<String, String> processedResult = postProcessInvocationResult(serviceInstanceName, errorMessage);
-				response.setInvocationResult(serviceInstanceName, processedResult);
-			}
+			tasks.add(new FanOutTask<Object>() {
+				@Override
+				public String getName() {
+					return serviceInstanceName;
+				}
+
+				@Override
+				public Future<Object> start() {
+					return ((DefaultProcessingUnitInstance) instance)
+							.invoke(CloudifyConstants.INVOCATION_PARAMETER_BEAN_NAME_USM, invocationArgs);
+				}
+			});
 		}
 
-		for (final Map.Entry<String, Future<Object>> entry : futures.entrySet()) {
-			String serviceInstanceName = entry.getKey();
-			Object invocationResult;
-			
-			try {
-				invocationResult = entry.getValue().get();
-			} catch (final Exception e) {
+		final FanOutResult<Object> fanOutResult;
+		try {
+			fanOutResult = invoker.invoke(tasks, timeoutInMinutes, TimeUnit.MINUTES, null);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RestErrorException(CloudifyErrorMessages.GENERAL_SERVER_ERROR.getName(), e.getMessage());
+		}
+
+		for (final FanOutTaskResult<Object> result : fanOutResult.getResults()) {
+			final String serviceInstanceName = result.getName();
+			Object invocationResult = result.getResult();
+			if (result.getStatus() != FanOutTaskResult.Status.SUCCESS) {
 				// we log the error message and add it to the response but carry on to the following instances
-				String errorMessage = "Error occurred while invoking custom command on service "
-						+ serviceName + ":" + serviceInstanceName + ". Reported error: " + e.getMessage();
+				final String errorMessage = "Error occurred while invoking custom command '" 
+						+ request.getCommandName() + "' on service " + serviceName + ":" + serviceInstanceName 
+						+ ". Reported error: " + result.getException().getMessage();
 				logger.severe(errorMessage);
 				invocationResult = errorMessage;
 			}
@@ -2544,6 +2741,9 @@ public class DeploymentsController extends BaseRestController {
 			Map<String, String> processedResult = postProcessInvocationResult(serviceInstanceName, invocationResult);
 			response.setInvocationResult(serviceInstanceName, processedResult);
 		}
+		response.setSuccessCount(fanOutResult.getSuccessCount());
+		response.setFailureCount(fanOutResult.getFailureCount());
+		response.setTimeoutCount(fanOutResult.getTimeoutCount());
 
 		return response;
 	}
@@ -18,17 +18,20 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.FileUtils;
 import org.cloudifysource.domain.cloud.Cloud;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyErrorMessages;
+import org.cloudifysource.dsl.internal.CloudifyMessageKeys;
 import org.cloudifysource.dsl.internal.ProcessorTypes;
 import org.cloudifysource.dsl.rest.response.ControllerDetails;
 import org.cloudifysource.dsl.rest.response.GetMachineDumpFileResponse;
@@ -37,6 +40,7 @@ import org.cloudifysource.dsl.rest.response.GetPUDumpFileResponse;
 import org.cloudifysource.dsl.rest.response.ShutdownManagementResponse;
 import org.cloudifysource.rest.ResponseConstants;
 import org.cloudifysource.rest.RestConfiguration;
+import org.cloudifysource.rest.util.MachineDumpsCollector;
 import org.cloudifysource.rest.validators.DumpMachineValidationContext;
 import org.cloudifysource.rest.validators.DumpMachineValidator;
 import org.hyperic.sigar.Sigar;
@@ -392,6 +396,59 @@ public class ManagementController extends BaseRestController {
 		return response;
 	}
 	
+	/**
+	 * Streams the dumps of all machines as a single zip file, one entry per machine. Dumps are generated
+	 * concurrently and copied into the response as soon as each one is ready, so they are never held in memory.
+	 * Machines whose dump failed, or was skipped because the size limit was reached, are listed in an
+	 * {@value MachineDumpsCollector#ERRORS_ENTRY_NAME} entry.
+	 *
+	 * @param processors
+	 *            The list of processors to be used.
+	 * @param fileSizeLimit
+	 *            The limit on the total size of all dumps, must be positive.
+	 * @param concurrency
+	 *            The maximum number of dumps generated at the same time.
+	 * @param response
+	 *            The response the zip is written to.
+	 * @throws RestErrorException 
+	 *             If the processors, size limit or concurrency are invalid.
+	 * @throws IOException 
+	 *             If writing the response failed.
+	 */
+	@RequestMapping(value = "/dump/machines/zip", method = RequestMethod.GET)
+	@PreAuthorize("isFullyAuthenticated() and hasRole('ROLE_CLOUDADMINS')")
+	public void getMachinesDumpZip(
+			@RequestParam(defaultValue = ProcessorTypes.DEFAULT_PROCESSORS) 
+			final String processors,
+			@RequestParam(defaultValue = "" + CloudifyConstants.DEFAULT_DUMP_FILE_SIZE_LIMIT) 
+			final long fileSizeLimit,
+			@RequestParam(defaultValue = "" + CloudifyConstants.DEFAULT_DUMP_CONCURRENCY) 
+			final int concurrency,
+			final HttpServletResponse response) 
+					throws RestErrorException, IOException {
+
+		final String[] actualProcessors = ProcessorTypes.fromStringList(processors);
+		validateGetMachineDump(actualProcessors);
+		if (concurrency <= 0) {
+			throw new RestErrorException(CloudifyMessageKeys.INVALID_DUMP_CONCURRENCY.getName(), 
+					Integer.toString(concurrency));
+		}
+		if (fileSizeLimit <= 0) {
+			throw new RestErrorException(CloudifyMessageKeys.INVALID_DUMP_FILE_SIZE_LIMIT.getName(), 
+					Long.toString(fileSizeLimit));
+		}
+
+		final List<Machine> machines = Arrays.asList(this.admin.getMachines().getMachines());
+		log(Level.INFO, "[getMachinesDumpZip] - streaming the dumps of " + machines.size() + " machines");
+
+		response.setContentType(CloudifyConstants.MIME_TYPE_APPLICATION_ZIP);
+		response.setHeader("Content-Disposition", "attachment; filename=\"machines-dump.zip\"");
+		final MachineDumpsCollector collector = new MachineDumpsCollector(restConfig.getRestTempFolder(), 
+				actualProcessors, fileSizeLimit, concurrency);
+		final long totalSize = collector.writeZip(machines, response.getOutputStream());
+		log(Level.INFO, "[getMachinesDumpZip] - wrote " + totalSize + " bytes of machine dumps");
+	}
+	
 	private byte[] generateMachineDumpData(final long fileSizeLimit,
 			final Machine machine, final String[] processors)
 					throws RestErrorException {
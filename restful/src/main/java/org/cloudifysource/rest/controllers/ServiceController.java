@@ -32,6 +32,8 @@ import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -62,12 +64,14 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import net.jini.core.discovery.LookupLocator;
@@ -88,11 +92,13 @@ import org.cloudifysource.domain.cloud.Cloud;
 import org.cloudifysource.domain.cloud.compute.ComputeTemplate;
 import org.cloudifysource.dsl.internal.CloudifyConstants;
 import org.cloudifysource.dsl.internal.CloudifyErrorMessages;
+import org.cloudifysource.dsl.internal.CloudifyMessageKeys;
 import org.cloudifysource.dsl.internal.DSLApplicationCompilationResult;
 import org.cloudifysource.dsl.internal.DSLException;
 import org.cloudifysource.dsl.internal.DSLReader;
 import org.cloudifysource.dsl.internal.DSLServiceCompilationResult;
 import org.cloudifysource.dsl.internal.DSLUtils;
+import org.cloudifysource.dsl.internal.ParsedCloudCache;
 import org.cloudifysource.dsl.internal.ServiceReader;
 import org.cloudifysource.dsl.internal.packaging.FileAppender;
 import org.cloudifysource.dsl.internal.packaging.Packager;
@@ -106,12 +112,17 @@ import org.cloudifysource.dsl.utils.ServiceUtils;
 import org.cloudifysource.esc.driver.provisioning.CloudifyMachineProvisioningConfig;
 import org.cloudifysource.rest.ResponseConstants;
 import org.cloudifysource.rest.RestConfiguration;
+import org.cloudifysource.rest.util.AggregatedLogTailer;
+import org.cloudifysource.rest.util.ApplicationDescriptionCache;
 import org.cloudifysource.rest.util.ApplicationDescriptionFactory;
 import org.cloudifysource.rest.util.ApplicationInstallerRunnable;
 import org.cloudifysource.rest.util.IsolationUtils;
 import org.cloudifysource.rest.util.LifecycleEventsContainer;
+import org.cloudifysource.rest.util.MachineDumpsCollector;
 import org.cloudifysource.rest.util.RestPollingRunnable;
 import org.cloudifysource.rest.util.RestUtils;
+import org.cloudifysource.rest.validators.DumpMachineValidationContext;
+import org.cloudifysource.rest.validators.DumpMachineValidator;
 import org.cloudifysource.restDoclet.annotations.InternalMethod;
 import org.cloudifysource.restDoclet.annotations.JsonRequestExample;
 import org.cloudifysource.restDoclet.annotations.JsonResponseExample;
@@ -124,6 +135,11 @@ import org.cloudifysource.security.CustomPermissionEvaluator;
 import org.cloudifysource.utilitydomain.data.CloudConfigurationHolder;
 import org.cloudifysource.utilitydomain.data.ServiceInstanceAttemptData;
 import org.cloudifysource.utilitydomain.data.reader.ComputeTemplatesReader;
+import org.cloudifysource.utilitydomain.invocation.FanOutInvoker;
+import org.cloudifysource.utilitydomain.invocation.FanOutListener;
+import org.cloudifysource.utilitydomain.invocation.FanOutResult;
+import org.cloudifysource.utilitydomain.invocation.FanOutTask;
+import org.cloudifysource.utilitydomain.invocation.FanOutTaskResult;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ApplicationCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ServiceCloudifyAttribute;
@@ -208,6 +224,12 @@ public class ServiceController implements ServiceDetailsProvider {
 
 	private static final int MANAGEMENT_PUI_LOOKUP_TIMEOUT = 10;
 	private static final int MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED = 1000;
+	private static final String TAIL_LIMIT_MESSAGE = "tail is limited to no more than "
+			+ MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED + " lines.";
+	private static final long TAIL_QUERY_TIMEOUT_SEC = 30;
+	private static final long TAIL_FOLLOW_POLLING_INTERVAL_SEC = 1;
+	private static final long DEFAULT_TAIL_FOLLOW_TIMEOUT_SECONDS = 10 * 60;
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 	private static final int DEFAULT_TIME_EXTENTION_POLLING_TASK = 5;
 	private static final int TIMEOUT_WAITING_FOR_GSM_SEC = 10;
 	private static final int THREAD_POOL_SIZE = 20;
@@ -215,6 +237,7 @@ public class ServiceController implements ServiceDetailsProvider {
 	private static final int LIFECYCLE_EVENT_POLLING_INTERVAL_SEC = 4;
 	private static final long LIFECYCLE_EVENT_CLEANUP_INTERVAL_SEC = 60;
 	private static final long MINIMAL_POLLING_TASK_EXPIRATION = 5 * 60 * 1000;
+	private static final long MAX_LIFECYCLE_EVENTS_WAIT_MILLIS = 30 * 1000;
 	private static final String LOCALCLOUD_ZONE = "localcloud";
 	private static final String SHARED_ISOLATION_ID = "public";
 	private static final long TEN_K = 10 * FileUtils.ONE_KB;
@@ -225,6 +248,7 @@ public class ServiceController implements ServiceDetailsProvider {
 	private static final String DEFAULT_DUMP_PROCESSORS = "summary, network, thread, log";
 	protected static final int MANAGEMENT_AGENT_SHUTDOWN_INTERNAL_SECONDS = 5;
 
+	private final FanOutInvoker invoker = new FanOutInvoker();
 	private final Map<UUID, RestPollingRunnable> lifecyclePollingThreadContainer =
 			new ConcurrentHashMap<UUID, RestPollingRunnable>();
 	private final ExecutorService serviceUndeployExecutor = Executors
@@ -236,6 +260,9 @@ public class ServiceController implements ServiceDetailsProvider {
 
 	@Autowired
 	private RestConfiguration restConfig;
+
+	@Autowired
+	private DumpMachineValidator[] dumpValidators = new DumpMachineValidator[0];
 	
 	private CustomPermissionEvaluator permissionEvaluator;
 	private Admin admin;
@@ -418,6 +445,51 @@ public class ServiceController implements ServiceDetailsProvider {
 
 	}
 
+	/**
+	 * Streams the dumps of all the machines as a single zip file, one entry per machine. Dumps are generated
+	 * concurrently and copied into the response as soon as each one is ready.
+	 *
+	 * @param processors
+	 *            The list of processors to be used.
+	 * @param fileSizeLimit
+	 *            The limit on the total size of all dumps, must be positive.
+	 * @param concurrency
+	 *            The maximum number of dumps generated at the same time.
+	 * @param response
+	 *            The response the zip is written to.
+	 * @throws IOException .
+	 * @throws RestErrorException
+	 *             invalid processors, size limit or concurrency.
+	 */
+	@PossibleResponseStatuses(responseStatuses = {
+			@PossibleResponseStatus(code = HTTP_OK, description = "success"),
+			@PossibleResponseStatus(code = HTTP_INTERNAL_SERVER_ERROR, description = "IOException") })
+	@RequestMapping(value = "/dump/machines/zip", method = RequestMethod.GET)
+	@PreAuthorize("isFullyAuthenticated() and hasRole('ROLE_CLOUDADMINS')")
+	public void getMachinesDumpZip(
+			@RequestParam(defaultValue = DEFAULT_DUMP_PROCESSORS) final String processors,
+			@RequestParam(defaultValue = "" + DEFAULT_DUMP_FILE_SIZE_LIMIT) final long fileSizeLimit,
+			@RequestParam(defaultValue = "" + CloudifyConstants.DEFAULT_DUMP_CONCURRENCY) final int concurrency,
+			final HttpServletResponse response)
+			throws IOException, RestErrorException {
+		final String[] actualProcessors = getProcessorsFromRequest(processors);
+		validateProcessors(actualProcessors);
+		if (concurrency <= 0) {
+			throw new RestErrorException(CloudifyMessageKeys.INVALID_DUMP_CONCURRENCY.getName(),
+					Integer.toString(concurrency));
+		}
+		if (fileSizeLimit <= 0) {
+			throw new RestErrorException(CloudifyMessageKeys.INVALID_DUMP_FILE_SIZE_LIMIT.getName(),
+					Long.toString(fileSizeLimit));
+		}
+
+		response.setContentType(CloudifyConstants.MIME_TYPE_APPLICATION_ZIP);
+		response.setHeader("Content-Disposition", "attachment; filename=\"machines-dump.zip\"");
+		final MachineDumpsCollector collector = new MachineDumpsCollector(restTemporaryFolder,
+				actualProcessors, fileSizeLimit, concurrency);
+		collector.writeZip(Arrays.asList(this.admin.getMachines().getMachines()), response.getOutputStream());
+	}
+
 	/**
 	 * Get the dump of all the services.
 	 *
@@ -467,6 +539,14 @@ public class ServiceController implements ServiceDetailsProvider {
 
 	}
 
+	private void validateProcessors(final String[] processors) throws RestErrorException {
+		final DumpMachineValidationContext validationContext = new DumpMachineValidationContext();
+		validationContext.setProcessors(processors);
+		for (final DumpMachineValidator validator : dumpValidators) {
+			validator.validate(validationContext);
+		}
+	}
+
 	private String[] getProcessorsFromRequest(final String processors) {
 		final String[] parts = processors.split(",");
 
@@ -553,6 +633,10 @@ public class ServiceController implements ServiceDetailsProvider {
 		try {
 			final File cloudConfigurationFile = new File(cloudConfigurationFilePath);
 			cloudConfigurationDir = cloudConfigurationFile.getParentFile();
+			// use the cloud parsed by the bootstrapping process, if the configuration did not change since.
+			ParsedCloudCache.add(cloudConfigurationDir, cloudConfigurationFile, null,
+					cloudConfigurationHolder.getCloudConfigurationDigest(),
+					cloudConfigurationHolder.getSerializedCloud());
 			cloudConfiguration = ServiceReader.readCloud(cloudConfigurationFile);
 		} catch (final DSLException e) {
 			throw new IllegalArgumentException(
@@ -598,6 +682,21 @@ public class ServiceController implements ServiceDetailsProvider {
 				}
 			});
 
+	// log tail queries are short and I/O bound, one per service instance.
+	private final ExecutorService logTailExecutor = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r,
+							"LogTailExecutor-"
+									+ threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
 	// Set up a small thread pool with daemon threads.
 	private final ExecutorService executorService = Executors
 			.newFixedThreadPool(THREAD_POOL_SIZE, new ThreadFactory() {
@@ -726,9 +825,15 @@ public class ServiceController implements ServiceDetailsProvider {
 	 */
 
 	/**
-	 * Creates and returns a list containing all of the deployed application details.
+	 * Creates and returns a list containing all of the deployed application details. The response carries an ETag; a
+	 * request whose If-None-Match header holds the current ETag is answered with 304 (Not Modified) and no body.
 	 *
-	 * @return a list of all the deployed applications in the service grid.
+	 * @param request
+	 *            The request, checked for an If-None-Match header.
+	 * @param response
+	 *            The response, set with the ETag header.
+	 * @return a list of all the deployed applications in the service grid, or null if the client's copy is up to
+	 *         date.
 	 * @throws RestErrorException .
 	 */
 	@JsonResponseExample(status = "success", responseBody = "[\"petclinic\", \"travel\"]",
@@ -738,23 +843,25 @@ public class ServiceController implements ServiceDetailsProvider {
 	@PreAuthorize("isFullyAuthenticated()")
 	@PostFilter("hasPermission(filterObject, 'view')")
 	@ResponseBody
-	public Map<String, Object> getApplicationDescriptionsList() throws RestErrorException {
+	public Map<String, Object> getApplicationDescriptionsList(final HttpServletRequest request,
+			final HttpServletResponse response) throws RestErrorException {
 
 		if (logger.isLoggable(Level.FINER)) {
 			logger.finer("received request to list application descriptions");
 		}
 
-		final Applications apps = admin.getApplications();
-		final List<ApplicationDescription> appDescriptions = new ArrayList<ApplicationDescription>();
-		final ApplicationDescriptionFactory applicationDescriptionFactory = new ApplicationDescriptionFactory(admin);
-		for (final Application app : apps) {
-			if (!app.getName().equals(CloudifyConstants.MANAGEMENT_APPLICATION_NAME)) {
-				final ApplicationDescription applicationDescription = applicationDescriptionFactory
-						.getApplicationDescription(app);
-				appDescriptions.add(applicationDescription);
-			}
+		final ApplicationDescriptionCache descriptionCache = restConfig.getApplicationDescriptionCache();
+		final long version = descriptionCache.getVersion();
+		// the listing is filtered per user, so is its ETag.
+		final String viewer = ApplicationDescriptionCache.getViewer(
+				SecurityContextHolder.getContext().getAuthentication());
+		final List<ApplicationDescription> appDescriptions = descriptionCache.getApplicationDescriptions();
+		if (descriptionCache.getVersion() == version
+				&& ApplicationDescriptionCache.isNotModified(request.getHeader("If-None-Match"), version, viewer)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
 		}
-
+		response.setHeader("ETag", ApplicationDescriptionCache.toETag(version, viewer));
 		return successStatus(appDescriptions);
 	}
 
@@ -949,6 +1056,10 @@ public class ServiceController implements ServiceDetailsProvider {
 	 *            deprecated.
 	 * @param params
 	 *            The command parameters.
+	 * @param timeoutInMinutes
+	 *            The deadline for all instances to complete the invocation. If not set, or not positive, the deadline
+	 *            set by the {@link CloudifyConstants#SYSTEM_PROPERTY_REST_INVOCATION_TIMEOUT_MINUTES} system property is
+	 *            used.
 	 * @return a Map containing the result of each invocation on a service instance.
 	 * @throws RestErrorException
 	 *             When lookup service not found or no processing unit instance is found for the requested service.
@@ -972,7 +1083,8 @@ public class ServiceController implements ServiceDetailsProvider {
 	public Map<String, Object> invoke(@PathVariable final String applicationName,
 			@PathVariable final String serviceName,
 			@PathVariable final String beanName,
-			@RequestBody final Map<String, Object> params)
+			@RequestBody final Map<String, Object> params,
+			@RequestParam(required = false) final Integer timeoutInMinutes)
 			throws RestErrorException {
 		final String absolutePuName = ServiceUtils.getAbsolutePUName(
 				applicationName, serviceName);
@@ -982,12 +1094,155 @@ public class ServiceController implements ServiceDetailsProvider {
 					+ applicationName);
 		}
 
+		final ProcessingUnitInstance[] instances = getInvocationTargets(absolutePuName, serviceName);
+		if (instances == null) {
+			return unavailableServiceError(absolutePuName);
+		}
+
+		// result, mapping service instances to results
+		final Map<String, Object> invocationResult = new HashMap<String, Object>();
+		final int deadlineMinutes = getInvocationTimeoutMinutes(timeoutInMinutes);
+		final FanOutResult<Object> fanOutResult;
+		try {
+			fanOutResult = invoker.invoke(createInvocationTasks(instances, beanName, params),
+					deadlineMinutes, TimeUnit.MINUTES, null);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RestErrorException(CloudifyErrorMessages.GENERAL_SERVER_ERROR.getName(), e.getMessage());
+		}
+		logInvocationTimeouts(absolutePuName, fanOutResult, deadlineMinutes);
+
+		for (final FanOutTaskResult<Object> result : fanOutResult.getResults()) {
+			invocationResult.put(result.getName(), processFanOutResult(serviceName, result));
+		}
+
+		return successStatus(invocationResult);
+	}
+
+	/**
+	 * Invokes a custom command on all of the specified service instances, and streams each instance result to the
+	 * client as soon as it is available. The response body consists of one JSON object per line: one line per
+	 * instance, holding the instance name, invocation status (SUCCESS, FAILURE or TIMEOUT) and result, followed by a
+	 * summary line with the success, failure and timeout counts.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param beanName
+	 *            deprecated.
+	 * @param params
+	 *            The command parameters.
+	 * @param timeoutInMinutes
+	 *            The deadline for all instances to complete the invocation. If not set, or not positive, the deadline
+	 *            set by the {@link CloudifyConstants#SYSTEM_PROPERTY_REST_INVOCATION_TIMEOUT_MINUTES} system property is
+	 *            used.
+	 * @param response
+	 *            The response the results are streamed to.
+	 * @throws RestErrorException
+	 *             When lookup service not found or no processing unit instance is found for the requested service.
+	 * @throws IOException
+	 *             When failed writing to the response.
+	 */
+	@RequestMapping(value = "applications/{applicationName}/services/{serviceName}/beans/{beanName}/invoke/stream",
+			method = RequestMethod.POST)
+	@PreAuthorize("isFullyAuthenticated()")
+	public void invokeAndStreamResults(@PathVariable final String applicationName,
+			@PathVariable final String serviceName,
+			@PathVariable final String beanName,
+			@RequestBody final Map<String, Object> params,
+			@RequestParam(required = false) final Integer timeoutInMinutes,
+			final HttpServletResponse response)
+			throws RestErrorException, IOException {
+		final String absolutePuName = ServiceUtils.getAbsolutePUName(
+				applicationName, serviceName);
+		final ProcessingUnitInstance[] instances = getInvocationTargets(absolutePuName, serviceName);
+		if (instances == null) {
+			throw new RestErrorException(FAILED_TO_LOCATE_SERVICE, absolutePuName);
+		}
+
+		response.setContentType(CloudifyConstants.MIME_TYPE_APPLICATION_JSON);
+		final ServletOutputStream outputStream = response.getOutputStream();
+		final ObjectMapper mapper = new ObjectMapper();
+		// the first failure to write to the client, after which no more results are written.
+		final AtomicReference<IOException> streamFailure = new AtomicReference<IOException>();
+		final FanOutListener<Object> listener = new FanOutListener<Object>() {
+			@Override
+			public void onResult(final FanOutTaskResult<Object> result) {
+				if (streamFailure.get() != null) {
+					return;
+				}
+				final Map<String, Object> line = new HashMap<String, Object>();
+				line.put(CloudifyConstants.INVOCATION_RESPONSE_INSTANCE_NAME, result.getName());
+				line.put("status", result.getStatus().toString());
+				line.put(CloudifyConstants.INVOCATION_RESPONSE_RESULT, processFanOutResult(serviceName, result));
+				try {
+					writeJsonLine(mapper, outputStream, line);
+				} catch (final IOException e) {
+					logger.log(Level.WARNING, "Failed to stream the invocation result of " + result.getName()
+							+ " of service " + absolutePuName + ", results will no longer be streamed: "
+							+ e.getMessage(), e);
+					streamFailure.set(e);
+				}
+			}
+		};
+
+		final int deadlineMinutes = getInvocationTimeoutMinutes(timeoutInMinutes);
+		final FanOutResult<Object> fanOutResult;
+		try {
+			fanOutResult = invoker.invoke(createInvocationTasks(instances, beanName, params),
+					deadlineMinutes, TimeUnit.MINUTES, listener);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RestErrorException(CloudifyErrorMessages.GENERAL_SERVER_ERROR.getName(), e.getMessage());
+		}
+		logInvocationTimeouts(absolutePuName, fanOutResult, deadlineMinutes);
+		if (streamFailure.get() != null) {
+			throw streamFailure.get();
+		}
+
+		final Map<String, Object> summary = new HashMap<String, Object>();
+		summary.put("successCount", fanOutResult.getSuccessCount());
+		summary.put("failureCount", fanOutResult.getFailureCount());
+		summary.put("timeoutCount", fanOutResult.getTimeoutCount());
+		writeJsonLine(mapper, outputStream, summary);
+	}
+
+	private static int getInvocationTimeoutMinutes(final Integer timeoutInMinutes) {
+		if (timeoutInMinutes != null && timeoutInMinutes > 0) {
+			return timeoutInMinutes;
+		}
+		return Integer.getInteger(CloudifyConstants.SYSTEM_PROPERTY_REST_INVOCATION_TIMEOUT_MINUTES,
+				CloudifyConstants.DEFAULT_INVOCATION_TIMEOUT_MINUTES);
+	}
+
+	private static void logInvocationTimeouts(final String absolutePuName, final FanOutResult<Object> fanOutResult,
+			final int deadlineMinutes) {
+		if (fanOutResult.getTimeoutCount() > 0) {
+			logger.warning(fanOutResult.getTimeoutCount() + " instance(s) of service " + absolutePuName
+					+ " did not complete the invocation within the deadline of " + deadlineMinutes + " minutes");
+		}
+	}
+
+	private static void writeJsonLine(final ObjectMapper mapper, final ServletOutputStream outputStream,
+			final Map<String, Object> line) throws IOException {
+		outputStream.write(mapper.writeValueAsString(line).getBytes("UTF-8"));
+		outputStream.write('\n');
+		outputStream.flush();
+	}
+
+	/**
+	 * Looks up the instances of a service for invocation, verifying the current user may invoke them.
+	 * @return the instances, or null if the service was not found.
+	 */
+	private ProcessingUnitInstance[] getInvocationTargets(final String absolutePuName, final String serviceName)
+			throws RestErrorException {
 		// Get the PU
 		final ProcessingUnit pu = admin.getProcessingUnits().waitFor(
 				absolutePuName, PU_DISCOVERY_TIMEOUT_SEC, TimeUnit.SECONDS);
 		if (pu == null) {
 			logger.severe("Could not find service " + absolutePuName);
-			return unavailableServiceError(absolutePuName);
+			return null;
 		}
 
 		if (permissionEvaluator != null) {
@@ -998,55 +1253,49 @@ public class ServiceController implements ServiceDetailsProvider {
 			permissionEvaluator.verifyPermission(authDetails, puAuthGroups, "deploy");
 		}
 
-		// result, mapping service instances to results
-		final Map<String, Object> invocationResult = new HashMap<String, Object>();
 		final ProcessingUnitInstance[] instances = pu.getInstances();
-
 		if (instances.length == 0) {
 			throw new RestErrorException(
 					ResponseConstants.NO_PROCESSING_UNIT_INSTANCES_FOUND_FOR_INVOCATION,
 					serviceName);
 		}
+		return instances;
+	}
 
-		// Why a map? TODO: Use an array here instead.
-		// map between service name and its future
-		final Map<String, Future<Object>> futures = new HashMap<String, Future<Object>>(
-				instances.length);
+	private List<FanOutTask<Object>> createInvocationTasks(final ProcessingUnitInstance[] instances,
+			final String beanName, final Map<String, Object> params) {
+		final List<FanOutTask<Object>> tasks = new ArrayList<FanOutTask<Object>>(instances.length);
 		for (final ProcessingUnitInstance instance : instances) {
 			// key includes instance ID and host name
 			final String serviceInstanceName = buildServiceInstanceName(instance);
-			try {
-				final Future<Object> future = ((DefaultProcessingUnitInstance) instance)
-						.invoke(beanName, params);
-				futures.put(serviceInstanceName, future);
-			} catch (final Exception e) {
-				logger.severe("Error invoking service "
-						+ serviceName
-						+ ":"
-						+ instance.getInstanceId()
-						+ " on host "
-						+ instance.getVirtualMachine().getMachine().getHostName());
-				invocationResult.put(serviceInstanceName,
-						"pu_instance_invocation_failure");
-			}
-		}
-
-		for (final Map.Entry<String, Future<Object>> entry : futures.entrySet()) {
-			try {
-				Object result = entry.getValue().get();
-				// use only tostring of collection values, to avoid
-				// serialization problems
-				result = postProcessInvocationResult(result, entry.getKey());
-
-				invocationResult.put(entry.getKey(), result);
+			tasks.add(new FanOutTask<Object>() {
+				@Override
+				public String getName() {
+					return serviceInstanceName;
+				}
 
-			} catch (final Exception e) {
-				invocationResult.put(entry.getKey(),
-						"Invocation failure: " + e.getMessage());
-			}
+				@Override
+				public Future<Object> start() {
+					return ((DefaultProcessingUnitInstance) instance).invoke(beanName, params);
+				}
+			});
 		}
+		return tasks;
+	}
 
-		return successStatus(invocationResult);
+	private Object processFanOutResult(final String serviceName, final FanOutTaskResult<Object> result) {
+		switch (result.getStatus()) {
+		case SUCCESS:
+			// use only tostring of collection values, to avoid
+			// serialization problems
+			return postProcessInvocationResult(result.getResult(), result.getName());
+		case TIMEOUT:
+			return "Invocation failure: " + result.getName() + " did not complete before the deadline";
+		default:
+			logger.severe("Error invoking service " + serviceName + ":" + result.getName() + ". Reported error: "
+					+ result.getException().getMessage());
+			return "Invocation failure: " + result.getException().getMessage();
+		}
 	}
 
 	private Object postProcessInvocationResult(final Object result,
@@ -2077,6 +2326,9 @@ public class ServiceController implements ServiceDetailsProvider {
 	 *            the unique task ID.
 	 * @param cursor
 	 *            event entry cursor
+	 * @param waitMillis
+	 *            how long to wait for new events before responding (long polling), 0 to respond immediately. Capped
+	 *            at 30 seconds.
 	 * @return a map containing the events and the task state.
 	 * @throws RestErrorException
 	 *             When polling task has expired or if the task ended unexpectedly.
@@ -2095,7 +2347,9 @@ public class ServiceController implements ServiceDetailsProvider {
 	@ResponseBody
 	public Object getLifecycleEvents(
 			@PathVariable final String lifecycleEventContainerID,
-			@PathVariable final int cursor) throws RestErrorException {
+			@PathVariable final int cursor,
+			@RequestParam(value = "waitMillis", defaultValue = "0") final long waitMillis)
+			throws RestErrorException {
 		final Map<String, Object> resultsMap = new HashMap<String, Object>();
 
 		if (!this.lifecyclePollingThreadContainer.containsKey(UUID
@@ -2110,6 +2364,13 @@ public class ServiceController implements ServiceDetailsProvider {
 
 		final LifecycleEventsContainer container = restPollingRunnable
 				.getLifecycleEventsContainer();
+		if (waitMillis > 0 && !restPollingRunnable.isDone()) {
+			try {
+				container.waitForLifecycleEvents(cursor, Math.min(waitMillis, MAX_LIFECYCLE_EVENTS_WAIT_MILLIS));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 		final boolean done = restPollingRunnable.isDone();
 		if (!done) {
 			extendThreadTimeout(restPollingRunnable,
@@ -3708,7 +3969,6 @@ public class ServiceController implements ServiceDetailsProvider {
 			@RequestParam(value = "numLines", required = true) final int numLines)
 			throws RestErrorException {
 
-		final StringBuilder stringBuilder = new StringBuilder();
 		final ProcessingUnit processingUnit = getProcessingUnit(
 				applicationName, serviceName);
 		if (processingUnit == null) {
@@ -3718,39 +3978,112 @@ public class ServiceController implements ServiceDetailsProvider {
 			return unavailableServiceError(absolutePuName);
 		}
 
-		for (final ProcessingUnitInstance processingUnitInstance : processingUnit) {
-			stringBuilder.append("service instance id #").append(processingUnitInstance.getInstanceId())
-					.append(System.getProperty("line.separator"));
-			final String instanceLogTail = getLogTailFromContainer(
-					processingUnitInstance.getGridServiceContainer(), numLines);
-			stringBuilder.append(instanceLogTail);
+		final boolean tailThresholdBreached = numLines > MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED;
+		final Map<Integer, List<LogEntry>> logEntriesByInstance =
+				createLogTailer(processingUnit).tail(getNumberOfLinesToTail(numLines));
+		final StringBuilder stringBuilder = new StringBuilder();
+		for (final Map.Entry<Integer, List<LogEntry>> entry : logEntriesByInstance.entrySet()) {
+			stringBuilder.append("service instance id #").append(entry.getKey())
+					.append(LINE_SEPARATOR);
+			stringBuilder.append(formatLogTail(entry.getValue(), tailThresholdBreached));
 		}
 
 		return successStatus(stringBuilder.toString());
 	}
 
+	/**
+	 * Streams the log tail of all of the specified service's instances as plain text, one line per log entry. The
+	 * instances are queried concurrently and their entries are merged by timestamp, each line prefixed by the id of
+	 * the instance it came from. In follow mode, new entries keep being streamed until the follow timeout expires or
+	 * the client disconnects.
+	 *
+	 * @param applicationName
+	 *            The application name.
+	 * @param serviceName
+	 *            The service name.
+	 * @param numLines
+	 *            The number of lines to tail from each instance.
+	 * @param follow
+	 *            true to keep streaming new log entries.
+	 * @param followTimeoutSeconds
+	 *            how long to follow the logs, in seconds.
+	 * @param response
+	 *            the response to stream the lines into.
+	 * @throws IOException
+	 *             if writing the response failed.
+	 * @throws RestErrorException
+	 *             if the service was not found.
+	 */
+	@PossibleResponseStatuses(responseStatuses = {
+			@PossibleResponseStatus(code = HTTP_OK, description = ""),
+			@PossibleResponseStatus(code = HTTP_INTERNAL_SERVER_ERROR, description = "failed_to_locate_service") })
+	@RequestMapping(value = "applications/{applicationName}/services/{serviceName}"
+			+ "/tail/stream", method = RequestMethod.GET)
+	public void streamLogTailByServiceName(
+			@PathVariable final String applicationName,
+			@PathVariable final String serviceName,
+			@RequestParam(value = "numLines", required = true) final int numLines,
+			@RequestParam(value = "follow", defaultValue = "false") final boolean follow,
+			@RequestParam(value = "followTimeoutSeconds",
+					defaultValue = "" + DEFAULT_TAIL_FOLLOW_TIMEOUT_SECONDS) final long followTimeoutSeconds,
+			final HttpServletResponse response)
+			throws IOException, RestErrorException {
+
+		final ProcessingUnit processingUnit = getProcessingUnit(
+				applicationName, serviceName);
+		if (processingUnit == null) {
+			final String absolutePuName = ServiceUtils.getAbsolutePUName(
+					applicationName, serviceName);
+			logger.severe("Could not find service " + absolutePuName);
+			throw new RestErrorException(FAILED_TO_LOCATE_SERVICE, ServiceUtils
+					.getFullServiceName(absolutePuName).getServiceName());
+		}
+
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("UTF-8");
+		final Writer writer = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+		final long followMillis = follow ? TimeUnit.SECONDS.toMillis(followTimeoutSeconds) : 0;
+		try {
+			createLogTailer(processingUnit).stream(writer, getNumberOfLinesToTail(numLines), followMillis,
+					TimeUnit.SECONDS.toMillis(TAIL_FOLLOW_POLLING_INTERVAL_SEC));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private AggregatedLogTailer createLogTailer(final ProcessingUnit processingUnit) {
+		final Map<Integer, GridServiceContainer> containers = new LinkedHashMap<Integer, GridServiceContainer>();
+		for (final ProcessingUnitInstance processingUnitInstance : processingUnit) {
+			containers.put(processingUnitInstance.getInstanceId(), processingUnitInstance.getGridServiceContainer());
+		}
+		return new AggregatedLogTailer(containers, logTailExecutor,
+				TimeUnit.SECONDS.toMillis(TAIL_QUERY_TIMEOUT_SEC));
+	}
+
+	private int getNumberOfLinesToTail(final int numLines) {
+		if (numLines > MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED) {
+			logger.log(Level.INFO, TAIL_LIMIT_MESSAGE);
+			return MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED;
+		}
+		return numLines;
+	}
+
 	private String getLogTailFromContainer(
 			final GridServiceContainer container, final int numLines) {
-		int numberOfLinesToTail;
-		final String msg = "tail is limited to no more than "
-				+ MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED + " lines.";
-		final boolean tailThresholdBreached = numLines > MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED;
-		if (tailThresholdBreached) {
-			logger.log(Level.INFO, msg);
-			numberOfLinesToTail = MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED;
-		} else {
-			numberOfLinesToTail = numLines;
-		}
 		final LastNLogEntryMatcher matcher = LogEntryMatchers
-				.lastN(numberOfLinesToTail);
+				.lastN(getNumberOfLinesToTail(numLines));
 		final LogEntries logEntries = container.logEntries(matcher);
+		return formatLogTail(logEntries, numLines > MAX_NUMBER_OF_LINES_TO_TAIL_ALLOWED);
+	}
+
+	private String formatLogTail(final Iterable<LogEntry> logEntries, final boolean tailThresholdBreached) {
 		final StringBuilder sb = new StringBuilder();
 		for (final LogEntry logEntry : logEntries) {
 			sb.append(logEntry.getText());
-			sb.append(System.getProperty("line.separator"));
+			sb.append(LINE_SEPARATOR);
 		}
 		if (tailThresholdBreached) {
-			sb.append(msg);
+			sb.append(TAIL_LIMIT_MESSAGE);
 		}
 		return sb.toString();
 	}
@@ -25,11 +25,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.collections.ListUtils;
 import org.apache.commons.io.FileUtils;
@@ -67,6 +76,11 @@ import org.cloudifysource.restclient.exceptions.RestClientException;
 import org.cloudifysource.restclient.messages.MessagesUtils;
 import org.cloudifysource.security.CustomPermissionEvaluator;
 import org.cloudifysource.utilitydomain.data.reader.ComputeTemplatesReader;
+import org.cloudifysource.utilitydomain.invocation.FanOutInvoker;
+import org.cloudifysource.utilitydomain.invocation.FanOutListener;
+import org.cloudifysource.utilitydomain.invocation.FanOutResult;
+import org.cloudifysource.utilitydomain.invocation.FanOutTask;
+import org.cloudifysource.utilitydomain.invocation.FanOutTaskResult;
 import org.openspaces.admin.Admin;
 import org.openspaces.admin.pu.ProcessingUnit;
 import org.openspaces.admin.pu.ProcessingUnitInstance;
@@ -90,6 +104,8 @@ import com.j_spaces.kernel.PlatformVersion;
 @RequestMapping(value = "/{version}/templates")
 public class TemplatesController extends BaseRestController {
 	private static final Logger logger = Logger.getLogger(TemplatesController.class.getName());
+	private static final int PROPAGATION_THREADS = 4;
+	private static final int REST_INSTANCE_REQUEST_THREADS = 20;
 
 	@Autowired
 	private RestConfiguration restConfig;
@@ -103,6 +119,15 @@ public class TemplatesController extends BaseRestController {
 	private Admin admin;
 	private CustomPermissionEvaluator permissionEvaluator;
 	private File cloudConfigurationDir;
+	private final FanOutInvoker invoker = new FanOutInvoker();
+	private final long propagationTimeoutSeconds = Long.getLong(
+			CloudifyConstants.SYSTEM_PROPERTY_REST_TEMPLATES_PROPAGATION_TIMEOUT_SECONDS, 
+			CloudifyConstants.DEFAULT_TEMPLATES_PROPAGATION_TIMEOUT_SECONDS);
+	// runs template propagations, which outlive the add-templates request when a quorum is used.
+	private final ExecutorService propagationExecutor = createThreadPool("TemplatesPropagation", PROPAGATION_THREADS);
+	// sends the requests to the REST instances, so a hung instance only holds its own thread.
+	private final ExecutorService restInstanceRequestExecutor = 
+			createThreadPool("TemplatesRestInstanceRequest", REST_INSTANCE_REQUEST_THREADS);
 
 
 	/**
@@ -117,6 +142,28 @@ public class TemplatesController extends BaseRestController {
 		cloudConfigurationDir = restConfig.getCloudConfigurationDir();
 	}
 
+	/**
+	 * Terminates the propagation and REST instance request threads.
+	 */
+	@PreDestroy
+	public void destroy() {
+		propagationExecutor.shutdownNow();
+		restInstanceRequestExecutor.shutdownNow();
+	}
+
+	private static ExecutorService createThreadPool(final String name, final int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, name + "-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
 
 	/**
 	 * Add templates from templates folder to the cloud. Returns a response in case of success or partial failure.
@@ -142,6 +189,8 @@ public class TemplatesController extends BaseRestController {
 		// validate
 		validateAddTemplates(request);
 		File templatesZippedFolder = null;
+		// once the propagation started it owns the zipped folder, and deletes it when the last instance is done.
+		boolean propagationStarted = false;
 		try {
 			// get templates folder
 			final String uploadKey = request.getUploadKey();
@@ -153,12 +202,13 @@ public class TemplatesController extends BaseRestController {
 			final List<String> expectedTemplates = internalRequest.getExpectedTemplates();
 			log(Level.INFO, "expecting to add " + expectedTemplates.size() + " templates: " + expectedTemplates);
 			// add the templates to all REST instances
-			final AddTemplatesResponse addTemplatesToRestInstances = 
-					addTemplatesToRestInstances(internalRequest, templatesZippedFolder);
+			propagationStarted = true;
+			final AddTemplatesResponse addTemplatesToRestInstances = addTemplatesToRestInstances(internalRequest, 
+					new SharedTempFile(templatesZippedFolder), request.getQuorum());
 			handleAddTemplatesResponse(addTemplatesToRestInstances);
 			return addTemplatesToRestInstances;
 		} finally {
-			if (templatesZippedFolder != null) {
+			if (templatesZippedFolder != null && !propagationStarted) {
 				FileUtils.deleteQuietly(templatesZippedFolder);
 			}
 		}
@@ -286,97 +336,121 @@ public class TemplatesController extends BaseRestController {
 	}
 
 	/**
-	 * For each puInstance - send the invoke an add templates request.
+	 * Sends the add templates request to all REST instances concurrently. Each instance is given
+	 * {@link #propagationTimeoutSeconds} to respond, an instance that did not respond in time is reported as failed
+	 * to add all expected templates. The zipped templates folder is shared by all instances, and is deleted once the
+	 * propagation and the last request reading it are done, which may be after this method returned.
 	 * 
-	 * @param templatesFolder
-	 *            .
-	 * @param expectedTemplates
-	 *            The expected templates to add.
-	 * @param addedTemplatesByHost
-	 *            a map updates by this method to specify the failed to add templates for each instance.
-	 * @param failedToAddTemplatesByHost
-	 *            a map updates by this method to specify the failed to add templates for each instance.
+	 * @param request
+	 *            The internal request, copied for each instance.
+	 * @param templatesZippedFolder
+	 *            The zipped templates folder to upload to each instance, owned by the propagation from now on.
+	 * @param quorum
+	 *            If positive and smaller than the number of instances, the method returns as soon as this many
+	 *            instances successfully added all templates. The other instances complete in the background and
+	 *            are not included in the response.
+	 * @return The response, aggregated per template and host.
 	 */
 	private AddTemplatesResponse addTemplatesToRestInstances(final AddTemplatesInternalRequest request, 
-			final File templatesZippedFolder) {
+			final SharedTempFile templatesZippedFolder, final int quorum) {
 
-		final Map<String, AddTemplateResponse> templatesResponse = new HashMap<String, AddTemplateResponse>();
-		
-		// get the instances
-		final ProcessingUnitInstance[] instances = admin.getProcessingUnits().
-				waitFor("rest", RestUtils.TIMEOUT_IN_SECOND, TimeUnit.SECONDS).getInstances();
-		final List<String> instancesList = new ArrayList<String>(instances.length);
-		// execute add-template on each rest instance
-		log(Level.INFO, "[addTemplatesToRestInstances] - sending add-templates request to "
-				+ instances.length + " instances.");
-		for (final ProcessingUnitInstance puInstance : instances) {
-			final String hostAddress = puInstance.getMachine().getHostAddress();
-			instancesList.add(hostAddress);
-			log(Level.INFO, "[addTemplatesToRestInstances] - sending request to " + hostAddress);
-			/*
-			 * add template to instance and get the response
-			 */
-			final AddTemplatesInternalResponse instanceResponse =
-					executeAddTemplateOnInstance(
-							hostAddress, Integer.toString(puInstance.getJeeDetails().getPort()), 
-							request, templatesZippedFolder);
-			final Map<String, String> failedToAddTempaltesToHost = instanceResponse.getFailedToAddTempaltesAndReasons();
-			final List<String> addedTempaltes = instanceResponse.getAddedTempaltes();
-			/*
-			 * failed to add templates
-			 */
-			if (failedToAddTempaltesToHost != null) {
-				for (final Entry<String, String> entry : failedToAddTempaltesToHost.entrySet()) {
-					log(Level.WARNING, "[addTemplatesToRestInstances] - failed to add templates to host ["
-							+ hostAddress + "]: " + failedToAddTempaltesToHost);
-					// update template's entry in the final response
-					// for each template - add the current host to the failure hosts map of the template.
-					String templateName = entry.getKey();
-					AddTemplateResponse addTemplateResponse = templatesResponse.get(templateName);
-					// create new response if the template doesn't have one yet.
-					if (addTemplateResponse == null) {
-						addTemplateResponse = new AddTemplateResponse();
-					}
-					// get the failure map (hosts and reasons).
-					Map<String, String> failedHostsReasons = addTemplateResponse.getFailedToAddHosts();
-					if (failedHostsReasons == null) {
-						failedHostsReasons = new HashMap<String, String>();
+		// the responses received so far, by host.
+		final Map<String, AddTemplatesInternalResponse> instancesResponses = 
+				new ConcurrentHashMap<String, AddTemplatesInternalResponse>();
+		final List<String> instancesList = new ArrayList<String>();
+		final int requiredSuccesses;
+		final CountDownLatch quorumLatch;
+		boolean propagationSubmitted = false;
+		try {
+			// get the instances
+			final ProcessingUnitInstance[] instances = admin.getProcessingUnits().
+					waitFor("rest", RestUtils.TIMEOUT_IN_SECOND, TimeUnit.SECONDS).getInstances();
+			final List<FanOutTask<AddTemplatesInternalResponse>> tasks = 
+					new ArrayList<FanOutTask<AddTemplatesInternalResponse>>(instances.length);
+			for (final ProcessingUnitInstance puInstance : instances) {
+				final String hostAddress = puInstance.getMachine().getHostAddress();
+				final String port = Integer.toString(puInstance.getJeeDetails().getPort());
+				instancesList.add(hostAddress);
+				tasks.add(new RestInstanceTask<AddTemplatesInternalResponse>(hostAddress) {
+					@Override
+					protected AddTemplatesInternalResponse call() {
+						if (!templatesZippedFolder.acquire()) {
+							throw new IllegalStateException("The propagation to " + hostAddress 
+									+ " started after the templates propagation completed");
+						}
+						try {
+							log(Level.INFO, "[addTemplatesToRestInstances] - sending request to " + hostAddress);
+							return executeAddTemplateOnInstance(hostAddress, port, copyInternalRequest(request), 
+									templatesZippedFolder.getFile());
+						} finally {
+							templatesZippedFolder.release();
+						}
 					}
-					// add the failed host (and failure reason) to the failure map.
-					failedHostsReasons.put(hostAddress, entry.getValue());
-					// set the updated failure map at template's response.
-					addTemplateResponse.setFailedToAddHosts(failedHostsReasons);
-					// add the template and its response to the final templates response.
-					templatesResponse.put(templateName, addTemplateResponse);
-				}
+				});
 			}
-			/*
-			 * successfully added templates
-			 */
-			if (addedTempaltes != null) {
-				log(Level.INFO, "[addTemplatesToRestInstances] - successfully added templates to host ["
-						+ hostAddress + "]: " + addedTempaltes);
-				for (final String templateName : addedTempaltes) {
-					AddTemplateResponse addTemplateResponse = templatesResponse.get(templateName);
-					// create new response if the template doesn't have one yet.
-					if (addTemplateResponse == null) {
-						addTemplateResponse = new AddTemplateResponse();
+
+			requiredSuccesses = quorum > 0 && quorum < instances.length ? quorum : instances.length;
+			log(Level.INFO, "[addTemplatesToRestInstances] - sending add-templates request to "
+					+ instances.length + " instances, waiting for " + requiredSuccesses + " of them.");
+
+			quorumLatch = new CountDownLatch(requiredSuccesses);
+			final FanOutListener<AddTemplatesInternalResponse> listener = 
+					new FanOutListener<AddTemplatesInternalResponse>() {
+				@Override
+				public void onResult(final FanOutTaskResult<AddTemplatesInternalResponse> result) {
+					final AddTemplatesInternalResponse instanceResponse = 
+							toAddTemplatesInternalResponse(result, request);
+					instancesResponses.put(result.getName(), instanceResponse);
+					final Map<String, String> failed = instanceResponse.getFailedToAddTempaltesAndReasons();
+					if (failed == null || failed.isEmpty()) {
+						quorumLatch.countDown();
 					}
-					// get the successfully hosts list.
-					List<String> successfullyAddedHosts = addTemplateResponse.getSuccessfullyAddedHosts();
-					if (successfullyAddedHosts == null) {
-						successfullyAddedHosts = new LinkedList<String>();
+				}
+			};
+
+			propagationExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						invoker.invoke(tasks, propagationTimeoutSeconds, TimeUnit.SECONDS, listener);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						// requests still running keep the zipped folder until they are done.
+						templatesZippedFolder.release();
+						// all instances responded or timed out, no point in waiting for the quorum anymore.
+						while (quorumLatch.getCount() > 0) {
+							quorumLatch.countDown();
+						}
+						log(Level.INFO, "[addTemplatesToRestInstances] - propagation completed on "
+								+ instancesResponses.size() + " of " + instances.length + " REST instances.");
 					}
-					// add the host to the successfully added hosts list.
-					successfullyAddedHosts.add(hostAddress);
-					// set the updated list at template's response.
-					addTemplateResponse.setSuccessfullyAddedHosts(successfullyAddedHosts);
-					// add the template and its response to the final templates response.
-					templatesResponse.put(templateName, addTemplateResponse);
 				}
+			});
+			propagationSubmitted = true;
+		} finally {
+			if (!propagationSubmitted) {
+				templatesZippedFolder.release();
 			}
 		}
 
+		try {
+			quorumLatch.await();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log(Level.WARNING, "[addTemplatesToRestInstances] - interrupted while waiting for REST instances");
+		}
+
+		final Map<String, AddTemplateResponse> templatesResponse = new HashMap<String, AddTemplateResponse>();
+		for (final Entry<String, AddTemplatesInternalResponse> entry 
+				: new HashMap<String, AddTemplatesInternalResponse>(instancesResponses).entrySet()) {
+			addInstanceResponse(templatesResponse, entry.getKey(), entry.getValue());
+		}
+		if (instancesResponses.size() < instancesList.size()) {
+			log(Level.INFO, "[addTemplatesToRestInstances] - quorum of " + requiredSuccesses 
+					+ " reached, the remaining REST instances complete in the background.");
+		}
+
 		// create and return the response (the status of the response will be set later).
 		final AddTemplatesResponse response = new AddTemplatesResponse();
 		response.setInstances(instancesList);
@@ -384,6 +458,99 @@ public class TemplatesController extends BaseRestController {
 		return response;
 	}
 
+	private static AddTemplatesInternalRequest copyInternalRequest(final AddTemplatesInternalRequest request) {
+		// each instance gets its own upload key, so the request cannot be shared between instances.
+		final AddTemplatesInternalRequest copy = new AddTemplatesInternalRequest();
+		copy.setCloudTemplates(request.getCloudTemplates());
+		copy.setExpectedTemplates(request.getExpectedTemplates());
+		return copy;
+	}
+
+	private AddTemplatesInternalResponse toAddTemplatesInternalResponse(
+			final FanOutTaskResult<AddTemplatesInternalResponse> result, final AddTemplatesInternalRequest request) {
+		if (result.getStatus() == FanOutTaskResult.Status.SUCCESS) {
+			return result.getResult();
+		}
+		// the instance did not respond in time or the request failed => all expected templates failed to be added
+		final String reason;
+		if (result.getStatus() == FanOutTaskResult.Status.TIMEOUT) {
+			reason = "REST instance did not respond within " + propagationTimeoutSeconds + " seconds";
+		} else {
+			reason = "http request failed [" + result.getException() + "]";
+		}
+		log(Level.WARNING, "[addTemplatesToRestInstances] - failed to add templates to host ["
+				+ result.getName() + "]: " + reason);
+		final Map<String, String> failedMap = new HashMap<String, String>();
+		for (final String expectedTemplate : request.getExpectedTemplates()) {
+			failedMap.put(expectedTemplate, reason);
+		}
+		final AddTemplatesInternalResponse instanceResponse = new AddTemplatesInternalResponse();
+		instanceResponse.setFailedToAddTempaltesAndReasons(failedMap);
+		return instanceResponse;
+	}
+
+	/**
+	 * Merges the response of a single REST instance into the per template response.
+	 */
+	private void addInstanceResponse(final Map<String, AddTemplateResponse> templatesResponse, 
+			final String hostAddress, final AddTemplatesInternalResponse instanceResponse) {
+		final Map<String, String> failedToAddTempaltesToHost = instanceResponse.getFailedToAddTempaltesAndReasons();
+		final List<String> addedTempaltes = instanceResponse.getAddedTempaltes();
+		/*
+		 * failed to add templates
+		 */
+		if (failedToAddTempaltesToHost != null) {
+			for (final Entry<String, String> entry : failedToAddTempaltesToHost.entrySet()) {
+				log(Level.WARNING, "[addTemplatesToRestInstances] - failed to add templates to host ["
+						+ hostAddress + "]: " + failedToAddTempaltesToHost);
+				// update template's entry in the final response
+				// for each template - add the current host to the failure hosts map of the template.
+				String templateName = entry.getKey();
+				AddTemplateResponse addTemplateResponse = templatesResponse.get(templateName);
+				// create new response if the template doesn't have one yet.
+				if (addTemplateResponse == null) {
+					addTemplateResponse = new AddTemplateResponse();
+				}
+				// get the failure map (hosts and reasons).
+				Map<String, String> failedHostsReasons = addTemplateResponse.getFailedToAddHosts();
+				if (failedHostsReasons == null) {
+					failedHostsReasons = new HashMap<String, String>();
+				}
+				// add the failed host (and failure reason) to the failure map.
+				failedHostsReasons.put(hostAddress, entry.getValue());
+				// set the updated failure map at template's response.
+				addTemplateResponse.setFailedToAddHosts(failedHostsReasons);
+				// add the template and its response to the final templates response.
+				templatesResponse.put(templateName, addTemplateResponse);
+			}
+		}
+		/*
+		 * successfully added templates
+		 */
+		if (addedTempaltes != null) {
+			log(Level.INFO, "[addTemplatesToRestInstances] - successfully added templates to host ["
+					+ hostAddress + "]: " + addedTempaltes);
+			for (final String templateName : addedTempaltes) {
+				AddTemplateResponse addTemplateResponse = templatesResponse.get(templateName);
+				// create new response if the template doesn't have one yet.
+				if (addTemplateResponse == null) {
+					addTemplateResponse = new AddTemplateResponse();
+				}
+				// get the successfully hosts list.
+				List<String> successfullyAddedHosts = addTemplateResponse.getSuccessfullyAddedHosts();
+				if (successfullyAddedHosts == null) {
+					successfullyAddedHosts = new LinkedList<String>();
+				}
+				// add the host to the successfully added hosts list.
+				successfullyAddedHosts.add(hostAddress);
+				// set the updated list at template's response.
+				addTemplateResponse.setSuccessfullyAddedHosts(successfullyAddedHosts);
+				// add the template and its response to the final templates response.
+				templatesResponse.put(templateName, addTemplateResponse);
+			}
+		}
+	}
+
 	/**
 	 * Invoke add templates on the given instance.
 	 * 
@@ -782,33 +949,61 @@ public class TemplatesController extends BaseRestController {
 		return services;
 	}
 
-	private RemoveTemplatesResponse removeTemplateFromRestInstances(final String templateName) {
+	private RemoveTemplatesResponse removeTemplateFromRestInstances(final String templateName) 
+			throws RestErrorException {
 		// get rest instances
 		final ProcessingUnit processingUnit =
 				admin.getProcessingUnits().waitFor("rest", RestUtils.TIMEOUT_IN_SECOND, TimeUnit.SECONDS);
 		final ProcessingUnitInstance[] instances = processingUnit.getInstances();
-		// invoke remove-template command on each REST instance.
+		// invoke remove-template command on all REST instances concurrently.
 		log(Level.INFO, "[removeTemplateFromRestInstances] - sending remove-template request to "
 				+ instances.length + " REST instances.");
-		final Map<String, String> failedToRemoveFromHosts = new HashMap<String, String>();
-		final List<String> successfullyRemovedFromHosts = new LinkedList<String>();
+		final List<FanOutTask<Void>> tasks = new ArrayList<FanOutTask<Void>>(instances.length);
 		for (final ProcessingUnitInstance puInstance : instances) {
 			final String hostAddress = puInstance.getMachine().getHostAddress();
 			final String port = Integer.toString(puInstance.getJeeDetails().getPort());
-			try {
-				final RestClientInternal client = createRestClientInternal(hostAddress, port);
-				log(Level.INFO, "sending request to " + hostAddress);
-				client.removeTemplateInternal(templateName);
-			} catch (final RestClientException e) {
-				failedToRemoveFromHosts.put(hostAddress, e.getMessageFormattedText());
-				log(Level.WARNING, "[removeTemplateFromRestInstances] - remove template ["
-						+ templateName + "] from instance [" + hostAddress + "] failed. Error: "
-						+ e.getMessageFormattedText(), e);
+			tasks.add(new RestInstanceTask<Void>(hostAddress) {
+				@Override
+				protected Void call() throws RestClientException {
+					final RestClientInternal client = createRestClientInternal(hostAddress, port);
+					log(Level.INFO, "sending request to " + hostAddress);
+					client.removeTemplateInternal(templateName);
+					return null;
+				}
+			});
+		}
+
+		final FanOutResult<Void> results;
+		try {
+			results = invoker.invoke(tasks, propagationTimeoutSeconds, TimeUnit.SECONDS, null);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RestErrorException(CloudifyErrorMessages.FAILED_REMOVE_TEMPLATE.getName(),
+					templateName, "interrupted while waiting for REST instances");
+		}
+
+		final Map<String, String> failedToRemoveFromHosts = new HashMap<String, String>();
+		final List<String> successfullyRemovedFromHosts = new LinkedList<String>();
+		for (final FanOutTaskResult<Void> result : results.getResults()) {
+			final String hostAddress = result.getName();
+			if (result.getStatus() == FanOutTaskResult.Status.SUCCESS) {
+				successfullyRemovedFromHosts.add(hostAddress);
+				log(Level.INFO, "[removeTemplateFromRestInstances] - Successfully removed template ["
+						+ templateName + "] from " + hostAddress);
 				continue;
 			}
-			successfullyRemovedFromHosts.add(hostAddress);
-			log(Level.INFO, "[removeTemplateFromRestInstances] - Successfully removed template ["
-					+ templateName + "] from " + hostAddress);
+			final String reason;
+			if (result.getStatus() == FanOutTaskResult.Status.TIMEOUT) {
+				reason = "REST instance did not respond within " + propagationTimeoutSeconds + " seconds";
+			} else if (result.getException() instanceof RestClientException) {
+				reason = ((RestClientException) result.getException()).getMessageFormattedText();
+			} else {
+				reason = String.valueOf(result.getException());
+			}
+			failedToRemoveFromHosts.put(hostAddress, reason);
+			log(Level.WARNING, "[removeTemplateFromRestInstances] - remove template ["
+					+ templateName + "] from instance [" + hostAddress + "] failed. Error: " + reason, 
+					result.getException());
 		}
 		final RemoveTemplatesResponse response = new RemoveTemplatesResponse();
 		response.setFailedToRemoveFromHosts(failedToRemoveFromHosts);
@@ -1010,6 +1205,75 @@ public class TemplatesController extends BaseRestController {
 		}
 	}
 
+	/**
+	 * A request to a single REST instance, executed by the REST instance request pool so the {@link FanOutInvoker}
+	 * that starts it can stop waiting for it at the deadline.
+	 * 
+	 * @param <T>
+	 *            The response type.
+	 */
+	private abstract class RestInstanceTask<T> implements FanOutTask<T> {
+
+		private final String hostAddress;
+
+		RestInstanceTask(final String hostAddress) {
+			this.hostAddress = hostAddress;
+		}
+
+		@Override
+		public String getName() {
+			return hostAddress;
+		}
+
+		@Override
+		public Future<T> start() {
+			return restInstanceRequestExecutor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					return RestInstanceTask.this.call();
+				}
+			});
+		}
+
+		protected abstract T call() throws Exception;
+	}
+
+	/**
+	 * A temporary file read by concurrent requests. The file is deleted once its owner and every request that
+	 * acquired it released it.
+	 */
+	private static final class SharedTempFile {
+
+		private final File file;
+		// the owner holds the first reference.
+		private int references = 1;
+
+		SharedTempFile(final File file) {
+			this.file = file;
+		}
+
+		File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return true if the file can be read until {@link #release()} is called, false if it was already deleted.
+		 */
+		synchronized boolean acquire() {
+			if (references == 0) {
+				return false;
+			}
+			references++;
+			return true;
+		}
+
+		synchronized void release() {
+			if (references > 0 && --references == 0) {
+				FileUtils.deleteQuietly(file);
+			}
+		}
+	}
+
 	private void log(final Level level, final String content) {
 		if (logger.isLoggable(level)) {
 			logger.log(level, content);
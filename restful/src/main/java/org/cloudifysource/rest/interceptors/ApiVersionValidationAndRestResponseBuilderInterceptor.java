@@ -100,6 +100,11 @@ public class ApiVersionValidationAndRestResponseBuilderInterceptor extends Handl
     		return;
     	}
     	
+    	if (modelAndView == null) {
+    		// the controller wrote the response itself (e.g. a streamed file), there is nothing to wrap.
+    		return;
+    	}
+    	
     	if (logger.isLoggable(Level.FINEST)) {
     		logCurrentStatus(request, modelAndView);
     	}
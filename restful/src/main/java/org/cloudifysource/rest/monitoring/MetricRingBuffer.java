@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed capacity ring buffer of (timestamp, value) samples, backed by two primitive arrays.
+ * Once the buffer is full, the oldest sample is overwritten.
+ * <br>
+ * Each sample costs 16 bytes (a long and a double), regardless of how many samples were recorded.
+ * <br>
+ * This class is not thread safe, callers are expected to synchronize on the owning {@link MetricTimeSeries}.
+ *
+ * @since 2.7.1
+ */
+public class MetricRingBuffer {
+
+	/**
+	 * Number of bytes used by a single sample.
+	 */
+	public static final int BYTES_PER_SAMPLE = 16;
+
+	private final long[] timestamps;
+	private final double[] values;
+	private int head;
+	private int size;
+
+	public MetricRingBuffer(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+		}
+		this.timestamps = new long[capacity];
+		this.values = new double[capacity];
+	}
+
+	/**
+	 * Appends a sample, overwriting the oldest one if the buffer is full.
+	 * Samples are expected to arrive in non-decreasing timestamp order.
+	 * @param timestamp the sample time in milliseconds.
+	 * @param value the sample value.
+	 */
+	public void add(final long timestamp, final double value) {
+		timestamps[head] = timestamp;
+		values[head] = value;
+		head = (head + 1) % timestamps.length;
+		if (size < timestamps.length) {
+			size++;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return timestamps.length;
+	}
+
+	/**
+	 * @return the timestamp of the oldest sample, or -1 if the buffer is empty.
+	 */
+	public long getOldestTimestamp() {
+		if (size == 0) {
+			return -1;
+		}
+		return timestamps[physicalIndex(0)];
+	}
+
+	/**
+	 * @param index logical index, 0 being the oldest sample.
+	 * @return the sample timestamp.
+	 */
+	public long getTimestamp(final int index) {
+		return timestamps[physicalIndex(index)];
+	}
+
+	/**
+	 * @param index logical index, 0 being the oldest sample.
+	 * @return the sample value.
+	 */
+	public double getValue(final int index) {
+		return values[physicalIndex(index)];
+	}
+
+	/**
+	 * Returns the logical index of the first sample with a timestamp not older than the given one.
+	 * @param timestamp the lower bound, in milliseconds.
+	 * @return an index in the range [0, size].
+	 */
+	public int lowerBound(final long timestamp) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (getTimestamp(mid) < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Writes the samples, oldest first, to the given buffer.
+	 * @param buffer target buffer, must have at least 4 + size * {@link #BYTES_PER_SAMPLE} bytes remaining.
+	 */
+	public void writeTo(final ByteBuffer buffer) {
+		buffer.putInt(size);
+		for (int i = 0; i < size; i++) {
+			buffer.putLong(getTimestamp(i));
+			buffer.putDouble(getValue(i));
+		}
+	}
+
+	/**
+	 * Appends samples previously written with {@link #writeTo(ByteBuffer)}.
+	 * @param buffer the source buffer.
+	 */
+	public void readFrom(final ByteBuffer buffer) {
+		final int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			add(buffer.getLong(), buffer.getDouble());
+		}
+	}
+
+	private int physicalIndex(final int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index " + index + " out of range [0, " + size + ")");
+		}
+		final int start = size < timestamps.length ? 0 : head;
+		return (start + index) % timestamps.length;
+	}
+}
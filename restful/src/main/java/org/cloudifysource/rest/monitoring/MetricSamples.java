@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of samples taken from a {@link MetricTimeSeries}, ordered by timestamp.
+ *
+ * @since 2.7.1
+ */
+public class MetricSamples {
+
+	private static final double MILLIS_IN_SECOND = 1000.0;
+
+	private final long[] timestamps;
+	private final double[] values;
+	private final long resolutionMillis;
+
+	public MetricSamples(final long[] timestamps, final double[] values, final long resolutionMillis) {
+		if (timestamps.length != values.length) {
+			throw new IllegalArgumentException("timestamps and values must have the same length");
+		}
+		this.timestamps = timestamps;
+		this.values = values;
+		this.resolutionMillis = resolutionMillis;
+	}
+
+	public int size() {
+		return timestamps.length;
+	}
+
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the resolution of the coarsest tier these samples were taken from, 0 if all samples are raw.
+	 */
+	public long getResolutionMillis() {
+		return resolutionMillis;
+	}
+
+	/**
+	 * Calculates a percentile of the sample values using the nearest rank method.
+	 * @param percentile a value in the range [0, 100].
+	 * @return the percentile value, or NaN if there are no samples.
+	 */
+	public double percentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be in the range [0, 100], got " + percentile);
+		}
+		if (values.length == 0) {
+			return Double.NaN;
+		}
+		final double[] sorted = Arrays.copyOf(values, values.length);
+		Arrays.sort(sorted);
+		final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Calculates the average change per second between the first and the last sample.
+	 * Useful for monotonically increasing counters.
+	 * @return the rate per second, or NaN if there are less than two samples.
+	 */
+	public double ratePerSecond() {
+		if (values.length < 2) {
+			return Double.NaN;
+		}
+		final int last = values.length - 1;
+		final long elapsed = timestamps[last] - timestamps[0];
+		if (elapsed <= 0) {
+			return Double.NaN;
+		}
+		return (values[last] - values[0]) * MILLIS_IN_SECOND / elapsed;
+	}
+
+	/**
+	 * @return the average of the sample values, or NaN if there are no samples.
+	 */
+	public double average() {
+		if (values.length == 0) {
+			return Double.NaN;
+		}
+		double sum = 0;
+		for (final double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The history of a single metric of a single service instance.
+ * <br>
+ * Samples are kept in a raw tier and in a number of downsampled tiers. Each downsampled tier keeps the average of
+ * all samples that fell into a bucket of its resolution, so older data is kept at a coarser granularity.
+ * Queries are answered from the finest tiers that still cover the requested range.
+ *
+ * @since 2.7.1
+ */
+public class MetricTimeSeries {
+
+	private final long[] resolutions;
+	private final MetricRingBuffer[] tiers;
+	// running aggregation of the currently open bucket of every downsampled tier.
+	private final long[] bucketIds;
+	private final double[] bucketSums;
+	private final int[] bucketCounts;
+
+	/**
+	 * @param resolutions the resolution of each tier in milliseconds, finest first. 0 means raw samples.
+	 * @param capacities the number of samples kept by each tier.
+	 */
+	public MetricTimeSeries(final long[] resolutions, final int[] capacities) {
+		if (resolutions.length != capacities.length || resolutions.length == 0) {
+			throw new IllegalArgumentException("resolutions and capacities must be non empty and of the same length");
+		}
+		this.resolutions = resolutions.clone();
+		this.tiers = new MetricRingBuffer[resolutions.length];
+		this.bucketIds = new long[resolutions.length];
+		this.bucketSums = new double[resolutions.length];
+		this.bucketCounts = new int[resolutions.length];
+		for (int i = 0; i < tiers.length; i++) {
+			tiers[i] = new MetricRingBuffer(capacities[i]);
+			bucketIds[i] = -1;
+		}
+	}
+
+	/**
+	 * Records a new sample.
+	 * @param timestamp the sample time in milliseconds.
+	 * @param value the sample value.
+	 */
+	public synchronized void record(final long timestamp, final double value) {
+		for (int i = 0; i < tiers.length; i++) {
+			final long resolution = resolutions[i];
+			if (resolution <= 0) {
+				tiers[i].add(timestamp, value);
+				continue;
+			}
+			final long bucketId = timestamp / resolution;
+			if (bucketId != bucketIds[i]) {
+				flushBucket(i);
+				bucketIds[i] = bucketId;
+			}
+			bucketSums[i] += value;
+			bucketCounts[i]++;
+		}
+	}
+
+	/**
+	 * Returns the samples in the given range. The most recent part of the range is served from the finest tier,
+	 * older parts that the finer tiers no longer hold are filled in from progressively coarser tiers.
+	 * A downsampled bucket is only used if it ends before the oldest sample of the finer tiers, so no period is
+	 * counted twice.
+	 * @param from range start in milliseconds, inclusive.
+	 * @param to range end in milliseconds, inclusive.
+	 * @return the samples, ordered by timestamp.
+	 */
+	public synchronized MetricSamples range(final long from, final long to) {
+		final int[] starts = new int[tiers.length];
+		final int[] ends = new int[tiers.length];
+		int total = 0;
+		long resolution = 0;
+		// samples of finer tiers cover everything from this timestamp on.
+		long coveredFrom = Long.MAX_VALUE;
+		for (int i = 0; i < tiers.length; i++) {
+			final MetricRingBuffer tier = tiers[i];
+			starts[i] = tier.lowerBound(from);
+			int end = starts[i];
+			while (end < tier.size() && tier.getTimestamp(end) <= to
+					&& tier.getTimestamp(end) + resolutions[i] <= coveredFrom) {
+				end++;
+			}
+			ends[i] = end;
+			if (end > starts[i]) {
+				total += end - starts[i];
+				resolution = resolutions[i];
+			}
+			if (tier.size() > 0) {
+				coveredFrom = Math.min(coveredFrom, tier.getOldestTimestamp());
+			}
+			if (coveredFrom <= from) {
+				break;
+			}
+		}
+
+		final long[] timestamps = new long[total];
+		final double[] values = new double[total];
+		int position = 0;
+		// coarsest tiers hold the oldest samples.
+		for (int i = tiers.length - 1; i >= 0; i--) {
+			for (int j = starts[i]; j < ends[i]; j++) {
+				timestamps[position] = tiers[i].getTimestamp(j);
+				values[position] = tiers[i].getValue(j);
+				position++;
+			}
+		}
+		return new MetricSamples(timestamps, values, resolution);
+	}
+
+	/**
+	 * @return the number of bytes this series needs to persist itself.
+	 */
+	public synchronized int getSerializedSize() {
+		int total = 0;
+		for (final MetricRingBuffer tier : tiers) {
+			total += Integer.SIZE / Byte.SIZE + tier.size() * MetricRingBuffer.BYTES_PER_SAMPLE;
+		}
+		return total;
+	}
+
+	/**
+	 * Writes all tiers to the buffer. Open buckets of downsampled tiers are not persisted.
+	 * @param buffer the target buffer.
+	 */
+	public synchronized void writeTo(final ByteBuffer buffer) {
+		for (final MetricRingBuffer tier : tiers) {
+			tier.writeTo(buffer);
+		}
+	}
+
+	/**
+	 * Restores tiers previously written with {@link #writeTo(ByteBuffer)} by a series with the same tier layout.
+	 * @param buffer the source buffer.
+	 */
+	public synchronized void readFrom(final ByteBuffer buffer) {
+		for (final MetricRingBuffer tier : tiers) {
+			tier.readFrom(buffer);
+		}
+	}
+
+	private void flushBucket(final int tierIndex) {
+		if (bucketCounts[tierIndex] == 0) {
+			return;
+		}
+		tiers[tierIndex].add(bucketIds[tierIndex] * resolutions[tierIndex],
+				bucketSums[tierIndex] / bucketCounts[tierIndex]);
+		bucketSums[tierIndex] = 0;
+		bucketCounts[tierIndex] = 0;
+	}
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+/**
+ * Identifies a single metric of a single service instance in the {@link MetricsHistoryStore}.
+ *
+ * @since 2.7.1
+ */
+public class MetricsHistoryKey {
+
+	private final String absolutePuName;
+	private final int instanceId;
+	private final String metricName;
+
+	public MetricsHistoryKey(final String absolutePuName, final int instanceId, final String metricName) {
+		this.absolutePuName = absolutePuName;
+		this.instanceId = instanceId;
+		this.metricName = metricName;
+	}
+
+	public String getAbsolutePuName() {
+		return absolutePuName;
+	}
+
+	public int getInstanceId() {
+		return instanceId;
+	}
+
+	public String getMetricName() {
+		return metricName;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		final MetricsHistoryKey that = (MetricsHistoryKey) o;
+		return instanceId == that.instanceId
+				&& absolutePuName.equals(that.absolutePuName)
+				&& metricName.equals(that.metricName);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = absolutePuName.hashCode();
+		result = 31 * result + instanceId;
+		result = 31 * result + metricName.hashCode();
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "MetricsHistoryKey{" + absolutePuName + "[" + instanceId + "]." + metricName + "}";
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
+import org.openspaces.pu.service.ServiceMonitors;
+
+/**
+ * Periodically samples the USM monitors of all service instances known to the admin, and records every numeric
+ * monitor value in a {@link MetricsHistoryStore}. Series of processing units that are no longer deployed are removed:
+ * right away for processing units this sampler saw deployed, and after a grace period for series restored from a file,
+ * which gives the admin time to discover the processing units. If a history file is set, the store is persisted to it
+ * periodically, so a crash loses at most one persist interval of history.
+ *
+ * @since 2.7.1
+ */
+public class MetricsHistorySampler implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(MetricsHistorySampler.class.getName());
+
+	private static final long DEFAULT_EVICTION_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	private final Admin admin;
+	private final MetricsHistoryStore store;
+	private final File historyFile;
+	private final long persistIntervalMillis;
+	private final Set<String> sampledProcessingUnits = new HashSet<String>();
+	// processing unit name -> the time its series were first found without a deployed processing unit.
+	private final Map<String, Long> missingSince = new HashMap<String, Long>();
+	private long evictionGraceMillis = DEFAULT_EVICTION_GRACE_MILLIS;
+	private long lastPersisted;
+
+	public MetricsHistorySampler(final Admin admin, final MetricsHistoryStore store) {
+		this(admin, store, null, 0);
+	}
+
+	/**
+	 * @param admin the admin to sample.
+	 * @param store the store to record the samples in.
+	 * @param historyFile the file to persist the store to, or null to not persist it.
+	 * @param persistIntervalMillis the minimal time between persisting the store, in milliseconds, or 0 to not persist
+	 *        it periodically.
+	 */
+	public MetricsHistorySampler(final Admin admin, final MetricsHistoryStore store, final File historyFile,
+			final long persistIntervalMillis) {
+		this.admin = admin;
+		this.store = store;
+		this.historyFile = historyFile;
+		this.persistIntervalMillis = persistIntervalMillis;
+		this.lastPersisted = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param evictionGraceMillis the time series of a processing unit that was never sampled are kept while it is not
+	 *        deployed, in milliseconds.
+	 */
+	public void setEvictionGraceMillis(final long evictionGraceMillis) {
+		this.evictionGraceMillis = evictionGraceMillis;
+	}
+
+	@Override
+	public void run() {
+		try {
+			sample();
+		} catch (final Exception e) {
+			// never let an exception cancel the scheduled sampling.
+			logger.log(Level.WARNING, "Failed to sample USM monitors: " + e.getMessage(), e);
+		}
+		persistIfDue();
+	}
+
+	private void persistIfDue() {
+		final long now = System.currentTimeMillis();
+		if (historyFile == null || persistIntervalMillis <= 0 || now - lastPersisted < persistIntervalMillis) {
+			return;
+		}
+		lastPersisted = now;
+		try {
+			store.persist(historyFile);
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "Failed to persist metrics history to " + historyFile, e);
+		}
+	}
+
+	private void sample() {
+		final long now = System.currentTimeMillis();
+		final Set<String> currentProcessingUnits = new HashSet<String>();
+		for (final ProcessingUnit pu : admin.getProcessingUnits()) {
+			currentProcessingUnits.add(pu.getName());
+			for (final ProcessingUnitInstance instance : pu.getInstances()) {
+				final Map<String, Object> monitors = getUsmMonitors(instance);
+				if (monitors == null) {
+					continue;
+				}
+				for (final Entry<String, Object> monitor : monitors.entrySet()) {
+					if (monitor.getValue() instanceof Number) {
+						final MetricsHistoryKey key =
+								new MetricsHistoryKey(pu.getName(), instance.getInstanceId(), monitor.getKey());
+						store.record(key, now, ((Number) monitor.getValue()).doubleValue());
+					}
+				}
+			}
+		}
+
+		for (final String puName : store.getProcessingUnitNames()) {
+			if (currentProcessingUnits.contains(puName)) {
+				continue;
+			}
+			Long since = missingSince.get(puName);
+			if (since == null) {
+				since = now;
+				missingSince.put(puName, since);
+			}
+			if (sampledProcessingUnits.contains(puName) || now - since >= evictionGraceMillis) {
+				logger.fine("Removing metrics history of undeployed processing unit " + puName);
+				store.removeProcessingUnit(puName);
+			}
+		}
+		// forget processing units that were deployed again, or whose series were removed.
+		final Set<String> stillMissing = store.getProcessingUnitNames();
+		stillMissing.removeAll(currentProcessingUnits);
+		missingSince.keySet().retainAll(stillMissing);
+		sampledProcessingUnits.clear();
+		sampledProcessingUnits.addAll(currentProcessingUnits);
+	}
+
+	private Map<String, Object> getUsmMonitors(final ProcessingUnitInstance instance) {
+		final ProcessingUnitInstanceStatistics statistics = instance.getStatistics();
+		if (statistics == null) {
+			return null;
+		}
+		final Map<String, ServiceMonitors> puMonitors = statistics.getMonitors();
+		if (puMonitors == null) {
+			return null;
+		}
+		final ServiceMonitors serviceMonitors = puMonitors.get(CloudifyConstants.USM_MONITORS_SERVICE_ID);
+		if (serviceMonitors == null) {
+			return null;
+		}
+		return serviceMonitors.getMonitors();
+	}
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory time series store holding the history of USM monitor values, per service instance and metric.
+ * <br><br>
+ * With the default tiers every series keeps:
+ * <ul>
+ * <li>360 raw samples (30 minutes at the default 5 seconds sampling interval)</li>
+ * <li>720 one minute averages (12 hours)</li>
+ * <li>168 one hour averages (7 days)</li>
+ * </ul>
+ * That is 1248 samples of {@link MetricRingBuffer#BYTES_PER_SAMPLE} bytes each, roughly 20KB per series including
+ * object overhead, so 1000 metrics take about 20MB. The total number of series is bounded by
+ * {@link #setMaxSeries(int)} (10000 by default, about 200MB), samples of new series beyond that bound are dropped.
+ * <br><br>
+ * The store may optionally be persisted to, and restored from, a memory mapped file.
+ *
+ * @since 2.7.1
+ */
+public class MetricsHistoryStore {
+
+	private static final Logger logger = Logger.getLogger(MetricsHistoryStore.class.getName());
+
+	private static final int DEFAULT_MAX_SERIES = 10000;
+	private static final long[] DEFAULT_RESOLUTIONS = {
+		0, TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1) };
+	private static final int[] DEFAULT_CAPACITIES = { 360, 720, 168 };
+	private static final int FILE_FORMAT_VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ConcurrentMap<MetricsHistoryKey, MetricTimeSeries> series =
+			new ConcurrentHashMap<MetricsHistoryKey, MetricTimeSeries>();
+	private final AtomicInteger droppedSeries = new AtomicInteger();
+	private final long[] resolutions;
+	private final int[] capacities;
+	private int maxSeries = DEFAULT_MAX_SERIES;
+
+	public MetricsHistoryStore() {
+		this(DEFAULT_RESOLUTIONS, DEFAULT_CAPACITIES);
+	}
+
+	/**
+	 * @param resolutions the resolution of each tier in milliseconds, finest first. 0 means raw samples.
+	 * @param capacities the number of samples kept by each tier.
+	 */
+	public MetricsHistoryStore(final long[] resolutions, final int[] capacities) {
+		this.resolutions = resolutions.clone();
+		this.capacities = capacities.clone();
+	}
+
+	public void setMaxSeries(final int maxSeries) {
+		this.maxSeries = maxSeries;
+	}
+
+	public int getMaxSeries() {
+		return maxSeries;
+	}
+
+	/**
+	 * @return the number of series currently held by the store.
+	 */
+	public int getSeriesCount() {
+		return series.size();
+	}
+
+	/**
+	 * @return the number of new series that were rejected because the store was full.
+	 */
+	public int getDroppedSeriesCount() {
+		return droppedSeries.get();
+	}
+
+	/**
+	 * @return the upper bound, in bytes, of the sample arrays of a single series.
+	 */
+	public long getBytesPerSeries() {
+		long total = 0;
+		for (final int capacity : capacities) {
+			total += (long) capacity * MetricRingBuffer.BYTES_PER_SAMPLE;
+		}
+		return total;
+	}
+
+	/**
+	 * Records a sample.
+	 * @param key the series key.
+	 * @param timestamp the sample time in milliseconds.
+	 * @param value the sample value.
+	 */
+	public void record(final MetricsHistoryKey key, final long timestamp, final double value) {
+		final MetricTimeSeries timeSeries = getOrCreate(key);
+		if (timeSeries != null) {
+			timeSeries.record(timestamp, value);
+		}
+	}
+
+	/**
+	 * Returns the samples of a series in the given time range.
+	 * @param key the series key.
+	 * @param from range start in milliseconds, inclusive.
+	 * @param to range end in milliseconds, inclusive.
+	 * @return the samples, or null if there is no such series.
+	 */
+	public MetricSamples range(final MetricsHistoryKey key, final long from, final long to) {
+		final MetricTimeSeries timeSeries = series.get(key);
+		if (timeSeries == null) {
+			return null;
+		}
+		return timeSeries.range(from, to);
+	}
+
+	/**
+	 * Removes all series of a processing unit, typically after it was undeployed.
+	 * @param absolutePuName the processing unit name.
+	 */
+	public void removeProcessingUnit(final String absolutePuName) {
+		final Iterator<MetricsHistoryKey> iterator = series.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getAbsolutePuName().equals(absolutePuName)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the names of the processing units that have series in the store.
+	 */
+	public Set<String> getProcessingUnitNames() {
+		final Set<String> names = new HashSet<String>();
+		for (final MetricsHistoryKey key : series.keySet()) {
+			names.add(key.getAbsolutePuName());
+		}
+		return names;
+	}
+
+	/**
+	 * Persists the store to a memory mapped file, replacing its previous content. The series are written to a
+	 * temporary file that then replaces the target, so a crash while persisting leaves the previous content intact.
+	 * @param file the target file.
+	 * @throws IOException in case of a failure writing the file.
+	 */
+	public void persist(final File file) throws IOException {
+		// take a stable view of the series. series added from here on are not persisted.
+		final Map<MetricsHistoryKey, MetricTimeSeries> snapshot =
+				new HashMap<MetricsHistoryKey, MetricTimeSeries>(series);
+		final Map<MetricsHistoryKey, byte[]> encoded = new HashMap<MetricsHistoryKey, byte[]>();
+		long size = 2 * Integer.SIZE / Byte.SIZE;
+		for (final Entry<MetricsHistoryKey, MetricTimeSeries> entry : snapshot.entrySet()) {
+			final ByteBuffer buffer = ByteBuffer.allocate(entry.getValue().getSerializedSize());
+			entry.getValue().writeTo(buffer);
+			final byte[] bytes = buffer.array();
+			encoded.put(entry.getKey(), bytes);
+			size += keySize(entry.getKey()) + Integer.SIZE / Byte.SIZE + bytes.length;
+		}
+
+		final File tempFile = new File(file.getPath() + ".tmp");
+		final RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+		try {
+			raf.setLength(size);
+			final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			mapped.putInt(FILE_FORMAT_VERSION);
+			mapped.putInt(encoded.size());
+			for (final Entry<MetricsHistoryKey, byte[]> entry : encoded.entrySet()) {
+				writeKey(mapped, entry.getKey());
+				mapped.putInt(entry.getValue().length);
+				mapped.put(entry.getValue());
+			}
+			mapped.force();
+		} finally {
+			raf.close();
+		}
+		// renaming over an existing file fails on some platforms.
+		if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+			throw new IOException("Failed to replace " + file + " with " + tempFile);
+		}
+		logger.fine("Persisted " + encoded.size() + " metric series to " + file);
+	}
+
+	/**
+	 * Restores series previously persisted with {@link #persist(File)}. Restored samples are appended to the
+	 * matching series, the tier layout must be identical to the one used when persisting.
+	 * @param file the source file.
+	 * @throws IOException in case of a failure reading the file, or if the file format is not recognized.
+	 */
+	public void restore(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			final int version = mapped.getInt();
+			if (version != FILE_FORMAT_VERSION) {
+				throw new IOException("Unsupported metrics history file version " + version + " in " + file);
+			}
+			final int count = mapped.getInt();
+			for (int i = 0; i < count; i++) {
+				final MetricsHistoryKey key = readKey(mapped);
+				final int length = mapped.getInt();
+				final ByteBuffer slice = mapped.slice();
+				slice.limit(length);
+				mapped.position(mapped.position() + length);
+				final MetricTimeSeries timeSeries = getOrCreate(key);
+				if (timeSeries != null) {
+					timeSeries.readFrom(slice);
+				}
+			}
+			logger.fine("Restored " + count + " metric series from " + file);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private MetricTimeSeries getOrCreate(final MetricsHistoryKey key) {
+		MetricTimeSeries timeSeries = series.get(key);
+		if (timeSeries != null) {
+			return timeSeries;
+		}
+		if (series.size() >= maxSeries) {
+			if (droppedSeries.getAndIncrement() == 0) {
+				logger.warning("Metrics history store reached its limit of " + maxSeries
+						+ " series. Samples of new series will not be recorded.");
+			}
+			return null;
+		}
+		timeSeries = new MetricTimeSeries(resolutions, capacities);
+		final MetricTimeSeries existing = series.putIfAbsent(key, timeSeries);
+		return existing == null ? timeSeries : existing;
+	}
+
+	private static int keySize(final MetricsHistoryKey key) {
+		return 3 * Integer.SIZE / Byte.SIZE
+				+ key.getAbsolutePuName().getBytes(UTF8).length
+				+ key.getMetricName().getBytes(UTF8).length;
+	}
+
+	private static void writeKey(final ByteBuffer buffer, final MetricsHistoryKey key) {
+		writeString(buffer, key.getAbsolutePuName());
+		buffer.putInt(key.getInstanceId());
+		writeString(buffer, key.getMetricName());
+	}
+
+	private static MetricsHistoryKey readKey(final ByteBuffer buffer) {
+		final String absolutePuName = readString(buffer);
+		final int instanceId = buffer.getInt();
+		final String metricName = readString(buffer);
+		return new MetricsHistoryKey(absolutePuName, instanceId, metricName);
+	}
+
+	private static void writeString(final ByteBuffer buffer, final String value) {
+		final byte[] bytes = value.getBytes(UTF8);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.out;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudifysource.rest.command.CommandManager;
+import org.cloudifysource.rest.util.PrimitiveWrapper;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Writes the result of an Admin REST API request straight to a JSON generator.
+ * <p>
+ * The output is the same document {@link OutputDispatcher#outputResultObjectToMap(CommandManager, String, String)}
+ * builds, without the intermediate maps and with the getters of each class taken from {@link GetterMetadata}.
+ * Top level keys are written in sorted order, as the map based output did.
+ * </p>
+ *
+ * @since 2.7.1
+ */
+public class AdminJsonWriter {
+
+	private static final String ELEMENTS_SUFFIX = "-Elements";
+	private static final String SIZE_SUFFIX = "-Size";
+	private static final String ENUMERATOR_SUFFIX = "-Enumerator";
+
+	private final String hostAddress;
+	private final String hostContext;
+
+	/**
+	 * @param hostAddress
+	 *            the protocol, host and port links in the output start with.
+	 * @param hostContext
+	 *            the context path of the REST application.
+	 */
+	public AdminJsonWriter(final String hostAddress, final String hostContext) {
+		this.hostAddress = hostAddress;
+		this.hostContext = hostContext;
+	}
+
+	/**
+	 * Writes the final object of the executed commands as a JSON object.
+	 *
+	 * @param manager
+	 *            the command manager, after its commands were run.
+	 * @param generator
+	 *            the generator to write to. It is not flushed or closed.
+	 * @throws IOException
+	 *             if writing failed.
+	 */
+	public void write(final CommandManager manager, final JsonGenerator generator) throws IOException {
+		final Object object = manager.getFinalCommand().getCommandObject();
+		final String commandName = manager.getFinalCommandName();
+		final String commandURL = getRelativePathURL(manager.getCommandURL());
+
+		generator.writeStartObject();
+		if (OutputUtils.isNull(object)) {
+			generator.writeStringField(commandName, OutputUtils.NULL_OBJECT_DENOTER);
+		} else {
+			final Class<?> aClass = object.getClass();
+			// a collection is the last object, its command name is already the last part of the url.
+			if (aClass.isArray()) {
+				writeArray(object, commandURL, commandName, generator);
+			} else if (Map.class.isAssignableFrom(aClass)) {
+				writeMap(object, commandURL, commandName, generator);
+			} else if (List.class.isAssignableFrom(aClass)) {
+				writeList(object, commandURL, commandName, generator);
+			} else {
+				writeObjectFields(object, commandURL, commandName, generator);
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	private void writeObjectFields(final Object object, final String commandURL, final String rawCommandName,
+			final JsonGenerator generator) throws IOException {
+		final Class<?> aClass = object.getClass();
+		if (PrimitiveWrapper.is(aClass)) {
+			generator.writeStringField(rawCommandName, object.toString());
+			return;
+		}
+
+		for (final GetterMetadata.Getter getter : GetterMetadata.forClass(aClass).getGetters()) {
+			final String commandName = getter.getCommandName();
+			final String nextCommandURL = commandURL + "/" + commandName;
+			Object resultObject;
+
+			switch (getter.getKind()) {
+			case DETAILS:
+				resultObject = getter.invoke(object);
+				if (!OutputUtils.isNull(resultObject)) {
+					generator.writeObjectFieldStart(commandName);
+					writeObjectFields(resultObject, nextCommandURL, commandName, generator);
+					generator.writeEndObject();
+				}
+				break;
+			case ARRAY:
+				writeArray(getter.invoke(object), nextCommandURL, commandName, generator);
+				break;
+			case MAP:
+				writeMap(getter.invoke(object), nextCommandURL, commandName, generator);
+				break;
+			case LIST:
+				writeList(getter.invoke(object), nextCommandURL, commandName, generator);
+				break;
+			case PRIMITIVE:
+				resultObject = getter.invoke(object);
+				if (!OutputUtils.isNull(resultObject)) {
+					generator.writeStringField(commandName, resultObject.toString());
+				}
+				break;
+			default:
+				generator.writeStringField(commandName, nextCommandURL);
+				resultObject = getter.invoke(object);
+				// Special treatment for enum objects, an enum owner takes precedence as in the map based output.
+				if (aClass.isEnum()) {
+					generator.writeStringField(commandName + ENUMERATOR_SUFFIX, object.toString());
+				} else if (!OutputUtils.isNull(resultObject) && resultObject.getClass().isEnum()) {
+					generator.writeStringField(commandName + ENUMERATOR_SUFFIX, resultObject.toString());
+				}
+				break;
+			}
+		}
+	}
+
+	private void writeArray(final Object arrayObject, final String url, final String commandName,
+			final JsonGenerator generator) throws IOException {
+		if (OutputUtils.isNull(arrayObject)) {
+			return;
+		}
+		final int arrayLength = Array.getLength(arrayObject);
+		generator.writeArrayFieldStart(commandName + ELEMENTS_SUFFIX);
+		for (int i = 0; i < arrayLength; i++) {
+			generator.writeString(url + "/" + i);
+		}
+		generator.writeEndArray();
+		generator.writeNumberField(commandName + SIZE_SUFFIX, arrayLength);
+	}
+
+	private void writeList(final Object listObject, final String url, final String commandName,
+			final JsonGenerator generator) throws IOException {
+		if (OutputUtils.isNull(listObject)) {
+			return;
+		}
+		final int listSize = ((List<?>) listObject).size();
+		// the list links are written under the size key, as the map based output does.
+		generator.writeArrayFieldStart(commandName + SIZE_SUFFIX);
+		for (int i = 0; i < listSize; i++) {
+			generator.writeString(url + "/" + i);
+		}
+		generator.writeEndArray();
+	}
+
+	private void writeMap(final Object mapObject, final String url, final String commandName,
+			final JsonGenerator generator) throws IOException {
+		if (OutputUtils.isNull(mapObject)) {
+			return;
+		}
+		generator.writeArrayFieldStart(commandName + ELEMENTS_SUFFIX);
+		for (final Object key : ((Map<?, ?>) mapObject).keySet()) {
+			generator.writeString(url + "/" + key.toString().replace(" ", "%20"));
+		}
+		generator.writeEndArray();
+	}
+
+	private String getRelativePathURL(final String url) {
+		final int contextIndex = url.indexOf(hostContext + "/admin");
+		return hostAddress + url.substring(contextIndex);
+	}
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.out;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.cloudifysource.rest.util.NotFoundHttpException;
+import org.cloudifysource.rest.util.PrimitiveWrapper;
+
+/**
+ * The getters of a class that are exposed by the Admin REST API, resolved once per class.
+ * <p>
+ * Scanning {@link Class#getMethods()} and filtering it with {@link OutputUtils#isValidObjectGetter(Method)} used to
+ * happen for every object of every request. The classes of the Admin object graph are few and fixed, so the result
+ * is computed on first use and kept for the lifetime of the class loader.
+ * </p>
+ *
+ * @since 2.7.1
+ */
+public final class GetterMetadata {
+
+	private static final ConcurrentMap<Class<?>, GetterMetadata> CACHE =
+			new ConcurrentHashMap<Class<?>, GetterMetadata>();
+
+	private final Class<?> type;
+	private final List<Getter> getters;
+	private final ConcurrentMap<String, Getter> gettersByCommand = new ConcurrentHashMap<String, Getter>();
+
+	private GetterMetadata(final Class<?> type) {
+		this.type = type;
+		// sorted by command name, so the output keys of consecutive getters come out in order.
+		final Map<String, Getter> sorted = new TreeMap<String, Getter>();
+		for (final Method method : type.getMethods()) {
+			if (!method.isBridge() && OutputUtils.isValidObjectGetter(method)) {
+				final Getter getter = new Getter(type, method);
+				if (!sorted.containsKey(getter.getCommandName())) {
+					sorted.put(getter.getCommandName(), getter);
+				}
+			}
+		}
+		this.getters = Collections.unmodifiableList(new ArrayList<Getter>(sorted.values()));
+	}
+
+	/**
+	 * @param type
+	 *            the class of the object to output.
+	 * @return the getter metadata of the class.
+	 */
+	public static GetterMetadata forClass(final Class<?> type) {
+		GetterMetadata metadata = CACHE.get(type);
+		if (metadata == null) {
+			final GetterMetadata created = new GetterMetadata(type);
+			metadata = CACHE.putIfAbsent(type, created);
+			if (metadata == null) {
+				metadata = created;
+			}
+		}
+		return metadata;
+	}
+
+	/**
+	 * @return the valid getters of the class, sorted by command name.
+	 */
+	public List<Getter> getGetters() {
+		return getters;
+	}
+
+	/**
+	 * Resolves the getter a command in the request path refers to, e.g. "ProcessingUnits" to getProcessingUnits().
+	 *
+	 * @param rawCommand
+	 *            the command, as it appears in the path.
+	 * @return the getter.
+	 * @throws NotFoundHttpException
+	 *             if the class has no such getter.
+	 */
+	public Getter getCommandGetter(final String rawCommand) {
+		Getter getter = gettersByCommand.get(rawCommand);
+		if (getter == null) {
+			// only successful lookups are kept, the commands come from the request path.
+			getter = new Getter(type, resolveCommandMethod(rawCommand));
+			gettersByCommand.putIfAbsent(rawCommand, getter);
+		}
+		return getter;
+	}
+
+	private Method resolveCommandMethod(final String rawCommand) {
+		final Method[] methods = type.getMethods();
+		final String suffix = Character.toUpperCase(rawCommand.charAt(0)) + rawCommand.substring(1);
+		final String getterMethodSignature = "get" + suffix;
+		final String isMethodSignature = "is" + suffix;
+		String getterCommand = null;
+		for (final Method method : methods) {
+			if (method.getName().equals(getterMethodSignature)) {
+				getterCommand = getterMethodSignature;
+				break;
+			}
+			if (method.getName().equals(isMethodSignature)) {
+				getterCommand = isMethodSignature;
+				break;
+			}
+		}
+		if (getterCommand == null) {
+			throw new NotFoundHttpException("No method signature found for command: " + rawCommand);
+		}
+		for (final Method method : methods) {
+			if (getterCommand.equals(method.getName()) && OutputUtils.isValidObjectGetter(method)) {
+				return method;
+			}
+		}
+		throw new NotFoundHttpException("No method signature found for method: " + getterCommand);
+	}
+
+	/**
+	 * The way a getter's result is output.
+	 */
+	public enum Kind {
+		/** e.g. getMemcachedDetails(), output inline as a nested object. */
+		DETAILS,
+		/** output as element links and size. */
+		ARRAY,
+		/** output as element links. */
+		MAP,
+		/** output as element links. */
+		LIST,
+		/** output as a string value. */
+		PRIMITIVE,
+		/** output as a link, and the enum value if it is one. */
+		OBJECT
+	}
+
+	/**
+	 * A getter of a specific class, with everything that depends only on the class and the method computed upfront.
+	 */
+	public static final class Getter {
+
+		private final Method method;
+		private final String commandName;
+		private final Kind kind;
+		private final boolean blacklisted;
+		private final String dataSetDescription;
+
+		Getter(final Class<?> type, final Method method) {
+			this.method = method;
+			this.commandName = OutputUtils.getGetterCommandName(method.getName());
+			this.kind = kindOf(method);
+			this.blacklisted = OutputUtils.isBlacklisted(method, type);
+			if (OutputUtils.isDataSet(type)) {
+				this.dataSetDescription = "DataSet " + type.getTypeParameters()[0];
+			} else {
+				this.dataSetDescription = null;
+				// see OutputUtils.safeInvoke, done once here rather than on every call.
+				if (!method.isAccessible()) {
+					method.setAccessible(true);
+				}
+			}
+		}
+
+		private static Kind kindOf(final Method method) {
+			final Class<?> returnType = method.getReturnType();
+			final String name = method.getName();
+			if (name.startsWith("get") && name.endsWith("Details")) {
+				return Kind.DETAILS;
+			} else if (returnType.isArray()) {
+				return Kind.ARRAY;
+			} else if (Map.class.isAssignableFrom(returnType)) {
+				return Kind.MAP;
+			} else if (List.class.isAssignableFrom(returnType)) {
+				return Kind.LIST;
+			} else if (PrimitiveWrapper.is(returnType)) {
+				return Kind.PRIMITIVE;
+			}
+			return Kind.OBJECT;
+		}
+
+		/**
+		 * Invokes the getter, with the same semantics as {@link OutputUtils#safeInvoke(Method, Object)}.
+		 *
+		 * @param target
+		 *            the object to invoke the getter on, of the class this getter was resolved for.
+		 * @return the result, {@link OutputUtils#NULL_OBJECT_DENOTER} for null.
+		 */
+		public Object invoke(final Object target) {
+			if (blacklisted) {
+				return null;
+			}
+			if (dataSetDescription != null) {
+				return dataSetDescription;
+			}
+			return OutputUtils.invokeGetter(method, target);
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		public String getCommandName() {
+			return commandName;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+	}
+}
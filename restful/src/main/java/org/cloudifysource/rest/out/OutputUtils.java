@@ -19,11 +19,11 @@ import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.cloudifysource.rest.command.CommandManager;
 import org.cloudifysource.rest.util.AdminTypeBlacklist;
@@ -41,6 +41,8 @@ public class OutputUtils {
 	private static String hostAddress;
 	private static String hostContext;
 
+	private static final Set<String> BLACK_LIST = getBlackList();
+
 	private static HashSet<String> getBlackList() {
 		final HashSet<String> blackList = new HashSet<String>();
 		blackList
@@ -180,17 +182,16 @@ public class OutputUtils {
 			return;
 		}
 
-		final List<Method> validGetterMethods = getValidGetters(aClass);
 		Object resultObject = null;
 		String commandName;
 
-		for (final Method method : validGetterMethods) {
-			final Class<?> methodReturnType = method.getReturnType();
-			commandName = getGetterCommandName(method.getName());
+		for (final GetterMetadata.Getter getter : GetterMetadata.forClass(aClass).getGetters()) {
+			commandName = getter.getCommandName();
 			String nextCommandURL = null;
 
-			if (isDetailsGetter(method)) {
-				resultObject = safeInvoke(method, object);
+			switch (getter.getKind()) {
+			case DETAILS:
+				resultObject = getter.invoke(object);
 				if (!isNull(resultObject)) {
 					final HashMap<String, Object> detailsMap = new HashMap<String, Object>();
 					// Recurse to get details result in a new map.
@@ -198,36 +199,40 @@ public class OutputUtils {
 							+ commandName, commandName, detailsMap);
 					outputMap.put(commandName, detailsMap);
 				}
-			} else if (methodReturnType.isArray()) {
-				resultObject = safeInvoke(method, object);
+				break;
+			case ARRAY:
+				resultObject = getter.invoke(object);
 				nextCommandURL = getNextCommandUrl(commandURL, commandName,
 						false);
 				OutputUtils.outputArrayToMap(resultObject, outputMap,
 						nextCommandURL);
-			} else if (Map.class.isAssignableFrom(methodReturnType)) {
-				resultObject = safeInvoke(method, object);
+				break;
+			case MAP:
+				resultObject = getter.invoke(object);
 				nextCommandURL = getNextCommandUrl(commandURL, commandName,
 						false);
 				OutputUtils.outputMapToMap(resultObject, outputMap,
 						nextCommandURL);
-			} else if (List.class.isAssignableFrom(methodReturnType)) {
-				resultObject = safeInvoke(method, object);
+				break;
+			case LIST:
+				resultObject = getter.invoke(object);
 				nextCommandURL = getNextCommandUrl(commandURL, commandName,
 						false);
 				OutputUtils.outputListToMap(resultObject, outputMap,
 						nextCommandURL);
-			} else if (PrimitiveWrapper.is(methodReturnType)) {
-				resultObject = safeInvoke(method, object);
+				break;
+			case PRIMITIVE:
+				resultObject = getter.invoke(object);
 				if (!isNull(resultObject)) {
 					outputMap.put(commandName, resultObject.toString());
 				}
-
-			} else {
+				break;
+			default:
 				nextCommandURL = getNextCommandUrl(commandURL, commandName,
 						false);
 				outputMap.put(commandName, nextCommandURL);
 				// Special treatment for enum objects.
-				resultObject = safeInvoke(method, object);
+				resultObject = getter.invoke(object);
 				if (!isNull(resultObject)) {
 					if (resultObject.getClass().isEnum()) {
 						outputMap.put(commandName + "-Enumerator",
@@ -238,6 +243,7 @@ public class OutputUtils {
 					outputMap.put(commandName + "-Enumerator",
 							object.toString());
 				}
+				break;
 			}
 		}
 
@@ -264,7 +270,7 @@ public class OutputUtils {
 	}
 
 	// Trunk is/get
-	private static String getGetterCommandName(final String getterName) {
+	static String getGetterCommandName(final String getterName) {
 		String commandName = null;
 		if (getterName.startsWith("is")) {
 			commandName = getterName.substring(2);
@@ -274,25 +280,6 @@ public class OutputUtils {
 		return commandName;
 	}
 
-	// return a list of valid getters.
-	private static List<Method> getValidGetters(final Class<?> aClass) {
-		final Method[] allMethods = aClass.getMethods();
-		final List<Method> validGetterMethods = new ArrayList<Method>();
-
-		for (final Method method : allMethods) {
-			if (isValidObjectGetter(method)) {
-				validGetterMethods.add(method);
-			}
-		}
-		return validGetterMethods;
-	}
-
-	// e.g. getMemcachedDetails()
-	private static boolean isDetailsGetter(final Method getter) {
-		final String name = getter.getName();
-		return name.startsWith("get") && name.endsWith("Details");
-	}
-
 	public static boolean isValidObjectGetter(final Method method) {
 		final String methodName = method.getName();
 		final Class<?> retType = method.getReturnType();
@@ -349,35 +336,41 @@ public class OutputUtils {
 	}
 
 	public static Object safeInvoke(final Method method, final Object obj) {
-		Object retval = null;
-		final String className = obj.getClass().getName();
-		final String methodName = method.getName();
-		try {
-			// if the method is blacklisted, we ignore.
-			if (getBlackList().contains(methodName + " " + className)) {
-				return null;
-			}
-			if (!Map.class.isAssignableFrom(obj.getClass())
-					&& !obj.getClass().isArray()
-					&& !List.class.isAssignableFrom(obj.getClass())) {
-				// This is a workaround for a known bug in the JVM
-				// where method.invoke throws IllegalAccessException on inner
-				// class public method.
-				// link:
-				// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4819108
-				// p.s: no private method should arrive here. private methods
-				// are filtered in getValidGetters.
-				if (!method.isAccessible()) {
-					method.setAccessible(true);
-				}
-				retval = method.invoke(obj, (Object[]) null);
-			} else {
-				return "DataSet " + obj.getClass().getTypeParameters()[0];
-			}
-
+		// if the method is blacklisted, we ignore.
+		if (isBlacklisted(method, obj.getClass())) {
+			return null;
 		}
+		if (isDataSet(obj.getClass())) {
+			return "DataSet " + obj.getClass().getTypeParameters()[0];
+		}
+		// This is a workaround for a known bug in the JVM
+		// where method.invoke throws IllegalAccessException on inner
+		// class public method.
+		// link:
+		// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4819108
+		// p.s: no private method should arrive here. private methods
+		// are filtered by isValidObjectGetter.
+		if (!method.isAccessible()) {
+			method.setAccessible(true);
+		}
+		return invokeGetter(method, obj);
+	}
 
-		catch (final InvocationTargetException e) {
+	static boolean isBlacklisted(final Method method, final Class<?> objectClass) {
+		return BLACK_LIST.contains(method.getName() + " " + objectClass.getName());
+	}
+
+	static boolean isDataSet(final Class<?> objectClass) {
+		return Map.class.isAssignableFrom(objectClass)
+				|| objectClass.isArray()
+				|| List.class.isAssignableFrom(objectClass);
+	}
+
+	static Object invokeGetter(final Method method, final Object obj) {
+		Object retval = null;
+		try {
+			retval = method.invoke(obj, (Object[]) null);
+		} catch (final InvocationTargetException e) {
 			// TODO: Create exception class that will be handled in a different
 			// manner in the AdminAPIController
 			throw new RuntimeException(
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openspaces.admin.gsc.GridServiceContainer;
+
+import com.gigaspaces.log.ContinuousLogEntryMatcher;
+import com.gigaspaces.log.LogEntries;
+import com.gigaspaces.log.LogEntry;
+import com.gigaspaces.log.LogEntryMatcher;
+import com.gigaspaces.log.LogEntryMatchers;
+
+/**
+ * Tails the logs of several service instances at once.
+ * <p>
+ * All containers are queried concurrently, each under its own timeout, and the entries are merged by timestamp
+ * before being written line by line, prefixed by their instance id. In follow mode every container keeps a
+ * {@link ContinuousLogEntryMatcher}, so each poll only transfers the entries written since the previous one.
+ * </p>
+ *
+ * @since 2.7.1
+ */
+public class AggregatedLogTailer {
+
+	private static final Logger logger = Logger.getLogger(AggregatedLogTailer.class.getName());
+
+	private static final char LINE_SEPARATOR = '\n';
+
+	private final Map<Integer, GridServiceContainer> containers;
+	private final ExecutorService executor;
+	private final long queryTimeoutMillis;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param containers
+	 *            the containers to tail, by service instance id.
+	 * @param executor
+	 *            runs the container queries.
+	 * @param queryTimeoutMillis
+	 *            the time a single container query may take before it is skipped.
+	 */
+	public AggregatedLogTailer(final Map<Integer, GridServiceContainer> containers, final ExecutorService executor,
+			final long queryTimeoutMillis) {
+		this.containers = new LinkedHashMap<Integer, GridServiceContainer>(containers);
+		this.executor = executor;
+		this.queryTimeoutMillis = queryTimeoutMillis;
+	}
+
+	/**
+	 * Returns the last lines of each container, queried concurrently.
+	 *
+	 * @param numLines
+	 *            the number of lines to tail from each container.
+	 * @return the log entries of each instance, by instance id, in the order the containers were given.
+	 */
+	public Map<Integer, List<LogEntry>> tail(final int numLines) {
+		final Map<Integer, LogEntryMatcher> matchers = new LinkedHashMap<Integer, LogEntryMatcher>();
+		for (final Integer instanceId : containers.keySet()) {
+			matchers.put(instanceId, LogEntryMatchers.lastN(numLines));
+		}
+		final Map<Integer, Future<List<LogEntry>>> pending = new LinkedHashMap<Integer, Future<List<LogEntry>>>();
+		try {
+			return query(matchers, pending);
+		} finally {
+			cancelAll(pending);
+		}
+	}
+
+	/**
+	 * Writes the last lines of all containers, merged by timestamp, and optionally keeps writing new lines until
+	 * the follow period ends or the writer fails (e.g. the client disconnected).
+	 *
+	 * @param out
+	 *            the writer to write the lines into, flushed after every batch.
+	 * @param numLines
+	 *            the number of lines to tail from each container.
+	 * @param followMillis
+	 *            how long to keep following new lines, 0 to return after the initial tail.
+	 * @param pollIntervalMillis
+	 *            the interval between polls in follow mode.
+	 * @throws IOException
+	 *             if writing failed.
+	 * @throws InterruptedException
+	 *             if interrupted while following.
+	 */
+	public void stream(final Writer out, final int numLines, final long followMillis, final long pollIntervalMillis)
+			throws IOException, InterruptedException {
+		final Map<Integer, LogEntryMatcher> matchers = new LinkedHashMap<Integer, LogEntryMatcher>();
+		for (final Integer instanceId : containers.keySet()) {
+			matchers.put(instanceId,
+					new ContinuousLogEntryMatcher(LogEntryMatchers.lastN(numLines), LogEntryMatchers.all()));
+		}
+
+		final long followUntil = System.currentTimeMillis() + followMillis;
+		final Map<Integer, Future<List<LogEntry>>> pending = new LinkedHashMap<Integer, Future<List<LogEntry>>>();
+		try {
+			writeMerged(out, query(matchers, pending));
+			while (System.currentTimeMillis() < followUntil) {
+				Thread.sleep(pollIntervalMillis);
+				// the same matchers are reused, so only entries written since the last poll are returned.
+				writeMerged(out, query(matchers, pending));
+			}
+		} finally {
+			cancelAll(pending);
+		}
+	}
+
+	/**
+	 * Queries the containers, each with its matcher. A query that times out is left in {@code pending} and is
+	 * collected by the next call instead of being queried again, since a continuous matcher is not thread-safe and
+	 * must not be used by two queries at once.
+	 */
+	private Map<Integer, List<LogEntry>> query(final Map<Integer, LogEntryMatcher> matchers,
+			final Map<Integer, Future<List<LogEntry>>> pending) {
+		for (final Map.Entry<Integer, LogEntryMatcher> entry : matchers.entrySet()) {
+			if (pending.containsKey(entry.getKey())) {
+				continue;
+			}
+			final GridServiceContainer container = containers.get(entry.getKey());
+			final LogEntryMatcher matcher = entry.getValue();
+			pending.put(entry.getKey(), executor.submit(new Callable<List<LogEntry>>() {
+				@Override
+				public List<LogEntry> call() {
+					final LogEntries logEntries = container.logEntries(matcher);
+					final List<LogEntry> result = new ArrayList<LogEntry>();
+					for (final LogEntry logEntry : logEntries) {
+						result.add(logEntry);
+					}
+					return result;
+				}
+			}));
+		}
+
+		final long deadline = System.currentTimeMillis() + queryTimeoutMillis;
+		final Map<Integer, List<LogEntry>> results = new LinkedHashMap<Integer, List<LogEntry>>();
+		final Iterator<Map.Entry<Integer, Future<List<LogEntry>>>> iterator = pending.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<Integer, Future<List<LogEntry>>> entry = iterator.next();
+			final Integer instanceId = entry.getKey();
+			try {
+				final long remaining = Math.max(0, deadline - System.currentTimeMillis());
+				results.put(instanceId, entry.getValue().get(remaining, TimeUnit.MILLISECONDS));
+				iterator.remove();
+			} catch (final TimeoutException e) {
+				// still running with the matcher, left pending.
+				logger.log(Level.WARNING, "Log tail of instance #" + instanceId + " did not complete within "
+						+ queryTimeoutMillis + " ms");
+				results.put(instanceId, Collections.<LogEntry>emptyList());
+			} catch (final ExecutionException e) {
+				iterator.remove();
+				logger.log(Level.WARNING, "Failed to tail the log of instance #" + instanceId, e.getCause());
+				results.put(instanceId, Collections.<LogEntry>emptyList());
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				results.put(instanceId, Collections.<LogEntry>emptyList());
+			}
+		}
+		return results;
+	}
+
+	private static void cancelAll(final Map<Integer, Future<List<LogEntry>>> pending) {
+		for (final Future<List<LogEntry>> future : pending.values()) {
+			future.cancel(true);
+		}
+		pending.clear();
+	}
+
+	private void writeMerged(final Writer out, final Map<Integer, List<LogEntry>> entriesByInstance)
+			throws IOException {
+		final List<InstanceLogEntry> merged = new ArrayList<InstanceLogEntry>();
+		for (final Map.Entry<Integer, List<LogEntry>> entry : entriesByInstance.entrySet()) {
+			for (final LogEntry logEntry : entry.getValue()) {
+				// file markers carry no text and no meaningful timestamp.
+				if (logEntry.isLog()) {
+					merged.add(new InstanceLogEntry(entry.getKey(), logEntry));
+				}
+			}
+		}
+		if (merged.isEmpty()) {
+			return;
+		}
+		// a stable sort, entries of the same instance with equal timestamps keep their order.
+		Collections.sort(merged, BY_TIMESTAMP);
+		for (final InstanceLogEntry entry : merged) {
+			out.write('[');
+			out.write(Integer.toString(entry.instanceId));
+			out.write("] ");
+			out.write(entry.logEntry.getText());
+			out.write(LINE_SEPARATOR);
+		}
+		out.flush();
+	}
+
+	private static final Comparator<InstanceLogEntry> BY_TIMESTAMP = new Comparator<InstanceLogEntry>() {
+		@Override
+		public int compare(final InstanceLogEntry o1, final InstanceLogEntry o2) {
+			final long t1 = o1.logEntry.getTimestamp();
+			final long t2 = o2.logEntry.getTimestamp();
+			return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+		}
+	};
+
+	/**
+	 * A log entry and the instance it was read from.
+	 */
+	private static final class InstanceLogEntry {
+		private final int instanceId;
+		private final LogEntry logEntry;
+
+		InstanceLogEntry(final int instanceId, final LogEntry logEntry) {
+			this.instanceId = instanceId;
+			this.logEntry = logEntry;
+		}
+	}
+}
@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.rest.response.ApplicationDescription;
+import org.cloudifysource.dsl.rest.response.ServiceDescription;
+import org.cloudifysource.security.ExtendedAuthentication;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.application.Application;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitInstanceStatistics;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceRemovedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEvent;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitLifecycleEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitStatusChangedEvent;
+import org.openspaces.pu.service.ServiceMonitors;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Keeps the service descriptions served by the application listing endpoints, so a listing request only assembles
+ * cached descriptions instead of re-inspecting every processing unit instance of every application.
+ * <p>
+ * A service description is dropped whenever the admin reports a change to its processing unit: the processing unit
+ * was added or removed, its status changed, one of its instances was added or removed or an instance reported a new
+ * USM state. Not every change is pushed by the admin (e.g. a USM state is only reported while statistics are
+ * monitored), so a description is also recomputed once it is older than the configured max age.
+ * <p>
+ * Every change bumps a version number, which is exposed as an ETag so clients can issue conditional GETs.
+ *
+ * @since 2.7.1
+ */
+public class ApplicationDescriptionCache {
+
+	private static final Logger logger = Logger.getLogger(ApplicationDescriptionCache.class.getName());
+
+	private static final String USM_MONITORS_ID = "USM";
+
+	private final Admin admin;
+	private final ApplicationDescriptionFactory factory;
+	private final long maxAgeMillis;
+
+	private final Map<String, CachedServiceDescription> descriptions =
+			new ConcurrentHashMap<String, CachedServiceDescription>();
+	// the version at which each processing unit was last changed.
+	private final Map<String, Long> lastChanged = new ConcurrentHashMap<String, Long>();
+	// seeded with the current time so ETags handed out before a restart do not match afterwards.
+	private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+	private final ProcessingUnitLifecycleEventListener processingUnitListener =
+			new ProcessingUnitLifecycleEventListener() {
+
+				@Override
+				public void processingUnitAdded(final ProcessingUnit processingUnit) {
+					invalidate(processingUnit.getName());
+				}
+
+				@Override
+				public void processingUnitRemoved(final ProcessingUnit processingUnit) {
+					invalidate(processingUnit.getName());
+					descriptions.remove(processingUnit.getName());
+				}
+
+				@Override
+				public void processingUnitStatusChanged(final ProcessingUnitStatusChangedEvent event) {
+					invalidate(event.getProcessingUnit().getName());
+				}
+			};
+
+	private final ProcessingUnitInstanceAddedEventListener instanceAddedListener =
+			new ProcessingUnitInstanceAddedEventListener() {
+
+				@Override
+				public void processingUnitInstanceAdded(final ProcessingUnitInstance processingUnitInstance) {
+					invalidate(processingUnitInstance.getProcessingUnit().getName());
+				}
+			};
+
+	private final ProcessingUnitInstanceRemovedEventListener instanceRemovedListener =
+			new ProcessingUnitInstanceRemovedEventListener() {
+
+				@Override
+				public void processingUnitInstanceRemoved(final ProcessingUnitInstance processingUnitInstance) {
+					invalidate(processingUnitInstance.getProcessingUnit().getName());
+				}
+			};
+
+	private final ProcessingUnitInstanceStatisticsChangedEventListener statisticsListener =
+			new ProcessingUnitInstanceStatisticsChangedEventListener() {
+
+				@Override
+				public void processingUnitInstanceStatisticsChanged(
+						final ProcessingUnitInstanceStatisticsChangedEvent event) {
+					// statistics are sampled continuously, only a change of the USM state affects the description.
+					final Object state = getUsmStateId(event.getStatistics());
+					final Object previousState = getUsmStateId(event.getPreviousStatistics());
+					if (state == null ? previousState != null : !state.equals(previousState)) {
+						invalidate(event.getProcessingUnitInstance().getProcessingUnit().getName());
+					}
+				}
+			};
+
+	private boolean started = false;
+
+	/**
+	 * Creates a cache over the given admin. Listeners are only registered once {@link #start()} is called.
+	 *
+	 * @param admin
+	 *            The admin reporting the processing units.
+	 * @param maxAgeMillis
+	 *            The time a cached service description is served before it is recomputed, even if no change was
+	 *            reported for it. 0 disables caching.
+	 */
+	public ApplicationDescriptionCache(final Admin admin, final long maxAgeMillis) {
+		this.admin = admin;
+		this.factory = new ApplicationDescriptionFactory(admin);
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * Registers the admin listeners that keep the cache up to date.
+	 */
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+		admin.getProcessingUnits().addLifecycleListener(processingUnitListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceAdded().add(instanceAddedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceRemoved().add(instanceRemovedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceStatisticsChanged().add(statisticsListener);
+		started = true;
+	}
+
+	/**
+	 * Removes the admin listeners and drops all cached descriptions.
+	 */
+	public synchronized void stop() {
+		if (!started) {
+			return;
+		}
+		admin.getProcessingUnits().removeLifecycleListener(processingUnitListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceAdded().remove(instanceAddedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceRemoved().remove(instanceRemovedListener);
+		admin.getProcessingUnits().getProcessingUnitInstanceStatisticsChanged().remove(statisticsListener);
+		descriptions.clear();
+		lastChanged.clear();
+		started = false;
+	}
+
+	/**
+	 * Returns the current version of the cached model. The version grows whenever a description changes, so a
+	 * version read before assembling a response is never newer than the response itself.
+	 *
+	 * @return the current version.
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Returns the ETag header value representing the given version, as seen by the given viewer. Listings are
+	 * filtered per user, so the same version yields a different ETag for every principal, set of authorities and set
+	 * of authorization groups.
+	 *
+	 * @param modelVersion
+	 *            a version returned by {@link #getVersion()}.
+	 * @param viewer
+	 *            the viewer, as returned by {@link #getViewer(Authentication)}.
+	 * @return the quoted ETag.
+	 */
+	public static String toETag(final long modelVersion, final String viewer) {
+		return "\"" + Long.toHexString(modelVersion) + "-" + Integer.toHexString(viewer.hashCode()) + "\"";
+	}
+
+	/**
+	 * Returns a string identifying the principal, the authorities and the authorization groups a response is filtered
+	 * for.
+	 *
+	 * @param authentication
+	 *            the current authentication, may be null if security is off.
+	 * @return the viewer string.
+	 */
+	public static String getViewer(final Authentication authentication) {
+		if (authentication == null) {
+			return "";
+		}
+		final List<String> authorities = new ArrayList<String>();
+		for (final GrantedAuthority authority : authentication.getAuthorities()) {
+			authorities.add(authority.getAuthority());
+		}
+		Collections.sort(authorities);
+		final List<String> authGroups = new ArrayList<String>();
+		if (authentication instanceof ExtendedAuthentication) {
+			authGroups.addAll(((ExtendedAuthentication) authentication).getAuthGroups());
+			Collections.sort(authGroups);
+		}
+		return authentication.getName() + authorities + authGroups;
+	}
+
+	/**
+	 * Checks if an If-None-Match header value matches the given version, as seen by the given viewer.
+	 *
+	 * @param ifNoneMatch
+	 *            the If-None-Match header value, may be null.
+	 * @param modelVersion
+	 *            a version returned by {@link #getVersion()}.
+	 * @param viewer
+	 *            the viewer, as returned by {@link #getViewer(Authentication)}.
+	 * @return true if the client already holds the representation of this version.
+	 */
+	public static boolean isNotModified(final String ifNoneMatch, final long modelVersion, final String viewer) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		final String eTag = toETag(modelVersion, viewer);
+		for (final String candidate : ifNoneMatch.split(",")) {
+			final String trimmed = candidate.trim();
+			if (trimmed.equals(eTag) || trimmed.equals("W/" + eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the descriptions of all deployed applications, except the management application.
+	 *
+	 * @return a list of the application descriptions.
+	 */
+	public List<ApplicationDescription> getApplicationDescriptions() {
+		final List<ApplicationDescription> applicationDescriptions = new ArrayList<ApplicationDescription>();
+		for (final Application application : admin.getApplications()) {
+			if (!application.getName().equalsIgnoreCase(CloudifyConstants.MANAGEMENT_APPLICATION_NAME)) {
+				applicationDescriptions.add(getApplicationDescription(application));
+			}
+		}
+		return applicationDescriptions;
+	}
+
+	/**
+	 * Returns the description of the given application, assembled from the cached service descriptions.
+	 *
+	 * @param application
+	 *            the application.
+	 * @return the application description.
+	 */
+	public ApplicationDescription getApplicationDescription(final Application application) {
+		final List<ServiceDescription> serviceDescriptions = new ArrayList<ServiceDescription>();
+		for (final ProcessingUnit processingUnit : application.getProcessingUnits()) {
+			serviceDescriptions.add(getServiceDescription(processingUnit));
+		}
+		return factory.createApplicationDescription(application, serviceDescriptions);
+	}
+
+	/**
+	 * Returns the description of the given processing unit, recomputing it if it changed or expired.
+	 *
+	 * @param processingUnit
+	 *            the processing unit.
+	 * @return the service description.
+	 */
+	public ServiceDescription getServiceDescription(final ProcessingUnit processingUnit) {
+		final String name = processingUnit.getName();
+		final long now = System.currentTimeMillis();
+		final CachedServiceDescription cached = descriptions.get(name);
+		if (cached != null && isValid(name, cached, now)) {
+			return cached.description;
+		}
+
+		// read the version before computing, so a change reported while computing invalidates the result.
+		final long computedAtVersion = version.get();
+		final ServiceDescription description = factory.getServiceDescription(processingUnit);
+		final String fingerprint = description.toString();
+		if (cached != null && !cached.fingerprint.equals(fingerprint)) {
+			// an unreported change, found when the cached description expired.
+			version.incrementAndGet();
+		}
+		if (maxAgeMillis > 0) {
+			descriptions.put(name, new CachedServiceDescription(description, fingerprint, now, computedAtVersion));
+		}
+		return description;
+	}
+
+	private boolean isValid(final String name, final CachedServiceDescription cached, final long now) {
+		if (now - cached.createdAt >= maxAgeMillis) {
+			return false;
+		}
+		final Long changedAtVersion = lastChanged.get(name);
+		return changedAtVersion == null || cached.computedAtVersion >= changedAtVersion;
+	}
+
+	private void invalidate(final String processingUnitName) {
+		if (processingUnitName == null) {
+			return;
+		}
+		lastChanged.put(processingUnitName, version.incrementAndGet());
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("Description of " + processingUnitName + " changed, version is now " + version.get());
+		}
+	}
+
+	private static Object getUsmStateId(final ProcessingUnitInstanceStatistics statistics) {
+		if (statistics == null) {
+			return null;
+		}
+		final Map<String, ServiceMonitors> monitors = statistics.getMonitors();
+		if (monitors == null) {
+			return null;
+		}
+		final ServiceMonitors usmMonitors = monitors.get(USM_MONITORS_ID);
+		if (usmMonitors == null || usmMonitors.getMonitors() == null) {
+			return null;
+		}
+		return usmMonitors.getMonitors().get(CloudifyConstants.USM_MONITORS_STATE_ID);
+	}
+
+	/**
+	 * A computed service description, with the version it reflects.
+	 */
+	private static final class CachedServiceDescription {
+		private final ServiceDescription description;
+		private final String fingerprint;
+		private final long createdAt;
+		private final long computedAtVersion;
+
+		CachedServiceDescription(final ServiceDescription description, final String fingerprint,
+				final long createdAt, final long computedAtVersion) {
+			this.description = description;
+			this.fingerprint = fingerprint;
+			this.createdAt = createdAt;
+			this.computedAtVersion = computedAtVersion;
+		}
+	}
+}
@@ -112,10 +112,23 @@ public class ApplicationDescriptionFactory {
      * @return the application description.
      */
     public ApplicationDescription getApplicationDescription(final Application application) {
+        return createApplicationDescription(application, getServicesDescription(application));
+    }
+
+    /**
+     * Creates an application description POJO out of already computed service descriptions.
+     *
+     * @param application
+     *            the application.
+     * @param serviceDescriptionList
+     *            the descriptions of the application's services.
+     * @return the application description.
+     */
+    ApplicationDescription createApplicationDescription(final Application application,
+            final List<ServiceDescription> serviceDescriptionList) {
 
         String applicationName = application.getName();
         final ApplicationDescription applicationDescription = new ApplicationDescription();
-    	List<ServiceDescription> serviceDescriptionList = getServicesDescription(application);
         logger.log(Level.FINE, "Creating application description for application " + applicationName);
         final DeploymentState applicationState = getApplicationState(serviceDescriptionList);
 
@@ -51,6 +51,8 @@ public class LifecycleEventsContainer {
 
 	private final Object lock = new Object();
 
+	private boolean closed = false;
+
 	private final Logger logger = Logger.getLogger(LifecycleEventsContainer.class.getName());
 
 	/**
@@ -78,6 +80,38 @@ public class LifecycleEventsContainer {
 		}
 	}
 
+	/**
+	 * Waits until there are events past the cursor position, the container is closed or the timeout expires. Lets
+	 * clients long poll for events instead of polling on a fixed interval.
+	 * 
+	 * @param curser
+	 *            the cursor position
+	 * @param timeoutMillis
+	 *            the maximal time to wait
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void waitForLifecycleEvents(final int curser, final long timeoutMillis) throws InterruptedException {
+		final long end = System.currentTimeMillis() + timeoutMillis;
+		synchronized (this.lock) {
+			long remaining = timeoutMillis;
+			while (!closed && curser >= this.eventsList.size() && remaining > 0) {
+				this.lock.wait(remaining);
+				remaining = end - System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Marks that no more events will be added, releasing clients waiting for events.
+	 */
+	public void close() {
+		synchronized (this.lock) {
+			this.closed = true;
+			this.lock.notifyAll();
+		}
+	}
+
 	/**
 	 * Checks if the lifecycle event already exists in the set of events. If
 	 * not, adds the formatted event message into the eventsList.
@@ -104,6 +138,7 @@ public class LifecycleEventsContainer {
 					this.lifecycleEventsSet.add(sortedMap.toString());
 					outputMessage = getParsedLifecyceEventMessageFromMap(sortedMap);
 					this.eventsList.add(outputMessage);
+					this.lock.notifyAll();
 					if (logger.isLoggable(Level.FINE)) {
 						logger.fine("Lifecycle Event: " + outputMessage);
 					}
@@ -128,6 +163,7 @@ public class LifecycleEventsContainer {
 			} else {
 				this.serviceInstanceCountEventsSet.add(event);
 				this.eventsList.add(event);
+				this.lock.notifyAll();
 				if (logger.isLoggable(Level.FINE)) {
 					logger.fine("Instance Count Event: " + event);
 				}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.openspaces.admin.dump.DumpResult;
+import org.openspaces.admin.machine.Machine;
+
+/**
+ * Generates the dumps of several machines concurrently and streams them into a single zip, one entry per machine.
+ * <p>
+ * Each dump is downloaded by the agent into a temporary file and copied into the zip as soon as it is ready, so the
+ * REST server never holds a dump in memory. The size limit applies to the sum of all dumps and is checked before each
+ * entry is written. Once it is reached the remaining dumps are cancelled. Machines whose dump failed or was skipped
+ * are listed in an {@value #ERRORS_ENTRY_NAME} entry at the end of the zip, because the response status can no
+ * longer be changed once streaming has started.
+ * </p>
+ *
+ * @since 2.7.1
+ */
+public class MachineDumpsCollector {
+
+	private static final Logger logger = Logger.getLogger(MachineDumpsCollector.class.getName());
+
+	/**
+	 * Name of the zip entry listing the machines whose dumps are missing.
+	 */
+	public static final String ERRORS_ENTRY_NAME = "errors.txt";
+
+	private static final String DUMP_ENTRY_SUFFIX = ".zip";
+	private static final String DUMP_REASON = "Rest_API";
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final File tempFolder;
+	private final String[] processors;
+	private final long fileSizeLimit;
+	private final int concurrency;
+
+	private final Set<File> pendingFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+	// set once the zip no longer takes dumps, dumps completing afterwards delete their own files.
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tempFolder
+	 *            the folder dumps are downloaded into.
+	 * @param processors
+	 *            the dump processors to run on each machine.
+	 * @param fileSizeLimit
+	 *            the maximum total size, in bytes, of all dumps.
+	 * @param concurrency
+	 *            the maximum number of dumps generated at the same time.
+	 */
+	public MachineDumpsCollector(final File tempFolder, final String[] processors, final long fileSizeLimit,
+			final int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("concurrency must be positive, got " + concurrency);
+		}
+		this.tempFolder = tempFolder;
+		this.processors = processors;
+		this.fileSizeLimit = fileSizeLimit;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Generates the dumps of the given machines and writes them into the stream as a zip. The stream is not closed.
+	 *
+	 * @param machines
+	 *            the machines to dump.
+	 * @param out
+	 *            the stream to write the zip into.
+	 * @return the total number of dump bytes written.
+	 * @throws IOException
+	 *             if writing to the stream failed.
+	 */
+	public long writeZip(final Collection<Machine> machines, final OutputStream out) throws IOException {
+		final ZipOutputStream zip = new ZipOutputStream(out);
+		final Map<String, String> errors = new LinkedHashMap<String, String>();
+		long totalSize = 0;
+
+		if (machines.isEmpty()) {
+			zip.finish();
+			return totalSize;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, machines.size()),
+				new DumpThreadFactory());
+		final CompletionService<File> completionService = new ExecutorCompletionService<File>(executor);
+		final Map<Future<File>, String> hosts = new HashMap<Future<File>, String>();
+		try {
+			for (final Machine machine : machines) {
+				hosts.put(completionService.submit(new DumpTask(machine)), machine.getHostAddress());
+			}
+
+			for (int i = 0; i < machines.size(); i++) {
+				final Future<File> future = completionService.take();
+				final String host = hosts.remove(future);
+				final File dumpFile;
+				try {
+					dumpFile = future.get();
+				} catch (final ExecutionException e) {
+					log(Level.WARNING, "[writeZip] - failed to generate the dump of machine " + host, e.getCause());
+					errors.put(host, "dump failed: " + e.getCause());
+					continue;
+				}
+
+				try {
+					final long dumpSize = dumpFile.length();
+					if (totalSize + dumpSize > fileSizeLimit) {
+						log(Level.WARNING, "[writeZip] - dump of machine " + host + " (" + dumpSize
+								+ " bytes) exceeds the remaining size limit, cancelling the remaining dumps", null);
+						errors.put(host, "dump skipped: size " + dumpSize + " exceeds the remaining limit of "
+								+ (fileSizeLimit - totalSize) + " bytes out of " + fileSizeLimit);
+						break;
+					}
+					copyToZip(zip, host + DUMP_ENTRY_SUFFIX, dumpFile);
+					totalSize += dumpSize;
+				} finally {
+					deleteTempFile(dumpFile);
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log(Level.WARNING, "[writeZip] - interrupted while waiting for machine dumps", e);
+		} finally {
+			closed = true;
+			executor.shutdownNow();
+			for (final String host : hosts.values()) {
+				errors.put(host, "dump cancelled");
+			}
+			for (final File file : pendingFiles) {
+				deleteTempFile(file);
+			}
+		}
+
+		if (!errors.isEmpty()) {
+			writeErrors(zip, errors);
+		}
+		zip.finish();
+		out.flush();
+		return totalSize;
+	}
+
+	private void copyToZip(final ZipOutputStream zip, final String entryName, final File file) throws IOException {
+		zip.putNextEntry(new ZipEntry(entryName));
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				zip.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		zip.closeEntry();
+	}
+
+	private void writeErrors(final ZipOutputStream zip, final Map<String, String> errors) throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		for (final Map.Entry<String, String> error : errors.entrySet()) {
+			builder.append(error.getKey()).append(": ").append(error.getValue()).append('\n');
+		}
+		zip.putNextEntry(new ZipEntry(ERRORS_ENTRY_NAME));
+		zip.write(builder.toString().getBytes("UTF-8"));
+		zip.closeEntry();
+	}
+
+	private void deleteTempFile(final File file) {
+		pendingFiles.remove(file);
+		if (file.exists() && !file.delete()) {
+			log(Level.WARNING, "[deleteTempFile] - failed to delete temporary dump file: " + file, null);
+		}
+	}
+
+	private void log(final Level level, final String msg, final Throwable e) {
+		if (logger.isLoggable(level)) {
+			logger.log(level, msg, e);
+		}
+	}
+
+	/**
+	 * Generates the dump of a single machine and downloads it into a temporary file.
+	 */
+	private class DumpTask implements Callable<File> {
+
+		private final Machine machine;
+
+		DumpTask(final Machine machine) {
+			this.machine = machine;
+		}
+
+		@Override
+		public File call() throws Exception {
+			final DumpResult dump = machine.generateDump(DUMP_REASON, null, processors);
+			final File target = File.createTempFile("dump", DUMP_ENTRY_SUFFIX, tempFolder);
+			pendingFiles.add(target);
+			target.deleteOnExit();
+			boolean collected = false;
+			try {
+				dump.download(target, null);
+				// a dump completing after the zip was closed is not collected.
+				collected = !closed;
+			} finally {
+				if (!collected) {
+					deleteTempFile(target);
+				}
+			}
+			return target;
+		}
+	}
+
+	/**
+	 * Creates daemon threads for dump generation.
+	 */
+	private static class DumpThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "MachineDumpsCollector-" + THREAD_COUNT.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
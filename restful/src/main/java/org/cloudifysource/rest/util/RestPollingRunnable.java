@@ -103,7 +103,7 @@ public class RestPollingRunnable implements Runnable {
 	 */
 	private Future<?> futureTask;
 
-	private boolean isDone = false;
+	private volatile boolean isDone = false;
 
 	private final Map<String, Date> gscStartTimeMap = new HashMap<String, Date>();
 
@@ -326,6 +326,9 @@ public class RestPollingRunnable implements Runnable {
 
 	private void terminateTaskGracefully() {
 		this.isDone = true;
+		if (this.lifecycleEventsContainer != null) {
+			this.lifecycleEventsContainer.close();
+		}
 		if (this.futureTask != null) {
 			this.futureTask.cancel(true);
 		}
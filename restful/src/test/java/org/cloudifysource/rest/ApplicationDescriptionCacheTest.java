@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * *****************************************************************************
+ */
+package org.cloudifysource.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.cloudifysource.dsl.internal.CloudifyConstants;
+import org.cloudifysource.dsl.rest.response.ServiceDescription;
+import org.cloudifysource.rest.util.ApplicationDescriptionCache;
+import org.cloudifysource.security.CustomAuthenticationToken;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.internal.pu.DefaultProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnitType;
+import org.openspaces.admin.pu.ProcessingUnits;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceAddedEventManager;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceRemovedEventManager;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceStatisticsChangedEventManager;
+import org.openspaces.admin.pu.events.ProcessingUnitLifecycleEventListener;
+import org.openspaces.core.properties.BeanLevelProperties;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.GrantedAuthorityImpl;
+
+/**
+ * Tests {@link ApplicationDescriptionCache} reuses service descriptions until a change is reported.
+ *
+ */
+public class ApplicationDescriptionCacheTest {
+
+	private static final long ONE_HOUR_MILLIS = 3600 * 1000;
+
+	private ProcessingUnits processingUnits;
+	private ProcessingUnit processingUnit;
+	private ProcessingUnitInstanceAddedEventManager instanceAddedEventManager;
+
+	@Before
+	public void before() {
+		processingUnit = Mockito.mock(DefaultProcessingUnit.class);
+		Mockito.when(processingUnit.getName()).thenReturn("default.tomcat");
+		Mockito.when(processingUnit.getType()).thenReturn(ProcessingUnitType.UNIVERSAL);
+		Mockito.when(processingUnit.getInstances()).thenReturn(new ProcessingUnitInstance[0]);
+		Mockito.when(processingUnit.getNumberOfInstances()).thenReturn(1);
+		final BeanLevelProperties blp = Mockito.mock(BeanLevelProperties.class);
+		final Properties contextProperties = new Properties();
+		contextProperties.setProperty(CloudifyConstants.CONTEXT_PROPERTY_DEPLOYMENT_ID, "12345");
+		Mockito.when(blp.getContextProperties()).thenReturn(contextProperties);
+		Mockito.when(processingUnit.getBeanLevelProperties()).thenReturn(blp);
+
+		instanceAddedEventManager = Mockito.mock(ProcessingUnitInstanceAddedEventManager.class);
+		processingUnits = Mockito.mock(ProcessingUnits.class);
+		Mockito.when(processingUnits.getProcessingUnitInstanceAdded()).thenReturn(instanceAddedEventManager);
+		Mockito.when(processingUnits.getProcessingUnitInstanceRemoved()).thenReturn(
+				Mockito.mock(ProcessingUnitInstanceRemovedEventManager.class));
+		Mockito.when(processingUnits.getProcessingUnitInstanceStatisticsChanged()).thenReturn(
+				Mockito.mock(ProcessingUnitInstanceStatisticsChangedEventManager.class));
+	}
+
+	private ApplicationDescriptionCache createCache(final long maxAgeMillis) {
+		final Admin admin = Mockito.mock(Admin.class);
+		Mockito.when(admin.getProcessingUnits()).thenReturn(processingUnits);
+		final ApplicationDescriptionCache cache = new ApplicationDescriptionCache(admin, maxAgeMillis);
+		cache.start();
+		return cache;
+	}
+
+	@Test
+	public void testDescriptionReusedUntilChanged() {
+		final ApplicationDescriptionCache cache = createCache(ONE_HOUR_MILLIS);
+		final ArgumentCaptor<ProcessingUnitInstanceAddedEventListener> listener =
+				ArgumentCaptor.forClass(ProcessingUnitInstanceAddedEventListener.class);
+		Mockito.verify(instanceAddedEventManager).add(listener.capture());
+
+		final ServiceDescription first = cache.getServiceDescription(processingUnit);
+		final long version = cache.getVersion();
+		Assert.assertSame(first, cache.getServiceDescription(processingUnit));
+		Assert.assertEquals(version, cache.getVersion());
+		Mockito.verify(processingUnit, Mockito.times(1)).getBeanLevelProperties();
+
+		final ProcessingUnitInstance instance = Mockito.mock(ProcessingUnitInstance.class);
+		Mockito.when(instance.getProcessingUnit()).thenReturn(processingUnit);
+		listener.getValue().processingUnitInstanceAdded(instance);
+
+		Assert.assertTrue(cache.getVersion() > version);
+		Assert.assertNotSame(first, cache.getServiceDescription(processingUnit));
+		Mockito.verify(processingUnit, Mockito.times(2)).getBeanLevelProperties();
+	}
+
+	@Test
+	public void testProcessingUnitRemovedBumpsVersion() {
+		final ApplicationDescriptionCache cache = createCache(ONE_HOUR_MILLIS);
+		final ArgumentCaptor<ProcessingUnitLifecycleEventListener> listener =
+				ArgumentCaptor.forClass(ProcessingUnitLifecycleEventListener.class);
+		Mockito.verify(processingUnits).addLifecycleListener(listener.capture());
+
+		final long version = cache.getVersion();
+		listener.getValue().processingUnitRemoved(processingUnit);
+		Assert.assertTrue(cache.getVersion() > version);
+	}
+
+	@Test
+	public void testCacheDisabled() {
+		final ApplicationDescriptionCache cache = createCache(0);
+		final ServiceDescription first = cache.getServiceDescription(processingUnit);
+		Assert.assertNotSame(first, cache.getServiceDescription(processingUnit));
+		Assert.assertEquals(first.toString(), cache.getServiceDescription(processingUnit).toString());
+	}
+
+	@Test
+	public void testIsNotModified() {
+		final long version = 42;
+		final String viewer = "user[ROLE_CLOUDADMINS]";
+		final String eTag = ApplicationDescriptionCache.toETag(version, viewer);
+		Assert.assertTrue(ApplicationDescriptionCache.isNotModified(eTag, version, viewer));
+		Assert.assertTrue(ApplicationDescriptionCache.isNotModified("\"1\", W/" + eTag, version, viewer));
+		Assert.assertFalse(ApplicationDescriptionCache.isNotModified(eTag, version + 1, viewer));
+		Assert.assertFalse(ApplicationDescriptionCache.isNotModified(eTag, version, "other[ROLE_CLOUDADMINS]"));
+		Assert.assertFalse(ApplicationDescriptionCache.isNotModified(null, version, viewer));
+	}
+
+	@Test
+	public void testViewer() {
+		final Authentication admin = createAuthentication("user", "ROLE_CLOUDADMINS", "ROLE_APPMANAGERS");
+		final Authentication sameRoles = createAuthentication("user", "ROLE_APPMANAGERS", "ROLE_CLOUDADMINS");
+		final Authentication otherRoles = createAuthentication("user", "ROLE_VIEWERS");
+		Assert.assertEquals(ApplicationDescriptionCache.getViewer(admin),
+				ApplicationDescriptionCache.getViewer(sameRoles));
+		Assert.assertFalse(ApplicationDescriptionCache.getViewer(admin).equals(
+				ApplicationDescriptionCache.getViewer(otherRoles)));
+		Assert.assertEquals("", ApplicationDescriptionCache.getViewer(null));
+	}
+
+	@Test
+	public void testViewerIncludesAuthGroups() {
+		final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+		authorities.add(new GrantedAuthorityImpl("ROLE_VIEWERS"));
+		final Authentication groups = new CustomAuthenticationToken("user", "password", authorities,
+				Arrays.asList("a", "b"));
+		final Authentication sameGroups = new CustomAuthenticationToken("user", "password", authorities,
+				Arrays.asList("b", "a"));
+		final Authentication otherGroups = new CustomAuthenticationToken("user", "password", authorities,
+				Arrays.asList("a"));
+		Assert.assertEquals(ApplicationDescriptionCache.getViewer(groups),
+				ApplicationDescriptionCache.getViewer(sameGroups));
+		Assert.assertFalse(ApplicationDescriptionCache.getViewer(groups).equals(
+				ApplicationDescriptionCache.getViewer(otherGroups)));
+	}
+
+	private static Authentication createAuthentication(final String name, final String... roles) {
+		final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+		for (final String role : roles) {
+			authorities.add(new GrantedAuthorityImpl(role));
+		}
+		return new UsernamePasswordAuthenticationToken(name, "password", authorities);
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.ProcessingUnits;
+
+/**
+ * Tests {@link MetricsHistorySampler} removes the series of undeployed processing units and persists the store
+ * periodically, against a stub admin.
+ *
+ * @since 2.7.1
+ */
+public class MetricsHistorySamplerTest {
+
+	private static final MetricsHistoryKey KEY = new MetricsHistoryKey("default.tomcat", 1, "Total Requests Count");
+
+	private final List<ProcessingUnit> deployed = new ArrayList<ProcessingUnit>();
+
+	private Admin createAdmin() {
+		final ProcessingUnits processingUnits = Mockito.mock(ProcessingUnits.class);
+		Mockito.when(processingUnits.iterator()).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(final InvocationOnMock invocation) {
+				return new ArrayList<ProcessingUnit>(deployed).iterator();
+			}
+		});
+		final Admin admin = Mockito.mock(Admin.class);
+		Mockito.when(admin.getProcessingUnits()).thenReturn(processingUnits);
+		return admin;
+	}
+
+	private ProcessingUnit createProcessingUnit(final String name) {
+		final ProcessingUnit pu = Mockito.mock(ProcessingUnit.class);
+		Mockito.when(pu.getName()).thenReturn(name);
+		Mockito.when(pu.getInstances()).thenReturn(new ProcessingUnitInstance[0]);
+		return pu;
+	}
+
+	@Test
+	public void testRestoredSeriesOfUndeployedProcessingUnitRemovedAfterGracePeriod() {
+		final MetricsHistoryStore store = new MetricsHistoryStore();
+		store.record(KEY, 1, 1);
+		final MetricsHistorySampler sampler = new MetricsHistorySampler(createAdmin(), store);
+
+		// the admin may not have discovered the processing unit yet.
+		sampler.run();
+		Assert.assertEquals(1, store.getSeriesCount());
+
+		sampler.setEvictionGraceMillis(0);
+		sampler.run();
+		Assert.assertEquals(0, store.getSeriesCount());
+	}
+
+	@Test
+	public void testRestoredSeriesOfDeployedProcessingUnitKept() {
+		final MetricsHistoryStore store = new MetricsHistoryStore();
+		store.record(KEY, 1, 1);
+		deployed.add(createProcessingUnit(KEY.getAbsolutePuName()));
+		final MetricsHistorySampler sampler = new MetricsHistorySampler(createAdmin(), store);
+		sampler.setEvictionGraceMillis(0);
+
+		sampler.run();
+		Assert.assertEquals(1, store.getSeriesCount());
+
+		// once a sampled processing unit is undeployed, its series are removed right away.
+		sampler.setEvictionGraceMillis(Long.MAX_VALUE);
+		deployed.clear();
+		sampler.run();
+		Assert.assertEquals(0, store.getSeriesCount());
+	}
+
+	@Test
+	public void testStorePersistedPeriodically() throws Exception {
+		final MetricsHistoryStore store = new MetricsHistoryStore();
+		store.record(KEY, 1, 1);
+		deployed.add(createProcessingUnit(KEY.getAbsolutePuName()));
+		final File file = File.createTempFile("metrics-history", ".bin");
+		file.delete();
+		file.deleteOnExit();
+
+		new MetricsHistorySampler(createAdmin(), store, file, Long.MAX_VALUE).run();
+		Assert.assertFalse(file.exists());
+
+		final MetricsHistorySampler sampler = new MetricsHistorySampler(createAdmin(), store, file, 1);
+		Thread.sleep(2);
+		sampler.run();
+		Assert.assertTrue(file.exists());
+		final MetricsHistoryStore restored = new MetricsHistoryStore();
+		restored.restore(file);
+		Assert.assertEquals(1, restored.getSeriesCount());
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.monitoring;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MetricsHistoryStore}.
+ *
+ * @since 2.7.1
+ */
+public class MetricsHistoryStoreTest {
+
+	private static final long SECOND = 1000;
+	private static final MetricsHistoryKey KEY = new MetricsHistoryKey("default.tomcat", 1, "Total Requests Count");
+
+	@Test
+	public void testRingBufferOverwritesOldest() {
+		final MetricRingBuffer buffer = new MetricRingBuffer(3);
+		for (int i = 0; i < 5; i++) {
+			buffer.add(i * SECOND, i);
+		}
+		Assert.assertEquals(3, buffer.size());
+		Assert.assertEquals(2 * SECOND, buffer.getOldestTimestamp());
+		Assert.assertEquals(4.0, buffer.getValue(2), 0);
+		Assert.assertEquals(1, buffer.lowerBound(2500));
+	}
+
+	@Test
+	public void testRangePercentileAndRate() {
+		final MetricsHistoryStore store = new MetricsHistoryStore();
+		for (int i = 1; i <= 100; i++) {
+			store.record(KEY, i * SECOND, i);
+		}
+		final MetricSamples samples = store.range(KEY, 11 * SECOND, 20 * SECOND);
+		Assert.assertEquals(10, samples.size());
+		Assert.assertEquals(11 * SECOND, samples.getTimestamps()[0]);
+		Assert.assertEquals(15.5, samples.average(), 0.0001);
+		Assert.assertEquals(1.0, samples.ratePerSecond(), 0.0001);
+
+		final MetricSamples all = store.range(KEY, 0, Long.MAX_VALUE);
+		Assert.assertEquals(95.0, all.percentile(95), 0);
+		Assert.assertEquals(1.0, all.percentile(0), 0);
+		Assert.assertEquals(100.0, all.percentile(100), 0);
+
+		Assert.assertNull(store.range(new MetricsHistoryKey("default.tomcat", 2, "Total Requests Count"), 0, 1));
+	}
+
+	@Test
+	public void testDownsampledTierServesOlderRanges() {
+		final MetricsHistoryStore store = new MetricsHistoryStore(new long[] { 0, 10 * SECOND }, new int[] { 5, 100 });
+		for (int i = 0; i < 50; i++) {
+			store.record(KEY, i * SECOND, i);
+		}
+		// the raw tier only holds the last 5 samples, so the range is served from the 10 seconds tier.
+		final MetricSamples samples = store.range(KEY, 0, 30 * SECOND);
+		Assert.assertEquals(10 * SECOND, samples.getResolutionMillis());
+		Assert.assertEquals(4, samples.size());
+		Assert.assertEquals(4.5, samples.getValues()[0], 0);
+		Assert.assertEquals(34.5, samples.getValues()[3], 0);
+
+		// recent ranges are served at full resolution.
+		Assert.assertEquals(0, store.range(KEY, 46 * SECOND, 50 * SECOND).getResolutionMillis());
+	}
+
+	@Test
+	public void testMaxSeriesIsEnforced() {
+		final MetricsHistoryStore store = new MetricsHistoryStore();
+		store.setMaxSeries(1);
+		store.record(KEY, SECOND, 1);
+		store.record(new MetricsHistoryKey("default.tomcat", 2, "Total Requests Count"), SECOND, 1);
+		Assert.assertEquals(1, store.getSeriesCount());
+		Assert.assertEquals(1, store.getDroppedSeriesCount());
+	}
+
+	@Test
+	public void testPersistAndRestore() throws Exception {
+		final MetricsHistoryStore store = new MetricsHistoryStore();
+		for (int i = 0; i < 10; i++) {
+			store.record(KEY, i * SECOND, i);
+		}
+		final File file = File.createTempFile("metrics-history", ".bin");
+		file.deleteOnExit();
+		store.persist(file);
+
+		final MetricsHistoryStore restored = new MetricsHistoryStore();
+		restored.restore(file);
+		final MetricSamples samples = restored.range(KEY, 0, Long.MAX_VALUE);
+		Assert.assertEquals(10, samples.size());
+		Assert.assertEquals(9.0, samples.getValues()[9], 0);
+	}
+}
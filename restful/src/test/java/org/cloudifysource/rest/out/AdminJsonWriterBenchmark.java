@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.out;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Compares the time taken by the Admin API to output the fake object graph of {@link AdminJsonWriterTest} through
+ * {@link AdminJsonWriter}, against the map based output of {@link OutputDispatcher} serialized by an object mapper.<br />
+ * Run with: java -cp ... org.cloudifysource.rest.out.AdminJsonWriterBenchmark [iterations]
+ *
+ * @since 2.7.1
+ */
+public final class AdminJsonWriterBenchmark {
+
+	private static final int DEFAULT_ITERATIONS = 20000;
+	private static final int NANOS_IN_MILLI = 1000000;
+
+	private AdminJsonWriterBenchmark() {
+	}
+
+	/**
+	 * @param args
+	 *            The number of requests per measurement, optional.
+	 * @throws IOException
+	 *             If writing the output failed.
+	 */
+	public static void main(final String[] args) throws IOException {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		final AdminJsonWriterTest.FakeAdmin admin = new AdminJsonWriterTest.FakeAdmin();
+		final ObjectMapper mapper = new ObjectMapper();
+
+		// warm up both paths, then time them over the same requests.
+		runMapOutput(admin, mapper, iterations / 10);
+		runStreamedOutput(admin, iterations / 10);
+
+		long start = System.nanoTime();
+		runMapOutput(admin, mapper, iterations);
+		final long mapNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		runStreamedOutput(admin, iterations);
+		final long streamedNanos = System.nanoTime() - start;
+
+		System.out.println("Admin API output of " + iterations + " requests over "
+				+ AdminJsonWriterTest.PATHS.length + " paths: map based " + mapNanos / NANOS_IN_MILLI
+				+ " ms, streamed " + streamedNanos / NANOS_IN_MILLI + " ms");
+	}
+
+	private static void runMapOutput(final AdminJsonWriterTest.FakeAdmin admin, final ObjectMapper mapper,
+			final int iterations) throws IOException {
+		for (int i = 0; i < iterations; i++) {
+			final String path = AdminJsonWriterTest.PATHS[i % AdminJsonWriterTest.PATHS.length];
+			mapper.writeValueAsBytes(AdminJsonWriterTest.writeMap(admin, path));
+		}
+	}
+
+	private static void runStreamedOutput(final AdminJsonWriterTest.FakeAdmin admin, final int iterations)
+			throws IOException {
+		for (int i = 0; i < iterations; i++) {
+			AdminJsonWriterTest.writeStreamed(admin, AdminJsonWriterTest.PATHS[i % AdminJsonWriterTest.PATHS.length]);
+		}
+	}
+}
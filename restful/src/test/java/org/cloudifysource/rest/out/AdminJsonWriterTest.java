@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.rest.out;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudifysource.rest.command.CommandManager;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Tests for {@link AdminJsonWriter}, against the map based output of {@link OutputDispatcher}, over a small object
+ * graph shaped like the processing units part of the Admin API. {@link AdminJsonWriterBenchmark} times both.
+ *
+ * @since 2.7.1
+ */
+public class AdminJsonWriterTest {
+
+	private static final String HOST_ADDRESS = "http://10.0.0.1:8100";
+	private static final String CONTEXT = "/rest";
+	static final String[] PATHS = {
+		"/admin/ProcessingUnits",
+		"/admin/ProcessingUnits/Names",
+		"/admin/ProcessingUnits/Names/default.tomcat",
+		"/admin/ProcessingUnits/Names/default.tomcat/Instances",
+		"/admin/ProcessingUnits/Names/default.tomcat/Instances/1",
+		"/admin/ProcessingUnits/Names/default.tomcat/Instances/1/InstanceId",
+		"/admin/ProcessingUnits/Names/default.tomcat/Status",
+		"/admin/ProcessingUnits/Names/default.tomcat/RequiredZones/0"
+	};
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final FakeAdmin admin = new FakeAdmin();
+
+	@Test
+	public void testStreamedOutputMatchesMapOutput() throws IOException {
+		for (final String path : PATHS) {
+			final Map<?, ?> streamed = mapper.readValue(writeStreamed(path), Map.class);
+			final Map<?, ?> mapped = mapper.readValue(mapper.writeValueAsBytes(writeMap(path)), Map.class);
+			Assert.assertEquals(path, mapped, streamed);
+		}
+	}
+
+	@Test
+	public void testOutputShape() throws IOException {
+		final Map<?, ?> pu = mapper.readValue(writeStreamed("/admin/ProcessingUnits/Names/default.tomcat"),
+				Map.class);
+		Assert.assertEquals("default.tomcat", pu.get("Name"));
+		Assert.assertEquals("2", pu.get("TotalNumberOfInstances"));
+		Assert.assertEquals(2, pu.get("Instances-Size"));
+		Assert.assertEquals(Arrays.asList(
+				HOST_ADDRESS + CONTEXT + "/admin/ProcessingUnits/Names/default.tomcat/Instances/0",
+				HOST_ADDRESS + CONTEXT + "/admin/ProcessingUnits/Names/default.tomcat/Instances/1"),
+				pu.get("Instances-Elements"));
+		Assert.assertEquals("INTACT", pu.get("Status-Enumerator"));
+		Assert.assertEquals("8", ((Map<?, ?>) pu.get("SlaDetails")).get("MemoryCapacityInGB"));
+		Assert.assertFalse(pu.containsKey("Class"));
+
+		final Map<?, ?> nullValue = mapper.readValue(
+				writeStreamed("/admin/ProcessingUnits/Names/default.tomcat/Description"), Map.class);
+		Assert.assertEquals(OutputUtils.NULL_OBJECT_DENOTER, nullValue.get("Description"));
+	}
+
+	@Test
+	public void testTopLevelKeysAreSorted() throws IOException {
+		final Map<?, ?> pu = mapper.readValue(writeStreamed("/admin/ProcessingUnits/Names/default.tomcat"),
+				LinkedHashMap.class);
+		final List<String> keys = new ArrayList<String>();
+		for (final Object key : pu.keySet()) {
+			keys.add((String) key);
+		}
+		final List<String> sorted = new ArrayList<String>(keys);
+		java.util.Collections.sort(sorted);
+		Assert.assertEquals(sorted, keys);
+	}
+
+	@Test
+	public void testGetterMetadataIsCached() {
+		Assert.assertSame(GetterMetadata.forClass(FakeProcessingUnit.class),
+				GetterMetadata.forClass(FakeProcessingUnit.class));
+		final GetterMetadata metadata = GetterMetadata.forClass(FakeProcessingUnit.class);
+		Assert.assertSame(metadata.getCommandGetter("Instances"), metadata.getCommandGetter("Instances"));
+		final Iterator<GetterMetadata.Getter> getters = metadata.getGetters().iterator();
+		Assert.assertEquals("Description", getters.next().getCommandName());
+	}
+
+	private Map<String, Object> writeMap(final String path) {
+		return writeMap(admin, path);
+	}
+
+	private byte[] writeStreamed(final String path) throws IOException {
+		return writeStreamed(admin, path);
+	}
+
+	static Map<String, Object> writeMap(final FakeAdmin admin, final String path) {
+		return OutputDispatcher.outputResultObjectToMap(runCommands(admin, path), HOST_ADDRESS, CONTEXT);
+	}
+
+	static byte[] writeStreamed(final FakeAdmin admin, final String path) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+		new AdminJsonWriter(HOST_ADDRESS, CONTEXT).write(runCommands(admin, path), generator);
+		generator.close();
+		return out.toByteArray();
+	}
+
+	private static CommandManager runCommands(final FakeAdmin admin, final String path) {
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", CONTEXT + path);
+		request.setContextPath(CONTEXT);
+		request.setLocalAddr("127.0.0.1");
+		request.setLocalPort(8100);
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, path);
+		final CommandManager manager = new CommandManager(request, admin);
+		manager.runCommands();
+		return manager;
+	}
+
+	/**
+	 * Root of the fake object graph.
+	 */
+	public static class FakeAdmin {
+		private final FakeProcessingUnits processingUnits = new FakeProcessingUnits();
+
+		public FakeProcessingUnits getProcessingUnits() {
+			return processingUnits;
+		}
+	}
+
+	/**
+	 * Stands for ProcessingUnits.
+	 */
+	public static class FakeProcessingUnits {
+		private final Map<String, FakeProcessingUnit> names = new LinkedHashMap<String, FakeProcessingUnit>();
+
+		public FakeProcessingUnits() {
+			names.put("default.tomcat", new FakeProcessingUnit("default.tomcat", 2));
+			names.put("rest", new FakeProcessingUnit("rest", 1));
+		}
+
+		public Map<String, FakeProcessingUnit> getNames() {
+			return names;
+		}
+
+		public FakeProcessingUnit[] getProcessingUnits() {
+			return names.values().toArray(new FakeProcessingUnit[names.size()]);
+		}
+
+		public int getSize() {
+			return names.size();
+		}
+
+		public boolean isEmpty() {
+			return names.isEmpty();
+		}
+	}
+
+	/**
+	 * Stands for a deployment status.
+	 */
+	public enum FakeStatus {
+		INTACT, BROKEN
+	}
+
+	/**
+	 * Stands for ProcessingUnit.
+	 */
+	public static class FakeProcessingUnit {
+		private final String name;
+		private final FakeProcessingUnitInstance[] instances;
+
+		public FakeProcessingUnit(final String name, final int numberOfInstances) {
+			this.name = name;
+			this.instances = new FakeProcessingUnitInstance[numberOfInstances];
+			for (int i = 0; i < numberOfInstances; i++) {
+				instances[i] = new FakeProcessingUnitInstance(this, i + 1);
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getDescription() {
+			return null;
+		}
+
+		public FakeStatus getStatus() {
+			return FakeStatus.INTACT;
+		}
+
+		public int getTotalNumberOfInstances() {
+			return instances.length;
+		}
+
+		public FakeProcessingUnitInstance[] getInstances() {
+			return instances;
+		}
+
+		public List<String> getRequiredZones() {
+			return Arrays.asList("zone1", "zone2");
+		}
+
+		public FakeSlaDetails getSlaDetails() {
+			return new FakeSlaDetails();
+		}
+
+		public void processingUnitInstanceAdded() {
+			// event related, not exposed.
+		}
+	}
+
+	/**
+	 * Stands for a details object, output inline.
+	 */
+	public static class FakeSlaDetails {
+		public int getMemoryCapacityInGB() {
+			return 8;
+		}
+
+		public boolean isHighlyAvailable() {
+			return true;
+		}
+	}
+
+	/**
+	 * Stands for ProcessingUnitInstance.
+	 */
+	public static class FakeProcessingUnitInstance {
+		private final FakeProcessingUnit processingUnit;
+		private final int instanceId;
+
+		public FakeProcessingUnitInstance(final FakeProcessingUnit processingUnit, final int instanceId) {
+			this.processingUnit = processingUnit;
+			this.instanceId = instanceId;
+		}
+
+		public int getInstanceId() {
+			return instanceId;
+		}
+
+		public FakeProcessingUnit getProcessingUnit() {
+			return processingUnit;
+		}
+
+		public String getUid() {
+			return processingUnit.getName() + "-" + instanceId;
+		}
+	}
+}
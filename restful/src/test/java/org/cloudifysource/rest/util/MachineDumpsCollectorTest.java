@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package org.cloudifysource.rest.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openspaces.admin.dump.DumpDownloadListener;
+import org.openspaces.admin.dump.DumpResult;
+import org.openspaces.admin.machine.Machine;
+
+/**
+ * Tests {@link MachineDumpsCollector} zips the dumps of several machines and leaves no temporary files behind, against
+ * stub machines.
+ */
+public class MachineDumpsCollectorTest {
+
+	private static final long SIZE_LIMIT = 1024 * 1024;
+
+	private File tempFolder;
+
+	@Before
+	public void before() throws IOException {
+		tempFolder = File.createTempFile("dumps", "");
+		tempFolder.delete();
+		tempFolder.mkdirs();
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(tempFolder);
+	}
+
+	// a machine whose dump is the given content, or fails to download if the content is null.
+	private Machine createMachine(final String host, final byte[] content) throws Exception {
+		final DumpResult dump = Mockito.mock(DumpResult.class);
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(final InvocationOnMock invocation) throws IOException {
+				final File target = (File) invocation.getArguments()[0];
+				if (content == null) {
+					FileUtils.writeStringToFile(target, "partial");
+					throw new IOException("Connection reset");
+				}
+				FileUtils.writeByteArrayToFile(target, content);
+				return null;
+			}
+		}).when(dump).download(Matchers.any(File.class), Matchers.any(DumpDownloadListener.class));
+
+		final Machine machine = Mockito.mock(Machine.class);
+		Mockito.when(machine.getHostAddress()).thenReturn(host);
+		Mockito.when(machine.generateDump(Matchers.anyString(), Matchers.anyMap(), Matchers.<String>anyVararg()))
+				.thenReturn(dump);
+		return machine;
+	}
+
+	private Map<String, String> readZip(final byte[] zip) throws IOException {
+		final Map<String, String> entries = new HashMap<String, String>();
+		final ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip));
+		ZipEntry entry;
+		while ((entry = in.getNextEntry()) != null) {
+			entries.put(entry.getName(), IOUtils.toString(in, "UTF-8"));
+		}
+		return entries;
+	}
+
+	@Test
+	public void testDumpsZipped() throws Exception {
+		final List<Machine> machines = new ArrayList<Machine>();
+		for (int i = 1; i <= 5; i++) {
+			machines.add(createMachine("10.0.0." + i, ("dump of 10.0.0." + i).getBytes("UTF-8")));
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final long size = new MachineDumpsCollector(tempFolder, new String[] { "summary" }, SIZE_LIMIT, 2)
+				.writeZip(machines, out);
+
+		final Map<String, String> entries = readZip(out.toByteArray());
+		Assert.assertEquals(5, entries.size());
+		Assert.assertEquals("dump of 10.0.0.3", entries.get("10.0.0.3.zip"));
+		Assert.assertEquals(5 * "dump of 10.0.0.1".length(), size);
+		Assert.assertEquals(0, tempFolder.list().length);
+	}
+
+	@Test
+	public void testFailedDumpDeleted() throws Exception {
+		final List<Machine> machines = Arrays.asList(createMachine("10.0.0.1", "dump".getBytes("UTF-8")),
+				createMachine("10.0.0.2", null));
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MachineDumpsCollector(tempFolder, new String[] { "summary" }, SIZE_LIMIT, 2).writeZip(machines, out);
+
+		final Map<String, String> entries = readZip(out.toByteArray());
+		Assert.assertEquals("dump", entries.get("10.0.0.1.zip"));
+		Assert.assertFalse(entries.containsKey("10.0.0.2.zip"));
+		Assert.assertTrue(entries.get(MachineDumpsCollector.ERRORS_ENTRY_NAME).startsWith("10.0.0.2: dump failed"));
+		// the partially downloaded dump is deleted as well.
+		Assert.assertEquals(0, tempFolder.list().length);
+	}
+
+	@Test
+	public void testSizeLimit() throws Exception {
+		final byte[] content = new byte[(int) SIZE_LIMIT / 2 + 1];
+		final List<Machine> machines = Arrays.asList(createMachine("10.0.0.1", content),
+				createMachine("10.0.0.2", content));
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final long size = new MachineDumpsCollector(tempFolder, new String[] { "summary" }, SIZE_LIMIT, 1)
+				.writeZip(machines, out);
+
+		Assert.assertEquals(content.length, size);
+		final Map<String, String> entries = readZip(out.toByteArray());
+		Assert.assertEquals(2, entries.size());
+		Assert.assertTrue(entries.containsKey(MachineDumpsCollector.ERRORS_ENTRY_NAME));
+		Assert.assertEquals(0, tempFolder.list().length);
+	}
+}
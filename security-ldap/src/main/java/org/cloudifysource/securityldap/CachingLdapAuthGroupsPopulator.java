@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.securityldap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link LdapAuthGroupsPopulator} that caches the authorization groups resolved by a
+ * {@link CustomLdapAuthGroupsPopulator} per user DN, so repeated authentications of the same user do not trigger a
+ * group membership search each time. See {@link LdapLookupCache} for the expiry and refresh policy.
+ *
+ * @since 2.7.1
+ */
+public class CachingLdapAuthGroupsPopulator implements LdapAuthGroupsPopulator, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(CachingLdapAuthGroupsPopulator.class);
+
+	private final CustomLdapAuthGroupsPopulator delegate;
+	private final LdapLookupCache<List<String>> cache;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param delegate the populator that searches the directory
+	 * @param maxEntries the maximum number of cached user DNs
+	 */
+	public CachingLdapAuthGroupsPopulator(final CustomLdapAuthGroupsPopulator delegate, final int maxEntries) {
+		Assert.notNull(delegate, "delegate must not be null");
+		this.delegate = delegate;
+		this.cache = new LdapLookupCache<List<String>>("LdapAuthGroups", maxEntries);
+	}
+
+	/**
+	 * Constructor, using the default cache size.
+	 *
+	 * @param delegate the populator that searches the directory
+	 */
+	public CachingLdapAuthGroupsPopulator(final CustomLdapAuthGroupsPopulator delegate) {
+		Assert.notNull(delegate, "delegate must not be null");
+		this.delegate = delegate;
+		this.cache = new LdapLookupCache<List<String>>("LdapAuthGroups");
+	}
+
+	@Override
+	public Collection<String> getAuthGroups(final DirContextOperations user, final String username) {
+		final String userDn = user.getNameInNamespace();
+		final List<String> authGroups = cache.get(userDn, new LdapLookupCache.Loader<List<String>>() {
+			@Override
+			public List<String> load() {
+				return Collections.unmodifiableList(new ArrayList<String>(delegate.getAuthGroups(userDn, username)));
+			}
+		});
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Authorization groups of " + userDn + ": " + authGroups + ", " + cache);
+		}
+		return new ArrayList<String>(authGroups);
+	}
+
+	/**
+	 * Removes the cached authorization groups of the given user, e.g. after its group membership was changed.
+	 *
+	 * @param userDn the user DN
+	 */
+	public void invalidate(final String userDn) {
+		cache.invalidate(userDn);
+	}
+
+	/**
+	 * @return the underlying cache, exposing its hit, miss, refresh and eviction counters.
+	 */
+	public LdapLookupCache<List<String>> getCache() {
+		return cache;
+	}
+
+	public void setTtlSeconds(final long ttlSeconds) {
+		cache.setTtlSeconds(ttlSeconds);
+	}
+
+	public void setNegativeTtlSeconds(final long negativeTtlSeconds) {
+		cache.setNegativeTtlSeconds(negativeTtlSeconds);
+	}
+
+	public void setRefreshAheadRatio(final double refreshAheadRatio) {
+		cache.setRefreshAheadRatio(refreshAheadRatio);
+	}
+
+	@Override
+	public void destroy() {
+		logger.info("Shutting down authorization groups cache: " + cache);
+		cache.shutdown();
+	}
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.securityldap;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A TTL and size bounded cache of values resolved from the directory, keyed by user DN.
+ * <p>
+ * Empty results are cached as well (negative caching), with their own, usually shorter, time to live. An entry
+ * that is read after {@link #setRefreshAheadRatio(double)} of its time to live has passed is reloaded in the
+ * background while the cached value keeps being served, so frequently authenticating clients never wait for the
+ * directory. If a background reload fails the previous value is kept until it expires.
+ * </p>
+ *
+ * @param <V> the type of the cached values
+ * @since 2.7.1
+ */
+public class LdapLookupCache<V extends Collection<?>> {
+
+	private static final Log logger = LogFactory.getLog(LdapLookupCache.class);
+
+	/**
+	 * Loads a value from the directory.
+	 *
+	 * @param <V> the type of the loaded value
+	 */
+	public interface Loader<V> {
+		/**
+		 * @return the value read from the directory, never null.
+		 */
+		V load();
+	}
+
+	private static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000L;
+	private static final long DEFAULT_NEGATIVE_TTL_MILLIS = 30 * 1000L;
+	private static final int DEFAULT_MAX_ENTRIES = 10000;
+	private static final double DEFAULT_REFRESH_AHEAD_RATIO = 0.75;
+
+	private long ttlMillis = DEFAULT_TTL_MILLIS;
+	private long negativeTtlMillis = DEFAULT_NEGATIVE_TTL_MILLIS;
+	private double refreshAheadRatio = DEFAULT_REFRESH_AHEAD_RATIO;
+	private final Map<String, Entry<V>> entries;
+
+	private final ExecutorService refresher;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong refreshFailures = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name a name used for the background refresh thread
+	 * @param maxEntries the maximum number of cached user DNs
+	 */
+	public LdapLookupCache(final String name, final int maxEntries) {
+		Assert.isTrue(maxEntries > 0, "maxEntries must be positive");
+		this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry<V>> eldest) {
+				if (size() > maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		this.refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, name + "-refresher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Constructor, using the default maximum number of entries.
+	 *
+	 * @param name a name used for the background refresh thread
+	 */
+	public LdapLookupCache(final String name) {
+		this(name, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Returns the cached value of the given user DN, loading it from the directory if it is missing or expired.
+	 *
+	 * @param userDn the user DN
+	 * @param loader reads the value from the directory
+	 * @return the cached or loaded value
+	 */
+	public V get(final String userDn, final Loader<V> loader) {
+		final long now = System.currentTimeMillis();
+		Entry<V> entry;
+		synchronized (entries) {
+			entry = entries.get(userDn);
+		}
+
+		if (entry != null && now < entry.expiresAt) {
+			if (entry.value.isEmpty()) {
+				negativeHits.incrementAndGet();
+			} else {
+				hits.incrementAndGet();
+			}
+			if (now >= entry.refreshAt && entry.startRefresh()) {
+				scheduleRefresh(userDn, loader);
+			}
+			return entry.value;
+		}
+
+		misses.incrementAndGet();
+		final V value = loader.load();
+		store(userDn, value);
+		return value;
+	}
+
+	/**
+	 * Removes the cached value of the given user DN.
+	 *
+	 * @param userDn the user DN
+	 */
+	public void invalidate(final String userDn) {
+		synchronized (entries) {
+			entries.remove(userDn);
+		}
+	}
+
+	/**
+	 * Removes all cached values.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Stops the background refresh thread.
+	 */
+	public void shutdown() {
+		refresher.shutdownNow();
+	}
+
+	private void scheduleRefresh(final String userDn, final Loader<V> loader) {
+		try {
+			refresher.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final V value = loader.load();
+						refreshes.incrementAndGet();
+						store(userDn, value);
+					} catch (final RuntimeException e) {
+						refreshFailures.incrementAndGet();
+						logger.warn("Background refresh of " + userDn + " failed, keeping the cached value until "
+								+ "it expires: " + e.getMessage());
+					}
+				}
+			});
+		} catch (final RuntimeException e) {
+			// the refresher was shut down, the value will be reloaded once it expires
+			logger.debug("Could not schedule a background refresh of " + userDn, e);
+		}
+	}
+
+	private void store(final String userDn, final V value) {
+		final long now = System.currentTimeMillis();
+		final long ttl = value.isEmpty() ? negativeTtlMillis : ttlMillis;
+		final Entry<V> entry = new Entry<V>(value, now + (long) (ttl * refreshAheadRatio), now + ttl);
+		synchronized (entries) {
+			entries.put(userDn, entry);
+		}
+	}
+
+	/**
+	 * @param ttlSeconds the time to live, in seconds, of non empty values.
+	 */
+	public void setTtlSeconds(final long ttlSeconds) {
+		this.ttlMillis = ttlSeconds * 1000L;
+	}
+
+	/**
+	 * @param negativeTtlSeconds the time to live, in seconds, of empty values.
+	 */
+	public void setNegativeTtlSeconds(final long negativeTtlSeconds) {
+		this.negativeTtlMillis = negativeTtlSeconds * 1000L;
+	}
+
+	/**
+	 * @param refreshAheadRatio the fraction of the time to live after which a read triggers a background refresh.
+	 *            1 or more disables background refresh.
+	 */
+	public void setRefreshAheadRatio(final double refreshAheadRatio) {
+		Assert.isTrue(refreshAheadRatio > 0, "refreshAheadRatio must be positive");
+		this.refreshAheadRatio = refreshAheadRatio;
+	}
+
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getNegativeHits() {
+		return negativeHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getRefreshes() {
+		return refreshes.get();
+	}
+
+	public long getRefreshFailures() {
+		return refreshFailures.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "LdapLookupCache [size=" + getSize() + ", hits=" + getHits() + ", negativeHits=" + getNegativeHits()
+				+ ", misses=" + getMisses() + ", refreshes=" + getRefreshes() + ", refreshFailures="
+				+ getRefreshFailures() + ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * A cached value and its refresh and expiry times.
+	 */
+	private static final class Entry<V> {
+		private final V value;
+		private final long refreshAt;
+		private final long expiresAt;
+		private boolean refreshing;
+
+		Entry(final V value, final long refreshAt, final long expiresAt) {
+			this.value = value;
+			this.refreshAt = refreshAt;
+			this.expiresAt = expiresAt;
+		}
+
+		synchronized boolean startRefresh() {
+			if (refreshing) {
+				return false;
+			}
+			refreshing = true;
+			return true;
+		}
+	}
+}
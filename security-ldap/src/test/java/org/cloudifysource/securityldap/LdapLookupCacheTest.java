@@ -0,0 +1,131 @@
+package org.cloudifysource.securityldap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link LdapLookupCache} serves, expires, refreshes and invalidates values loaded from a stub directory.
+ */
+public class LdapLookupCacheTest {
+
+	private static final String USER_DN = "uid=john,ou=people,dc=example,dc=com";
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private final AtomicInteger loads = new AtomicInteger();
+	private List<String> directoryGroups = Arrays.asList("admins", "developers");
+	private LdapLookupCache<List<String>> cache;
+
+	private final LdapLookupCache.Loader<List<String>> loader = new LdapLookupCache.Loader<List<String>>() {
+		@Override
+		public List<String> load() {
+			loads.incrementAndGet();
+			return directoryGroups;
+		}
+	};
+
+	@Before
+	public void before() {
+		cache = new LdapLookupCache<List<String>>("test", 2);
+		// no background refresh unless a test asks for it.
+		cache.setRefreshAheadRatio(1);
+	}
+
+	@After
+	public void after() {
+		cache.shutdown();
+	}
+
+	@Test
+	public void testCacheHit() {
+		Assert.assertEquals(directoryGroups, cache.get(USER_DN, loader));
+		Assert.assertEquals(directoryGroups, cache.get(USER_DN, loader));
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		cache.setTtlSeconds(1);
+		cache.get(USER_DN, loader);
+		cache.get(USER_DN, loader);
+		Assert.assertEquals(1, loads.get());
+
+		Thread.sleep(1100);
+		directoryGroups = Arrays.asList("admins");
+		Assert.assertEquals(directoryGroups, cache.get(USER_DN, loader));
+		Assert.assertEquals(2, loads.get());
+		Assert.assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testEmptyValuesExpireWithNegativeTtl() throws InterruptedException {
+		cache.setNegativeTtlSeconds(1);
+		directoryGroups = Collections.emptyList();
+		cache.get(USER_DN, loader);
+		cache.get(USER_DN, loader);
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, cache.getNegativeHits());
+
+		Thread.sleep(1100);
+		cache.get(USER_DN, loader);
+		Assert.assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testInvalidation() {
+		cache.get(USER_DN, loader);
+		cache.invalidate(USER_DN);
+		Assert.assertEquals(0, cache.getSize());
+		directoryGroups = Arrays.asList("viewers");
+		Assert.assertEquals(directoryGroups, cache.get(USER_DN, loader));
+		Assert.assertEquals(2, loads.get());
+
+		cache.clear();
+		cache.get(USER_DN, loader);
+		Assert.assertEquals(3, loads.get());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		cache.get("uid=a", loader);
+		cache.get("uid=b", loader);
+		cache.get("uid=a", loader);
+		cache.get("uid=c", loader);
+		Assert.assertEquals(2, cache.getSize());
+		Assert.assertEquals(1, cache.getEvictions());
+
+		// b was the least recently used.
+		cache.get("uid=a", loader);
+		Assert.assertEquals(3, loads.get());
+		cache.get("uid=b", loader);
+		Assert.assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void testRefreshAhead() throws InterruptedException {
+		cache.setTtlSeconds(60);
+		cache.setRefreshAheadRatio(0.00001);
+		final List<String> original = directoryGroups;
+		cache.get(USER_DN, loader);
+		Thread.sleep(10);
+
+		directoryGroups = Arrays.asList("admins");
+		// the cached value is served while it is reloaded in the background.
+		Assert.assertEquals(original, cache.get(USER_DN, loader));
+		final long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (cache.getRefreshes() < 1) {
+			Assert.assertTrue("Value was not refreshed", System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(directoryGroups, cache.get(USER_DN, loader));
+		Assert.assertEquals(1, cache.getMisses());
+	}
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * Holds precomputed permission sets used by {@link CustomPermissionEvaluator}. Two bounded, LRU ordered caches are
+ * kept: the normalized authorization groups of each target auth-groups string, and the precomputed permissions of
+ * each principal. A principal entry also memoizes its auth-groups decision per target, so repeated evaluations of
+ * the same user against the same objects (e.g. list responses) are a single map lookup.
+ * 
+ * A principal entry is discarded when the user logs in again (see {@link #invalidate(String)}) or when the roles
+ * or authorization groups it was computed from no longer match the ones presented by the caller.
+ * 
+ * @since 2.7.1
+ */
+public class AuthorizationDecisionCache {
+
+	/**
+	 * Default maximum number of principals held by the cache.
+	 */
+	public static final int DEFAULT_MAX_PRINCIPALS = 1000;
+
+	/**
+	 * Default maximum number of distinct target auth-groups strings held by the cache.
+	 */
+	public static final int DEFAULT_MAX_TARGETS = 10000;
+
+	/**
+	 * Maximum number of memoized decisions per principal.
+	 */
+	static final int MAX_DECISIONS_PER_PRINCIPAL = 1024;
+
+	private static final String ROLE_CLOUDADMIN = "ROLE_CLOUDADMINS";
+	private static final String ROLE_APPMANAGER = "ROLE_APPMANAGERS";
+	private static final String ROLE_VIEWER = "ROLE_VIEWERS";
+	// separates the names in a fingerprint, and stands for a null name. Neither is expected in a name.
+	private static final char FINGERPRINT_SEPARATOR = '\u0000';
+	private static final String FINGERPRINT_NULL = "\u0001";
+
+	private static final AuthorizationDecisionCache SHARED_INSTANCE = new AuthorizationDecisionCache(
+			DEFAULT_MAX_PRINCIPALS, DEFAULT_MAX_TARGETS);
+
+	private final Map<String, PrincipalPermissions> principals;
+	private final Map<String, Set<String>> targets;
+
+	/**
+	 * Constructs a cache with the given bounds.
+	 * 
+	 * @param maxPrincipals
+	 *            The maximum number of principals to keep
+	 * @param maxTargets
+	 *            The maximum number of target auth-groups strings to keep
+	 */
+	public AuthorizationDecisionCache(final int maxPrincipals, final int maxTargets) {
+		if (maxPrincipals <= 0 || maxTargets <= 0) {
+			throw new IllegalArgumentException("Cache bounds must be positive");
+		}
+		this.principals = new BoundedMap<String, PrincipalPermissions>(maxPrincipals);
+		this.targets = new BoundedMap<String, Set<String>>(maxTargets);
+	}
+
+	/**
+	 * @return The cache shared by all evaluators and authentication providers in this JVM.
+	 */
+	public static AuthorizationDecisionCache getSharedInstance() {
+		return SHARED_INSTANCE;
+	}
+
+	/**
+	 * Returns the precomputed permissions of the given user, computing them if they are missing or stale.
+	 * 
+	 * @param authDetails
+	 *            The authorization details of the user
+	 * @return The precomputed permissions
+	 */
+	public PrincipalPermissions getPrincipalPermissions(final CloudifyAuthorizationDetails authDetails) {
+		final String username = authDetails.getUsername();
+		final Collection<String> roles = nullToEmpty(authDetails.getRoles());
+		final Collection<String> authGroups = nullToEmpty(authDetails.getAuthGroups());
+		final String fingerprint = fingerprint(roles, authGroups);
+
+		synchronized (principals) {
+			final PrincipalPermissions cached = principals.get(username);
+			if (cached != null && cached.isComputedFrom(fingerprint)) {
+				return cached;
+			}
+		}
+
+		final PrincipalPermissions computed = new PrincipalPermissions(roles, authGroups, fingerprint);
+		if (username != null) {
+			synchronized (principals) {
+				principals.put(username, computed);
+			}
+		}
+		return computed;
+	}
+
+	/**
+	 * Returns the normalized (trimmed, lower-case) set of authorization groups of the given comma delimited string.
+	 * The returned set is shared and must not be modified.
+	 * 
+	 * @param targetAuthGroups
+	 *            Comma delimited auth-groups string of the target object
+	 * @return An unmodifiable set of normalized group names
+	 */
+	public Set<String> getTargetAuthGroups(final String targetAuthGroups) {
+		synchronized (targets) {
+			final Set<String> cached = targets.get(targetAuthGroups);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		final Set<String> groups = new HashSet<String>();
+		final StringTokenizer tokenizer = new StringTokenizer(targetAuthGroups, ",");
+		while (tokenizer.hasMoreTokens()) {
+			final String group = normalize(tokenizer.nextToken());
+			if (group.length() > 0) {
+				groups.add(group);
+			}
+		}
+		final Set<String> result = Collections.unmodifiableSet(groups);
+		synchronized (targets) {
+			targets.put(targetAuthGroups, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Discards the cached permissions of the given user. Called when the user logs in, so role or group changes
+	 * made in the user repository take effect on the next login.
+	 * 
+	 * @param username
+	 *            The name of the user
+	 */
+	public void invalidate(final String username) {
+		synchronized (principals) {
+			principals.remove(username);
+		}
+	}
+
+	/**
+	 * Discards all cached principals and targets.
+	 */
+	public void clear() {
+		synchronized (principals) {
+			principals.clear();
+		}
+		synchronized (targets) {
+			targets.clear();
+		}
+	}
+
+	/**
+	 * @return The number of principals currently cached.
+	 */
+	public int getPrincipalsCount() {
+		synchronized (principals) {
+			return principals.size();
+		}
+	}
+
+	private static Collection<String> nullToEmpty(final Collection<String> collection) {
+		if (collection == null) {
+			return Collections.emptyList();
+		}
+		return collection;
+	}
+
+	private static String normalize(final String name) {
+		return name.trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Describes the given roles and groups by their sorted names, so permissions computed from them can be matched
+	 * to a caller's roles and groups with a single string comparison.
+	 */
+	static String fingerprint(final Collection<String> roles, final Collection<String> authGroups) {
+		final StringBuilder fingerprint = new StringBuilder();
+		appendSorted(fingerprint, roles);
+		fingerprint.append(FINGERPRINT_SEPARATOR);
+		appendSorted(fingerprint, authGroups);
+		return fingerprint.toString();
+	}
+
+	private static void appendSorted(final StringBuilder fingerprint, final Collection<String> names) {
+		final String[] sorted = new String[names.size()];
+		int i = 0;
+		for (final String name : names) {
+			sorted[i++] = name == null ? FINGERPRINT_NULL : name;
+		}
+		Arrays.sort(sorted);
+		for (final String name : sorted) {
+			fingerprint.append(name).append(FINGERPRINT_SEPARATOR);
+		}
+	}
+
+	/**
+	 * The permissions of a single principal, precomputed from its roles and authorization groups.
+	 */
+	public static final class PrincipalPermissions {
+
+		private final String fingerprint;
+		private final boolean cloudAdmin;
+		private final boolean allowedToView;
+		private final boolean allowedToDeploy;
+		private final Collection<String> authGroups;
+		private final Set<String> memberGroups;
+		private final Map<String, Boolean> decisions = new BoundedMap<String, Boolean>(MAX_DECISIONS_PER_PRINCIPAL);
+
+		PrincipalPermissions(final Collection<String> roles, final Collection<String> authGroups,
+				final String fingerprint) {
+			this.fingerprint = fingerprint;
+
+			boolean admin = false;
+			boolean appManager = false;
+			boolean viewer = false;
+			for (final String role : roles) {
+				if (ROLE_CLOUDADMIN.equalsIgnoreCase(role)) {
+					admin = true;
+				} else if (ROLE_APPMANAGER.equalsIgnoreCase(role)) {
+					appManager = true;
+				} else if (ROLE_VIEWER.equalsIgnoreCase(role)) {
+					viewer = true;
+				}
+			}
+			this.cloudAdmin = admin;
+			this.allowedToDeploy = admin || appManager;
+			this.allowedToView = allowedToDeploy || viewer;
+
+			this.authGroups = Collections.unmodifiableList(new ArrayList<String>(authGroups));
+			// the groups are matched to the target groups ignoring case, but otherwise as given.
+			final Set<String> groups = new HashSet<String>();
+			for (final String group : authGroups) {
+				groups.add(group == null ? null : group.toLowerCase(Locale.ENGLISH));
+			}
+			this.memberGroups = groups;
+		}
+
+		boolean isComputedFrom(final String callerFingerprint) {
+			return fingerprint.equals(callerFingerprint);
+		}
+
+		public boolean isCloudAdmin() {
+			return cloudAdmin;
+		}
+
+		public boolean isAllowedToView() {
+			return allowedToView;
+		}
+
+		public boolean isAllowedToDeploy() {
+			return allowedToDeploy;
+		}
+
+		/**
+		 * @return The authorization groups the permissions were computed from, as given.
+		 */
+		public Collection<String> getAuthGroups() {
+			return authGroups;
+		}
+
+		/**
+		 * Checks if this principal is a member of any of the given (normalized) target groups. Decisions are
+		 * memoized per target auth-groups string, the first evaluation probes the smaller of the two sets against
+		 * the larger one.
+		 * 
+		 * @param targetAuthGroups
+		 *            The target auth-groups string, used as the memoization key
+		 * @param targetGroups
+		 *            The set returned by {@link AuthorizationDecisionCache#getTargetAuthGroups(String)} for it
+		 * @return true if the sets intersect, false otherwise.
+		 */
+		public boolean hasAnyAuthGroup(final String targetAuthGroups, final Set<String> targetGroups) {
+			synchronized (decisions) {
+				final Boolean cached = decisions.get(targetAuthGroups);
+				if (cached != null) {
+					return cached.booleanValue();
+				}
+			}
+
+			final Set<String> smaller = targetGroups.size() < memberGroups.size() ? targetGroups : memberGroups;
+			final Set<String> larger = smaller == targetGroups ? memberGroups : targetGroups;
+			boolean found = false;
+			for (final String group : smaller) {
+				if (larger.contains(group)) {
+					found = true;
+					break;
+				}
+			}
+
+			synchronized (decisions) {
+				decisions.put(targetAuthGroups, Boolean.valueOf(found));
+			}
+			return found;
+		}
+	}
+
+	/**
+	 * A LinkedHashMap in access order that evicts its eldest entry once it grows beyond its bound.
+	 */
+	private static final class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+		private final int maxEntries;
+
+		BoundedMap(final int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+			return size() > maxEntries;
+		}
+	}
+}
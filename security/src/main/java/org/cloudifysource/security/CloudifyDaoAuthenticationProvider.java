@@ -108,6 +108,9 @@ public class CloudifyDaoAuthenticationProvider implements AuthenticationProvider
 
 		// authenticate
 		runAuthenticationChecks(user);
+		
+		// roles and auth groups may have changed since the last login, drop any permissions computed from them
+		AuthorizationDecisionCache.getSharedInstance().invalidate(username);
 
 		// create a successful and full authentication token
 		return createSuccessfulAuthentication(userToken, user);
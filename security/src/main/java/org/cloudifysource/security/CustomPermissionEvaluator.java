@@ -16,11 +16,9 @@
 package org.cloudifysource.security;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,14 +45,20 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
 	private static final String LOCALCLOUD = "localcloud";
 	private static final String PERMISSION_TO_DEPLOY = "deploy";
 	private static final String PERMISSION_TO_VIEW = "view";
-	private static final String AUTH_GROUPS_DELIMITER = ",";
-	private static final String ROLE_CLOUDADMIN = "ROLE_CLOUDADMINS";
-	private static final String ROLE_APPMANAGER = "ROLE_APPMANAGERS";
-	private static final String ROLE_VIEWER = "ROLE_VIEWERS";
 	private static final String SPRING_SECURITY_PROFILE = 
 			System.getenv(SecurityConstants.SPRING_ACTIVE_PROFILE_ENV_VAR);
 	
 	private final Logger logger = java.util.logging.Logger.getLogger(CustomPermissionEvaluator.class.getName());
+	
+	private AuthorizationDecisionCache decisionCache = AuthorizationDecisionCache.getSharedInstance();
+	
+	public AuthorizationDecisionCache getDecisionCache() {
+		return decisionCache;
+	}
+
+	public void setDecisionCache(final AuthorizationDecisionCache decisionCache) {
+		this.decisionCache = decisionCache;
+	}
 
 	/**
 	 * Checks if the current user should be granted the requested permission on the target object.
@@ -141,8 +145,10 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
     		targetAuthGroups = ((String) targetDomainObject).trim();	
     	}
     	
-		if (hasRequiredRoles(authDetails, permissionName) 
-				&& hasAuthGroupAccess(authDetails, targetAuthGroups, permissionName)) {
+    	final AuthorizationDecisionCache.PrincipalPermissions principalPermissions = 
+    			decisionCache.getPrincipalPermissions(authDetails);
+		if (hasRequiredRoles(authDetails, principalPermissions, permissionName) 
+				&& hasAuthGroupAccess(authDetails, principalPermissions, targetAuthGroups, permissionName)) {
 			permissionGranted = true;
 		}
 		
@@ -188,34 +194,21 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
 	/**
 	 * Checks if the logged in user is allowed to access the target object, according to its roles.
 	 * @param authDetails The CloudifyAuthorizationDetails object of the logged in user.
+	 * @param principalPermissions The precomputed permissions of the logged in user.
 	 * @param permissionName permission requested (view, deploy, etc.)
 	 * @return true - access allowed, false - access denied.
 	 */
-	private boolean hasRequiredRoles(final CloudifyAuthorizationDetails authDetails, final String permissionName) {
+	private boolean hasRequiredRoles(final CloudifyAuthorizationDetails authDetails, 
+			final AuthorizationDecisionCache.PrincipalPermissions principalPermissions, final String permissionName) {
 		
 		boolean relevantRoleFound = false;
 		
-		Collection<String> userRoles = authDetails.getRoles();
-		
 		//TODO [noak] : This logic should be configurable
 		
     	if (permissionName.equalsIgnoreCase(PERMISSION_TO_VIEW)) {
-    		for (String role : userRoles) {
-    			if (ROLE_CLOUDADMIN.equalsIgnoreCase(role) 
-    					|| ROLE_APPMANAGER.equalsIgnoreCase(role) 
-    					|| ROLE_VIEWER.equalsIgnoreCase(role)) {
-    				relevantRoleFound = true;
-    				break;
-    			}
-    		}
+    		relevantRoleFound = principalPermissions.isAllowedToView();
     	} else if (permissionName.equalsIgnoreCase(PERMISSION_TO_DEPLOY)) {
-    		for (String role : userRoles) {
-    			if (ROLE_CLOUDADMIN.equalsIgnoreCase(role) 
-    					|| ROLE_APPMANAGER.equalsIgnoreCase(role)) {
-    				relevantRoleFound = true;
-    				break;
-    			}
-    		}
+    		relevantRoleFound = principalPermissions.isAllowedToDeploy();
     	}
     	
     	if (!relevantRoleFound) {
@@ -229,11 +222,13 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
 	/**
 	 * Checks if the logged in user is allowed to access the target object, according to its authorization groups.
 	 * @param authDetails CloudifyAuthorizationDetails object of the logged in user
+	 * @param principalPermissions The precomputed permissions of the logged in user.
 	 * @param targetAuthGroupsStr Comma delimited string of the target object's authorization groups.
 	 * @param permissionName permission requested (view, deploy, etc.)
 	 * @return true - access allowed, false - access denied.
 	 */
 	private boolean hasAuthGroupAccess(final CloudifyAuthorizationDetails authDetails, 
+			final AuthorizationDecisionCache.PrincipalPermissions principalPermissions, 
 			final String targetAuthGroupsStr, final String permissionName) {
 		
 		boolean permissionGranted = false;
@@ -245,30 +240,29 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
 			if (isLocalCloud()) {
 				return true;
 			} else {
-				return (isCloudAdmin(authDetails.getRoles()));
+				return principalPermissions.isCloudAdmin();
 			}
 		}
 		
-    	Collection<String> targetAuthGroups = splitAndTrimString(targetAuthGroupsStr, AUTH_GROUPS_DELIMITER);
+    	final Set<String> targetAuthGroups = decisionCache.getTargetAuthGroups(targetAuthGroupsStr);
     	
-    	Collection<String> userAuthGroups = authDetails.getAuthGroups();
 		if (permissionName.equalsIgnoreCase(PERMISSION_TO_VIEW)) {
-			if (hasPermissionToView(authDetails, targetAuthGroups)) {
+			if (hasPermissionToView(principalPermissions, targetAuthGroupsStr, targetAuthGroups)) {
 				permissionGranted = true;
-				logger.log(Level.FINE, "View permission granted for user " + authDetails.getUsername());
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE, "View permission granted for user " + authDetails.getUsername());
+				}
 			} else {
 				logger.log(Level.WARNING, "Insufficient permissions. User " + authDetails.getUsername() + " is only "
-						+ "permitted to view groups: " 
-						+ Arrays.toString(userAuthGroups.toArray(new String[userAuthGroups.size()])));
+						+ "permitted to view groups: " + principalPermissions.getAuthGroups());
 			}
 		} else if (permissionName.equalsIgnoreCase(PERMISSION_TO_DEPLOY)) {
-			if (hasPermissionToDeploy(authDetails, targetAuthGroups)) {
+			if (hasPermissionToDeploy(principalPermissions, targetAuthGroupsStr, targetAuthGroups)) {
 				permissionGranted = true;
 				logger.log(Level.INFO, "Deploy permission granted for user " + authDetails.getUsername());
 			} else {
 				logger.log(Level.WARNING, "Insufficient permissions. User " + authDetails.getUsername() + " is only "
-						+ "permitted to deploy for groups: " 
-						+ Arrays.toString(userAuthGroups.toArray(new String[userAuthGroups.size()])));
+						+ "permitted to deploy for groups: " + principalPermissions.getAuthGroups());
 			}
 		}
 		
@@ -278,34 +272,36 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
 	/**
 	 * Checks if the current user is allowed to view the an object that has the specified authorization groups.
 	 * If the user has *any* of the target object's authorization groups - permission to view it is granted.
-	 * @param authDetails The CloudifyAuthorizationDetails object of the user who requests permission
-	 * @param requestedAuthGroups The authorization groups of the target object
+	 * @param principalPermissions The precomputed permissions of the user who requests permission
+	 * @param targetAuthGroupsStr The authorization groups string of the target object
+	 * @param requestedAuthGroups The normalized authorization groups of the target object
 	 * @return boolean value - true if permission is granted, false otherwise.
 	 */
-	private boolean hasPermissionToView(final CloudifyAuthorizationDetails authDetails, 
-			final Collection<String> requestedAuthGroups) {
+	private boolean hasPermissionToView(final AuthorizationDecisionCache.PrincipalPermissions principalPermissions, 
+			final String targetAuthGroupsStr, final Set<String> requestedAuthGroups) {
 		
-    	return hasAnyAuthGroup(authDetails, requestedAuthGroups);
+    	return principalPermissions.hasAnyAuthGroup(targetAuthGroupsStr, requestedAuthGroups);
     }
 	
     
 	/**
 	 * Checks if the current user is allowed to view the an object that has the specified authorization groups.
 	 * If the user has *any* the authorization groups of the object - permission to view it is granted.
-	 * @param authDetails The CloudifyAuthorizationDetails object of the user who requests permission
-	 * @param requestedAuthGroups The authorization groups of the target object
+	 * @param principalPermissions The precomputed permissions of the user who requests permission
+	 * @param targetAuthGroupsStr The authorization groups string of the target object
+	 * @param requestedAuthGroups The normalized authorization groups of the target object
 	 * @return boolean value - true if permission is granted, false otherwise.
 	 */
-	private boolean hasPermissionToDeploy(final CloudifyAuthorizationDetails authDetails, 
-			final Collection<String> requestedAuthGroups) {
+	private boolean hasPermissionToDeploy(final AuthorizationDecisionCache.PrincipalPermissions principalPermissions, 
+			final String targetAuthGroupsStr, final Set<String> requestedAuthGroups) {
 		
 		//if authGroups were not defined for this object - only cloud admins can see it
 		if (requestedAuthGroups.isEmpty()) {
-			return (isCloudAdmin(authDetails.getRoles()));
+			return principalPermissions.isCloudAdmin();
 		}
 		
 		//if the current user has at any of the requested auth groups - deploy is permitted.
-		return hasAnyAuthGroup(authDetails, requestedAuthGroups);
+		return principalPermissions.hasAnyAuthGroup(targetAuthGroupsStr, requestedAuthGroups);
     	//return hasAllAuthGroups(requestedAuthGroups);
     }
     
@@ -320,28 +316,6 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
 		return isPermitted;
     }
     
-    private boolean hasAnyAuthGroup(final CloudifyAuthorizationDetails authDetails, 
-    		final Collection<String> requestedAuthGroups) {
-    	
-    	boolean isPermitted = false;
-    	
-    	Collection<String> userAuthGroups = authDetails.getAuthGroups();
-    	for (String requestedAuthGroup : requestedAuthGroups) {
-    		/*if (userAuthGroups.contains(requestedAuthGroup)) {
-    			isPermitted = true;
-    			break;
-    		}*/
-    		for (String userAuthGroup : userAuthGroups) {
-    			if (requestedAuthGroup.equalsIgnoreCase(userAuthGroup)) {
-    				isPermitted = true;
-    				break;
-    			}
-    		}
-    	}
-    	
-		return isPermitted;
-    }
-    
     /**
      * Returns the names of the roles (authorities) the user is granted.
      * @param authentication The authentication object of the current user
@@ -445,39 +419,11 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
 		return userAuthGroups;
     }
     
-    private boolean isCloudAdmin(final Collection<String> roles) {
-    	boolean hasAdminRole = false;
-    	for (String role : roles) {
-    		if (ROLE_CLOUDADMIN.equalsIgnoreCase(role)) {
-    			hasAdminRole = true;
-    			break;
-    		}
-    	}
-    	
-    	return hasAdminRole;
-    }
-    
     private boolean isLocalCloud() {
     	String isLocalCloudStr = System.getenv(CloudifyConstants.GIGASPACES_CLOUD_MACHINE_ID);
     	return LOCALCLOUD.equalsIgnoreCase(isLocalCloudStr);
     }
     
-	/**
-	 * Splits the string by the specified delimiter and trims the resulting tokens. 
-	 * @param stringOfTokens The string to split 
-	 * @param delimiter The delimiter to split by
-	 * @return A Collection of trimmed String tokens
-	 */
-	private static Collection<String> splitAndTrimString(final String stringOfTokens, final String delimiter) {
-    	Collection<String> values = new HashSet<String>();
-		StringTokenizer tokenizer = new StringTokenizer(stringOfTokens, delimiter);
-		while (tokenizer.hasMoreTokens()) {
-			values.add(tokenizer.nextToken().trim());
-		}
-		
-		return values;
-    }
-	
     private static String collectionToDelimitedString(final Collection<String> collection, final String delimiter) {
     	String delimitedString;
     	StringBuilder builder = new StringBuilder();
@@ -0,0 +1,105 @@
+package org.cloudifysource.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link AuthorizationDecisionCache} reuses the permissions of a principal until the user logs in again or
+ * presents other roles or authorization groups.
+ */
+public class AuthorizationDecisionCacheTest {
+
+	private static final String USERNAME = "user";
+
+	private final AuthorizationDecisionCache cache = new AuthorizationDecisionCache(10, 10);
+
+	private static CloudifyAuthorizationDetails createAuthDetails(final List<String> roles,
+			final List<String> authGroups) {
+		return new CloudifyAuthorizationDetails() {
+			@Override
+			public String getUsername() {
+				return USERNAME;
+			}
+
+			@Override
+			public Collection<String> getRoles() {
+				return roles;
+			}
+
+			@Override
+			public Collection<String> getAuthGroups() {
+				return authGroups;
+			}
+		};
+	}
+
+	@Test
+	public void testCacheHit() {
+		final AuthorizationDecisionCache.PrincipalPermissions permissions = cache.getPrincipalPermissions(
+				createAuthDetails(Arrays.asList("ROLE_VIEWERS", "ROLE_APPMANAGERS"), Arrays.asList("a", "b")));
+		Assert.assertTrue(permissions.isAllowedToDeploy());
+		Assert.assertFalse(permissions.isCloudAdmin());
+
+		// the same roles and groups in another order.
+		Assert.assertSame(permissions, cache.getPrincipalPermissions(
+				createAuthDetails(Arrays.asList("ROLE_APPMANAGERS", "ROLE_VIEWERS"), Arrays.asList("b", "a"))));
+		Assert.assertEquals(1, cache.getPrincipalsCount());
+	}
+
+	@Test
+	public void testRolesChanged() {
+		final List<String> groups = Arrays.asList("a");
+		final AuthorizationDecisionCache.PrincipalPermissions permissions = cache.getPrincipalPermissions(
+				createAuthDetails(Arrays.asList("ROLE_VIEWERS"), groups));
+		Assert.assertFalse(permissions.isAllowedToDeploy());
+
+		final AuthorizationDecisionCache.PrincipalPermissions changed = cache.getPrincipalPermissions(
+				createAuthDetails(Arrays.asList("ROLE_VIEWERS", "ROLE_CLOUDADMINS"), groups));
+		Assert.assertNotSame(permissions, changed);
+		Assert.assertTrue(changed.isCloudAdmin());
+		Assert.assertSame(changed, cache.getPrincipalPermissions(
+				createAuthDetails(Arrays.asList("ROLE_VIEWERS", "ROLE_CLOUDADMINS"), groups)));
+	}
+
+	@Test
+	public void testAuthGroupsChanged() {
+		final List<String> roles = Arrays.asList("ROLE_VIEWERS");
+		final AuthorizationDecisionCache.PrincipalPermissions permissions = cache.getPrincipalPermissions(
+				createAuthDetails(roles, Arrays.asList("a")));
+		Assert.assertFalse(permissions.hasAnyAuthGroup("b", cache.getTargetAuthGroups("b")));
+
+		final AuthorizationDecisionCache.PrincipalPermissions changed = cache.getPrincipalPermissions(
+				createAuthDetails(roles, Arrays.asList("a", "B")));
+		Assert.assertNotSame(permissions, changed);
+		Assert.assertTrue(changed.hasAnyAuthGroup("b", cache.getTargetAuthGroups("b")));
+		Assert.assertEquals(Arrays.asList("a", "B"), new ArrayList<String>(changed.getAuthGroups()));
+	}
+
+	@Test
+	public void testAuthGroupsNotTrimmed() {
+		final List<String> roles = Arrays.asList("ROLE_VIEWERS");
+		final AuthorizationDecisionCache.PrincipalPermissions permissions = cache.getPrincipalPermissions(
+				createAuthDetails(roles, Arrays.asList(" a", null)));
+		Assert.assertFalse(permissions.hasAnyAuthGroup("a", cache.getTargetAuthGroups("a")));
+		Assert.assertEquals(Arrays.asList(" a", null), new ArrayList<String>(permissions.getAuthGroups()));
+
+		Assert.assertNotSame(permissions, cache.getPrincipalPermissions(createAuthDetails(roles, Arrays.asList("a"))));
+	}
+
+	@Test
+	public void testInvalidatedOnLogin() {
+		final CloudifyAuthorizationDetails authDetails = createAuthDetails(Arrays.asList("ROLE_VIEWERS"),
+				Arrays.asList("a"));
+		final AuthorizationDecisionCache.PrincipalPermissions permissions = cache.getPrincipalPermissions(authDetails);
+		Assert.assertSame(permissions, cache.getPrincipalPermissions(authDetails));
+
+		cache.invalidate(USERNAME);
+		Assert.assertEquals(0, cache.getPrincipalsCount());
+		Assert.assertNotSame(permissions, cache.getPrincipalPermissions(authDetails));
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.admin;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often callers of a {@link SharedAdmin} had to block on lookup discovery, as opposed to being served
+ * from an already discovered topology.
+ * 
+ * @since 2.7.1
+ */
+public class AdminDiscoveryStatistics {
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong blockedRequests = new AtomicLong();
+	private final AtomicLong blockedMillis = new AtomicLong();
+	private final AtomicLong adminCreations = new AtomicLong();
+
+	void requestServedFromSnapshot() {
+		requests.incrementAndGet();
+	}
+
+	void requestBlocked(final long durationMillis) {
+		requests.incrementAndGet();
+		blockedRequests.incrementAndGet();
+		blockedMillis.addAndGet(durationMillis);
+	}
+
+	void adminCreated() {
+		adminCreations.incrementAndGet();
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getBlockedRequests() {
+		return blockedRequests.get();
+	}
+
+	public long getBlockedMillis() {
+		return blockedMillis.get();
+	}
+
+	public long getAdminCreations() {
+		return adminCreations.get();
+	}
+
+	@Override
+	public String toString() {
+		return "AdminDiscoveryStatistics [requests=" + requests + ", blockedRequests=" + blockedRequests
+				+ ", blockedMillis=" + blockedMillis + ", adminCreations=" + adminCreations + "]";
+	}
+}
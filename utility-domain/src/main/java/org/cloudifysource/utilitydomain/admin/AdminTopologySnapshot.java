@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.admin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitInstance;
+import org.openspaces.admin.pu.events.ProcessingUnitAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceAddedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitInstanceRemovedEventListener;
+import org.openspaces.admin.pu.events.ProcessingUnitRemovedEventListener;
+
+/**
+ * A snapshot of the processing units and processing unit instances discovered by an {@link Admin}.
+ * The snapshot is kept up to date by admin events, so callers looking for an already discovered processing unit
+ * get an answer without blocking on discovery.
+ * 
+ * @since 2.7.1
+ */
+public class AdminTopologySnapshot implements ProcessingUnitAddedEventListener, ProcessingUnitRemovedEventListener,
+		ProcessingUnitInstanceAddedEventListener, ProcessingUnitInstanceRemovedEventListener {
+
+	private final ConcurrentMap<String, ProcessingUnit> processingUnits =
+			new ConcurrentHashMap<String, ProcessingUnit>();
+	private final ConcurrentMap<String, AtomicInteger> instanceCounts = new ConcurrentHashMap<String, AtomicInteger>();
+
+	/**
+	 * Registers the snapshot as a listener of the admin. Already discovered processing units and instances are
+	 * reported to the listener upon registration.
+	 * @param admin The admin to listen to
+	 */
+	public void attach(final Admin admin) {
+		admin.getProcessingUnits().getProcessingUnitAdded().add(this);
+		admin.getProcessingUnits().getProcessingUnitRemoved().add(this);
+		admin.getProcessingUnits().getProcessingUnitInstanceAdded().add(this);
+		admin.getProcessingUnits().getProcessingUnitInstanceRemoved().add(this);
+	}
+
+	/**
+	 * Unregisters the snapshot from the admin and clears it.
+	 * @param admin The admin to stop listening to
+	 */
+	public void detach(final Admin admin) {
+		admin.getProcessingUnits().getProcessingUnitAdded().remove(this);
+		admin.getProcessingUnits().getProcessingUnitRemoved().remove(this);
+		admin.getProcessingUnits().getProcessingUnitInstanceAdded().remove(this);
+		admin.getProcessingUnits().getProcessingUnitInstanceRemoved().remove(this);
+		processingUnits.clear();
+		instanceCounts.clear();
+	}
+
+	/**
+	 * Returns an already discovered processing unit.
+	 * @param puName The processing unit name
+	 * @return The processing unit, or null if it was not discovered yet
+	 */
+	public ProcessingUnit getProcessingUnit(final String puName) {
+		return processingUnits.get(puName);
+	}
+
+	/**
+	 * Returns the number of discovered instances of a processing unit.
+	 * @param puName The processing unit name
+	 * @return The number of instances, 0 if none were discovered
+	 */
+	public int getInstanceCount(final String puName) {
+		final AtomicInteger count = instanceCounts.get(puName);
+		return count == null ? 0 : count.get();
+	}
+
+	@Override
+	public void processingUnitAdded(final ProcessingUnit processingUnit) {
+		processingUnits.put(processingUnit.getName(), processingUnit);
+	}
+
+	@Override
+	public void processingUnitRemoved(final ProcessingUnit processingUnit) {
+		processingUnits.remove(processingUnit.getName());
+		instanceCounts.remove(processingUnit.getName());
+	}
+
+	@Override
+	public void processingUnitInstanceAdded(final ProcessingUnitInstance processingUnitInstance) {
+		final String puName = processingUnitInstance.getProcessingUnit().getName();
+		AtomicInteger count = instanceCounts.get(puName);
+		if (count == null) {
+			final AtomicInteger newCount = new AtomicInteger();
+			count = instanceCounts.putIfAbsent(puName, newCount);
+			if (count == null) {
+				count = newCount;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	@Override
+	public void processingUnitInstanceRemoved(final ProcessingUnitInstance processingUnitInstance) {
+		final AtomicInteger count = instanceCounts.get(processingUnitInstance.getProcessingUnit().getName());
+		if (count != null) {
+			count.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.admin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openspaces.admin.Admin;
+
+/**
+ * A reference counted holder of a single {@link Admin} object, shared by all users in the JVM that require the same
+ * admin configuration.
+ * <p>
+ * The admin is created on first use and is kept, with its already discovered topology, for as long as it is
+ * referenced. Once it is no longer referenced it is retained for a configurable period, and closed only if it was not
+ * used again during that period. This way sporadic callers reuse the incrementally discovered lookup state instead of
+ * paying a full discovery on every call.
+ * <p>
+ * Objects that keep using the admin, such as {@link TimedAdmin}, register as holders with {@link #addHolder()} and
+ * unregister with {@link #releaseHolder()}. The admin is closed immediately once the last holder is released and no
+ * call is in progress; a holder is never left with a closed admin by another holder. A closed admin with no holders is
+ * also removed from the shared instances.
+ * 
+ * @since 2.7.1
+ */
+public final class SharedAdmin {
+
+	private static final Logger logger = Logger.getLogger(SharedAdmin.class.getName());
+	private static final long REAPER_INTERVAL_MILLIS = 10 * 1000;
+	private static final Map<String, SharedAdmin> INSTANCES = new HashMap<String, SharedAdmin>();
+
+	// create daemon threads, so the reaper thread won't keep the process alive
+	private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+					thread.setDaemon(true);
+					thread.setName("AdminTimingThread");
+					return thread;
+				}
+			});
+
+	/**
+	 * Creates the admin object held by a {@link SharedAdmin}.
+	 */
+	interface AdminCreator {
+		Admin createAdmin();
+	}
+
+	private final String key;
+	private final AdminCreator creator;
+	private final AdminTopologySnapshot topology = new AdminTopologySnapshot();
+	private final AdminDiscoveryStatistics statistics = new AdminDiscoveryStatistics();
+	private Admin admin;
+	private int referenceCount;
+	private int holders;
+	private long lastReleased;
+	// only written while holding the class lock, so getInstance never waits for an instance lock.
+	private volatile long retentionMillis;
+	private ScheduledFuture<?> reaperTask;
+
+	private SharedAdmin(final String key, final AdminCreator creator, final long retentionMillis) {
+		this.key = key;
+		this.creator = creator;
+		this.retentionMillis = retentionMillis;
+	}
+
+	/**
+	 * Returns the shared admin holder for the given configuration key, creating it if required.
+	 * If the holder already exists, its retention period is extended to the given one if that is longer.
+	 * @param key A key uniquely describing the admin configuration
+	 * @param creator Creates the admin when required
+	 * @param retentionMillis The period an unreferenced admin is retained before it is closed
+	 * @return The shared admin holder
+	 */
+	static synchronized SharedAdmin getInstance(final String key, final AdminCreator creator,
+			final long retentionMillis) {
+		SharedAdmin sharedAdmin = INSTANCES.get(key);
+		if (sharedAdmin == null) {
+			sharedAdmin = new SharedAdmin(key, creator, retentionMillis);
+			INSTANCES.put(key, sharedAdmin);
+		} else {
+			sharedAdmin.retentionMillis = Math.max(sharedAdmin.retentionMillis, retentionMillis);
+		}
+		return sharedAdmin;
+	}
+
+	/**
+	 * Returns the shared admin holder for the given configuration key, creating it if required, and registers a
+	 * holder of it. Unlike calling {@link #getInstance(String, AdminCreator, long)} and then {@link #addHolder()}, the
+	 * holder can not be removed from the shared instances in between.
+	 * @param key A key uniquely describing the admin configuration
+	 * @param creator Creates the admin when required
+	 * @param retentionMillis The period an unreferenced admin is retained before it is closed
+	 * @return The shared admin holder
+	 */
+	static synchronized SharedAdmin addHolder(final String key, final AdminCreator creator,
+			final long retentionMillis) {
+		final SharedAdmin sharedAdmin = getInstance(key, creator, retentionMillis);
+		sharedAdmin.addHolder();
+		return sharedAdmin;
+	}
+
+	/**
+	 * Creates an admin holder that is not shared with other users, for configurations that can not be described by a
+	 * key, such as ones with an admin filter.
+	 * @param description Describes the admin configuration, in logs
+	 * @param creator Creates the admin when required
+	 * @param retentionMillis The period an unreferenced admin is retained before it is closed
+	 * @return The admin holder
+	 */
+	static SharedAdmin createUnshared(final String description, final AdminCreator creator,
+			final long retentionMillis) {
+		return new SharedAdmin(description, creator, retentionMillis);
+	}
+
+	/**
+	 * Acquires a reference to the admin, creating it if required. Every call must be followed by a call to
+	 * {@link #release()} once the admin is no longer used.
+	 * @return The admin
+	 */
+	public synchronized Admin acquire() {
+		if (admin == null) {
+			logger.info("Creating a new shared Admin object for " + key);
+			admin = creator.createAdmin();
+			topology.attach(admin);
+			statistics.adminCreated();
+			startReaper();
+		} else {
+			logger.finest("Using the cached shared Admin object for " + key);
+		}
+		referenceCount++;
+		return admin;
+	}
+
+	/**
+	 * Releases a reference previously acquired by {@link #acquire()}.
+	 */
+	public void release() {
+		synchronized (this) {
+			if (referenceCount > 0) {
+				referenceCount--;
+			}
+			lastReleased = System.currentTimeMillis();
+			closeIfUnused();
+		}
+		removeIfClosed();
+	}
+
+	/**
+	 * Registers a holder of the admin. Every call must be followed by a call to {@link #releaseHolder()} once the
+	 * holder no longer uses the admin.
+	 */
+	public synchronized void addHolder() {
+		holders++;
+	}
+
+	/**
+	 * Releases a holder registered by {@link #addHolder()}. When the last holder is released the admin is closed, as
+	 * soon as no call is in progress.
+	 */
+	public void releaseHolder() {
+		synchronized (this) {
+			if (holders > 0) {
+				holders--;
+			}
+			closeIfUnused();
+		}
+		removeIfClosed();
+	}
+
+	/**
+	 * @return The number of calls currently using the admin.
+	 */
+	public synchronized int getReferenceCount() {
+		return referenceCount;
+	}
+
+	/**
+	 * @return The number of registered holders of the admin.
+	 */
+	public synchronized int getHolders() {
+		return holders;
+	}
+
+	/**
+	 * @return The admin object if it is currently alive, null otherwise.
+	 */
+	public synchronized Admin getAdmin() {
+		return admin;
+	}
+
+	public AdminTopologySnapshot getTopology() {
+		return topology;
+	}
+
+	public AdminDiscoveryStatistics getStatistics() {
+		return statistics;
+	}
+
+	public long getRetentionMillis() {
+		return retentionMillis;
+	}
+
+	/**
+	 * @param key A key describing an admin configuration
+	 * @return true if there is a shared admin holder for the key
+	 */
+	static synchronized boolean isShared(final String key) {
+		return INSTANCES.containsKey(key);
+	}
+
+	// locks the class before the instance, the same order as getInstance, so it must not be called holding this.
+	private void removeIfClosed() {
+		synchronized (SharedAdmin.class) {
+			synchronized (this) {
+				if (admin == null && holders == 0 && referenceCount == 0 && INSTANCES.get(key) == this) {
+					INSTANCES.remove(key);
+				}
+			}
+		}
+	}
+
+	private void startReaper() {
+		reaperTask = REAPER.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				closeIfExpired();
+				removeIfClosed();
+			}
+		}, REAPER_INTERVAL_MILLIS, REAPER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void closeIfExpired() {
+		if (admin != null && referenceCount == 0 && lastReleased + retentionMillis < System.currentTimeMillis()) {
+			logger.info("Closing expired shared admin object for " + key + ". Discovery statistics: " + statistics);
+			close();
+		}
+	}
+
+	private void closeIfUnused() {
+		if (admin != null && holders == 0 && referenceCount == 0) {
+			logger.info("Closing shared admin object for " + key + ", it has no more holders. Discovery statistics: "
+					+ statistics);
+			close();
+		}
+	}
+
+	// called only when no call is using the admin.
+	private void close() {
+		if (reaperTask != null) {
+			reaperTask.cancel(false);
+			reaperTask = null;
+		}
+		if (admin != null) {
+			topology.detach(admin);
+			admin.close();
+			admin = null;
+		}
+	}
+}
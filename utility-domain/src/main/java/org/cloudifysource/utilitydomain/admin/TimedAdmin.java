@@ -29,35 +29,39 @@ import org.openspaces.admin.pu.ProcessingUnit;
 import org.openspaces.admin.space.Space;
 import org.openspaces.security.AdminFilter;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-
 /**
  * Wraps the {@link Admin} object in order to monitor the object usage and close it after it is no longer in use.
  * This is intended to minimize memory and network utilization by unused {@link Admin} objects.
+ * <p>
+ * The admin object itself is held by a {@link SharedAdmin}, shared by all TimedAdmin objects in the JVM that use the
+ * same configuration; a TimedAdmin with an admin filter gets an admin of its own. The admin is never closed while a
+ * call is in progress, and is retained for a configurable idle period (see
+ * {@link #SYSTEM_PROPERTY_MAX_IDLE_TIME_SECONDS}) after the last call. Processing units already discovered are served
+ * from a topology snapshot without blocking on discovery.
  * 
  * @author noak
  * @since 2.7.1
  */
 public class TimedAdmin {
 
+	/**
+	 * System property used to override the period, in seconds, an unused admin object is retained.
+	 */
+	public static final String SYSTEM_PROPERTY_MAX_IDLE_TIME_SECONDS = "org.cloudifysource.admin.max-idle-time-seconds";
+
 	private static Logger logger = Logger.getLogger(TimedAdmin.class.getName());
-	// TODO noak: make configurable
-	private static final long MAX_IDLE_TIME_MILLIS = 120 * 1000; // defaults to 120 seconds
-	private static final long POLLING_INTERVAL_MILLIS = 10 * 1000; // defaults to 10 seconds
+	private static final long DEFAULT_MAX_IDLE_TIME_SECONDS = 120; // defaults to 120 seconds
 
-	private long lastUsed = System.currentTimeMillis();
-	private Admin admin;
+	private long maxIdleTimeMillis = TimeUnit.SECONDS.toMillis(
+			Long.getLong(SYSTEM_PROPERTY_MAX_IDLE_TIME_SECONDS, DEFAULT_MAX_IDLE_TIME_SECONDS));
+	private SharedAdmin sharedAdmin;
 	
 	private boolean discoverUnmanagedSpaces;
-	boolean running;
 	private int statisticsHistorySize = Admin.DEFAULT_HISTORY_SIZE;
 	private String groups;
 	private String locators;
 	private Class[] discoveryServices;
 	private AdminFilter adminFilter;
-	private ExecutorService executor;
 	
 	
 	public void setDiscoveryServices(final Class[] discoveryServices) {
@@ -69,6 +73,7 @@ public class TimedAdmin {
 	}
 	
 	public String[] getAdminGroups() {
+		final Admin admin = getLiveAdmin();
 		if (admin != null) {
 			return admin.getGroups();
 		}
@@ -81,6 +86,7 @@ public class TimedAdmin {
 	
 	
 	public LookupLocator[] getAdminLocators() {
+		final Admin admin = getLiveAdmin();
 		if (admin != null) {
 			return admin.getLocators();
 		}
@@ -100,25 +106,71 @@ public class TimedAdmin {
 		this.discoverUnmanagedSpaces = true;
 	}
 	
+	/**
+	 * Sets the period an unused admin object is retained before it is closed.
+	 * @param maxIdleTime The period length
+	 * @param timeunit The period time unit
+	 */
+	public void setMaxIdleTime(final long maxIdleTime, final TimeUnit timeunit) {
+		this.maxIdleTimeMillis = timeunit.toMillis(maxIdleTime);
+	}
 	
+	/**
+	 * Returns statistics about calls served from the discovered topology versus calls that blocked on discovery.
+	 * @return The discovery statistics
+	 */
+	public AdminDiscoveryStatistics getDiscoveryStatistics() {
+		return getSharedAdmin().getStatistics();
+	}
 
 
 	/***********
-	 * Creates an admin instance if required.
-	 * A timing thread is also created to monitor the admin expity time and terminate it if needed. 
+	 * Returns the shared admin holder matching this object's configuration. The configuration is expected to be set
+	 * before the first call.
 	 */
-	private synchronized void initAdmin() {
-		logger.finest("getting admin object");
-		if (admin == null) {
-			createAdmin();
-		} else {
-			logger.info("Using a cached Admin object");
+	private synchronized SharedAdmin getSharedAdmin() {
+		if (sharedAdmin == null) {
+			final SharedAdmin.AdminCreator creator = new SharedAdmin.AdminCreator() {
+				@Override
+				public Admin createAdmin() {
+					return TimedAdmin.this.createAdmin();
+				}
+			};
+			if (adminFilter != null) {
+				// a filter can not be compared with other filters, so its admin is not shared.
+				sharedAdmin = SharedAdmin.createUnshared(createConfigurationKey() + ";filter=" + adminFilter, creator,
+						maxIdleTimeMillis);
+				sharedAdmin.addHolder();
+			} else {
+				sharedAdmin = SharedAdmin.addHolder(createConfigurationKey(), creator, maxIdleTimeMillis);
+			}
+		}
+		return sharedAdmin;
+	}
+	
+	private String createConfigurationKey() {
+		final StringBuilder key = new StringBuilder();
+		key.append("groups=").append(groups)
+			.append(";locators=").append(locators)
+			.append(";unmanagedSpaces=").append(discoverUnmanagedSpaces)
+			.append(";historySize=").append(statisticsHistorySize);
+		if (discoveryServices != null) {
+			key.append(";discoveryServices=");
+			for (final Class<?> discoveryService : discoveryServices) {
+				key.append(discoveryService.getName()).append(',');
+			}
 		}
-		updateTimestamp();
+		return key.toString();
 	}
 	
+	private synchronized Admin getLiveAdmin() {
+		if (sharedAdmin == null) {
+			return null;
+		}
+		return sharedAdmin.getAdmin();
+	}
 	
-	private void createAdmin() {
+	private Admin createAdmin() {
 		logger.info("Creating a new Admin object...");
 		
 		final AdminFactory factory = new AdminFactory();
@@ -144,56 +196,12 @@ public class TimedAdmin {
 			factory.discoverUnmanagedSpaces();
 		}
 		
-		this.admin = factory.createAdmin();		
-		this.admin.setStatisticsHistorySize(statisticsHistorySize);
+		final Admin admin = factory.createAdmin();
+		admin.setStatisticsHistorySize(statisticsHistorySize);
 				
-		logger.info("Created new Admin Object with groups: " + Arrays.toString(this.admin.getGroups()) + " and Locators: "
-				+ Arrays.toString(this.admin.getLocators()));
-		
-		updateTimestamp();
-		startTimingThread();
-	}
-
-	
-	/**
-	 * Creates and starts a thread that monitors the admin object usage - if the object was not used for longer than 
-	 * the maximum idle time, the object is closed and nullified.
-	 */
-	private synchronized void startTimingThread() {
-		
-		// create daemon threads, so the timing thread won't keep the process alive
-		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
-			
-			@Override
-			public Thread newThread(Runnable runnable) {
-				Thread thread = Executors.defaultThreadFactory().newThread(runnable);
-				thread.setDaemon(true);
-				thread.setName("AdminTimingThread");
-				return thread;
-			}
-		});
-		
-		executor.execute(new Runnable() {
-			@Override
-			public void run() {
-				running = true;
-				while (running) {
-					try {
-						if (admin != null && (lastUsed + MAX_IDLE_TIME_MILLIS < System.currentTimeMillis())) {
-							logger.info("Closing expired admin object");
-							admin.close();
-							admin = null;
-							running = false;
-						}
-						Thread.sleep(POLLING_INTERVAL_MILLIS);
-					} catch (final InterruptedException e) {
-						// ignore
-					}
-				}
-			}
-		});
-		
-		executor.shutdown();
+		logger.info("Created new Admin Object with groups: " + Arrays.toString(admin.getGroups()) + " and Locators: "
+				+ Arrays.toString(admin.getLocators()));
+		return admin;
 	}
 	
 	
@@ -205,9 +213,23 @@ public class TimedAdmin {
 	 * @return The space, if found in the given time frame; null otherwise
 	 */
 	public Space waitForSpace(final String spaceName, final long timeout, final TimeUnit timeunit) {
-		validateTimeout(timeout, timeunit, "waiting for space instance");
-		initAdmin();
-		return admin.getSpaces().waitFor(spaceName, timeout, timeunit);
+		final SharedAdmin shared = getSharedAdmin();
+		final Admin admin = shared.acquire();
+		try {
+			final Space space = admin.getSpaces().getSpaceByName(spaceName);
+			if (space != null) {
+				shared.getStatistics().requestServedFromSnapshot();
+				return space;
+			}
+			final long start = System.currentTimeMillis();
+			try {
+				return admin.getSpaces().waitFor(spaceName, timeout, timeunit);
+			} finally {
+				shared.getStatistics().requestBlocked(System.currentTimeMillis() - start);
+			}
+		} finally {
+			shared.release();
+		}
 	}
 	
 	
@@ -217,8 +239,13 @@ public class TimedAdmin {
 	 * @return The space if found; null otherwise
 	 */
 	public Space getSpaceByName(final String spaceName) {
-		initAdmin();
-		return admin.getSpaces().getSpaceByName(spaceName);
+		final SharedAdmin shared = getSharedAdmin();
+		final Admin admin = shared.acquire();
+		try {
+			return admin.getSpaces().getSpaceByName(spaceName);
+		} finally {
+			shared.release();
+		}
 	}
 	
 
@@ -230,9 +257,23 @@ public class TimedAdmin {
 	 * @return The processing unit, if found in the given time frame; null otherwise
 	 */
 	public ProcessingUnit waitForPU(final String puName, final long timeout, final TimeUnit timeunit) {
-		validateTimeout(timeout, timeunit, "waiting for PU");
-		initAdmin();
-		return admin.getProcessingUnits().waitFor(puName, timeout, timeunit);
+		final SharedAdmin shared = getSharedAdmin();
+		final Admin admin = shared.acquire();
+		try {
+			final ProcessingUnit pu = shared.getTopology().getProcessingUnit(puName);
+			if (pu != null) {
+				shared.getStatistics().requestServedFromSnapshot();
+				return pu;
+			}
+			final long start = System.currentTimeMillis();
+			try {
+				return admin.getProcessingUnits().waitFor(puName, timeout, timeunit);
+			} finally {
+				shared.getStatistics().requestBlocked(System.currentTimeMillis() - start);
+			}
+		} finally {
+			shared.release();
+		}
 	}
 	
 	
@@ -246,9 +287,22 @@ public class TimedAdmin {
 	 */
 	public boolean waitForPUI(final ProcessingUnit pu, int numberOfPUInstances, long timeout, 
 			TimeUnit timeunit) {
-		validateTimeout(timeout, timeunit, "waiting for PU instance");
-		initAdmin();
-		return pu.waitFor(numberOfPUInstances, timeout, timeunit);
+		final SharedAdmin shared = getSharedAdmin();
+		shared.acquire();
+		try {
+			if (shared.getTopology().getInstanceCount(pu.getName()) >= numberOfPUInstances) {
+				shared.getStatistics().requestServedFromSnapshot();
+				return true;
+			}
+			final long start = System.currentTimeMillis();
+			try {
+				return pu.waitFor(numberOfPUInstances, timeout, timeunit);
+			} finally {
+				shared.getStatistics().requestBlocked(System.currentTimeMillis() - start);
+			}
+		} finally {
+			shared.release();
+		}
 	}
 
 	
@@ -260,9 +314,22 @@ public class TimedAdmin {
 	 * @return True if all lookup services were found; false otherwise
 	 */
 	public boolean waitForLookupServices(int numberOfLookupServices, long timeout, TimeUnit timeunit) {
-		validateTimeout(timeout, timeunit, "waiting for lookup service");
-		initAdmin();
-		return admin.getLookupServices().waitFor(numberOfLookupServices, timeout, timeunit);
+		final SharedAdmin shared = getSharedAdmin();
+		final Admin admin = shared.acquire();
+		try {
+			if (admin.getLookupServices().getSize() >= numberOfLookupServices) {
+				shared.getStatistics().requestServedFromSnapshot();
+				return true;
+			}
+			final long start = System.currentTimeMillis();
+			try {
+				return admin.getLookupServices().waitFor(numberOfLookupServices, timeout, timeunit);
+			} finally {
+				shared.getStatistics().requestBlocked(System.currentTimeMillis() - start);
+			}
+		} finally {
+			shared.release();
+		}
 	}
 	
 	
@@ -271,23 +338,38 @@ public class TimedAdmin {
 	 * @return The ElasticServiceManager if found in the given time frame; null otherwise
 	 */
 	public ElasticServiceManager waitForElasticServiceManager() {
-		initAdmin();
-		return admin.getElasticServiceManagers().waitForAtLeastOne();
+		final SharedAdmin shared = getSharedAdmin();
+		final Admin admin = shared.acquire();
+		try {
+			final ElasticServiceManager[] managers = admin.getElasticServiceManagers().getManagers();
+			if (managers.length > 0) {
+				shared.getStatistics().requestServedFromSnapshot();
+				return managers[0];
+			}
+			final long start = System.currentTimeMillis();
+			try {
+				return admin.getElasticServiceManagers().waitForAtLeastOne();
+			} finally {
+				shared.getStatistics().requestBlocked(System.currentTimeMillis() - start);
+			}
+		} finally {
+			shared.release();
+		}
 	}
 
 	
 	/**
-	 * Closes the admin object and stops the timing thread.
+	 * Releases this object's hold on the shared admin object. The admin object is shared by all TimedAdmin objects
+	 * with the same configuration, and is closed only once none of them holds it and no call is in progress. The next
+	 * call on this object acquires the shared admin object again.
 	 */
-	public void close() {
-		logger.info("Closing the admin object and stopping the timing thread");
-		if (admin != null) {
-			admin.close();
-			admin = null;
+	public synchronized void close() {
+		logger.info("Releasing the admin object. Discovery statistics: "
+				+ (sharedAdmin == null ? "none" : sharedAdmin.getStatistics()));
+		if (sharedAdmin != null) {
+			sharedAdmin.releaseHolder();
+			sharedAdmin = null;
 		}
-		
-		// this should cause the timing thread to end
-		running = false;
 	}
 	
 	
@@ -296,28 +378,7 @@ public class TimedAdmin {
 	 * @return If the admin is set (not null) - return true, otherwise return false
 	 */
 	public boolean isAdminObjectAlive() {
-		if (admin == null) {
-			return false;
-		} else {
-			return true;
-		}
-	}
-	
-	
-	private synchronized void updateTimestamp() {
-		lastUsed = System.currentTimeMillis();
-	}
-	
-	
-	/**
-	 * Validates the given action timeout is not shorter than the admin timeout, and issues a warning if it is.
-	 */
-	private void validateTimeout(final long timeout, final TimeUnit timeunit, final String actionDescription) {
-		if (timeunit.toMillis(timeout) >= MAX_IDLE_TIME_MILLIS) {
-			logger.warning("Admin object might expire prematurely! The specified timeout for " + actionDescription 
-					+ " was set to " + timeout + " " + timeunit.toString() + " while the admin timeout is " 
-					+ MAX_IDLE_TIME_MILLIS/1000 + " seconds");
-		}
+		return getLiveAdmin() != null;
 	}
 
 }
@@ -23,6 +23,11 @@ import java.util.concurrent.TimeUnit;
 
 import org.cloudifysource.domain.context.Service;
 import org.cloudifysource.domain.context.ServiceInstance;
+import org.cloudifysource.utilitydomain.invocation.FanOutInvoker;
+import org.cloudifysource.utilitydomain.invocation.FanOutListener;
+import org.cloudifysource.utilitydomain.invocation.FanOutResult;
+import org.cloudifysource.utilitydomain.invocation.FanOutTask;
+import org.cloudifysource.utilitydomain.invocation.FanOutTaskResult;
 import org.openspaces.admin.pu.ProcessingUnit;
 import org.openspaces.admin.pu.ProcessingUnitInstance;
 
@@ -35,6 +40,7 @@ import org.openspaces.admin.pu.ProcessingUnitInstance;
 public class ServiceImpl implements Service {
 
 	private static final int DEFAULT_INVOKE_TIMEOUT = 60 * 1000; // one minute
+	private static final FanOutInvoker INVOKER = new FanOutInvoker();
 	private final ProcessingUnit pu;
 	private final String name;
 
@@ -151,30 +157,18 @@ public class ServiceImpl implements Service {
 	@Override
 	public Object[] invoke(final String commandName, final Object[] params, final long timeout, final TimeUnit unit)
 			throws Exception {
-		final ServiceInstanceImpl[] instances = this.getInstances();
-
-		final List<Future<Object>> futures = new ArrayList<Future<Object>>();
-
-		for (final ServiceInstanceImpl instance : instances) {
-			final Future<Object> future = instance.invokeAsync(commandName,
-					params);
-			futures.add(future);
-		}
-
-		final long start = System.currentTimeMillis();
-		final long end = start + unit.toMillis(timeout);
+		final FanOutResult<Object> fanOutResult = invoke(commandName, params, timeout, unit, null);
 
 		Exception firstException = null;
-		final Object[] results = new Object[instances.length];
+		final Object[] results = new Object[fanOutResult.getResults().size()];
 		for (int i = 0; i < results.length; i++) {
-			final Future<Object> future = futures.get(i);
-			try {
-				results[i] = future.get(end - System.currentTimeMillis(),
-						TimeUnit.MILLISECONDS);
-			} catch (final Exception e) {
-				results[i] = e;
+			final FanOutTaskResult<Object> result = fanOutResult.getResults().get(i);
+			if (result.getStatus() == FanOutTaskResult.Status.SUCCESS) {
+				results[i] = result.getResult();
+			} else {
+				results[i] = result.getException();
 				if (firstException == null) {
-					firstException = e;
+					firstException = result.getException();
 				}
 			}
 		}
@@ -185,6 +179,46 @@ public class ServiceImpl implements Service {
 		return results;
 
 	}
+
+	/**
+	 * Invokes a custom command on all instances of the service concurrently, under a single deadline. Results are
+	 * passed to the listener as each instance completes, so slow instances do not delay the results of the others.
+	 * 
+	 * @param commandName
+	 *            the command name.
+	 * @param params
+	 *            the command parameters, may be zero-length.
+	 * @param timeout
+	 *            the deadline for all invocations.
+	 * @param unit
+	 *            the deadline time unit.
+	 * @param listener
+	 *            notified of each instance result as it completes, may be null.
+	 * @return the results of all instances, in instance order, with success, failure and timeout counts.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the results.
+	 */
+	public FanOutResult<Object> invoke(final String commandName, final Object[] params, final long timeout,
+			final TimeUnit unit, final FanOutListener<Object> listener) throws InterruptedException {
+		final ServiceInstanceImpl[] instances = this.getInstances();
+
+		final List<FanOutTask<Object>> tasks = new ArrayList<FanOutTask<Object>>(instances.length);
+		for (final ServiceInstanceImpl instance : instances) {
+			tasks.add(new FanOutTask<Object>() {
+				@Override
+				public String getName() {
+					return name + "[" + instance.getInstanceId() + "]";
+				}
+
+				@Override
+				public Future<Object> start() {
+					return instance.invokeAsync(commandName, params);
+				}
+			});
+		}
+
+		return INVOKER.invoke(tasks, timeout, unit, listener);
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.cloudifysource.dsl.context.IService#invoke(java.lang.String, java.lang.Object[])
@@ -18,11 +18,22 @@ package org.cloudifysource.utilitydomain.context.kvstore;
 import groovy.lang.GroovyObjectSupport;
 import groovy.lang.MissingPropertyException;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
 import org.cloudifysource.domain.context.kvstorage.AttributesAccessor;
 import org.cloudifysource.domain.context.kvstorage.AttributesFacade;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.AbstractCloudifyAttribute;
 import org.openspaces.core.GigaSpace;
 
+import com.j_spaces.core.client.SQLQuery;
+
 /**
  * Base class for accessing attributes.
  * 
@@ -108,6 +119,91 @@ public abstract class AbstractAttributesAccessor extends GroovyObjectSupport imp
 		return managementSpace.count(propertyEntry) > 0;
 	}
 
+	public Map<String, Object> getByPrefix(final String keyPrefix) {
+		return getRange(keyPrefix, prefixUpperBound(keyPrefix));
+	}
+
+	public Map<String, Object> getRange(final String fromKey, final String toKey) {
+		final Map<String, Object> attributes = new TreeMap<String, Object>();
+		for (final AbstractCloudifyAttribute attribute : readRange(fromKey, true, toKey, Integer.MAX_VALUE)) {
+			attributes.put(attribute.getKey(), attribute.getValue());
+		}
+		return attributes;
+	}
+
+	public Iterator<Map.Entry<String, Object>> pagedIterator(final String keyPrefix, final int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("page size must be positive");
+		}
+		return new PagedAttributesIterator(keyPrefix, prefixUpperBound(keyPrefix), pageSize);
+	}
+
+	/********
+	 * Reads the attributes of this accessor in a key range, using the key index.
+	 * @param fromKey the lowest key, or null for no lower bound.
+	 * @param fromKeyInclusive true if the lowest key is in the range.
+	 * @param toKey the highest key, exclusive, or null for no upper bound.
+	 * @param maxEntries the maximum number of attributes to read, the ones with the lowest keys.
+	 * @return the attributes in the range, ordered by key when limited to fewer than all of them.
+	 */
+	private AbstractCloudifyAttribute[] readRange(final String fromKey, final boolean fromKeyInclusive,
+			final String toKey, final int maxEntries) {
+		final List<String> conditions = new ArrayList<String>();
+		final List<Object> parameters = new ArrayList<Object>();
+		addScopeConditions(conditions, parameters);
+		// every key is at least the empty string, which also keeps the query from being empty.
+		conditions.add(fromKeyInclusive || fromKey == null ? "key >= ?" : "key > ?");
+		parameters.add(fromKey != null ? fromKey : "");
+		if (toKey != null) {
+			conditions.add("key < ?");
+			parameters.add(toKey);
+		}
+		String sql = StringUtils.join(conditions, " AND ");
+		if (maxEntries != Integer.MAX_VALUE) {
+			// the lowest keys, so the next page starts after the last key read.
+			sql += " ORDER BY key";
+		}
+
+		final SQLQuery<AbstractCloudifyAttribute> query = new SQLQuery<AbstractCloudifyAttribute>(
+				prepareAttributeTemplate().getClass().getName(), sql, parameters.toArray());
+		if (maxEntries == Integer.MAX_VALUE) {
+			return attributesFacade.getManagementSpace().readMultiple(query);
+		}
+		return attributesFacade.getManagementSpace().readMultiple(query, maxEntries);
+	}
+
+	/********
+	 * Adds the conditions that select the attributes of this accessor to a query. Accessors of a narrower scope add
+	 * the properties they set on their template in {@link #prepareAttributeTemplate()}.
+	 * @param conditions the query conditions, joined with AND.
+	 * @param parameters the query parameters, one for each '?' in the conditions.
+	 */
+	protected void addScopeConditions(final List<String> conditions, final List<Object> parameters) {
+		if (applicationName != null) {
+			conditions.add("applicationName = ?");
+			parameters.add(applicationName);
+		}
+	}
+
+	/********
+	 * Returns the lowest key that is greater than all the keys starting with a prefix.
+	 * @param keyPrefix the key prefix.
+	 * @return the exclusive upper bound of the keys starting with the prefix, or null if there is none.
+	 */
+	static String prefixUpperBound(final String keyPrefix) {
+		if (keyPrefix == null) {
+			return null;
+		}
+		for (int i = keyPrefix.length() - 1; i >= 0; i--) {
+			final char c = keyPrefix.charAt(i);
+			if (c != Character.MAX_VALUE) {
+				return keyPrefix.substring(0, i) + (char) (c + 1);
+			}
+		}
+		// an empty prefix, or only the highest characters, matches every key from the prefix on.
+		return null;
+	}
+
 	private AbstractCloudifyAttribute prepareAttributeTemplate(final String key) {
 		final AbstractCloudifyAttribute propertyAttribute = prepareAttributeTemplate();
 		propertyAttribute.setApplicationName(applicationName);
@@ -121,4 +217,58 @@ public abstract class AbstractAttributesAccessor extends GroovyObjectSupport imp
 	 */
 	protected abstract AbstractCloudifyAttribute prepareAttributeTemplate();
 
+	/********
+	 * Iterates over the attributes in key order, a page at a time. Each page is a range query for the keys after the
+	 * last key read, limited to the page size, so the iterator holds a single page. Keys removed before their page is
+	 * read are skipped, keys added after the last key read are included.
+	 */
+	private class PagedAttributesIterator implements Iterator<Map.Entry<String, Object>> {
+
+		private final String keyPrefix;
+		private final String toKey;
+		private final int pageSize;
+		private String lastKey = null;
+		private boolean lastPage = false;
+		private Iterator<Map.Entry<String, Object>> page = Collections.<String, Object>emptyMap().entrySet()
+				.iterator();
+
+		PagedAttributesIterator(final String keyPrefix, final String toKey, final int pageSize) {
+			this.keyPrefix = keyPrefix;
+			this.toKey = toKey;
+			this.pageSize = pageSize;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!page.hasNext() && !lastPage) {
+				final AbstractCloudifyAttribute[] attributes = lastKey == null
+						? readRange(keyPrefix, true, toKey, pageSize) : readRange(lastKey, false, toKey, pageSize);
+				// a short page is the last one.
+				lastPage = attributes.length < pageSize;
+				final TreeMap<String, Object> values = new TreeMap<String, Object>();
+				for (final AbstractCloudifyAttribute attribute : attributes) {
+					values.put(attribute.getKey(), attribute.getValue());
+				}
+				if (!values.isEmpty()) {
+					lastKey = values.lastKey();
+				}
+				page = values.entrySet().iterator();
+			}
+			return page.hasNext();
+		}
+
+		@Override
+		public Map.Entry<String, Object> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return page.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 }
\ No newline at end of file
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.utilitydomain.context.kvstore;
 
+import java.util.List;
+
 import org.cloudifysource.domain.context.kvstorage.AttributesFacade;
 import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
 
@@ -43,4 +45,15 @@ public class InstanceAttributesAccessor extends AbstractAttributesAccessor {
 		return attribute;
 	}
 
+	@Override
+	protected void addScopeConditions(final List<String> conditions, final List<Object> parameters) {
+		super.addScopeConditions(conditions, parameters);
+		if (serviceName != null) {
+			conditions.add("serviceName = ?");
+			parameters.add(serviceName);
+		}
+		conditions.add("instanceId = ?");
+		parameters.add(instanceId);
+	}
+
 }
@@ -19,6 +19,7 @@ import groovy.lang.GroovyObjectSupport;
 
 import java.io.Serializable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.cloudifysource.domain.context.Service;
@@ -50,6 +51,15 @@ public class ServiceAttributesAccessor extends AbstractAttributesAccessor {
 		return attribute;
 	}
 
+	@Override
+	protected void addScopeConditions(final List<String> conditions, final List<Object> parameters) {
+		super.addScopeConditions(conditions, parameters);
+		if (serviceName != null) {
+			conditions.add("serviceName = ?");
+			parameters.add(serviceName);
+		}
+	}
+
 	public InstancesFacade getInstances() {
 		return instancesFacade;
 	}
@@ -28,6 +28,8 @@ public class CloudConfigurationHolder {
 
 	private String cloudConfiguration;
 	private String cloudConfigurationFilePath;
+	private String cloudConfigurationDigest;
+	private byte[] serializedCloud;
 	private Long id = (long) 1;
 
 	public CloudConfigurationHolder() {
@@ -69,10 +71,36 @@ public class CloudConfigurationHolder {
 		this.cloudConfigurationFilePath = cloudConfigurationFilePath;
 	}
 
+	/**
+	 * @return The digest of the cloud configuration folder the serialized cloud was parsed from, or null if the
+	 *         parsed cloud is not available.
+	 * @since 2.7.1
+	 */
+	public String getCloudConfigurationDigest() {
+		return cloudConfigurationDigest;
+	}
+
+	public void setCloudConfigurationDigest(final String cloudConfigurationDigest) {
+		this.cloudConfigurationDigest = cloudConfigurationDigest;
+	}
+
+	/**
+	 * @return The compressed serialized cloud parsed from the cloud configuration file, so readers can use it
+	 *         instead of running the cloud DSL again. May be null.
+	 * @since 2.7.1
+	 */
+	public byte[] getSerializedCloud() {
+		return serializedCloud;
+	}
+
+	public void setSerializedCloud(final byte[] serializedCloud) {
+		this.serializedCloud = serializedCloud;
+	}
+
 	@Override
 	public String toString() {
 		return "CloudConfigurationHolder [cloudConfiguration=" + cloudConfiguration + ", cloudConfigurationFilePath="
-				+ cloudConfigurationFilePath + "]";
+				+ cloudConfigurationFilePath + ", cloudConfigurationDigest=" + cloudConfigurationDigest + "]";
 	}
 
 }
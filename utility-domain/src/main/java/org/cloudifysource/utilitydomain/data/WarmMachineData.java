@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+
+package org.cloudifysource.utilitydomain.data;
+
+import com.gigaspaces.annotation.pojo.SpaceClass;
+import com.gigaspaces.annotation.pojo.SpaceId;
+
+/**********
+ * A space entry that records an idle machine of a warm machine pool. The machine has no agent, so this entry is the
+ * only trace of it once the ESM that started it is gone. The entry is written when the machine joins the pool and
+ * taken when the machine is claimed or stopped; entries whose owner is no longer running are stopped by the next ESM
+ * that manages the service.
+ *
+ * @since 2.7.1
+ *
+ */
+@SpaceClass
+public class WarmMachineData {
+
+	private String uid;
+	private String serviceName;
+	private String ownerId;
+	private String machineId;
+	private String privateAddress;
+	private String publicAddress;
+
+	public WarmMachineData() {
+
+	}
+
+	@SpaceId(autoGenerate = true)
+	public String getUid() {
+		return uid;
+	}
+
+	public void setUid(final String uid) {
+		this.uid = uid;
+	}
+
+	/**
+	 * @return The absolute name of the service of the pool.
+	 */
+	public String getServiceName() {
+		return serviceName;
+	}
+
+	public void setServiceName(final String serviceName) {
+		this.serviceName = serviceName;
+	}
+
+	/**
+	 * @return The id of the pool that started the machine, unique per pool instance.
+	 */
+	public String getOwnerId() {
+		return ownerId;
+	}
+
+	public void setOwnerId(final String ownerId) {
+		this.ownerId = ownerId;
+	}
+
+	public String getMachineId() {
+		return machineId;
+	}
+
+	public void setMachineId(final String machineId) {
+		this.machineId = machineId;
+	}
+
+	public String getPrivateAddress() {
+		return privateAddress;
+	}
+
+	public void setPrivateAddress(final String privateAddress) {
+		this.privateAddress = privateAddress;
+	}
+
+	public String getPublicAddress() {
+		return publicAddress;
+	}
+
+	public void setPublicAddress(final String publicAddress) {
+		this.publicAddress = publicAddress;
+	}
+
+	@Override
+	public String toString() {
+		return "WarmMachineData [uid=" + uid + ", serviceName=" + serviceName + ", ownerId=" + ownerId
+				+ ", machineId=" + machineId + ", privateAddress=" + privateAddress + ", publicAddress="
+				+ publicAddress + "]";
+	}
+
+}
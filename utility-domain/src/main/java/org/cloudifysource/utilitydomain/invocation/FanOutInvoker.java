@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.invocation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.cloudifysource.utilitydomain.invocation.FanOutTaskResult.Status;
+
+/**
+ * Runs a remote invocation on many targets concurrently, under a single global deadline.
+ * <p>
+ * At most {@code maxInFlight} invocations are outstanding at any time. Results are delivered to an optional
+ * {@link FanOutListener} as soon as each one completes, so one slow target does not delay the results of the others.
+ * Invocations that did not complete, or did not even start, by the deadline are reported as timed out.
+ * 
+ * @since 2.7.1
+ */
+public class FanOutInvoker {
+
+	private static final Logger logger = Logger.getLogger(FanOutInvoker.class.getName());
+
+	/**
+	 * Default maximum number of concurrent invocations.
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 50;
+
+	// create daemon threads, so invoker threads won't keep the process alive
+	private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "FanOutInvoker-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final ExecutorService executor;
+	private final int maxInFlight;
+
+	public FanOutInvoker() {
+		this(DEFAULT_EXECUTOR, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * @param executor The executor running the invocations. Each invocation occupies one thread until it completes.
+	 * @param maxInFlight The maximum number of concurrent invocations
+	 */
+	public FanOutInvoker(final ExecutorService executor, final int maxInFlight) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("maxInFlight must be positive, got " + maxInFlight);
+		}
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Invokes all tasks and waits until all of them completed or the deadline was reached.
+	 * @param tasks The tasks to invoke
+	 * @param timeout The global deadline, measured from the time of this call
+	 * @param unit The timeout time unit
+	 * @param listener Notified of every task result as it completes, may be null
+	 * @param <T> The invocation result type
+	 * @return The aggregated results, one per task
+	 * @throws InterruptedException if the calling thread was interrupted while waiting
+	 */
+	public <T> FanOutResult<T> invoke(final List<? extends FanOutTask<T>> tasks, final long timeout,
+			final TimeUnit unit, final FanOutListener<T> listener) throws InterruptedException {
+		final int size = tasks.size();
+		final long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		final BlockingQueue<FanOutTaskResult<T>> completed = new LinkedBlockingQueue<FanOutTaskResult<T>>();
+		final AtomicInteger nextTask = new AtomicInteger();
+
+		final List<Future<?>> workers = new ArrayList<Future<?>>();
+		final int workerCount = Math.min(maxInFlight, size);
+		for (int i = 0; i < workerCount; i++) {
+			workers.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					int index = nextTask.getAndIncrement();
+					while (index < size) {
+						completed.add(runTask(index, tasks.get(index), deadline));
+						index = nextTask.getAndIncrement();
+					}
+				}
+			}));
+		}
+
+		final List<FanOutTaskResult<T>> results = new ArrayList<FanOutTaskResult<T>>(
+				Collections.<FanOutTaskResult<T>>nCopies(size, null));
+		int received = 0;
+		try {
+			while (received < size) {
+				final long remaining = deadline - System.currentTimeMillis();
+				final FanOutTaskResult<T> result = remaining > 0
+						? completed.poll(remaining, TimeUnit.MILLISECONDS)
+						: completed.poll();
+				if (result == null) {
+					break;
+				}
+				results.set(result.getIndex(), result);
+				received++;
+				notifyListener(listener, result);
+			}
+		} finally {
+			if (received < size) {
+				// stop starting new tasks and abandon the ones still waiting for a result.
+				nextTask.set(size);
+				for (final Future<?> worker : workers) {
+					worker.cancel(true);
+				}
+			}
+		}
+
+		for (int i = 0; i < size && received < size; i++) {
+			if (results.get(i) == null) {
+				final String name = tasks.get(i).getName();
+				final FanOutTaskResult<T> result = new FanOutTaskResult<T>(i, name, Status.TIMEOUT, null,
+						new TimeoutException("Invocation of " + name + " did not complete before the deadline"),
+						unit.toMillis(timeout));
+				results.set(i, result);
+				received++;
+				notifyListener(listener, result);
+			}
+		}
+		return new FanOutResult<T>(results);
+	}
+
+	private <T> FanOutTaskResult<T> runTask(final int index, final FanOutTask<T> task, final long deadline) {
+		final long start = System.currentTimeMillis();
+		if (start >= deadline) {
+			return new FanOutTaskResult<T>(index, task.getName(), Status.TIMEOUT, null,
+					new TimeoutException("Invocation of " + task.getName() + " was not started before the deadline"),
+					0);
+		}
+		Future<T> future = null;
+		try {
+			future = task.start();
+			final T result = future.get(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			return new FanOutTaskResult<T>(index, task.getName(), Status.SUCCESS, result, null,
+					System.currentTimeMillis() - start);
+		} catch (final TimeoutException e) {
+			future.cancel(false);
+			return new FanOutTaskResult<T>(index, task.getName(), Status.TIMEOUT, null, e,
+					System.currentTimeMillis() - start);
+		} catch (final InterruptedException e) {
+			// the invoker gave up on this task, its result is discarded.
+			Thread.currentThread().interrupt();
+			return new FanOutTaskResult<T>(index, task.getName(), Status.TIMEOUT, null, e,
+					System.currentTimeMillis() - start);
+		} catch (final ExecutionException e) {
+			final Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			return new FanOutTaskResult<T>(index, task.getName(), Status.FAILURE, null, cause,
+					System.currentTimeMillis() - start);
+		} catch (final Exception e) {
+			return new FanOutTaskResult<T>(index, task.getName(), Status.FAILURE, null, e,
+					System.currentTimeMillis() - start);
+		}
+	}
+
+	private <T> void notifyListener(final FanOutListener<T> listener, final FanOutTaskResult<T> result) {
+		if (listener == null) {
+			return;
+		}
+		try {
+			listener.onResult(result);
+		} catch (final RuntimeException e) {
+			logger.log(Level.WARNING, "Fan-out listener failed handling the result of " + result.getName(), e);
+		}
+	}
+}
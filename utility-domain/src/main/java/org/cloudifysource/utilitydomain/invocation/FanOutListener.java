@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.invocation;
+
+/**
+ * Receives the results of a {@link FanOutInvoker} invocation as they complete.
+ * Callbacks are made serially, on the thread that called {@link FanOutInvoker#invoke}.
+ * 
+ * @param <T> The invocation result type
+ * @since 2.7.1
+ */
+public interface FanOutListener<T> {
+
+	/**
+	 * Called once for every task, when its result is available or it is known to have timed out.
+	 * @param result The task result
+	 */
+	void onResult(FanOutTaskResult<T> result);
+}
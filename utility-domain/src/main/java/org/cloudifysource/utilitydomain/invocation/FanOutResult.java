@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.invocation;
+
+import java.util.List;
+
+/**
+ * The aggregated outcome of a {@link FanOutInvoker} invocation.
+ * 
+ * @param <T> The invocation result type
+ * @since 2.7.1
+ */
+public class FanOutResult<T> {
+
+	private final List<FanOutTaskResult<T>> results;
+	private final int successCount;
+	private final int failureCount;
+	private final int timeoutCount;
+
+	FanOutResult(final List<FanOutTaskResult<T>> results) {
+		this.results = results;
+		int success = 0;
+		int failure = 0;
+		int timeout = 0;
+		for (final FanOutTaskResult<T> result : results) {
+			switch (result.getStatus()) {
+			case SUCCESS:
+				success++;
+				break;
+			case FAILURE:
+				failure++;
+				break;
+			default:
+				timeout++;
+				break;
+			}
+		}
+		this.successCount = success;
+		this.failureCount = failure;
+		this.timeoutCount = timeout;
+	}
+
+	/**
+	 * @return The task results, in the order the tasks were passed to the invoker.
+	 */
+	public List<FanOutTaskResult<T>> getResults() {
+		return results;
+	}
+
+	public int getSuccessCount() {
+		return successCount;
+	}
+
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	public int getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	@Override
+	public String toString() {
+		return "FanOutResult [success=" + successCount + ", failure=" + failureCount + ", timeout=" + timeoutCount
+				+ "]";
+	}
+}
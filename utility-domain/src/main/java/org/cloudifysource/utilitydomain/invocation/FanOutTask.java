@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.invocation;
+
+import java.util.concurrent.Future;
+
+/**
+ * A single remote invocation executed by a {@link FanOutInvoker}.
+ * 
+ * @param <T> The invocation result type
+ * @since 2.7.1
+ */
+public interface FanOutTask<T> {
+
+	/**
+	 * @return A name identifying the invocation target, e.g. a service instance name.
+	 */
+	String getName();
+
+	/**
+	 * Starts the invocation.
+	 * @return A future of the invocation result
+	 * @throws Exception if the invocation could not be started
+	 */
+	Future<T> start() throws Exception;
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.invocation;
+
+/**
+ * The outcome of a single {@link FanOutTask}.
+ * 
+ * @param <T> The invocation result type
+ * @since 2.7.1
+ */
+public class FanOutTaskResult<T> {
+
+	/**
+	 * Task outcome.
+	 */
+	public enum Status {
+		/** The invocation returned a result. */
+		SUCCESS,
+		/** The invocation could not be started, or ended with an exception. */
+		FAILURE,
+		/** The invocation did not complete before the deadline. */
+		TIMEOUT
+	}
+
+	private final int index;
+	private final String name;
+	private final Status status;
+	private final T result;
+	private final Exception exception;
+	private final long durationMillis;
+
+	FanOutTaskResult(final int index, final String name, final Status status, final T result,
+			final Exception exception, final long durationMillis) {
+		this.index = index;
+		this.name = name;
+		this.status = status;
+		this.result = result;
+		this.exception = exception;
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * @return The index of the task in the list passed to the invoker.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The invocation result, null unless the status is {@link Status#SUCCESS}.
+	 */
+	public T getResult() {
+		return result;
+	}
+
+	/**
+	 * @return The failure cause, null if the status is {@link Status#SUCCESS}.
+	 */
+	public Exception getException() {
+		return exception;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "FanOutTaskResult [name=" + name + ", status=" + status + ", durationMillis=" + durationMillis + "]";
+	}
+}
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.kvstorage.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact binary encoding of the values attributes usually hold: strings, numbers, booleans, byte arrays and the
+ * common JDK lists, sets and maps of them, nested to any depth.<br />
+ * Integers are written as variable length numbers, and a string repeated within a value, such as the keys of a list
+ * of maps, is written once and then referred to by index. Collections keep their class. Values of any other class
+ * are written with Java serialization, so any serializable value can be stored, and so are collections that contain
+ * themselves, which the compact form cannot represent.
+ * 
+ * @since 2.7.1
+ */
+public class CompactBinaryCodec implements SpaceEntryCodec {
+
+	/**
+	 * The codec id.
+	 */
+	public static final byte ID = 2;
+
+	private static final int TYPE_NULL = 0;
+	private static final int TYPE_STRING = 1;
+	private static final int TYPE_STRING_REF = 2;
+	private static final int TYPE_TRUE = 3;
+	private static final int TYPE_FALSE = 4;
+	private static final int TYPE_INTEGER = 5;
+	private static final int TYPE_LONG = 6;
+	private static final int TYPE_SHORT = 7;
+	private static final int TYPE_BYTE = 8;
+	private static final int TYPE_CHARACTER = 9;
+	private static final int TYPE_DOUBLE = 10;
+	private static final int TYPE_FLOAT = 11;
+	private static final int TYPE_BIG_INTEGER = 12;
+	private static final int TYPE_BIG_DECIMAL = 13;
+	private static final int TYPE_BYTES = 14;
+	private static final int TYPE_ARRAY_LIST = 15;
+	private static final int TYPE_LINKED_LIST = 16;
+	private static final int TYPE_HASH_SET = 17;
+	private static final int TYPE_LINKED_HASH_SET = 18;
+	private static final int TYPE_HASH_MAP = 19;
+	private static final int TYPE_LINKED_HASH_MAP = 20;
+	private static final int TYPE_TREE_MAP = 21;
+	private static final int TYPE_SERIALIZED = 22;
+
+	private static final String CHARSET = "UTF-8";
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	@Override
+	public void write(final Object value, final DataOutputStream out) throws IOException {
+		if (!(value instanceof Collection || value instanceof Map)) {
+			new Writer(out).write(value);
+			return;
+		}
+		// buffered, since a cycle is only found part way through the value.
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try {
+			new Writer(new DataOutputStream(buffer)).write(value);
+		} catch (final CyclicValueException e) {
+			// Java serialization keeps the references between the collections.
+			new Writer(out).writeSerialized(value);
+			return;
+		}
+		buffer.writeTo(out);
+	}
+
+	@Override
+	public Object read(final DataInputStream in) throws IOException {
+		return new Reader(in).read();
+	}
+
+	/**
+	 * Writes a single value, remembering the strings written so far.
+	 */
+	private static final class Writer {
+
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+		// the collections and maps being written, enclosing the current value.
+		private final Map<Object, Boolean> enclosing = new IdentityHashMap<Object, Boolean>();
+
+		private Writer(final DataOutputStream out) {
+			this.out = out;
+		}
+
+		private void write(final Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(TYPE_NULL);
+			} else if (value instanceof String) {
+				writeString((String) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+			} else if (value.getClass() == Integer.class) {
+				out.writeByte(TYPE_INTEGER);
+				writeVarLong((Integer) value);
+			} else if (value.getClass() == Long.class) {
+				out.writeByte(TYPE_LONG);
+				writeVarLong((Long) value);
+			} else if (value.getClass() == Short.class) {
+				out.writeByte(TYPE_SHORT);
+				writeVarLong((Short) value);
+			} else if (value.getClass() == Byte.class) {
+				out.writeByte(TYPE_BYTE);
+				out.writeByte((Byte) value);
+			} else if (value.getClass() == Character.class) {
+				out.writeByte(TYPE_CHARACTER);
+				out.writeChar((Character) value);
+			} else if (value.getClass() == Double.class) {
+				out.writeByte(TYPE_DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value.getClass() == Float.class) {
+				out.writeByte(TYPE_FLOAT);
+				out.writeFloat((Float) value);
+			} else if (value.getClass() == BigInteger.class) {
+				out.writeByte(TYPE_BIG_INTEGER);
+				writeBytes(((BigInteger) value).toByteArray());
+			} else if (value.getClass() == BigDecimal.class) {
+				out.writeByte(TYPE_BIG_DECIMAL);
+				writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+				writeVarLong(((BigDecimal) value).scale());
+			} else if (value instanceof byte[]) {
+				out.writeByte(TYPE_BYTES);
+				writeBytes((byte[]) value);
+			} else if (value.getClass() == ArrayList.class) {
+				writeCollection(TYPE_ARRAY_LIST, (Collection<?>) value);
+			} else if (value.getClass() == LinkedList.class) {
+				writeCollection(TYPE_LINKED_LIST, (Collection<?>) value);
+			} else if (value.getClass() == HashSet.class) {
+				writeCollection(TYPE_HASH_SET, (Collection<?>) value);
+			} else if (value.getClass() == LinkedHashSet.class) {
+				writeCollection(TYPE_LINKED_HASH_SET, (Collection<?>) value);
+			} else if (value.getClass() == HashMap.class) {
+				writeMap(TYPE_HASH_MAP, (Map<?, ?>) value);
+			} else if (value.getClass() == LinkedHashMap.class) {
+				writeMap(TYPE_LINKED_HASH_MAP, (Map<?, ?>) value);
+			} else if (value.getClass() == TreeMap.class && ((TreeMap<?, ?>) value).comparator() == null) {
+				writeMap(TYPE_TREE_MAP, (Map<?, ?>) value);
+			} else {
+				// other classes may have state or ordering the compact form would lose.
+				writeSerialized(value);
+			}
+		}
+
+		private void writeSerialized(final Object value) throws IOException {
+			final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+			JavaSerializationCodec.writeObject(value, serialized);
+			out.writeByte(TYPE_SERIALIZED);
+			writeBytes(serialized.toByteArray());
+		}
+
+		private void writeString(final String value) throws IOException {
+			final Integer index = strings.get(value);
+			if (index != null) {
+				out.writeByte(TYPE_STRING_REF);
+				writeVarLong(index);
+				return;
+			}
+			strings.put(value, strings.size());
+			out.writeByte(TYPE_STRING);
+			writeBytes(value.getBytes(CHARSET));
+		}
+
+		private void writeCollection(final int type, final Collection<?> collection) throws IOException {
+			enter(collection);
+			out.writeByte(type);
+			writeVarLong(collection.size());
+			for (final Object element : collection) {
+				write(element);
+			}
+			enclosing.remove(collection);
+		}
+
+		private void writeMap(final int type, final Map<?, ?> map) throws IOException {
+			enter(map);
+			out.writeByte(type);
+			writeVarLong(map.size());
+			for (final Map.Entry<?, ?> entry : map.entrySet()) {
+				write(entry.getKey());
+				write(entry.getValue());
+			}
+			enclosing.remove(map);
+		}
+
+		private void enter(final Object container) throws CyclicValueException {
+			if (enclosing.put(container, Boolean.TRUE) != null) {
+				throw new CyclicValueException();
+			}
+		}
+
+		private void writeBytes(final byte[] bytes) throws IOException {
+			writeVarLong(bytes.length);
+			out.write(bytes);
+		}
+
+		// zig-zag encoded, so small negative numbers are short too.
+		private void writeVarLong(final long value) throws IOException {
+			long remaining = (value << 1) ^ (value >> 63);
+			while ((remaining & ~0x7FL) != 0) {
+				out.writeByte((int) ((remaining & 0x7F) | 0x80));
+				remaining >>>= 7;
+			}
+			out.writeByte((int) remaining);
+		}
+	}
+
+	/**
+	 * Thrown by the writer when a collection contains itself, directly or through other collections.
+	 */
+	private static final class CyclicValueException extends IOException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Reads a single value, remembering the strings read so far.
+	 */
+	private static final class Reader {
+
+		private final DataInputStream in;
+		private final List<String> strings = new ArrayList<String>();
+
+		private Reader(final DataInputStream in) {
+			this.in = in;
+		}
+
+		private Object read() throws IOException {
+			final int type = in.readUnsignedByte();
+			switch (type) {
+			case TYPE_NULL:
+				return null;
+			case TYPE_STRING:
+				final String string = new String(readBytes(), CHARSET);
+				strings.add(string);
+				return string;
+			case TYPE_STRING_REF:
+				final int index = readVarInt();
+				if (index >= strings.size()) {
+					throw new IOException("Invalid string reference " + index + " in space entry value");
+				}
+				return strings.get(index);
+			case TYPE_TRUE:
+				return Boolean.TRUE;
+			case TYPE_FALSE:
+				return Boolean.FALSE;
+			case TYPE_INTEGER:
+				return Integer.valueOf(readVarInt());
+			case TYPE_LONG:
+				return Long.valueOf(readVarLong());
+			case TYPE_SHORT:
+				return Short.valueOf((short) readVarLong());
+			case TYPE_BYTE:
+				return Byte.valueOf(in.readByte());
+			case TYPE_CHARACTER:
+				return Character.valueOf(in.readChar());
+			case TYPE_DOUBLE:
+				return Double.valueOf(in.readDouble());
+			case TYPE_FLOAT:
+				return Float.valueOf(in.readFloat());
+			case TYPE_BIG_INTEGER:
+				return new BigInteger(readBytes());
+			case TYPE_BIG_DECIMAL:
+				final BigInteger unscaled = new BigInteger(readBytes());
+				return new BigDecimal(unscaled, readVarInt());
+			case TYPE_BYTES:
+				return readBytes();
+			case TYPE_ARRAY_LIST:
+				final int listSize = readSize();
+				return readCollection(new ArrayList<Object>(listSize), listSize);
+			case TYPE_LINKED_LIST:
+				return readCollection(new LinkedList<Object>(), readSize());
+			case TYPE_HASH_SET:
+				final int setSize = readSize();
+				return readCollection(new HashSet<Object>(capacity(setSize)), setSize);
+			case TYPE_LINKED_HASH_SET:
+				final int linkedSetSize = readSize();
+				return readCollection(new LinkedHashSet<Object>(capacity(linkedSetSize)), linkedSetSize);
+			case TYPE_HASH_MAP:
+				final int mapSize = readSize();
+				return readMap(new HashMap<Object, Object>(capacity(mapSize)), mapSize);
+			case TYPE_LINKED_HASH_MAP:
+				final int linkedMapSize = readSize();
+				return readMap(new LinkedHashMap<Object, Object>(capacity(linkedMapSize)), linkedMapSize);
+			case TYPE_TREE_MAP:
+				return readMap(new TreeMap<Object, Object>(), readSize());
+			case TYPE_SERIALIZED:
+				return JavaSerializationCodec.readObject(new ByteArrayInputStream(readBytes()));
+			default:
+				throw new IOException("Unknown type " + type + " in space entry value");
+			}
+		}
+
+		private Collection<Object> readCollection(final Collection<Object> collection, final int size)
+				throws IOException {
+			for (int i = 0; i < size; i++) {
+				collection.add(read());
+			}
+			return collection;
+		}
+
+		private Map<Object, Object> readMap(final Map<Object, Object> map, final int size) throws IOException {
+			for (int i = 0; i < size; i++) {
+				final Object key = read();
+				map.put(key, read());
+			}
+			return map;
+		}
+
+		private static int capacity(final int size) {
+			return Math.max(16, (int) (size / 0.75f) + 1);
+		}
+
+		private byte[] readBytes() throws IOException {
+			final byte[] bytes = new byte[readSize()];
+			in.readFully(bytes);
+			return bytes;
+		}
+
+		private int readSize() throws IOException {
+			final int size = readVarInt();
+			if (size < 0) {
+				throw new IOException("Invalid size " + size + " in space entry value");
+			}
+			return size;
+		}
+
+		private int readVarInt() throws IOException {
+			final long value = readVarLong();
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new IOException("Invalid integer " + value + " in space entry value");
+			}
+			return (int) value;
+		}
+
+		private long readVarLong() throws IOException {
+			long raw = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				final int b = in.readUnsignedByte();
+				raw |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return (raw >>> 1) ^ -(raw & 1);
+				}
+			}
+			throw new IOException("Invalid variable length number in space entry value");
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.kvstorage.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+
+/**
+ * Encodes values with Java serialization, the format the management space used before the codecs were introduced.
+ * 
+ * @since 2.7.1
+ */
+public class JavaSerializationCodec implements SpaceEntryCodec {
+
+	/**
+	 * The codec id.
+	 */
+	public static final byte ID = 1;
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	@Override
+	public void write(final Object value, final DataOutputStream out) throws IOException {
+		writeObject(value, out);
+	}
+
+	@Override
+	public Object read(final DataInputStream in) throws IOException {
+		return readObject(in);
+	}
+
+	static void writeObject(final Object value, final OutputStream out) throws IOException {
+		final ObjectOutputStream objectOut = new ObjectOutputStream(out);
+		objectOut.writeObject(value);
+		objectOut.flush();
+	}
+
+	static Object readObject(final InputStream in) throws IOException {
+		final ObjectInputStream objectIn = new ContextClassLoaderObjectInputStream(in);
+		try {
+			return objectIn.readObject();
+		} catch (final ClassNotFoundException e) {
+			throw new IOException("Failed to read space entry value, class not found: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Resolves classes with the context class loader first, since values may be of classes loaded by the recipe.
+	 */
+	private static final class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+		private ContextClassLoaderObjectInputStream(final InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+			if (contextClassLoader != null) {
+				try {
+					return Class.forName(desc.getName(), false, contextClassLoader);
+				} catch (final ClassNotFoundException e) {
+					// fall back to the default resolution.
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+}
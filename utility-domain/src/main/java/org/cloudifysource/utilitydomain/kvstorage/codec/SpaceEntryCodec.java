@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.kvstorage.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes the values of management space entries to bytes and back.<br />
+ * Codecs are registered with {@link SpaceEntryCodecs} under a unique id, which is written with every encoded value,
+ * so values written with one codec can be read by clients configured with another.
+ * 
+ * @since 2.7.1
+ */
+public interface SpaceEntryCodec {
+
+	/**
+	 * @return The id of the codec, written with the values it encodes. Must not change once values were written.
+	 */
+	byte getId();
+
+	/**
+	 * Writes a value.
+	 * 
+	 * @param value
+	 *            The value, may be null.
+	 * @param out
+	 *            The stream to write to.
+	 * @throws IOException
+	 *             If the value can not be written.
+	 */
+	void write(Object value, DataOutputStream out) throws IOException;
+
+	/**
+	 * Reads a value written by {@link #write(Object, DataOutputStream)}.
+	 * 
+	 * @param in
+	 *            The stream to read from.
+	 * @return The value.
+	 * @throws IOException
+	 *             If the value can not be read.
+	 */
+	Object read(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.cloudifysource.utilitydomain.kvstorage.codec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes and decodes the values of management space entries.<br />
+ * Every encoded value starts with a header holding the format version, the id of the codec that wrote it and
+ * whether the rest is compressed. Values are decoded with the codec that wrote them, so clients configured with
+ * different codecs, or values written before the default codec changed, can still be read.<br />
+ * The codec used to write values is set by the {@value #CODEC_PROPERTY} system property, "compact" by default or
+ * "java", and values larger than the {@value #COMPRESSION_THRESHOLD_PROPERTY} system property, in bytes, are
+ * compressed.
+ * 
+ * @since 2.7.1
+ */
+public final class SpaceEntryCodecs {
+
+	/**
+	 * The system property selecting the codec used to write values.
+	 */
+	public static final String CODEC_PROPERTY = "org.cloudifysource.space-entry-codec";
+
+	/**
+	 * The system property setting the size from which values are compressed, in bytes. Negative disables compression.
+	 */
+	public static final String COMPRESSION_THRESHOLD_PROPERTY =
+			"org.cloudifysource.space-entry-compression-threshold";
+
+	/**
+	 * The version of the header written before every value.
+	 */
+	public static final byte FORMAT_VERSION = 1;
+
+	private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+	private static final int HEADER_LENGTH = 3;
+	private static final int FLAG_COMPRESSED = 1;
+
+	private static final Logger logger = Logger.getLogger(SpaceEntryCodecs.class.getName());
+
+	private static final Map<Byte, SpaceEntryCodec> CODECS = new ConcurrentHashMap<Byte, SpaceEntryCodec>();
+
+	private static volatile SpaceEntryCodec defaultCodec;
+	private static volatile int compressionThreshold;
+
+	static {
+		register(new JavaSerializationCodec());
+		register(new CompactBinaryCodec());
+		final String codecName = System.getProperty(CODEC_PROPERTY, "compact");
+		if ("java".equalsIgnoreCase(codecName)) {
+			defaultCodec = CODECS.get(JavaSerializationCodec.ID);
+		} else {
+			if (!"compact".equalsIgnoreCase(codecName)) {
+				logger.warning("Unknown space entry codec " + codecName + ", using the compact codec");
+			}
+			defaultCodec = CODECS.get(CompactBinaryCodec.ID);
+		}
+		compressionThreshold = Integer.getInteger(COMPRESSION_THRESHOLD_PROPERTY, DEFAULT_COMPRESSION_THRESHOLD);
+	}
+
+	private SpaceEntryCodecs() {
+		// static methods only.
+	}
+
+	/**
+	 * Registers a codec, so values it wrote can be decoded.
+	 * 
+	 * @param codec
+	 *            The codec.
+	 * @throws IllegalArgumentException
+	 *             If another codec is registered with the same id.
+	 */
+	public static void register(final SpaceEntryCodec codec) {
+		synchronized (CODECS) {
+			final SpaceEntryCodec existing = CODECS.get(codec.getId());
+			if (existing != null && existing.getClass() != codec.getClass()) {
+				throw new IllegalArgumentException("Codec id " + codec.getId() + " of " + codec.getClass().getName()
+						+ " is already used by " + existing.getClass().getName());
+			}
+			CODECS.put(codec.getId(), codec);
+		}
+	}
+
+	/**
+	 * Sets the codec used to write values, registering it if needed.
+	 * 
+	 * @param codec
+	 *            The codec.
+	 */
+	public static void setDefaultCodec(final SpaceEntryCodec codec) {
+		register(codec);
+		defaultCodec = codec;
+	}
+
+	/**
+	 * @return The codec used to write values.
+	 */
+	public static SpaceEntryCodec getDefaultCodec() {
+		return defaultCodec;
+	}
+
+	/**
+	 * Sets the size from which values are compressed.
+	 * 
+	 * @param threshold
+	 *            The size in bytes, negative to disable compression.
+	 */
+	public static void setCompressionThreshold(final int threshold) {
+		compressionThreshold = threshold;
+	}
+
+	/**
+	 * Encodes a value with the default codec.
+	 * 
+	 * @param value
+	 *            The value, may be null.
+	 * @return The encoded value.
+	 * @throws IllegalArgumentException
+	 *             If the value can not be encoded, e.g. because it is not serializable.
+	 */
+	public static byte[] encode(final Object value) {
+		return encode(value, defaultCodec);
+	}
+
+	/**
+	 * Encodes a value.
+	 * 
+	 * @param value
+	 *            The value, may be null.
+	 * @param codec
+	 *            The codec to write the value with.
+	 * @return The encoded value.
+	 * @throws IllegalArgumentException
+	 *             If the value can not be encoded, e.g. because it is not serializable.
+	 */
+	public static byte[] encode(final Object value, final SpaceEntryCodec codec) {
+		try {
+			final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			final DataOutputStream payloadOut = new DataOutputStream(payload);
+			codec.write(value, payloadOut);
+			payloadOut.flush();
+
+			final int threshold = compressionThreshold;
+			final boolean compress = threshold >= 0 && payload.size() > threshold;
+			final ByteArrayOutputStream encoded = new ByteArrayOutputStream(HEADER_LENGTH + payload.size());
+			encoded.write(FORMAT_VERSION);
+			encoded.write(codec.getId());
+			encoded.write(compress ? FLAG_COMPRESSED : 0);
+			if (compress) {
+				final DeflaterOutputStream deflaterOut = new DeflaterOutputStream(encoded);
+				try {
+					payload.writeTo(deflaterOut);
+					deflaterOut.finish();
+				} finally {
+					// releases the deflater's native memory rather than waiting for it to be finalized.
+					deflaterOut.close();
+				}
+			} else {
+				payload.writeTo(encoded);
+			}
+			return encoded.toByteArray();
+		} catch (final IOException e) {
+			throw new IllegalArgumentException("Failed to encode space entry value of type "
+					+ (value == null ? null : value.getClass().getName()) + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Decodes a value with the codec that encoded it.
+	 * 
+	 * @param encoded
+	 *            The encoded value.
+	 * @return The value.
+	 * @throws IllegalStateException
+	 *             If the value can not be decoded, e.g. because it was written by a newer version or by a codec
+	 *             that is not registered.
+	 */
+	public static Object decode(final byte[] encoded) {
+		if (encoded.length < HEADER_LENGTH) {
+			throw new IllegalStateException("Space entry value of " + encoded.length + " bytes is too short");
+		}
+		if (encoded[0] != FORMAT_VERSION) {
+			throw new IllegalStateException("Unsupported space entry value format version " + encoded[0]
+					+ ", expected " + FORMAT_VERSION);
+		}
+		final SpaceEntryCodec codec = CODECS.get(encoded[1]);
+		if (codec == null) {
+			throw new IllegalStateException("Space entry value was written by unknown codec " + encoded[1]);
+		}
+		InputStream payload = new ByteArrayInputStream(encoded, HEADER_LENGTH, encoded.length - HEADER_LENGTH);
+		if ((encoded[2] & FLAG_COMPRESSED) != 0) {
+			// codecs read a byte at a time, which is slow straight from the inflater.
+			payload = new BufferedInputStream(new InflaterInputStream(payload));
+		}
+		try {
+			try {
+				return codec.read(new DataInputStream(payload));
+			} finally {
+				// releases the inflater's native memory rather than waiting for it to be finalized.
+				payload.close();
+			}
+		} catch (final IOException e) {
+			throw new IllegalStateException("Failed to decode space entry value: " + e.getMessage(), e);
+		}
+	}
+}
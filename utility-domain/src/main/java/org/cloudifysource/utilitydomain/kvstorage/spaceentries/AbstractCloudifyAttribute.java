@@ -15,12 +15,19 @@
  *******************************************************************************/
 package org.cloudifysource.utilitydomain.kvstorage.spaceentries;
 
+import org.cloudifysource.utilitydomain.kvstorage.codec.SpaceEntryCodecs;
+
 import com.gigaspaces.annotation.pojo.SpaceClass;
+import com.gigaspaces.annotation.pojo.SpaceExclude;
 import com.gigaspaces.annotation.pojo.SpaceId;
 import com.gigaspaces.annotation.pojo.SpaceIndex;
+import com.gigaspaces.metadata.index.SpaceIndexType;
 
 /**
- * Base pojo for context properties which is stored in the space.
+ * Base pojo for context properties which is stored in the space.<br />
+ * The value is stored in the space encoded by {@link SpaceEntryCodecs}. It is encoded when it is set, so it must not be
+ * modified afterwards, and decoded when it is first read.<br />
+ * This class is not thread-safe: reading the value of an attribute read from the space caches the decoded value.
  * 
  * @author eitany
  * @since 2.0
@@ -34,12 +41,13 @@ public abstract class AbstractCloudifyAttribute {
 	protected AbstractCloudifyAttribute(final String applicationName, final String key, final Object value) {
 		this.applicationName = applicationName;
 		this.key = key;
-		this.value = value;
+		setValue(value);
 	}
 
 	private String applicationName;
 	private String key;
 	private Object value;
+	private byte[] encodedValue;
 	private String uid;
 
 	@SpaceId(autoGenerate = true)
@@ -55,6 +63,7 @@ public abstract class AbstractCloudifyAttribute {
 		this.applicationName = applicationName;
 	}
 
+	@SpaceIndex
 	public String getApplicationName() {
 		return applicationName;
 	}
@@ -63,17 +72,42 @@ public abstract class AbstractCloudifyAttribute {
 		this.key = key;
 	}
 
-	@SpaceIndex
+	// extended, so key range and prefix queries use the index too.
+	@SpaceIndex(type = SpaceIndexType.EXTENDED)
 	public String getKey() {
 		return key;
 	}
 
+	/**
+	 * @param value
+	 *            The value, which is encoded right away.
+	 * @throws IllegalArgumentException
+	 *             If the value can not be encoded.
+	 */
 	public void setValue(final Object value) {
+		this.encodedValue = value == null ? null : SpaceEntryCodecs.encode(value);
 		this.value = value;
 	}
 
+	@SpaceExclude
 	public Object getValue() {
+		if (value == null && encodedValue != null) {
+			value = SpaceEntryCodecs.decode(encodedValue);
+		}
 		return value;
 	}
 
+	/**
+	 * @return The value as stored in the space, or null if there is no value.
+	 * @since 2.7.1
+	 */
+	public byte[] getEncodedValue() {
+		return encodedValue;
+	}
+
+	public void setEncodedValue(final byte[] encodedValue) {
+		this.encodedValue = encodedValue;
+		this.value = null;
+	}
+
 }
\ No newline at end of file
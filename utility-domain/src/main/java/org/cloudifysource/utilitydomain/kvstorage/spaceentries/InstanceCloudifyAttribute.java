@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.utilitydomain.kvstorage.spaceentries;
 
+import com.gigaspaces.annotation.pojo.SpaceIndex;
+
 /**
  * Instance level property.
  * 
@@ -41,6 +43,7 @@ public class InstanceCloudifyAttribute extends AbstractCloudifyAttribute {
 		this.serviceName = serviceName;
 	}
 
+	@SpaceIndex
 	public String getServiceName() {
 		return serviceName;
 	}
@@ -49,6 +52,7 @@ public class InstanceCloudifyAttribute extends AbstractCloudifyAttribute {
 		this.instanceId = instanceId;
 	}
 
+	@SpaceIndex
 	public Integer getInstanceId() {
 		return instanceId;
 	}
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.cloudifysource.utilitydomain.kvstorage.spaceentries;
 
+import com.gigaspaces.annotation.pojo.SpaceIndex;
+
 /**
  * Service level property.
  * 
@@ -38,6 +40,7 @@ public class ServiceCloudifyAttribute extends AbstractCloudifyAttribute {
 		this.serviceName = serviceName;
 	}
 
+	@SpaceIndex
 	public String getServiceName() {
 		return serviceName;
 	}
@@ -0,0 +1,184 @@
+package org.cloudifysource.utilitydomain.admin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openspaces.admin.Admin;
+
+/**
+ * Tests {@link SharedAdmin} keeps the admin alive for as long as it has holders or calls in progress, against a stub
+ * admin.
+ */
+public class SharedAdminTest {
+
+	private static final long RETENTION_MILLIS = 60 * 1000;
+	private static final AtomicInteger KEYS = new AtomicInteger();
+
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicInteger closed = new AtomicInteger();
+	private final SharedAdmin.AdminCreator creator = new SharedAdmin.AdminCreator() {
+		@Override
+		public Admin createAdmin() {
+			created.incrementAndGet();
+			return stub(Admin.class);
+		}
+	};
+	private String key;
+	private SharedAdmin sharedAdmin;
+
+	@Before
+	public void before() {
+		// every test gets its own shared admin.
+		key = "test-" + KEYS.incrementAndGet();
+		sharedAdmin = SharedAdmin.getInstance(key, creator, RETENTION_MILLIS);
+	}
+
+	// answers every call with another stub, counting the calls to Admin.close().
+	private <T> T stub(final Class<T> type) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (method.getName().equals("close") && type == Admin.class) {
+							closed.incrementAndGet();
+						}
+						final Class<?> returnType = method.getReturnType();
+						if (returnType.isInterface()) {
+							return stub(returnType);
+						}
+						if (returnType == boolean.class) {
+							return false;
+						}
+						if (returnType == int.class) {
+							return 0;
+						}
+						return null;
+					}
+				}));
+	}
+
+	@Test
+	public void testAcquireSharesAdmin() {
+		sharedAdmin.addHolder();
+		final Admin first = sharedAdmin.acquire();
+		final Admin second = sharedAdmin.acquire();
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, created.get());
+		Assert.assertEquals(2, sharedAdmin.getReferenceCount());
+
+		sharedAdmin.release();
+		sharedAdmin.release();
+		Assert.assertEquals(0, sharedAdmin.getReferenceCount());
+		// the holder keeps the admin, with its discovered topology, for the next call.
+		Assert.assertSame(first, sharedAdmin.getAdmin());
+		Assert.assertSame(first, sharedAdmin.acquire());
+		Assert.assertEquals(0, closed.get());
+	}
+
+	@Test
+	public void testReleaseHolderKeepsAdminForOtherHolders() {
+		sharedAdmin.addHolder();
+		sharedAdmin.addHolder();
+		final Admin admin = sharedAdmin.acquire();
+		sharedAdmin.release();
+
+		sharedAdmin.releaseHolder();
+		Assert.assertEquals(1, sharedAdmin.getHolders());
+		Assert.assertEquals(0, closed.get());
+		Assert.assertSame(admin, sharedAdmin.acquire());
+		sharedAdmin.release();
+
+		sharedAdmin.releaseHolder();
+		Assert.assertEquals(0, sharedAdmin.getHolders());
+		Assert.assertEquals(1, closed.get());
+		Assert.assertNull(sharedAdmin.getAdmin());
+	}
+
+	@Test
+	public void testCloseWaitsForCallsInProgress() {
+		sharedAdmin.addHolder();
+		final Admin admin = sharedAdmin.acquire();
+		sharedAdmin.releaseHolder();
+		// the call in progress still uses the admin.
+		Assert.assertEquals(0, closed.get());
+		Assert.assertSame(admin, sharedAdmin.getAdmin());
+		Assert.assertEquals(1, sharedAdmin.getReferenceCount());
+
+		sharedAdmin.release();
+		Assert.assertEquals(1, closed.get());
+		Assert.assertNull(sharedAdmin.getAdmin());
+	}
+
+	@Test
+	public void testAcquireAfterCloseCreatesNewAdmin() {
+		sharedAdmin.addHolder();
+		final Admin first = sharedAdmin.acquire();
+		sharedAdmin.release();
+		sharedAdmin.releaseHolder();
+		Assert.assertEquals(1, closed.get());
+
+		sharedAdmin.addHolder();
+		final Admin second = sharedAdmin.acquire();
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(2, created.get());
+		Assert.assertEquals(1, sharedAdmin.getReferenceCount());
+		sharedAdmin.release();
+		sharedAdmin.releaseHolder();
+		Assert.assertEquals(2, closed.get());
+	}
+
+	@Test
+	public void testExtraReleasesIgnored() {
+		sharedAdmin.addHolder();
+		sharedAdmin.acquire();
+		sharedAdmin.release();
+		sharedAdmin.release();
+		Assert.assertEquals(0, sharedAdmin.getReferenceCount());
+		Assert.assertNotNull(sharedAdmin.getAdmin());
+		sharedAdmin.releaseHolder();
+		sharedAdmin.releaseHolder();
+		Assert.assertEquals(0, sharedAdmin.getHolders());
+		Assert.assertEquals(1, closed.get());
+	}
+
+	@Test
+	public void testClosedAdminRemovedFromSharedInstances() {
+		final SharedAdmin holder = SharedAdmin.addHolder(key, creator, RETENTION_MILLIS);
+		Assert.assertSame(sharedAdmin, holder);
+		holder.acquire();
+		holder.releaseHolder();
+		// the call in progress still uses the admin.
+		Assert.assertTrue(SharedAdmin.isShared(key));
+
+		holder.release();
+		Assert.assertEquals(1, closed.get());
+		Assert.assertFalse(SharedAdmin.isShared(key));
+		// the next holder of the configuration gets a new shared admin.
+		final SharedAdmin next = SharedAdmin.addHolder(key, creator, RETENTION_MILLIS);
+		Assert.assertNotSame(sharedAdmin, next);
+		next.releaseHolder();
+		Assert.assertFalse(SharedAdmin.isShared(key));
+	}
+
+	@Test
+	public void testUnsharedAdminNotShared() {
+		final SharedAdmin first = SharedAdmin.createUnshared("unshared-" + key, creator, RETENTION_MILLIS);
+		final SharedAdmin second = SharedAdmin.createUnshared("unshared-" + key, creator, RETENTION_MILLIS);
+		first.addHolder();
+		second.addHolder();
+		Assert.assertNotSame(first.acquire(), second.acquire());
+		Assert.assertFalse(SharedAdmin.isShared("unshared-" + key));
+
+		first.release();
+		first.releaseHolder();
+		Assert.assertEquals(1, closed.get());
+		second.release();
+		second.releaseHolder();
+		Assert.assertEquals(2, closed.get());
+	}
+}
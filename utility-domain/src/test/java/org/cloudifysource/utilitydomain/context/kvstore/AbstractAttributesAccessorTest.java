@@ -0,0 +1,35 @@
+package org.cloudifysource.utilitydomain.context.kvstore;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the key bounds {@link AbstractAttributesAccessor} uses for prefix queries.
+ */
+public class AbstractAttributesAccessorTest {
+
+	@Test
+	public void testPrefixUpperBound() {
+		Assert.assertEquals("conf", AbstractAttributesAccessor.prefixUpperBound("cone"));
+		Assert.assertEquals("b", AbstractAttributesAccessor.prefixUpperBound("a"));
+		// the highest characters cannot be incremented, so the one before them is.
+		Assert.assertEquals("b", AbstractAttributesAccessor.prefixUpperBound("a\uffff\uffff"));
+	}
+
+	@Test
+	public void testUnboundedPrefixes() {
+		Assert.assertNull(AbstractAttributesAccessor.prefixUpperBound(null));
+		Assert.assertNull(AbstractAttributesAccessor.prefixUpperBound(""));
+		Assert.assertNull(AbstractAttributesAccessor.prefixUpperBound("\uffff"));
+	}
+
+	@Test
+	public void testPrefixUpperBoundExcludesOnlyOtherPrefixes() {
+		final String prefix = "db.";
+		final String upperBound = AbstractAttributesAccessor.prefixUpperBound(prefix);
+		Assert.assertTrue("db.\uffff".compareTo(upperBound) < 0);
+		Assert.assertTrue("db.zzz".compareTo(upperBound) < 0);
+		Assert.assertTrue("db/".compareTo(upperBound) >= 0);
+		Assert.assertTrue("dc".compareTo(upperBound) >= 0);
+	}
+}
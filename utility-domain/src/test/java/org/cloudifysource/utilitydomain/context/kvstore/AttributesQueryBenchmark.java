@@ -0,0 +1,143 @@
+package org.cloudifysource.utilitydomain.context.kvstore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.cloudifysource.domain.context.ServiceContext;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.core.GigaSpaceConfigurer;
+import org.openspaces.core.space.UrlSpaceConfigurer;
+
+/**
+ * Measures attribute lookups, prefix queries and paged iteration against an embedded space holding 10k, 100k and 1M
+ * instance attributes, spread over 10 services of 10 instances each.<br />
+ * Run with: java -Xmx4g -cp ... org.cloudifysource.utilitydomain.context.kvstore.AttributesQueryBenchmark
+ * [attributes...]
+ * 
+ * @since 2.7.1
+ */
+public final class AttributesQueryBenchmark {
+
+	private static final int[] DEFAULT_ATTRIBUTES = { 10000, 100000, 1000000 };
+	private static final int SERVICES = 10;
+	private static final int INSTANCES = 10;
+	private static final int WRITE_BATCH_SIZE = 10000;
+	private static final int LOOKUPS = 1000;
+	private static final int QUERIES = 20;
+	private static final int PAGE_SIZE = 100;
+	private static final int NANOS_IN_MICRO = 1000;
+
+	private AttributesQueryBenchmark() {
+	}
+
+	/**
+	 * @param args
+	 *            The numbers of attributes to measure with, optional.
+	 */
+	public static void main(final String[] args) throws Exception {
+		int[] attributes = DEFAULT_ATTRIBUTES;
+		if (args.length > 0) {
+			attributes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				attributes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		final UrlSpaceConfigurer urlSpaceConfigurer = new UrlSpaceConfigurer("/./attributesQueryBenchmark");
+		try {
+			final GigaSpace gigaSpace = new GigaSpaceConfigurer(urlSpaceConfigurer.space()).gigaSpace();
+			final AttributesFacadeImpl attributesFacade = new AttributesFacadeImpl(createServiceContext(), null) {
+				@Override
+				public GigaSpace getManagementSpace() {
+					return gigaSpace;
+				}
+			};
+			final InstanceAttributesAccessor accessor =
+					new InstanceAttributesAccessor(attributesFacade, "app", "service-0", 1);
+
+			System.out.println(String.format("%-10s %12s %12s %12s %14s", "attributes", "get(us)", "prefix(us)",
+					"matches", "iterate(us)"));
+			for (final int count : attributes) {
+				gigaSpace.clear(null);
+				write(gigaSpace, count);
+				run(accessor, count);
+			}
+		} finally {
+			urlSpaceConfigurer.destroy();
+		}
+	}
+
+	// attribute i belongs to instance i % 10 + 1 of service i / 10 % 10, so every instance holds a tenth of a tenth.
+	private static void write(final GigaSpace gigaSpace, final int count) {
+		for (int batchStart = 0; batchStart < count; batchStart += WRITE_BATCH_SIZE) {
+			final int batchSize = Math.min(WRITE_BATCH_SIZE, count - batchStart);
+			final InstanceCloudifyAttribute[] batch = new InstanceCloudifyAttribute[batchSize];
+			for (int j = 0; j < batchSize; j++) {
+				final int i = batchStart + j;
+				batch[j] = new InstanceCloudifyAttribute("app", "service-" + i / INSTANCES % SERVICES,
+						i % INSTANCES + 1, key(i), "value-" + i);
+			}
+			gigaSpace.writeMultiple(batch);
+		}
+	}
+
+	private static String key(final int i) {
+		return String.format("key-%07d", i);
+	}
+
+	private static void run(final InstanceAttributesAccessor accessor, final int count) {
+		final int attributesPerInstance = SERVICES * INSTANCES;
+		final Random random = new Random(0);
+		long start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			final int attribute = random.nextInt(count / attributesPerInstance) * attributesPerInstance;
+			if (accessor.get(key(attribute)) == null) {
+				throw new IllegalStateException("Missing attribute " + key(attribute));
+			}
+		}
+		final long getNanos = (System.nanoTime() - start) / LOOKUPS;
+
+		// the first tenth of the keys, for a power of ten attributes.
+		final String prefix = key(0).substring(0, key(0).length() - String.valueOf(count / 10 - 1).length());
+		int matches = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < QUERIES; i++) {
+			matches = accessor.getByPrefix(prefix).size();
+		}
+		final long prefixNanos = (System.nanoTime() - start) / QUERIES;
+
+		start = System.nanoTime();
+		final Iterator<Map.Entry<String, Object>> iterator = accessor.pagedIterator(null, PAGE_SIZE);
+		while (iterator.hasNext()) {
+			iterator.next();
+		}
+		final long iterateNanos = System.nanoTime() - start;
+
+		System.out.println(String.format("%-10d %12d %12d %12d %14d", count, getNanos / NANOS_IN_MICRO,
+				prefixNanos / NANOS_IN_MICRO, matches, iterateNanos / NANOS_IN_MICRO));
+	}
+
+	private static ServiceContext createServiceContext() {
+		return (ServiceContext) Proxy.newProxyInstance(AttributesQueryBenchmark.class.getClassLoader(),
+				new Class<?>[] { ServiceContext.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (method.getName().equals("getApplicationName")) {
+							return "app";
+						}
+						if (method.getName().equals("getServiceName")) {
+							return "service-0";
+						}
+						if (method.getName().equals("getInstanceId")) {
+							return 1;
+						}
+						return null;
+					}
+				});
+	}
+}
@@ -0,0 +1,289 @@
+package org.cloudifysource.utilitydomain.context.kvstore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.cloudifysource.domain.context.ServiceContext;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.AbstractCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.ServiceCloudifyAttribute;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openspaces.core.GigaSpace;
+
+import com.j_spaces.core.client.SQLQuery;
+
+/**
+ * Tests the key range queries and the paged iterator of {@link AbstractAttributesAccessor}, against a management space
+ * stub that evaluates the SQL queries the accessors send.
+ */
+public class AttributesRangeQueryTest {
+
+	private static final String APPLICATION_NAME = "app";
+	private static final String SERVICE_NAME = "service";
+	private static final int INSTANCE_ID = 1;
+
+	private final List<AbstractCloudifyAttribute> entries = new ArrayList<AbstractCloudifyAttribute>();
+	private final List<SQLQuery<?>> queries = new ArrayList<SQLQuery<?>>();
+	// the maximum number of entries of each query, null when not limited.
+	private final List<Integer> limits = new ArrayList<Integer>();
+	private AttributesFacadeImpl attributesFacade;
+	private InstanceAttributesAccessor instanceAttributes;
+
+	@Before
+	public void before() {
+		attributesFacade = new AttributesFacadeImpl(createServiceContext(), null /* timedAdmin */) {
+			private final GigaSpace managementSpace = createManagementSpace();
+
+			@Override
+			public GigaSpace getManagementSpace() {
+				return managementSpace;
+			}
+		};
+		instanceAttributes = new InstanceAttributesAccessor(attributesFacade, APPLICATION_NAME, SERVICE_NAME,
+				INSTANCE_ID);
+		for (final String key : new String[] { "a", "db.1", "db.2", "db.3", "db.4", "db.5", "db.6", "db.7", "dc" }) {
+			writeInstanceAttribute(APPLICATION_NAME, SERVICE_NAME, INSTANCE_ID, key);
+		}
+	}
+
+	@Test
+	public void testRange() {
+		Assert.assertEquals(Arrays.asList("db.2", "db.3"),
+				new ArrayList<String>(instanceAttributes.getRange("db.2", "db.4").keySet()));
+		Assert.assertEquals(Arrays.asList("a", "db.1"),
+				new ArrayList<String>(instanceAttributes.getRange(null, "db.2").keySet()));
+		Assert.assertEquals(Arrays.asList("db.7", "dc"),
+				new ArrayList<String>(instanceAttributes.getRange("db.7", null).keySet()));
+		Assert.assertEquals("value-db.5", instanceAttributes.getByPrefix("db.").get("db.5"));
+		Assert.assertTrue(instanceAttributes.getByPrefix("x").isEmpty());
+	}
+
+	@Test
+	public void testPageBoundaries() {
+		final List<String> prefixKeys = Arrays.asList("db.1", "db.2", "db.3", "db.4", "db.5", "db.6", "db.7");
+		for (final int pageSize : new int[] { 1, 2, 3, 6, 7, 8, 100 }) {
+			queries.clear();
+			limits.clear();
+			final List<String> keys = new ArrayList<String>();
+			final Iterator<Map.Entry<String, Object>> iterator = instanceAttributes.pagedIterator("db.", pageSize);
+			while (iterator.hasNext()) {
+				final Map.Entry<String, Object> entry = iterator.next();
+				Assert.assertEquals("value-" + entry.getKey(), entry.getValue());
+				keys.add(entry.getKey());
+			}
+			Assert.assertEquals("page size " + pageSize, prefixKeys, keys);
+			// one query per page, and one more when the last page is full.
+			final int queryCount = prefixKeys.size() / pageSize + 1;
+			Assert.assertEquals("page size " + pageSize, queryCount, queries.size());
+			Assert.assertEquals("page size " + pageSize, Collections.nCopies(queryCount, pageSize), limits);
+		}
+	}
+
+	@Test
+	public void testKeysChangedWhileIterating() {
+		final Iterator<Map.Entry<String, Object>> iterator = instanceAttributes.pagedIterator("db.", 2);
+		final List<String> keys = new ArrayList<String>();
+		keys.add(iterator.next().getKey());
+		// behind the last key read.
+		writeInstanceAttribute(APPLICATION_NAME, SERVICE_NAME, INSTANCE_ID, "db.0");
+		removeAttribute("db.2");
+		removeAttribute("db.3");
+		removeAttribute("db.4");
+		writeInstanceAttribute(APPLICATION_NAME, SERVICE_NAME, INSTANCE_ID, "db.45");
+		removeAttribute("db.7");
+
+		while (iterator.hasNext()) {
+			keys.add(iterator.next().getKey());
+		}
+		// db.2 was already read with the first page.
+		Assert.assertEquals(Arrays.asList("db.1", "db.2", "db.45", "db.5", "db.6"), keys);
+		try {
+			iterator.next();
+			Assert.fail("Expected NoSuchElementException");
+		} catch (final NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAllKeysRemovedWhileIterating() {
+		final Iterator<Map.Entry<String, Object>> iterator = instanceAttributes.pagedIterator("db.", 3);
+		Assert.assertTrue(iterator.hasNext());
+		entries.clear();
+		final List<String> keys = new ArrayList<String>();
+		while (iterator.hasNext()) {
+			keys.add(iterator.next().getKey());
+		}
+		Assert.assertEquals(Arrays.asList("db.1", "db.2", "db.3"), keys);
+	}
+
+	@Test
+	public void testInstanceScope() {
+		writeInstanceAttribute(APPLICATION_NAME, SERVICE_NAME, INSTANCE_ID + 1, "db.8");
+		writeInstanceAttribute(APPLICATION_NAME, "other", INSTANCE_ID, "db.8");
+		writeInstanceAttribute("other", SERVICE_NAME, INSTANCE_ID, "db.8");
+		writeServiceAttribute(APPLICATION_NAME, SERVICE_NAME, "db.8");
+
+		Assert.assertFalse(instanceAttributes.getByPrefix("db.").containsKey("db.8"));
+		final Iterator<Map.Entry<String, Object>> iterator = instanceAttributes.pagedIterator("db.8", 1);
+		Assert.assertFalse(iterator.hasNext());
+
+		final InstanceAttributesAccessor otherInstanceAttributes = new InstanceAttributesAccessor(attributesFacade,
+				APPLICATION_NAME, SERVICE_NAME, INSTANCE_ID + 1);
+		Assert.assertEquals(Arrays.asList("db.8"),
+				new ArrayList<String>(otherInstanceAttributes.getByPrefix("db.").keySet()));
+	}
+
+	@Test
+	public void testServiceScope() {
+		writeServiceAttribute(APPLICATION_NAME, SERVICE_NAME, "db.1");
+		writeServiceAttribute(APPLICATION_NAME, "other", "db.2");
+		writeServiceAttribute("other", SERVICE_NAME, "db.3");
+
+		final ServiceAttributesAccessor serviceAttributes = new ServiceAttributesAccessor(attributesFacade,
+				APPLICATION_NAME, SERVICE_NAME, null /* serviceContext */);
+		Assert.assertEquals(Arrays.asList("db.1"),
+				new ArrayList<String>(serviceAttributes.getByPrefix("db.").keySet()));
+		final Iterator<Map.Entry<String, Object>> iterator = serviceAttributes.pagedIterator(null, 1);
+		Assert.assertEquals("db.1", iterator.next().getKey());
+		Assert.assertFalse(iterator.hasNext());
+	}
+
+	private void writeInstanceAttribute(final String applicationName, final String serviceName,
+			final int instanceId, final String key) {
+		entries.add(new InstanceCloudifyAttribute(applicationName, serviceName, instanceId, key, "value-" + key));
+	}
+
+	private void writeServiceAttribute(final String applicationName, final String serviceName, final String key) {
+		entries.add(new ServiceCloudifyAttribute(applicationName, serviceName, key, "value-" + key));
+	}
+
+	private void removeAttribute(final String key) {
+		final Iterator<AbstractCloudifyAttribute> iterator = entries.iterator();
+		while (iterator.hasNext()) {
+			if (key.equals(iterator.next().getKey())) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private ServiceContext createServiceContext() {
+		return (ServiceContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ServiceContext.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (method.getName().equals("getApplicationName")) {
+							return APPLICATION_NAME;
+						}
+						if (method.getName().equals("getServiceName")) {
+							return SERVICE_NAME;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private GigaSpace createManagementSpace() {
+		return (GigaSpace) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { GigaSpace.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args)
+							throws Exception {
+						if (method.getName().equals("readMultiple") && args[0] instanceof SQLQuery) {
+							if (args.length == 1) {
+								return readMultiple((SQLQuery<?>) args[0], null);
+							}
+							if (args.length == 2 && args[1] instanceof Integer) {
+								return readMultiple((SQLQuery<?>) args[0], (Integer) args[1]);
+							}
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	/**
+	 * Evaluates a query of "property operator ?" conditions joined with AND, optionally followed by "ORDER BY key",
+	 * the only form the accessors use.
+	 */
+	private AbstractCloudifyAttribute[] readMultiple(final SQLQuery<?> query, final Integer maxEntries)
+			throws Exception {
+		queries.add(query);
+		limits.add(maxEntries);
+		String sql = query.getQuery();
+		final boolean ordered = sql.endsWith(" ORDER BY key");
+		if (ordered) {
+			sql = sql.substring(0, sql.length() - " ORDER BY key".length());
+		}
+		// a limited query without an order would return arbitrary entries.
+		Assert.assertEquals(maxEntries != null, ordered);
+		final String[] conditions = sql.split(" AND ");
+		final Object[] parameters = query.getParameters();
+		Assert.assertEquals(conditions.length, parameters.length);
+
+		final List<AbstractCloudifyAttribute> result = new ArrayList<AbstractCloudifyAttribute>();
+		for (final AbstractCloudifyAttribute entry : entries) {
+			if (entry.getClass().getName().equals(query.getTypeName()) && matches(entry, conditions, parameters)) {
+				result.add(entry);
+			}
+		}
+		if (ordered) {
+			Collections.sort(result, new Comparator<AbstractCloudifyAttribute>() {
+				@Override
+				public int compare(final AbstractCloudifyAttribute o1, final AbstractCloudifyAttribute o2) {
+					return o1.getKey().compareTo(o2.getKey());
+				}
+			});
+		}
+		final int size = maxEntries == null ? result.size() : Math.min(maxEntries, result.size());
+		return result.subList(0, size).toArray(new AbstractCloudifyAttribute[size]);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean matches(final AbstractCloudifyAttribute entry, final String[] conditions,
+			final Object[] parameters) throws Exception {
+		for (int i = 0; i < conditions.length; i++) {
+			final String[] condition = conditions[i].trim().split(" ");
+			final Comparable value = (Comparable) getProperty(entry, condition[0]);
+			if (value == null) {
+				return false;
+			}
+			final int comparison = value.compareTo(parameters[i]);
+			final String operator = condition[1];
+			final boolean match;
+			if (operator.equals("=")) {
+				match = comparison == 0;
+			} else if (operator.equals(">")) {
+				match = comparison > 0;
+			} else if (operator.equals(">=")) {
+				match = comparison >= 0;
+			} else if (operator.equals("<=")) {
+				match = comparison <= 0;
+			} else if (operator.equals("<")) {
+				match = comparison < 0;
+			} else {
+				throw new IllegalArgumentException("Unsupported operator in " + conditions[i]);
+			}
+			if (!match) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Object getProperty(final Object entry, final String property) throws Exception {
+		return entry.getClass()
+				.getMethod("get" + Character.toUpperCase(property.charAt(0)) + property.substring(1)).invoke(entry);
+	}
+}
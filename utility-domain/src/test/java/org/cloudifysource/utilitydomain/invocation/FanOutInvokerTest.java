@@ -0,0 +1,121 @@
+package org.cloudifysource.utilitydomain.invocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FanOutInvoker}.
+ * 
+ * @since 2.7.1
+ */
+public class FanOutInvokerTest {
+
+	private final ExecutorService remote = Executors.newCachedThreadPool();
+	private final ExecutorService invokerExecutor = Executors.newFixedThreadPool(3);
+
+	@After
+	public void shutdown() {
+		remote.shutdownNow();
+		invokerExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testSlowTaskDoesNotDelayOthers() throws Exception {
+		final List<FanOutTask<Object>> tasks = new ArrayList<FanOutTask<Object>>();
+		tasks.add(createTask("slow", 5000, null));
+		for (int i = 0; i < 10; i++) {
+			tasks.add(createTask("fast" + i, 10, "result" + i));
+		}
+		tasks.add(createTask("failing", 10, new IllegalStateException("boom")));
+
+		final List<String> completionOrder = new ArrayList<String>();
+		final long start = System.currentTimeMillis();
+		final FanOutResult<Object> result = new FanOutInvoker().invoke(tasks, 500, TimeUnit.MILLISECONDS,
+				new FanOutListener<Object>() {
+					@Override
+					public void onResult(final FanOutTaskResult<Object> taskResult) {
+						completionOrder.add(taskResult.getName());
+					}
+				});
+		final long duration = System.currentTimeMillis() - start;
+
+		Assert.assertTrue("invocation did not respect the deadline: " + duration, duration < 2000);
+		Assert.assertEquals(10, result.getSuccessCount());
+		Assert.assertEquals(1, result.getFailureCount());
+		Assert.assertEquals(1, result.getTimeoutCount());
+		Assert.assertEquals("slow", completionOrder.get(completionOrder.size() - 1));
+		Assert.assertEquals(FanOutTaskResult.Status.TIMEOUT, result.getResults().get(0).getStatus());
+		Assert.assertEquals("result3", result.getResults().get(4).getResult());
+		Assert.assertEquals("boom", result.getResults().get(11).getException().getMessage());
+	}
+
+	@Test
+	public void testMaxInFlightIsRespected() throws Exception {
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxObserved = new AtomicInteger();
+		final List<FanOutTask<Object>> tasks = new ArrayList<FanOutTask<Object>>();
+		for (int i = 0; i < 20; i++) {
+			final String name = "task" + i;
+			tasks.add(new FanOutTask<Object>() {
+				@Override
+				public String getName() {
+					return name;
+				}
+
+				@Override
+				public Future<Object> start() {
+					return remote.submit(new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							final int current = inFlight.incrementAndGet();
+							synchronized (maxObserved) {
+								maxObserved.set(Math.max(maxObserved.get(), current));
+							}
+							Thread.sleep(20);
+							inFlight.decrementAndGet();
+							return name;
+						}
+					});
+				}
+			});
+		}
+
+		final FanOutResult<Object> result = new FanOutInvoker(invokerExecutor, 3)
+				.invoke(tasks, 10, TimeUnit.SECONDS, null);
+		Assert.assertEquals(20, result.getSuccessCount());
+		Assert.assertTrue("too many concurrent invocations: " + maxObserved.get(), maxObserved.get() <= 3);
+	}
+
+	private FanOutTask<Object> createTask(final String name, final long delayMillis, final Object outcome) {
+		return new FanOutTask<Object>() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public Future<Object> start() {
+				return remote.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						Thread.sleep(delayMillis);
+						if (outcome instanceof Exception) {
+							throw (Exception) outcome;
+						}
+						return outcome;
+					}
+				});
+			}
+		};
+	}
+}
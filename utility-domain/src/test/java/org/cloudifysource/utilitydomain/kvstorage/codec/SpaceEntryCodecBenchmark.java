@@ -0,0 +1,60 @@
+package org.cloudifysource.utilitydomain.kvstorage.codec;
+
+import java.util.Map;
+
+/**
+ * Compares the size and the encode and decode times of attribute values written with the compact codec, with and
+ * without compression, against Java serialization, the format used before the codecs were introduced.<br />
+ * Run with: java -cp ... org.cloudifysource.utilitydomain.kvstorage.codec.SpaceEntryCodecBenchmark [iterations]
+ * 
+ * @since 2.7.1
+ */
+public final class SpaceEntryCodecBenchmark {
+
+	private static final int DEFAULT_ITERATIONS = 2000;
+	private static final int[] VALUE_SIZES = { 1, 10, 100, 1000 };
+	private static final int NANOS_IN_MICRO = 1000;
+	private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+	private SpaceEntryCodecBenchmark() {
+	}
+
+	/**
+	 * @param args
+	 *            The number of iterations per measurement, optional.
+	 */
+	public static void main(final String[] args) {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		System.out.println(String.format("%-10s %-22s %10s %12s %12s", "entries", "format", "bytes", "encode(us)",
+				"decode(us)"));
+		for (final int size : VALUE_SIZES) {
+			final Map<String, Object> value = SpaceEntryCodecsTest.createNestedValue(size);
+			SpaceEntryCodecs.setCompressionThreshold(-1);
+			run(size, "java serialization", value, new JavaSerializationCodec(), iterations);
+			run(size, "compact", value, new CompactBinaryCodec(), iterations);
+			SpaceEntryCodecs.setCompressionThreshold(DEFAULT_COMPRESSION_THRESHOLD);
+			run(size, "compact, compressed", value, new CompactBinaryCodec(), iterations);
+		}
+	}
+
+	private static void run(final int size, final String format, final Object value, final SpaceEntryCodec codec,
+			final int iterations) {
+		byte[] encoded = null;
+		// warm up.
+		for (int i = 0; i < iterations; i++) {
+			SpaceEntryCodecs.decode(SpaceEntryCodecs.encode(value, codec));
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			encoded = SpaceEntryCodecs.encode(value, codec);
+		}
+		final long encodeNanos = (System.nanoTime() - start) / iterations;
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			SpaceEntryCodecs.decode(encoded);
+		}
+		final long decodeNanos = (System.nanoTime() - start) / iterations;
+		System.out.println(String.format("%-10d %-22s %10d %12.1f %12.1f", size, format, encoded.length,
+				(double) encodeNanos / NANOS_IN_MICRO, (double) decodeNanos / NANOS_IN_MICRO));
+	}
+}
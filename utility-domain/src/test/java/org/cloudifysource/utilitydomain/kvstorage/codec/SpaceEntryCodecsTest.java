@@ -0,0 +1,224 @@
+package org.cloudifysource.utilitydomain.kvstorage.codec;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.cloudifysource.utilitydomain.kvstorage.spaceentries.InstanceCloudifyAttribute;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SpaceEntryCodecs} and the codecs it uses.
+ * 
+ * @since 2.7.1
+ */
+public class SpaceEntryCodecsTest {
+
+	private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+	private final SpaceEntryCodec compact = new CompactBinaryCodec();
+	private final SpaceEntryCodec java = new JavaSerializationCodec();
+
+	@After
+	public void restoreDefaults() {
+		SpaceEntryCodecs.setDefaultCodec(compact);
+		SpaceEntryCodecs.setCompressionThreshold(DEFAULT_COMPRESSION_THRESHOLD);
+	}
+
+	/**
+	 * A value like the ones recipes store: a list of maps with the same keys.
+	 */
+	static Map<String, Object> createNestedValue(final int entries) {
+		final Map<String, Object> value = new LinkedHashMap<String, Object>();
+		final List<Object> instances = new ArrayList<Object>();
+		for (int i = 0; i < entries; i++) {
+			final Map<String, Object> instance = new LinkedHashMap<String, Object>();
+			instance.put("instanceId", i);
+			instance.put("host", "10.0.0." + i);
+			instance.put("port", 8080 + i);
+			instance.put("started", System.currentTimeMillis());
+			instance.put("healthy", i % 2 == 0);
+			instance.put("tags", new ArrayList<Object>(Arrays.asList("web", "tomcat")));
+			instances.add(instance);
+		}
+		value.put("instances", instances);
+		value.put("version", "1.0.0");
+		return value;
+	}
+
+	private Object roundTrip(final Object value, final SpaceEntryCodec codec) {
+		return SpaceEntryCodecs.decode(SpaceEntryCodecs.encode(value, codec));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final Map<Object, Object> value = new HashMap<Object, Object>();
+		value.put("string", "value \u05e9\u05dc\u05d5\u05dd");
+		value.put("empty", "");
+		value.put("int", Integer.MIN_VALUE);
+		value.put("long", Long.MAX_VALUE);
+		value.put("negative", -1L);
+		value.put("short", (short) -7);
+		value.put("byte", (byte) 3);
+		value.put("char", 'c');
+		value.put("double", Math.PI);
+		value.put("float", 1.5f);
+		value.put("true", Boolean.TRUE);
+		value.put("null", null);
+		value.put("bigInteger", new BigInteger("123456789012345678901234567890"));
+		value.put("bigDecimal", new BigDecimal("-12345.6789"));
+		value.put("linkedList", new LinkedList<Object>(Arrays.asList(1, "two", 3.0)));
+		value.put("set", new HashSet<Object>(Arrays.asList("a", "b")));
+		value.put("linkedSet", new LinkedHashSet<Object>(Arrays.asList("z", "a")));
+		value.put("treeMap", new TreeMap<Object, Object>(Collections.singletonMap("k", "v")));
+		value.put(1, "non string key");
+		value.put("nested", createNestedValue(3));
+		// not written in the compact form, but still stored.
+		value.put("serializable", new Date(1000));
+
+		for (final SpaceEntryCodec codec : Arrays.asList(compact, java)) {
+			final Object decoded = roundTrip(value, codec);
+			Assert.assertEquals(value, decoded);
+			Assert.assertEquals(HashMap.class, decoded.getClass());
+		}
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) roundTrip(new byte[] { 1, 2, 3 }, compact));
+		Assert.assertNull(roundTrip(null, compact));
+	}
+
+	@Test
+	public void testCollectionClassesKept() {
+		final Map<String, Object> value = createNestedValue(2);
+		final Map<?, ?> decoded = (Map<?, ?>) roundTrip(value, compact);
+		Assert.assertEquals(LinkedHashMap.class, decoded.getClass());
+		Assert.assertEquals(new ArrayList<Object>(value.keySet()), new ArrayList<Object>(decoded.keySet()));
+		Assert.assertEquals(ArrayList.class, decoded.get("instances").getClass());
+		Assert.assertEquals(LinkedList.class, roundTrip(new LinkedList<Object>(), compact).getClass());
+		Assert.assertEquals(LinkedHashSet.class, roundTrip(new LinkedHashSet<Object>(), compact).getClass());
+	}
+
+	@Test
+	public void testSelfReferencingValue() {
+		final Map<String, Object> map = new HashMap<String, Object>();
+		map.put("self", map);
+		final Map<?, ?> decoded = (Map<?, ?>) roundTrip(map, compact);
+		Assert.assertSame(decoded, decoded.get("self"));
+
+		// a cycle through another collection.
+		final List<Object> list = new ArrayList<Object>();
+		final Map<String, Object> element = new LinkedHashMap<String, Object>();
+		element.put("list", list);
+		list.add(element);
+		final List<?> decodedList = (List<?>) roundTrip(list, compact);
+		Assert.assertSame(decodedList, ((Map<?, ?>) decodedList.get(0)).get("list"));
+
+		// a collection held twice without a cycle is still written in the compact form.
+		SpaceEntryCodecs.setCompressionThreshold(-1);
+		final List<Object> shared = new ArrayList<Object>(Arrays.asList("a", "b"));
+		final byte[] encoded = SpaceEntryCodecs.encode(new ArrayList<Object>(Arrays.asList(shared, shared)), compact);
+		Assert.assertTrue(encoded.length < SpaceEntryCodecs.encode(Arrays.asList(shared, shared), compact).length);
+		Assert.assertEquals(Arrays.asList(shared, shared), SpaceEntryCodecs.decode(encoded));
+	}
+
+	@Test
+	public void testCompactSmallerThanJavaSerialization() {
+		SpaceEntryCodecs.setCompressionThreshold(-1);
+		final Map<String, Object> value = createNestedValue(50);
+		final int compactSize = SpaceEntryCodecs.encode(value, compact).length;
+		final int javaSize = SpaceEntryCodecs.encode(value, java).length;
+		Assert.assertTrue("Compact size " + compactSize + ", java serialization size " + javaSize,
+				compactSize * 2 < javaSize);
+	}
+
+	@Test
+	public void testCompression() {
+		final Map<String, Object> value = createNestedValue(100);
+		SpaceEntryCodecs.setCompressionThreshold(-1);
+		final byte[] uncompressed = SpaceEntryCodecs.encode(value, compact);
+		SpaceEntryCodecs.setCompressionThreshold(DEFAULT_COMPRESSION_THRESHOLD);
+		final byte[] compressed = SpaceEntryCodecs.encode(value, compact);
+		Assert.assertTrue(compressed.length < uncompressed.length);
+		Assert.assertEquals(value, SpaceEntryCodecs.decode(compressed));
+		Assert.assertEquals(value, SpaceEntryCodecs.decode(uncompressed));
+
+		// small values are not compressed.
+		Assert.assertEquals(0, SpaceEntryCodecs.encode("small", compact)[2]);
+	}
+
+	@Test
+	public void testValuesOfOtherCodecsDecoded() {
+		final byte[] written = SpaceEntryCodecs.encode("value", java);
+		SpaceEntryCodecs.setDefaultCodec(compact);
+		Assert.assertEquals("value", SpaceEntryCodecs.decode(written));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnknownFormatVersion() {
+		final byte[] encoded = SpaceEntryCodecs.encode("value");
+		encoded[0] = SpaceEntryCodecs.FORMAT_VERSION + 1;
+		SpaceEntryCodecs.decode(encoded);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotSerializable() {
+		SpaceEntryCodecs.encode(new Object());
+	}
+
+	@Test
+	public void testAttributeValue() {
+		final Map<String, Object> value = createNestedValue(2);
+		final InstanceCloudifyAttribute attribute = new InstanceCloudifyAttribute("app", "service", 1, "key", value);
+		final byte[] encoded = attribute.getEncodedValue();
+		// encoded once, when the value is set.
+		Assert.assertSame(encoded, attribute.getEncodedValue());
+
+		// as read from the space.
+		final InstanceCloudifyAttribute read = new InstanceCloudifyAttribute();
+		read.setEncodedValue(encoded);
+		Assert.assertEquals(value, read.getValue());
+		Assert.assertSame(read.getValue(), read.getValue());
+
+		attribute.setValue("other");
+		Assert.assertEquals("other", SpaceEntryCodecs.decode(attribute.getEncodedValue()));
+		attribute.setValue(null);
+		Assert.assertNull(attribute.getEncodedValue());
+
+		// templates match any value.
+		Assert.assertNull(new InstanceCloudifyAttribute("app", "service", 1, "key", null).getEncodedValue());
+	}
+
+	/**
+	 * A serializable class the compact codec does not know.
+	 */
+	private static final class Date implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+		private final long time;
+
+		private Date(final long time) {
+			this.time = time;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Date && ((Date) obj).time == time;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) time;
+		}
+	}
+}